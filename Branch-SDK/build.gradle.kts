@@ -72,6 +72,11 @@ fun isReleaseBuild(): Boolean {
     return !VERSION_NAME.endsWith("SNAPSHOT")
 }
 
+// Build with -PbranchStripVerboseLogs=true to compile debug and verbose logging out of the SDK
+fun stripVerboseLogs(): String {
+    return ((project.findProperty("branchStripVerboseLogs") as? String)?.toBoolean() ?: false).toString()
+}
+
 android {
     compileSdk = ANDROID_BUILD_SDK_VERSION_COMPILE.toInt()
     buildToolsVersion = ANDROID_BUILD_TOOLS_VERSION
@@ -99,10 +104,12 @@ android {
             enableAndroidTestCoverage = true
             buildConfigField("long", "VERSION_CODE", VERSION_CODE)
             buildConfigField("String", "VERSION_NAME", VERSION_NAME.wrapInQuotes())
+            buildConfigField("boolean", "STRIP_VERBOSE_LOGS", stripVerboseLogs())
         }
         release {
             buildConfigField("long", "VERSION_CODE", VERSION_CODE)
             buildConfigField("String", "VERSION_NAME", VERSION_NAME.wrapInQuotes())
+            buildConfigField("boolean", "STRIP_VERBOSE_LOGS", stripVerboseLogs())
         }
     }
 
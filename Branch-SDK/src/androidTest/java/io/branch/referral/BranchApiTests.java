@@ -130,6 +130,81 @@ public class BranchApiTests extends BranchTest {
         });
     }
 
+    @Test
+    public void test04GetShortURLBulk() {
+        initSessionResumeActivity(null, new Runnable() {
+            @Override
+            public void run() {
+                final FBUrl urlFB = new FBUrl(null);
+                try {
+                    getFBUrl(urlFB);
+                } catch (InterruptedException e) {
+                    Assert.fail();
+                }
+
+                List<BranchShortLinkBuilder> builders = new ArrayList<>();
+                builders.add(new BranchShortLinkBuilder(getTestContext()).setChannel("twitter"));
+                builders.add(new BranchShortLinkBuilder(getTestContext()).setChannel("facebook"));
+                builders.add(new BranchShortLinkBuilder(getTestContext()).setChannel("email"));
+
+                final CountDownLatch signal = new CountDownLatch(1);
+                branch.generateShortUrls(builders, new Branch.BranchBulkLinkCreateListener() {
+                    @Override
+                    public void onLinksCreate(List<String> urls, List<BranchError> errors) {
+                        Assert.assertEquals(3, urls.size());
+                        for (int i = 0; i < urls.size(); i++) {
+                            Assert.assertNull(errors.get(i));
+                            Assert.assertTrue(urls.get(i).startsWith("https://bnc.lt/l/"));
+                        }
+                        // The facebook link is served from the link cache
+                        Assert.assertEquals(urlFB.val, urls.get(1));
+                        Assert.assertNotEquals(urls.get(0), urls.get(2));
+
+                        signal.countDown();
+                    }
+                });
+                try {
+                    Assert.assertTrue(signal.await(TEST_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS));
+                } catch (InterruptedException e) {
+                    Assert.fail();
+                }
+                // Links created in bulk are cached like links created one by one
+                BranchLinkData emailLink = new BranchShortLinkBuilder(getTestContext()).setChannel("email").createUrlRequest(null).getLinkPost();
+                Assert.assertNotNull(branch.linkCache_.get(emailLink));
+            }
+        });
+    }
+
+    @Test
+    public void test04GetShortURLOfflineFirst() {
+        initSessionResumeActivity(null, new Runnable() {
+            @Override
+            public void run() {
+                final CountDownLatch signal = new CountDownLatch(1);
+                final BranchShortLinkBuilder linkBuilder = new BranchShortLinkBuilder(getTestContext()).setChannel("email");
+                final String longUrl = linkBuilder.getShortUrlOfflineFirst(new Branch.BranchLinkUpgradeListener() {
+                    @Override
+                    public void onLinkUpgraded(String longUrl, String shortUrl) {
+                        Assert.assertTrue(longUrl.startsWith("https://bnc.lt/a/"));
+                        Assert.assertTrue(shortUrl.startsWith("https://bnc.lt/l/"));
+                        signal.countDown();
+                    }
+                });
+                // long url route = "/a/", short url route = "/l/"
+                Assert.assertTrue(longUrl.startsWith("https://bnc.lt/a/"));
+                try {
+                    Assert.assertTrue(signal.await(TEST_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS));
+                } catch (InterruptedException e) {
+                    Assert.fail();
+                }
+
+                // Once upgraded, the short url is served from the link cache
+                String url = linkBuilder.getShortUrlOfflineFirst(null);
+                Assert.assertTrue(url.startsWith("https://bnc.lt/l/"));
+            }
+        });
+    }
+
     @Test
     public void test04GetShortURLSync() {
         initSessionResumeActivity(null, new Runnable() {
@@ -0,0 +1,101 @@
+package io.branch.referral;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class BranchLinkCacheTest extends BranchTest {
+
+    private BranchLinkCache linkCache;
+
+    @Before
+    public void setUp() {
+        super.setUp();
+        linkCache = new BranchLinkCache(getTestContext());
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        linkCache.clear();
+        super.tearDown();
+    }
+
+    private BranchLinkData createLinkData(String channel) throws JSONException {
+        BranchLinkData linkData = new BranchLinkData();
+        linkData.putChannel(channel);
+        linkData.putParams(new JSONObject().put("$og_title", "title"));
+        return linkData;
+    }
+
+    @Test
+    public void testHitAndMiss() throws JSONException {
+        linkCache.put(createLinkData("facebook"), "https://bnc.lt/facebook");
+
+        Assert.assertEquals("https://bnc.lt/facebook", linkCache.get(createLinkData("facebook")));
+        Assert.assertNull(linkCache.get(createLinkData("twitter")));
+        Assert.assertEquals(1, linkCache.getHitCount());
+        Assert.assertEquals(1, linkCache.getMissCount());
+        Assert.assertEquals(0.5, linkCache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws JSONException {
+        linkCache.setMaxEntries(2);
+        linkCache.put(createLinkData("a"), "https://bnc.lt/a");
+        linkCache.put(createLinkData("b"), "https://bnc.lt/b");
+        linkCache.get(createLinkData("a"));
+        linkCache.put(createLinkData("c"), "https://bnc.lt/c");
+
+        Assert.assertEquals(2, linkCache.size());
+        Assert.assertEquals(1, linkCache.getEvictionCount());
+        Assert.assertNull(linkCache.get(createLinkData("b")));
+        Assert.assertEquals("https://bnc.lt/a", linkCache.get(createLinkData("a")));
+    }
+
+    @Test
+    public void testByteBound() throws JSONException {
+        linkCache.setMaxBytes(1);
+        linkCache.put(createLinkData("a"), "https://bnc.lt/a");
+
+        Assert.assertEquals(0, linkCache.size());
+        Assert.assertEquals(0, linkCache.getSizeBytes());
+    }
+
+    @Test
+    public void testExpiredEntryIsDropped() throws JSONException, InterruptedException {
+        linkCache.setTTL(1);
+        linkCache.put(createLinkData("a"), "https://bnc.lt/a");
+        Thread.sleep(10);
+
+        Assert.assertNull(linkCache.get(createLinkData("a")));
+        Assert.assertEquals(1, linkCache.getExpirationCount());
+    }
+
+    @Test
+    public void testDiskTierSurvivesNewInstance() throws JSONException {
+        linkCache.setPersistenceEnabled(true);
+        linkCache.put(createLinkData("a"), "https://bnc.lt/a");
+
+        BranchLinkCache nextSession = new BranchLinkCache(getTestContext());
+        nextSession.setPersistenceEnabled(true);
+        Assert.assertEquals("https://bnc.lt/a", nextSession.get(createLinkData("a")));
+    }
+
+    @Test
+    public void testClearRemovesDiskTier() throws JSONException {
+        linkCache.setPersistenceEnabled(true);
+        linkCache.put(createLinkData("a"), "https://bnc.lt/a");
+        linkCache.clear();
+
+        BranchLinkCache nextSession = new BranchLinkCache(getTestContext());
+        nextSession.setPersistenceEnabled(true);
+        Assert.assertNull(nextSession.get(createLinkData("a")));
+    }
+}
@@ -0,0 +1,79 @@
+package io.branch.referral;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class BranchLinkPrefetcherTest extends BranchTest {
+
+    @Before
+    public void setUp() {
+        super.setUp();
+        initBranchInstance();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        branch.getLinkPrefetcher().cancelAll();
+        branch.linkCache_.clear();
+        super.tearDown();
+    }
+
+    private BranchShortLinkBuilder createLinkBuilder(String channel) {
+        return new BranchShortLinkBuilder(getTestContext()).setChannel(channel);
+    }
+
+    private BranchLinkData linkDataOf(String channel) {
+        return createLinkBuilder(channel).createUrlRequest(null).getLinkPost();
+    }
+
+    @Test
+    public void testPrefetchWaitsForSession() {
+        BranchLinkPrefetcher prefetcher = branch.getLinkPrefetcher();
+        prefetcher.prefetch(createLinkBuilder("facebook"));
+        prefetcher.prefetch(createLinkBuilder("facebook"));
+
+        Assert.assertEquals(1, prefetcher.getPendingCount());
+        Assert.assertEquals(0, prefetcher.getInFlightCount());
+        Assert.assertEquals(0, prefetcher.getPrefetchCount());
+    }
+
+    @Test
+    public void testCancelPendingPrefetch() {
+        BranchLinkPrefetcher prefetcher = branch.getLinkPrefetcher();
+        prefetcher.prefetch(createLinkBuilder("facebook"));
+        prefetcher.prefetch(createLinkBuilder("twitter"));
+        prefetcher.cancel(createLinkBuilder("facebook"));
+
+        Assert.assertEquals(1, prefetcher.getPendingCount());
+        Assert.assertEquals(1, prefetcher.getCancelCount());
+    }
+
+    @Test
+    public void testPrefetchWarmsLinkCache() {
+        initSessionResumeActivity(null, new Runnable() {
+            @Override
+            public void run() {
+                BranchLinkPrefetcher prefetcher = branch.getLinkPrefetcher();
+                prefetcher.setMaxConcurrentPrefetches(1);
+                prefetcher.prefetch(createLinkBuilder("facebook"));
+                prefetcher.prefetch(createLinkBuilder("twitter"));
+                Assert.assertTrue(prefetcher.getInFlightCount() <= 1);
+
+                try {
+                    Thread.sleep(TEST_REQUEST_TIMEOUT * 3);
+                } catch (InterruptedException e) {
+                    Assert.fail();
+                }
+                Assert.assertEquals(2, prefetcher.getPrefetchCount());
+                Assert.assertNotNull(branch.linkCache_.get(linkDataOf("facebook")));
+                Assert.assertNotNull(branch.linkCache_.get(linkDataOf("twitter")));
+            }
+        });
+    }
+}
@@ -0,0 +1,56 @@
+package io.branch.referral;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+
+@RunWith(AndroidJUnit4.class)
+public class BranchPrewarmTest extends BranchTest {
+
+    @Test
+    public void testInstanceCreatedAfterPrewarm() throws InterruptedException {
+        Branch.prewarm(getTestContext());
+        Branch.prewarm(getTestContext());
+        BranchPrewarm prewarm = BranchPrewarm.getInstance();
+        Assert.assertTrue(prewarm.await(TEST_INIT_SESSION_TIMEOUT));
+        Assert.assertTrue(prewarm.getWarmUpMillis() >= 0);
+
+        initBranchInstance(TEST_KEY);
+        Assert.assertEquals(TEST_KEY, branch.getPrefHelper().getBranchKey());
+        Assert.assertTrue(Branch.getInstanceCreationMillis() >= 0);
+    }
+
+    @Test
+    public void testSettingsAfterPrewarmApply() throws InterruptedException {
+        File binaryFile = new File(getTestContext().getFilesDir(), BinaryPrefStorage.FILE_NAME);
+        try {
+            Branch.prewarm(getTestContext());
+            Assert.assertTrue(BranchPrewarm.getInstance().await(TEST_INIT_SESSION_TIMEOUT));
+
+            Branch.enableBinaryPrefStorage();
+            initBranchInstance(TEST_KEY);
+            Assert.assertTrue(BinaryPrefStorage.exists(getTestContext()));
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            binaryFile.delete();
+        }
+    }
+
+    @Test
+    public void testInstanceCreatedDuringPrewarm() {
+        Branch.prewarm(getTestContext());
+        initBranchInstance(TEST_KEY);
+        Assert.assertEquals(TEST_KEY, branch.getPrefHelper().getBranchKey());
+    }
+
+    @Test
+    public void testNotPrewarmed() {
+        initBranchInstance(TEST_KEY);
+        Assert.assertNull(BranchPrewarm.getInstance());
+        Assert.assertTrue(Branch.getInstanceCreationMillis() >= 0);
+    }
+}
@@ -1,6 +1,7 @@
 package io.branch.referral;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Color;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -14,6 +15,7 @@ import org.junit.runner.RunWith;
 
 import java.io.IOException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import io.branch.indexing.BranchUniversalObject;
 import io.branch.referral.QRCode.BranchQRCode;
@@ -194,5 +196,90 @@ public class BranchQRCodeTests extends BranchTest {
 
     }
 
+    @Test
+    public void testQRCodeCacheEvictsLeastRecentlyUsed() throws JSONException {
+        BranchQRCodeCache cache = branch.getBranchQRCodeCache();
+        cache.clear();
+        cache.setMaxBytes(3 * 1024);
+
+        JSONObject first = new JSONObject().put("channel", "first").put("data", new JSONObject());
+        JSONObject second = new JSONObject().put("channel", "second").put("data", new JSONObject());
+        JSONObject third = new JSONObject().put("channel", "third").put("data", new JSONObject());
+        cache.addQRCodeToCache(first, new byte[1000]);
+        cache.addQRCodeToCache(second, new byte[1000]);
+        Assert.assertNotNull(cache.checkQRCodeCache(first));
+
+        cache.addQRCodeToCache(third, new byte[1000]);
+        Assert.assertEquals(2, cache.size());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        Assert.assertNotNull(cache.checkQRCodeCache(first));
+        Assert.assertNull(cache.checkQRCodeCache(second));
+        Assert.assertNotNull(cache.checkQRCodeCache(third));
+        Assert.assertEquals(3, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+
+        cache.setMaxBytes(BranchQRCodeCache.DEFAULT_MAX_BYTES);
+        cache.clear();
+    }
+
+    @Test
+    public void testQRCodeCacheDiskTier() throws JSONException, InterruptedException {
+        BranchQRCodeCache cache = branch.getBranchQRCodeCache();
+        cache.clear();
+        cache.setPersistenceEnabled(true);
+
+        JSONObject params = new JSONObject().put("channel", "disk").put("data", new JSONObject());
+        byte[] qrCodeData = new byte[]{1, 2, 3};
+        cache.addQRCodeToCache(params, qrCodeData);
+        cache.setMaxBytes(1);
+        Assert.assertEquals(0, cache.size());
+
+        cache.setMaxBytes(BranchQRCodeCache.DEFAULT_MAX_BYTES);
+        Assert.assertNull(cache.checkQRCodeCache(params));
+        final CountDownLatch lock = new CountDownLatch(1);
+        final byte[][] result = new byte[1][];
+        cache.checkDiskCache(params, new BranchQRCodeCache.DiskCacheListener() {
+            @Override
+            public void onDiskCacheChecked(byte[] diskQRCodeData) {
+                result[0] = diskQRCodeData;
+                lock.countDown();
+            }
+        });
+        Assert.assertTrue(lock.await(TEST_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertArrayEquals(qrCodeData, result[0]);
+        Assert.assertEquals(1, cache.getDiskHitCount());
+        Assert.assertArrayEquals(qrCodeData, cache.checkQRCodeCache(params));
+
+        cache.setPersistenceEnabled(false);
+        cache.clear();
+    }
 
-    }
\ No newline at end of file
+    @Test
+    public void testQRCodeRenderedLocally() throws IOException, InterruptedException {
+        BranchQRCode qrCode = new BranchQRCode()
+                .setCodeColor("#a4c639")
+                .setWidth(300)
+                .setRenderLocally(true);
+        BranchUniversalObject buo = new BranchUniversalObject().setCanonicalIdentifier("test/local");
+        LinkProperties lp = new LinkProperties().setChannel("local");
+
+        final CountDownLatch lock = new CountDownLatch(1);
+        final byte[][] result = new byte[1][];
+        qrCode.getQRCodeAsData(getTestContext(), buo, lp, new BranchQRCode.BranchQRCodeDataHandler() {
+            @Override
+            public void onSuccess(byte[] qrCodeData) {
+                result[0] = qrCodeData;
+                lock.countDown();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                lock.countDown();
+            }
+        });
+        Assert.assertTrue(lock.await(TEST_REQUEST_TIMEOUT, TimeUnit.MILLISECONDS));
+        Assert.assertNotNull(result[0]);
+        Bitmap bitmap = BitmapFactory.decodeByteArray(result[0], 0, result[0].length);
+        Assert.assertEquals(300, bitmap.getWidth());
+    }
+}
@@ -0,0 +1,72 @@
+package io.branch.referral;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.branch.referral.BranchStartupTimeline.Event;
+import io.branch.referral.BranchStartupTimeline.Phase;
+
+@RunWith(AndroidJUnit4.class)
+public class BranchStartupTimelineTest extends BranchTest {
+
+    @Before
+    public void setUp() {
+        super.setUp();
+        Branch.getStartupTimeline().clear();
+    }
+
+    private static List<Phase> phasesOf(List<Event> events) {
+        List<Phase> phases = new ArrayList<>();
+        for (Event event : events) {
+            phases.add(event.getPhase());
+        }
+        return phases;
+    }
+
+    @Test
+    public void testInitPhasesRecordedInOrder() {
+        initBranchInstance(TEST_KEY);
+        initSessionResumeActivity(null, new Runnable() {
+            @Override
+            public void run() {
+                List<Event> events = Branch.getStartupTimeline().getLatestInitEvents();
+                List<Phase> phases = phasesOf(events);
+
+                Assert.assertEquals(Phase.INSTANCE_CREATION_STARTED, phases.get(0));
+                Phase[] expectedOrder = {Phase.INSTANCE_CREATED, Phase.INIT_STARTED, Phase.INIT_QUEUED,
+                        Phase.INIT_REQUEST_SENT, Phase.INIT_RESPONSE_RECEIVED, Phase.INIT_FINISHED};
+                int previous = -1;
+                for (Phase phase : expectedOrder) {
+                    int index = phases.indexOf(phase);
+                    Assert.assertTrue(phase + " missing or out of order", index > previous);
+                    previous = index;
+                }
+                Assert.assertTrue(phases.contains(Phase.WAIT_LOCK_RELEASED));
+
+                long previousMillis = 0;
+                for (Event event : events) {
+                    Assert.assertTrue(event.getElapsedRealtimeMillis() >= previousMillis);
+                    previousMillis = event.getElapsedRealtimeMillis();
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testEventsBounded() {
+        BranchStartupTimeline timeline = Branch.getStartupTimeline();
+        for (int i = 0; i < BranchStartupTimeline.MAX_EVENTS + 10; i++) {
+            timeline.record(Phase.INIT_STARTED, null);
+        }
+        Assert.assertEquals(BranchStartupTimeline.MAX_EVENTS, timeline.getEvents().size());
+        Assert.assertEquals(BranchStartupTimeline.MAX_EVENTS + 10, timeline.getInitIndex());
+        Assert.assertEquals(1, timeline.getLatestInitEvents().size());
+    }
+}
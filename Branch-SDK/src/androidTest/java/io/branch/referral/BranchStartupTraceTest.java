@@ -0,0 +1,41 @@
+package io.branch.referral;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class BranchStartupTraceTest extends BranchTest {
+
+    @Test
+    public void testRarelyUsedObjectsCreatedOnFirstUse() {
+        initBranchInstance(TEST_KEY);
+        List<String> objects = BranchStartupTrace.getObjects();
+        Assert.assertTrue(objects.contains("DeviceInfo"));
+        Assert.assertFalse(objects.contains("BranchQRCodeCache"));
+        Assert.assertFalse(objects.contains("BranchPluginSupport"));
+        Assert.assertFalse(objects.contains("ShareTargetCache"));
+
+        Assert.assertSame(branch.getBranchQRCodeCache(), branch.getBranchQRCodeCache());
+        Assert.assertTrue(BranchStartupTrace.getObjects().contains("BranchQRCodeCache"));
+    }
+
+    @Test
+    public void testTraceEndsAtFirstSession() {
+        initBranchInstance(TEST_KEY);
+        Assert.assertEquals(-1, BranchStartupTrace.getLoadedClassCount());
+        initSessionResumeActivity(null, new Runnable() {
+            @Override
+            public void run() {
+                Assert.assertTrue(BranchStartupTrace.getLoadedClassCount() >= 0);
+                int objectCount = BranchStartupTrace.getObjects().size();
+                branch.getBranchPluginSupport();
+                Assert.assertEquals(objectCount, BranchStartupTrace.getObjects().size());
+            }
+        });
+    }
+}
@@ -3,6 +3,7 @@ package io.branch.referral;
 import static io.branch.referral.Defines.Jsonkey.PartnerData;
 
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.os.Build;
 
 import org.json.JSONException;
@@ -13,6 +14,12 @@ import org.junit.Test;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.UUID;
 
 public class PrefHelperTest extends BranchTest {
@@ -350,4 +357,127 @@ public class PrefHelperTest extends BranchTest {
         Assert.assertEquals(Defines.BranchAttributionLevel.FULL, prefHelper.getConsumerProtectionAttributionLevel());
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void testAdvertisingIdCacheDisabledByDefault() {
+        prefHelper.setCachedAdvertisingId("00000000-1111-2222-3333-444444444444", 0);
+        Assert.assertNull(prefHelper.getCachedAdvertisingId());
+    }
+
+    @Test
+    public void testAdvertisingIdCache() {
+        Branch.getInstance().setAdvertisingIdCacheTTL(60000);
+        prefHelper.setCachedAdvertisingId("00000000-1111-2222-3333-444444444444", 0);
+
+        JSONObject cached = prefHelper.getCachedAdvertisingId();
+        Assert.assertNotNull(cached);
+        Assert.assertEquals("00000000-1111-2222-3333-444444444444", prefHelper.getCachedAdvertisingIdValue(cached));
+        Assert.assertEquals(0, prefHelper.getCachedAdvertisingIdLAT(cached));
+    }
+
+    @Test
+    public void testAdvertisingIdCacheLimitAdTracking() {
+        Branch.getInstance().setAdvertisingIdCacheTTL(60000);
+        prefHelper.setCachedAdvertisingId(null, 1);
+
+        JSONObject cached = prefHelper.getCachedAdvertisingId();
+        Assert.assertNotNull(cached);
+        Assert.assertNull(prefHelper.getCachedAdvertisingIdValue(cached));
+        Assert.assertEquals(1, prefHelper.getCachedAdvertisingIdLAT(cached));
+    }
+
+    @Test
+    public void testAdvertisingIdCacheClearedWhenDisabled() {
+        Branch.getInstance().setAdvertisingIdCacheTTL(60000);
+        prefHelper.setCachedAdvertisingId("00000000-1111-2222-3333-444444444444", 0);
+        Branch.getInstance().setAdvertisingIdCacheTTL(0);
+
+        Assert.assertNull(prefHelper.getCachedAdvertisingId());
+    }
+
+    /**
+     * Benchmark of a cold start with the default storage: the time to load the preferences file and
+     * read the branch key, with the install params in the same file and split in the cold file. The
+     * preferences are cached once loaded, so each load reads a fresh copy of the file.
+     */
+    @Test
+    public void testTimeToFirstBranchKey() throws IOException {
+        StringBuilder installParams = new StringBuilder("{");
+        for (int i = 0; i < 400; i++) {
+            installParams.append("\"key_").append(i).append("\":\"value value value ").append(i).append("\",");
+        }
+        installParams.append("\"+clicked_branch_link\":true}");
+
+        SharedPreferences.Editor unsplit = context.getSharedPreferences("bnc_bench_unsplit", Context.MODE_PRIVATE).edit();
+        SharedPreferences.Editor split = context.getSharedPreferences("bnc_bench_split", Context.MODE_PRIVATE).edit();
+        for (int i = 0; i < 40; i++) {
+            unsplit.putString("bnc_key_" + i, "value_" + i);
+            split.putString("bnc_key_" + i, "value_" + i);
+        }
+        unsplit.putString("bnc_branch_key", TEST_KEY).putString("bnc_install_params", installParams.toString());
+        split.putString("bnc_branch_key", TEST_KEY).putString(SplitPrefStorage.KEY_STORED_COLD_KEYS, "bnc_install_params");
+        Assert.assertTrue(unsplit.commit());
+        Assert.assertTrue(split.commit());
+
+        File directory = new File(context.getFilesDir().getParentFile(), "shared_prefs");
+        final int[] coldLoads = new int[1];
+        SplitPrefStorage.Loader coldLoader = new SplitPrefStorage.Loader() {
+            @Override
+            public PrefStorage load() {
+                coldLoads[0]++;
+                return new SharedPreferencesStorage(context.getSharedPreferences("bnc_bench_cold", Context.MODE_PRIVATE));
+            }
+        };
+
+        final int loads = 20;
+        long unsplitNanos = Long.MAX_VALUE;
+        long splitNanos = Long.MAX_VALUE;
+        try {
+            for (int i = 0; i < loads; i++) {
+                copy(new File(directory, "bnc_bench_unsplit.xml"), new File(directory, "bnc_bench_unsplit_" + i + ".xml"));
+                copy(new File(directory, "bnc_bench_split.xml"), new File(directory, "bnc_bench_split_" + i + ".xml"));
+
+                long start = System.nanoTime();
+                PrefStorage storage = new SharedPreferencesStorage(context.getSharedPreferences("bnc_bench_unsplit_" + i, Context.MODE_PRIVATE));
+                Assert.assertEquals(TEST_KEY, storage.getString("bnc_branch_key", null));
+                unsplitNanos = Math.min(unsplitNanos, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                storage = new SplitPrefStorage(new SharedPreferencesStorage(context.getSharedPreferences("bnc_bench_split_" + i, Context.MODE_PRIVATE)), coldLoader, PrefHelper.COLD_KEYS);
+                Assert.assertEquals(TEST_KEY, storage.getString("bnc_branch_key", null));
+                splitNanos = Math.min(splitNanos, System.nanoTime() - start);
+            }
+            BranchLogger.d("Time to first branch key, unsplit: " + unsplitNanos / 1000 + "us, split: " + splitNanos / 1000 + "us");
+            Assert.assertEquals(0, coldLoads[0]);
+            Assert.assertTrue(splitNanos < unsplitNanos);
+        } finally {
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    if (file.getName().startsWith("bnc_bench_")) {
+                        //noinspection ResultOfMethodCallIgnored
+                        file.delete();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        InputStream in = new FileInputStream(from);
+        try {
+            OutputStream out = new FileOutputStream(to);
+            try {
+                byte[] buffer = new byte[8192];
+                int count;
+                while ((count = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, count);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
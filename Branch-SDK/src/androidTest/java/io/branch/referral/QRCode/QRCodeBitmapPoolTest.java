@@ -0,0 +1,67 @@
+package io.branch.referral.QRCode;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(AndroidJUnit4.class)
+public class QRCodeBitmapPoolTest {
+
+    private static byte[] createQRCodeImage(int width) {
+        boolean[][] modules = QRCodeEncoder.encode("https://bnc.lt/a", QRCodeEncoder.ErrorCorrectionLevel.M);
+        Bitmap bitmap = QRCodeRenderer.render(modules, width, 1, Color.BLACK, Color.WHITE);
+        return QRCodeRenderer.compress(bitmap, BranchQRCode.BranchImageFormat.PNG);
+    }
+
+    @After
+    public void tearDown() {
+        QRCodeBitmapPool.getInstance().clear();
+    }
+
+    @Test
+    public void testDecodeDownsamples() {
+        Bitmap bitmap = QRCodeImageDecoder.decode(createQRCodeImage(1200), 300, 300, QRCodeBitmapPool.getInstance());
+        Assert.assertEquals(300, bitmap.getWidth());
+        Assert.assertEquals(300, bitmap.getHeight());
+    }
+
+    @Test
+    public void testDecodeReusesReleasedBitmap() {
+        QRCodeBitmapPool pool = QRCodeBitmapPool.getInstance();
+        byte[] qrCode = createQRCodeImage(600);
+
+        Bitmap first = QRCodeImageDecoder.decode(qrCode, 0, 0, pool);
+        BranchQRCode.releaseQRCodeImage(first);
+        Assert.assertEquals(1, pool.size());
+
+        long reuseCount = pool.getReuseCount();
+        Bitmap second = QRCodeImageDecoder.decode(createQRCodeImage(500), 0, 0, pool);
+        Assert.assertSame(first, second);
+        Assert.assertEquals(500, second.getWidth());
+        Assert.assertEquals(reuseCount + 1, pool.getReuseCount());
+        Assert.assertEquals(0, pool.size());
+    }
+
+    @Test
+    public void testPoolIsBounded() {
+        QRCodeBitmapPool pool = QRCodeBitmapPool.getInstance();
+        Bitmap[] bitmaps = new Bitmap[QRCodeBitmapPool.MAX_BITMAPS + 1];
+        for (int i = 0; i < bitmaps.length; i++) {
+            bitmaps[i] = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+            pool.put(bitmaps[i]);
+        }
+        Assert.assertEquals(QRCodeBitmapPool.MAX_BITMAPS, pool.size());
+        Assert.assertTrue(bitmaps[0].isRecycled());
+
+        // Immutable bitmaps cannot be decoded into
+        pool.clear();
+        pool.put(Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888).copy(Bitmap.Config.ARGB_8888, false));
+        Assert.assertEquals(0, pool.size());
+    }
+}
@@ -0,0 +1,80 @@
+package io.branch.referral.QRCode;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Golden image tests of QR codes rendered on the device: every module of the golden symbol of
+ * "https://bnc.lt/a" must be drawn with the expected color, size and position.
+ */
+@RunWith(AndroidJUnit4.class)
+public class QRCodeRendererTest {
+
+    private static final int CODE_COLOR = Color.parseColor("#A4C639");
+    private static final int BACKGROUND_COLOR = Color.parseColor("#FFFFFF");
+
+    private static boolean[][] goldenModules() {
+        return QRCodeEncoder.encode("https://bnc.lt/a", QRCodeEncoder.ErrorCorrectionLevel.M);
+    }
+
+    // Checks the border and the center pixel of every module
+    private static void assertMatchesModules(Bitmap bitmap, boolean[][] modules, int moduleSize, int offset) {
+        Assert.assertEquals(BACKGROUND_COLOR, bitmap.getPixel(0, 0));
+        Assert.assertEquals(BACKGROUND_COLOR, bitmap.getPixel(offset - 1, offset - 1));
+        Assert.assertEquals(BACKGROUND_COLOR, bitmap.getPixel(bitmap.getWidth() - 1, bitmap.getHeight() - 1));
+        for (int y = 0; y < modules.length; y++) {
+            for (int x = 0; x < modules.length; x++) {
+                int pixel = bitmap.getPixel(offset + x * moduleSize + moduleSize / 2, offset + y * moduleSize + moduleSize / 2);
+                Assert.assertEquals("Module " + x + "," + y, modules[y][x] ? CODE_COLOR : BACKGROUND_COLOR, pixel);
+            }
+        }
+    }
+
+    @Test
+    public void testRenderWithMargin() {
+        boolean[][] modules = goldenModules();
+        Assert.assertEquals(25, modules.length);
+
+        // (512 - 2 * 10) / 25 = 19 pixels per module, centered with a border of 18 pixels
+        Bitmap bitmap = QRCodeRenderer.render(modules, 512, 10, CODE_COLOR, BACKGROUND_COLOR);
+        Assert.assertEquals(512, bitmap.getWidth());
+        Assert.assertEquals(512, bitmap.getHeight());
+        assertMatchesModules(bitmap, modules, 19, 18);
+    }
+
+    @Test
+    public void testRenderWithDefaultQuietZone() {
+        boolean[][] modules = goldenModules();
+
+        // 300 / (25 + 8) = 9 pixels per module, centered with a border of 37 pixels
+        Bitmap bitmap = QRCodeRenderer.render(modules, 300, null, CODE_COLOR, BACKGROUND_COLOR);
+        assertMatchesModules(bitmap, modules, 9, 37);
+    }
+
+    @Test
+    public void testCompressedPngIsLossless() {
+        boolean[][] modules = goldenModules();
+        Bitmap bitmap = QRCodeRenderer.render(modules, 300, 1, CODE_COLOR, BACKGROUND_COLOR);
+
+        byte[] png = QRCodeRenderer.compress(bitmap, BranchQRCode.BranchImageFormat.PNG);
+        Bitmap decoded = BitmapFactory.decodeByteArray(png, 0, png.length);
+        Assert.assertTrue(decoded.sameAs(bitmap));
+    }
+
+    @Test
+    public void testCompressedJpegDecodes() {
+        Bitmap bitmap = QRCodeRenderer.render(goldenModules(), 300, 1, Color.BLACK, Color.WHITE);
+
+        byte[] jpeg = QRCodeRenderer.compress(bitmap, BranchQRCode.BranchImageFormat.JPEG);
+        Bitmap decoded = BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length);
+        Assert.assertEquals(300, decoded.getWidth());
+        Assert.assertEquals(300, decoded.getHeight());
+    }
+}
@@ -2,6 +2,7 @@ package io.branch.referral;
 
 import static io.branch.referral.Defines.Jsonkey.Branch_Sdk_Request_Uuid;
 
+import android.os.Debug;
 import android.util.Log;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
@@ -145,6 +146,33 @@ public class ServerRequestTests extends BranchTest {
         Assert.assertTrue(eventRequest.creation_ts > 0);
     }
 
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testQueueLoopAllocatesNothingWithLoggingOff() {
+        new BranchEvent(BRANCH_STANDARD_EVENT.PURCHASE).logEvent(getTestContext());
+        final ServerRequestQueue queue = ServerRequestQueue.getInstance(getTestContext());
+        // The head of the queue waits, as it does until the session is initialized
+        queue.peek().addProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK.SDK_INIT_WAIT_LOCK);
+
+        Branch.disableLogging();
+        try {
+            for (int i = 0; i < 100; i++) {
+                queue.processNextQueueItem("testQueueLoopAllocatesNothingWithLoggingOff");
+            }
+
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            for (int i = 0; i < 1000; i++) {
+                queue.processNextQueueItem("testQueueLoopAllocatesNothingWithLoggingOff");
+            }
+            Debug.stopAllocCounting();
+            Assert.assertEquals(0, Debug.getThreadAllocCount());
+        } finally {
+            Debug.stopAllocCounting();
+            Branch.enableLogging();
+        }
+    }
+
     private void setTimeouts(int timeout, int connectTimeout){
         branch.setNetworkTimeout(timeout);
         branch.setNetworkConnectTimeout(connectTimeout);
@@ -0,0 +1,52 @@
+package io.branch.referral;
+
+import android.content.pm.ResolveInfo;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+@RunWith(AndroidJUnit4.class)
+public class ShareTargetCacheTest extends BranchTest {
+
+    @Before
+    public void setUp() {
+        super.setUp();
+        initBranchInstance();
+    }
+
+    @Test
+    public void testShareTargetsResolvedOnce() {
+        ShareTargetCache cache = new ShareTargetCache(getTestContext());
+        List<ResolveInfo> first = cache.getShareTargets();
+        List<ResolveInfo> second = cache.getShareTargets();
+
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, cache.getTargetListLoadCount());
+    }
+
+    @Test
+    public void testInvalidateResolvesShareTargetsAgain() {
+        ShareTargetCache cache = new ShareTargetCache(getTestContext());
+        cache.getShareTargets();
+        cache.invalidate("com.example.app");
+        cache.getShareTargets();
+
+        Assert.assertEquals(2, cache.getTargetListLoadCount());
+    }
+
+    @Test
+    public void testLabelMatchesPackageManager() {
+        ShareTargetCache cache = new ShareTargetCache(getTestContext());
+        for (ResolveInfo target : cache.getShareTargets()) {
+            String expected = String.valueOf(target.loadLabel(getTestContext().getPackageManager()));
+            Assert.assertEquals(expected, cache.getLabel(target));
+            Assert.assertNull(cache.getTargetInfo(target));
+        }
+    }
+}
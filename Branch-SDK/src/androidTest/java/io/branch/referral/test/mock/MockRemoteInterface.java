@@ -5,6 +5,7 @@ import static io.branch.referral.Defines.RequestPath.QRCode;
 import static io.branch.referral.Defines.RequestPath.RegisterInstall;
 import static io.branch.referral.Defines.RequestPath.RegisterOpen;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.UUID;
@@ -43,6 +44,22 @@ public class MockRemoteInterface extends BranchRemoteInterface {
         return new BranchResponse(pathForSuccessResponse(url), 200);
     }
 
+    @Override
+    public BranchResponse doRestfulPost(String url, JSONArray payload) throws BranchRemoteException {
+        try {
+            Thread.sleep(networkRequestDuration);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+        BranchLogger.v(TAG + ", doRestfulPost, url: " + url + ", payload: " + payload);
+        StringBuilder urls = new StringBuilder("[");
+        for (int i = 0; i < payload.length(); i++) {
+            if (i > 0) urls.append(",");
+            urls.append(pathForSuccessResponse(GetURL.getPath()));
+        }
+        return new BranchResponse(urls.append("]").toString(), 200);
+    }
+
     public static String pathForSuccessResponse(String url) {
         if (url.contains(GetURL.getPath())) {
             return "{\"url\":\"https://bnc.lt/l/randomized_test_route_" + UUID.randomUUID().toString() + "\"}";
@@ -5,6 +5,7 @@ import android.content.Context;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.text.TextUtils;
+import android.util.Pair;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -14,12 +15,15 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 
 import io.branch.referral.Branch;
 import io.branch.referral.BranchError;
+import io.branch.referral.BranchLinkPrefetcher;
 import io.branch.referral.BranchLogger;
 import io.branch.referral.BranchShareSheetBuilder;
 import io.branch.referral.BranchShortLinkBuilder;
@@ -505,6 +509,20 @@ public class BranchUniversalObject implements Parcelable {
         return getLinkBuilder(context, linkProperties).setDefaultToLongUrl(defaultToLongUrl).getShortUrl();
     }
     
+    /**
+     * Returns a url for the BUO without waiting for the network. The short url is returned if it is
+     * cached, else the long url is returned right away and the short url is created in the background.
+     *
+     * @param context        {@link Context} instance
+     * @param linkProperties An object of {@link LinkProperties} specifying the properties of this link
+     * @param listener       An instance of {@link io.branch.referral.Branch.BranchLinkUpgradeListener} called
+     *                       with the short url once it is created
+     * @return A {@link String} with the cached short url or the long url of the BUO
+     */
+    public String getShortUrlOfflineFirst(@NonNull Context context, @NonNull LinkProperties linkProperties, @Nullable Branch.BranchLinkUpgradeListener listener) {
+        return getLinkBuilder(context, linkProperties).getShortUrlOfflineFirst(listener);
+    }
+    
     /**
      * Creates a short url for the BUO asynchronously
      *
@@ -532,6 +550,62 @@ public class BranchUniversalObject implements Parcelable {
     public void generateShortUrl(@NonNull Context context, @NonNull LinkProperties linkProperties, @Nullable Branch.BranchLinkCreateListener callback, boolean defaultToLongUrl) {
         getLinkBuilder(context, linkProperties).setDefaultToLongUrl(defaultToLongUrl).generateShortUrl(callback);
     }
+
+    /**
+     * Creates short urls for several BUOs asynchronously. Links already in the link cache are returned
+     * without a request, the rest are created in bulk instead of with one request per link.
+     *
+     * @param context  {@link Context} instance
+     * @param links    A {@link List} of BUOs with the {@link LinkProperties} of the link to create for each
+     * @param callback An instance of {@link io.branch.referral.Branch.BranchBulkLinkCreateListener} to receive
+     *                 the results, in the order of the given links
+     */
+    public static void generateShortUrls(@NonNull Context context, @NonNull List<Pair<BranchUniversalObject, LinkProperties>> links, @NonNull Branch.BranchBulkLinkCreateListener callback) {
+        Branch branch = Branch.getInstance();
+        if (branch == null) {
+            List<BranchError> errors = new ArrayList<>();
+            for (int i = 0; i < links.size(); i++) {
+                errors.add(new BranchError("session has not been initialized", BranchError.ERR_NO_SESSION));
+            }
+            callback.onLinksCreate(Arrays.asList(new String[links.size()]), errors);
+            BranchLogger.w("Warning: User session has not been initialized");
+            return;
+        }
+        List<BranchShortLinkBuilder> builders = new ArrayList<>();
+        for (Pair<BranchUniversalObject, LinkProperties> link : links) {
+            builders.add(link.first.getLinkBuilder(context, link.second));
+        }
+        branch.generateShortUrls(builders, callback);
+    }
+
+    /**
+     * Creates the short url for the BUO in the background ahead of time, so that it is cached when
+     * the user shares it. Call this when the content becomes visible, e.g. from a scroll listener.
+     *
+     * @param context        {@link Context} instance
+     * @param linkProperties An object of {@link LinkProperties} specifying the properties of this link
+     * @see io.branch.referral.BranchLinkPrefetcher
+     */
+    public void prefetchShortUrl(@NonNull Context context, @NonNull LinkProperties linkProperties) {
+        BranchLinkPrefetcher prefetcher = BranchLinkPrefetcher.getInstance();
+        if (prefetcher != null) {
+            prefetcher.prefetch(getLinkBuilder(context, linkProperties));
+        }
+    }
+
+    /**
+     * Cancels a prefetch started with {@link #prefetchShortUrl(Context, LinkProperties)}, e.g. when
+     * the content scrolls out of view.
+     *
+     * @param context        {@link Context} instance
+     * @param linkProperties The {@link LinkProperties} given to {@link #prefetchShortUrl(Context, LinkProperties)}
+     */
+    public void cancelShortUrlPrefetch(@NonNull Context context, @NonNull LinkProperties linkProperties) {
+        BranchLinkPrefetcher prefetcher = BranchLinkPrefetcher.getInstance();
+        if (prefetcher != null) {
+            prefetcher.cancel(getLinkBuilder(context, linkProperties));
+        }
+    }
     
     
     //------------------ Share sheet -------------------------------------//
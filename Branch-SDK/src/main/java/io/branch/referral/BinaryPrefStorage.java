@@ -0,0 +1,528 @@
+package io.branch.referral;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * <p>{@link PrefStorage} in a compact binary file, enabled with {@link Branch#enableBinaryPrefStorage()}.</p>
+ * <p>The file is a header followed by an append-only log of batches, each a length, a CRC32 and the
+ * records of one {@link #write(boolean, Map)}: saving a value appends a few bytes instead of rewriting
+ * every value, as {@link SharedPreferences} does. When the log holds more than twice the size of the
+ * live values it is compacted, i.e. rewritten as a single batch.</p>
+ * <p>A write updates the values in memory right away. The file is appended to, and compacted, on a
+ * background executor, outside of the locks taken by the readers. The changes made while a write
+ * is in progress are appended together as the next batch.</p>
+ * <p>The file is memory-mapped on load. Only the keys and the small values are decoded then; a
+ * string, e.g. the session params, is decoded from the mapped file when it is first read. A batch
+ * torn by a crash fails its CRC and is truncated with everything after it.</p>
+ */
+class BinaryPrefStorage implements PrefStorage {
+    static final String FILE_NAME = "branch_referral_shared_pref.bin";
+    static final String COLD_FILE_NAME = "branch_referral_shared_pref_cold.bin";
+
+    private static final int MAGIC = 0x424e4350; // "BNCP"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8; // magic and version
+    private static final int BATCH_HEADER_BYTES = 8; // length and CRC32 of the records
+
+    // The log is not compacted below this size
+    static final long MIN_COMPACTION_BYTES = 16 * 1024; // 16KB
+
+    private static final byte TYPE_REMOVE = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_INT = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_FLOAT = 4;
+    private static final byte TYPE_BOOLEAN = 5;
+    private static final byte TYPE_CLEAR = 6;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // A string value not decoded yet, at this position of the mapped file
+    private static final class MappedString {
+        final int offset;
+        final int length;
+
+        MappedString(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    // Runs each task on the calling thread
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            task.run();
+        }
+    };
+
+    private final File file_;
+    private final Executor executor_;
+    private final HashMap<String, Object> values_ = new HashMap<>();
+    private MappedByteBuffer mapped_;
+    private long fileBytes_ = 0;
+    private long bytesWritten_ = 0;
+    private int compactionCount_ = 0;
+    private int batchCount_ = 0;
+
+    // Changes not written to the file yet, merged into one batch
+    private HashMap<String, Object> pendingChanges_ = new HashMap<>();
+    private boolean pendingClear_ = false;
+    private boolean writeScheduled_ = false;
+
+    private final Runnable writeTask_ = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+
+    /**
+     * @return true if the binary storage was used before in this app. Its file then holds the values,
+     * whether or not {@link Branch#enableBinaryPrefStorage()} is still called.
+     */
+    static boolean exists(Context context) {
+        return new File(context.getFilesDir(), FILE_NAME).exists();
+    }
+
+    /**
+     * <p>Opens the binary storage in the app files directory. The first time, the values of the
+     * {@link SharedPreferences} file are migrated to it and the preferences are cleared. From then on
+     * the binary file is used whenever it exists, see {@link #exists(Context)}. Falls back to
+     * the preferences if the file cannot be read or written.</p>
+     *
+     * @param fileName {@link #FILE_NAME}, or {@link #COLD_FILE_NAME} for the cold store of
+     *                 {@link SplitPrefStorage}.
+     */
+    static PrefStorage open(Context context, String fileName, SharedPreferences legacyPrefs) {
+        File file = new File(context.getFilesDir(), fileName);
+        try {
+            boolean migrate = !file.exists();
+            if (migrate) {
+                writeSnapshot(file, legacyPrefs.getAll());
+            }
+            BinaryPrefStorage storage = new BinaryPrefStorage(file, AsyncTask.THREAD_POOL_EXECUTOR);
+            if (migrate) {
+                legacyPrefs.edit().clear().apply();
+                BranchLogger.v("Migrated %s preferences to the binary storage", storage.values_.size());
+            }
+            return storage;
+        } catch (IOException e) {
+            BranchLogger.w("Cannot use the binary storage, " + e.getMessage());
+            return new SharedPreferencesStorage(legacyPrefs);
+        }
+    }
+
+    /**
+     * Opens the storage in this file, created if it does not exist. Writes are made on the calling thread.
+     */
+    BinaryPrefStorage(File file) throws IOException {
+        this(file, DIRECT_EXECUTOR);
+    }
+
+    /**
+     * Opens the storage in this file, created if it does not exist.
+     *
+     * @param executor Runs the writes of the file.
+     */
+    BinaryPrefStorage(File file, Executor executor) throws IOException {
+        file_ = file;
+        executor_ = executor;
+        if (!file.exists()) {
+            writeSnapshot(file, values_);
+        }
+        load();
+    }
+
+    @Override
+    public synchronized boolean contains(String key) {
+        return values_.containsKey(key);
+    }
+
+    @Override
+    public synchronized int getInt(String key, int defaultValue) {
+        Object value = values_.get(key);
+        return value == null ? defaultValue : (Integer) value;
+    }
+
+    @Override
+    public synchronized long getLong(String key, long defaultValue) {
+        Object value = values_.get(key);
+        return value == null ? defaultValue : (Long) value;
+    }
+
+    @Override
+    public synchronized float getFloat(String key, float defaultValue) {
+        Object value = values_.get(key);
+        return value == null ? defaultValue : (Float) value;
+    }
+
+    @Override
+    public synchronized String getString(String key, String defaultValue) {
+        Object value = values_.get(key);
+        if (value == null) return defaultValue;
+        if (value instanceof MappedString) {
+            value = decode((MappedString) value);
+            values_.put(key, value);
+        }
+        return (String) value;
+    }
+
+    @Override
+    public synchronized boolean getBoolean(String key, boolean defaultValue) {
+        Object value = values_.get(key);
+        return value == null ? defaultValue : (Boolean) value;
+    }
+
+    @Override
+    public void write(boolean clear, Map<String, Object> changes) {
+        synchronized (this) {
+            if (clear) {
+                values_.clear();
+                pendingChanges_.clear();
+                pendingClear_ = true;
+            }
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                if (change.getValue() == null) {
+                    values_.remove(change.getKey());
+                } else {
+                    values_.put(change.getKey(), change.getValue());
+                }
+                pendingChanges_.put(change.getKey(), change.getValue());
+            }
+            if (writeScheduled_) return;
+            writeScheduled_ = true;
+        }
+        try {
+            executor_.execute(writeTask_);
+        } catch (RejectedExecutionException e) {
+            writePending();
+        }
+    }
+
+    /**
+     * @return The number of bytes written to the file since it was opened, including compactions.
+     */
+    synchronized long getBytesWritten() {
+        return bytesWritten_;
+    }
+
+    synchronized long getFileBytes() {
+        return fileBytes_;
+    }
+
+    synchronized int getCompactionCount() {
+        return compactionCount_;
+    }
+
+    /**
+     * @return The number of batches appended to the file since it was opened.
+     */
+    synchronized int getBatchCount() {
+        return batchCount_;
+    }
+
+    // Appends the pending changes to the file, until there are none left. Runs on the executor.
+    private void writePending() {
+        while (true) {
+            boolean clear;
+            Map<String, Object> changes;
+            synchronized (this) {
+                if (!pendingClear_ && pendingChanges_.isEmpty()) {
+                    writeScheduled_ = false;
+                    return;
+                }
+                clear = pendingClear_;
+                changes = pendingChanges_;
+                pendingClear_ = false;
+                pendingChanges_ = new HashMap<>();
+            }
+
+            try {
+                byte[] batch = encodeBatch(clear, changes);
+                FileOutputStream out = new FileOutputStream(file_, true);
+                try {
+                    out.write(batch);
+                } finally {
+                    out.close();
+                }
+
+                Map<String, Object> snapshot = null;
+                synchronized (this) {
+                    fileBytes_ += batch.length;
+                    bytesWritten_ += batch.length;
+                    batchCount_++;
+                    long liveBytes = HEADER_BYTES + BATCH_HEADER_BYTES + encodedSize(values_);
+                    if (fileBytes_ > MIN_COMPACTION_BYTES && fileBytes_ > 2 * liveBytes) {
+                        snapshot = decodeAll();
+                    }
+                }
+                if (snapshot != null) {
+                    // The snapshot may include changes still pending, appending them again is harmless
+                    long snapshotBytes = writeSnapshot(file_, snapshot);
+                    synchronized (this) {
+                        fileBytes_ = snapshotBytes;
+                        bytesWritten_ += snapshotBytes;
+                        compactionCount_++;
+                    }
+                }
+            } catch (IOException e) {
+                // The values are kept in memory for this session
+                BranchLogger.w("Failed to write the binary storage, " + e.getMessage());
+            }
+        }
+    }
+
+    // Decodes every value still in the mapped file and returns a copy of the values to compact them
+    private HashMap<String, Object> decodeAll() {
+        for (Map.Entry<String, Object> entry : values_.entrySet()) {
+            if (entry.getValue() instanceof MappedString) {
+                entry.setValue(decode((MappedString) entry.getValue()));
+            }
+        }
+        // Every value is decoded, the mapping of the old file is not needed anymore
+        mapped_ = null;
+        return new HashMap<>(values_);
+    }
+
+    private void load() throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file_, "rw");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large");
+            }
+            mapped_ = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < HEADER_BYTES || mapped_.getInt(0) != MAGIC || mapped_.getInt(4) != VERSION) {
+                throw new IOException("Unknown file format");
+            }
+
+            int position = HEADER_BYTES;
+            CRC32 crc = new CRC32();
+            byte[] chunk = new byte[4096];
+            while (position + BATCH_HEADER_BYTES <= size) {
+                int length = mapped_.getInt(position);
+                int checksum = mapped_.getInt(position + 4);
+                int start = position + BATCH_HEADER_BYTES;
+                if (length < 0 || start + (long) length > size) break;
+
+                crc.reset();
+                ByteBuffer records = mapped_.duplicate();
+                records.position(start);
+                for (int remaining = length; remaining > 0; ) {
+                    int count = Math.min(remaining, chunk.length);
+                    records.get(chunk, 0, count);
+                    crc.update(chunk, 0, count);
+                    remaining -= count;
+                }
+                if ((int) crc.getValue() != checksum || !readRecords(start, length)) break;
+                position = start + length;
+            }
+
+            if (position < size) {
+                BranchLogger.w("Truncating a torn batch of the binary storage at " + position);
+                channel.truncate(position);
+            }
+            fileBytes_ = position;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    // Applies the records of a batch. Returns false if they cannot be read.
+    private boolean readRecords(int start, int length) {
+        HashMap<String, Object> changes = new HashMap<>();
+        boolean clear = false;
+        ByteBuffer buffer = mapped_.duplicate();
+        buffer.position(start);
+        buffer.limit(start + length);
+        try {
+            while (buffer.hasRemaining()) {
+                byte type = buffer.get();
+                if (type == TYPE_CLEAR) {
+                    clear = true;
+                    changes.clear();
+                    continue;
+                }
+                byte[] keyBytes = new byte[buffer.getShort() & 0xffff];
+                buffer.get(keyBytes);
+                String key = new String(keyBytes, UTF_8);
+                switch (type) {
+                    case TYPE_REMOVE:
+                        changes.put(key, null);
+                        break;
+                    case TYPE_STRING:
+                        int stringLength = buffer.getInt();
+                        if (stringLength < 0 || stringLength > buffer.remaining()) return false;
+                        changes.put(key, new MappedString(buffer.position(), stringLength));
+                        buffer.position(buffer.position() + stringLength);
+                        break;
+                    case TYPE_INT:
+                        changes.put(key, buffer.getInt());
+                        break;
+                    case TYPE_LONG:
+                        changes.put(key, buffer.getLong());
+                        break;
+                    case TYPE_FLOAT:
+                        changes.put(key, buffer.getFloat());
+                        break;
+                    case TYPE_BOOLEAN:
+                        changes.put(key, buffer.get() != 0);
+                        break;
+                    default:
+                        return false;
+                }
+            }
+        } catch (RuntimeException e) {
+            // BufferUnderflowException of a truncated record
+            return false;
+        }
+
+        if (clear) {
+            values_.clear();
+        }
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                values_.remove(change.getKey());
+            } else {
+                values_.put(change.getKey(), change.getValue());
+            }
+        }
+        return true;
+    }
+
+    private String decode(MappedString value) {
+        byte[] bytes = new byte[value.length];
+        ByteBuffer buffer = mapped_.duplicate();
+        buffer.position(value.offset);
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    // Writes the values as a new file with a single batch, replacing the file. Returns its size.
+    private static long writeSnapshot(File file, Map<String, ?> values) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        HashMap<String, Object> changes = new HashMap<>();
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String || value instanceof Integer || value instanceof Long
+                    || value instanceof Float || value instanceof Boolean) {
+                changes.put(entry.getKey(), value);
+            }
+        }
+        byte[] batch = encodeBatch(false, changes);
+
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.write(batch);
+            header.flush();
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        return HEADER_BYTES + batch.length;
+    }
+
+    private static byte[] encodeBatch(boolean clear, Map<String, Object> changes) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(records);
+        if (clear) {
+            out.writeByte(TYPE_CLEAR);
+        }
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            byte[] key = change.getKey().getBytes(UTF_8);
+            if (key.length > 0xffff) {
+                BranchLogger.w("Key too long for the binary storage: " + change.getKey());
+                continue;
+            }
+            Object value = change.getValue();
+            out.writeByte(typeOf(value));
+            out.writeShort(key.length);
+            out.write(key);
+            if (value instanceof String) {
+                byte[] bytes = ((String) value).getBytes(UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            } else if (value instanceof Integer) {
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeLong((Long) value);
+            } else if (value instanceof Float) {
+                out.writeFloat((Float) value);
+            } else if (value instanceof Boolean) {
+                out.writeBoolean((Boolean) value);
+            }
+        }
+        out.flush();
+        byte[] recordBytes = records.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(recordBytes);
+        ByteBuffer batch = ByteBuffer.allocate(BATCH_HEADER_BYTES + recordBytes.length);
+        batch.putInt(recordBytes.length);
+        batch.putInt((int) crc.getValue());
+        batch.put(recordBytes);
+        return batch.array();
+    }
+
+    private static byte typeOf(Object value) {
+        if (value == null) return TYPE_REMOVE;
+        if (value instanceof String) return TYPE_STRING;
+        if (value instanceof Integer) return TYPE_INT;
+        if (value instanceof Long) return TYPE_LONG;
+        if (value instanceof Float) return TYPE_FLOAT;
+        if (value instanceof Boolean) return TYPE_BOOLEAN;
+        throw new IllegalArgumentException("Unsupported type " + value.getClass().getName());
+    }
+
+    // Size of the values written as a single batch, without the batch header
+    private static long encodedSize(Map<String, Object> values) {
+        long size = 0;
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            // Type, key length and key, assuming mostly ASCII keys
+            size += 3 + entry.getKey().length();
+            Object value = entry.getValue();
+            if (value instanceof MappedString) {
+                size += 4 + ((MappedString) value).length;
+            } else if (value instanceof String) {
+                size += 4 + ((String) value).length();
+            } else if (value instanceof Long) {
+                size += 8;
+            } else if (value instanceof Boolean) {
+                size += 1;
+            } else {
+                size += 4;
+            }
+        }
+        return size;
+    }
+}
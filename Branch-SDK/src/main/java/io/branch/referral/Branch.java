@@ -20,6 +20,7 @@ import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
@@ -33,14 +34,16 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
 import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
@@ -50,6 +53,7 @@ import io.branch.indexing.BranchUniversalObject;
 import io.branch.interfaces.IBranchLoggingCallbacks;
 import io.branch.referral.Defines.PreinstallKey;
 import io.branch.referral.ServerRequestGetLATD.BranchLastAttributedTouchDataListener;
+import io.branch.referral.network.BranchHttpCache;
 import io.branch.referral.network.BranchRemoteInterface;
 import io.branch.referral.network.BranchRemoteInterfaceUrlConnection;
 import io.branch.referral.util.BRANCH_STANDARD_EVENT;
@@ -220,14 +224,22 @@ public class Branch {
     private BranchRemoteInterface branchRemoteInterface_;
     final PrefHelper prefHelper_;
     private final DeviceInfo deviceInfo_;
-    private final BranchPluginSupport branchPluginSupport_;
+    private final LazyHolder<BranchPluginSupport> branchPluginSupport_;
     private final Context context_;
 
-    private final BranchQRCodeCache branchQRCodeCache_;
+    private final LazyHolder<BranchQRCodeCache> branchQRCodeCache_;
 
     public final ServerRequestQueue requestQueue_;
 
-    final ConcurrentHashMap<BranchLinkData, String> linkCache_ = new ConcurrentHashMap<>();
+    final BranchLinkCache linkCache_;
+
+    final LazyHolder<BranchLinkPrefetcher> linkPrefetcher_;
+
+    final LazyHolder<ShareTargetCache> shareTargetCache_;
+
+    final LazyHolder<ShareSheetMetrics> shareSheetMetrics_;
+
+    final BranchHttpCache httpCache_;
 
     /* Set to true when {@link Activity} life cycle callbacks are registered. */
     private static boolean isActivityLifeCycleCallbackRegistered_ = false;
@@ -294,12 +306,19 @@ public class Branch {
     private BranchActivityLifecycleObserver activityLifeCycleObserver;
     /* Flag to turn on or off instant deeplinking feature. IDL is disabled by default */
     private static boolean enableInstantDeepLinking = false;
+    /* Flag to turn on or off the local decoding of long link params. Disabled by default */
+    private static boolean enableProvisionalLongLinkParams = false;
+    /* Params decoded from the long link the app was opened with, not given to the init callback yet */
+    private JSONObject provisionalParams_;
     private final TrackingController trackingController;
 
     // Variables for reporting plugin type and version, plus helps us make data driven decisions.
     private static String pluginVersion = null;
     private static String pluginName = null;
 
+    // Time getAutoInstance blocked its caller to create the instance
+    private static long instanceCreationMillis_ = -1;
+
     private BranchReferralInitListener deferredCallback;
     private Uri deferredUri;
     private InitSessionBuilder deferredSessionBuilder;
@@ -311,15 +330,58 @@ public class Branch {
      *
      * @param context A {@link Context} from which this call was made.
      */
-    private Branch(@NonNull Context context) {
+    private Branch(@NonNull final Context context) {
+        BranchStartupTrace.start();
         context_ = context;
         prefHelper_ = PrefHelper.getInstance(context);
         trackingController = new TrackingController(context);
+        BranchStartupTrace.recordObject("TrackingController");
         branchRemoteInterface_ = new BranchRemoteInterfaceUrlConnection(this);
+        BranchStartupTrace.recordObject("BranchRemoteInterface");
         deviceInfo_ = new DeviceInfo(context);
-        branchPluginSupport_ = new BranchPluginSupport(context);
-        branchQRCodeCache_ = new BranchQRCodeCache(context);
+        BranchStartupTrace.recordObject("DeviceInfo");
+        linkCache_ = new BranchLinkCache(context);
+        BranchStartupTrace.recordObject("BranchLinkCache");
+        httpCache_ = new BranchHttpCache(context);
+        BranchStartupTrace.recordObject("BranchHttpCache");
         requestQueue_ = ServerRequestQueue.getInstance(context);
+
+        // Created on first use, most apps never use the QR codes, plugin support or share sheet
+        branchPluginSupport_ = new LazyHolder<BranchPluginSupport>() {
+            @Override
+            BranchPluginSupport create() {
+                BranchStartupTrace.recordObject("BranchPluginSupport");
+                return new BranchPluginSupport(context);
+            }
+        };
+        branchQRCodeCache_ = new LazyHolder<BranchQRCodeCache>() {
+            @Override
+            BranchQRCodeCache create() {
+                BranchStartupTrace.recordObject("BranchQRCodeCache");
+                return new BranchQRCodeCache(context);
+            }
+        };
+        linkPrefetcher_ = new LazyHolder<BranchLinkPrefetcher>() {
+            @Override
+            BranchLinkPrefetcher create() {
+                BranchStartupTrace.recordObject("BranchLinkPrefetcher");
+                return new BranchLinkPrefetcher(Branch.this);
+            }
+        };
+        shareTargetCache_ = new LazyHolder<ShareTargetCache>() {
+            @Override
+            ShareTargetCache create() {
+                BranchStartupTrace.recordObject("ShareTargetCache");
+                return new ShareTargetCache(context);
+            }
+        };
+        shareSheetMetrics_ = new LazyHolder<ShareSheetMetrics>() {
+            @Override
+            ShareSheetMetrics create() {
+                BranchStartupTrace.recordObject("ShareSheetMetrics");
+                return new ShareSheetMetrics();
+            }
+        };
     }
 
     /**
@@ -341,18 +403,23 @@ public class Branch {
             BranchLogger.w("Warning, attempted to reinitialize Branch SDK singleton!");
             return branchReferral_;
         }
-        branchReferral_ = new Branch(context.getApplicationContext());
+        BranchStartupTimeline.beginSection("Branch initBranchSDK");
+        try {
+            branchReferral_ = new Branch(context.getApplicationContext());
 
-        if (TextUtils.isEmpty(branchKey)) {
-            BranchLogger.w("Warning: Please enter your branch_key in your project's Manifest file!");
-            branchReferral_.prefHelper_.setBranchKey(PrefHelper.NO_STRING_VALUE);
-        } else {
-            branchReferral_.prefHelper_.setBranchKey(branchKey);
-        }
+            if (TextUtils.isEmpty(branchKey)) {
+                BranchLogger.w("Warning: Please enter your branch_key in your project's Manifest file!");
+                branchReferral_.prefHelper_.setBranchKey(PrefHelper.NO_STRING_VALUE);
+            } else {
+                branchReferral_.prefHelper_.setBranchKey(branchKey);
+            }
 
-        /* If {@link Application} is instantiated register for activity life cycle events. */
-        if (context instanceof Application) {
-            branchReferral_.setActivityLifeCycleObserver((Application) context);
+            /* If {@link Application} is instantiated register for activity life cycle events. */
+            if (context instanceof Application) {
+                branchReferral_.setActivityLifeCycleObserver((Application) context);
+            }
+        } finally {
+            BranchStartupTimeline.endSection();
         }
 
         return branchReferral_;
@@ -370,6 +437,8 @@ public class Branch {
      */
     synchronized public static Branch getAutoInstance(@NonNull Context context) {
         if (branchReferral_ == null) {
+            long startMillis = SystemClock.elapsedRealtime();
+            BranchStartupTimeline.record(BranchStartupTimeline.Phase.INSTANCE_CREATION_STARTED);
             if(BranchUtil.getEnableLoggingConfig(context)){
                 enableLogging();
             }
@@ -386,6 +455,7 @@ public class Branch {
             BranchUtil.setTestMode(BranchUtil.checkTestMode(context));
             branchReferral_ = initBranchSDK(context, BranchUtil.readBranchKey(context));
             getPreinstallSystemData(branchReferral_, context);
+            recordInstanceCreation(startMillis);
         }
         return branchReferral_;
     }
@@ -403,6 +473,8 @@ public class Branch {
      */
     public static Branch getAutoInstance(@NonNull Context context, @NonNull String branchKey) {
         if (branchReferral_ == null) {
+            long startMillis = SystemClock.elapsedRealtime();
+            BranchStartupTimeline.record(BranchStartupTimeline.Phase.INSTANCE_CREATION_STARTED);
             if(BranchUtil.getEnableLoggingConfig(context)){
                 enableLogging();
             }
@@ -421,10 +493,50 @@ public class Branch {
             }
             branchReferral_ = initBranchSDK(context, branchKey);
             getPreinstallSystemData(branchReferral_, context);
+            recordInstanceCreation(startMillis);
         }
         return branchReferral_;
     }
 
+    private static void recordInstanceCreation(long startMillis) {
+        instanceCreationMillis_ = SystemClock.elapsedRealtime() - startMillis;
+        BranchStartupTimeline.record(BranchStartupTimeline.Phase.INSTANCE_CREATED);
+        BranchPrewarm prewarm = BranchPrewarm.getInstance();
+        BranchLogger.v("Branch instance created in " + instanceCreationMillis_ + " ms on "
+                + Thread.currentThread().getName() + ", "
+                + (prewarm == null ? "not prewarmed" : prewarm.isDone() ? "prewarmed" : "prewarm in progress"));
+    }
+
+    /**
+     * @return The time {@link #getAutoInstance(Context)} blocked its caller to create the instance,
+     * or -1 if it was not created yet.
+     */
+    static long getInstanceCreationMillis() {
+        return instanceCreationMillis_;
+    }
+
+    /**
+     * <p>Starts reading the Branch config and the saved SDK state from disk on a background thread, so
+     * that {@link #getAutoInstance(Context)}, usually called on the main thread from
+     * {@link Application#onCreate()}, does not have to. If the instance is requested while they are
+     * still loading, it waits for them instead of loading them again.</p>
+     * <p>Call it as early as possible, e.g. from a {@link android.content.ContentProvider} or an App
+     * Startup initializer, or declare {@link BranchPrewarmProvider} in your manifest. No SDK object is
+     * created, so the SDK can still be configured afterwards.</p>
+     *
+     * @param context A {@link Context} from which this call was made.
+     */
+    public static void prewarm(@NonNull Context context) {
+        BranchPrewarm.start(context);
+    }
+
+    /**
+     * @return The timeline of the SDK initialization phases, for every session initialized.
+     */
+    public static BranchStartupTimeline getStartupTimeline() {
+        return BranchStartupTimeline.getInstance();
+    }
+
     public Context getApplicationContext() {
         return context_;
     }
@@ -586,12 +698,25 @@ public class Branch {
         enableInstantDeepLinking = !disableIDL;
     }
 
+    /**
+     * <p>Decodes the params of a Branch long link the app is opened with locally, and gives them to
+     * the init callback right away if it is a {@link BranchProvisionalInitListener}, before the init
+     * response. Long links are the links created when a short link could not be, their params are
+     * encoded in the link. The init callback is still called with the response, which is authoritative.</p>
+     * <p>Call it before the session is initialized.</p>
+     */
+    public static void enableProvisionalLongLinkParams() {
+        enableProvisionalLongLinkParams = true;
+    }
+
     // Package Private
     // For Unit Testing, we need to reset the Branch state
     static void shutDown() {
         ServerRequestQueue.shutDown();
         PrefHelper.shutDown();
         BranchUtil.shutDown();
+        BranchPrewarm.shutDown();
+        BranchStartupTrace.shutDown();
 
         // DeepLinkRoutingValidator.shutDown();
         // GooglePlayStoreAttribution.shutDown();
@@ -604,8 +729,10 @@ public class Branch {
 
         // Reset all of the statics.
         branchReferral_ = null;
+        instanceCreationMillis_ = -1;
         bypassCurrentActivityIntentState_ = false;
         enableInstantDeepLinking = false;
+        enableProvisionalLongLinkParams = false;
         isActivityLifeCycleCallbackRegistered_ = false;
 
         bypassWaitingForIntent_ = false;
@@ -704,6 +831,33 @@ public class Branch {
             prefHelper_.setReferrerGclidValidForWindow(window);
         }
     }
+
+    /**
+     * Enables caching of the advertising id (GAID/OAID) and LAT value for the given time to live.
+     * While a cached value is fresh, session initialization does not wait on Google Play Services or
+     * HMS to return the advertising id; the cached value is sent and the real fetch runs in the
+     * background, updating the cache for subsequent requests if the value changed.
+     *
+     * By default, the cache is disabled (0 milliseconds)
+     * Minimum of 0 milliseconds, which disables the cache and clears any cached value
+     * Maximum of 7 days
+     * @param ttl A {@link Long} value specifying the number of milliseconds a cached advertising id is used for.
+     */
+    public void setAdvertisingIdCacheTTL(long ttl) {
+        if (prefHelper_ != null) {
+            prefHelper_.setAdvertisingIdCacheTTL(ttl);
+        }
+    }
+
+    /**
+     * Returns the total time in milliseconds that session initialization did not have to wait on
+     * advertising id fetches, because a cached advertising id was used. See {@link #setAdvertisingIdCacheTTL(long)}
+     *
+     * @return A {@link Long} value with the init wait time saved in milliseconds.
+     */
+    public long getAdvertisingIdCacheWaitTimeSaved() {
+        return deviceInfo_.getSystemObserver().getAdIdWaitTimeSavedMillis();
+    }
     
     /**
      * Method to control reading Android ID from device. Set this to true to disable reading the device id.
@@ -1101,8 +1255,7 @@ public class Branch {
      * locally.
      */
     public JSONObject getFirstReferringParams() {
-        String storedParam = prefHelper_.getInstallParams();
-        JSONObject firstReferringParams = convertParamsStringToDictionary(storedParam);
+        JSONObject firstReferringParams = prefHelper_.getInstallParamsJson();
         firstReferringParams = appendDebugParams(firstReferringParams);
         return firstReferringParams;
     }
@@ -1133,8 +1286,7 @@ public class Branch {
             } catch (InterruptedException e) {
             }
         }
-        String storedParam = prefHelper_.getInstallParams();
-        JSONObject firstReferringParams = convertParamsStringToDictionary(storedParam);
+        JSONObject firstReferringParams = prefHelper_.getInstallParamsJson();
         appendDebugParams(firstReferringParams);
         getFirstReferringParamsLatch = null;
         return firstReferringParams;
@@ -1151,8 +1303,7 @@ public class Branch {
      * configured locally.
      */
     public JSONObject getLatestReferringParams() {
-        String storedParam = prefHelper_.getSessionParams();
-        JSONObject latestParams = convertParamsStringToDictionary(storedParam);
+        JSONObject latestParams = prefHelper_.getSessionParamsJson();
         latestParams = appendDebugParams(latestParams);
         return latestParams;
     }
@@ -1177,8 +1328,7 @@ public class Branch {
             }
         } catch (InterruptedException e) {
         }
-        String storedParam = prefHelper_.getSessionParams();
-        JSONObject latestParams = convertParamsStringToDictionary(storedParam);
+        JSONObject latestParams = prefHelper_.getSessionParamsJson();
         latestParams = appendDebugParams(latestParams);
         getLatestReferringParamsLatch = null;
         return latestParams;
@@ -1258,8 +1408,8 @@ public class Branch {
      */
     String generateShortLinkInternal(ServerRequestCreateUrl req) {
         if (!req.constructError_ && !req.handleErrors(context_)) {
-            if (linkCache_.containsKey(req.getLinkPost())) {
-                String url = linkCache_.get(req.getLinkPost());
+            String url = linkCache_.get(req.getLinkPost());
+            if (url != null) {
                 req.onUrlAvailable(url);
                 return url;
             }
@@ -1272,6 +1422,83 @@ public class Branch {
         return null;
     }
 
+    /**
+     * <p>Returns a url for the given {@link ServerRequestCreateUrl} without waiting for the network:
+     * the cached short url if there is one, else the long url while the short url is created in the
+     * background.</p>
+     *
+     * @param req     An instance of {@link ServerRequestCreateUrl} with parameters to create the short link.
+     * @param longUrl The long url of the link, returned until the short url is created.
+     * @return The cached short url or the long url.
+     */
+    String generateShortLinkOfflineFirst(ServerRequestCreateUrl req, String longUrl) {
+        if (!req.constructError_ && !req.handleErrors(context_)) {
+            String url = linkCache_.get(req.getLinkPost());
+            if (url != null) {
+                return url;
+            }
+            // The request queue puts the short url in the link cache and calls back the upgrade listener
+            requestQueue_.handleNewRequest(req);
+        }
+        return longUrl;
+    }
+
+    /**
+     * <p>Generates short urls for several links at once. Links found in the link cache are returned
+     * without a request; the rest are created in bulk, with one request per
+     * 100 links instead of one request per link.</p>
+     *
+     * @param builders A {@link List} of {@link BranchShortLinkBuilder}, one for each link to create.
+     * @param callback A {@link BranchBulkLinkCreateListener} notified once every link is created or has failed.
+     */
+    public void generateShortUrls(@NonNull List<BranchShortLinkBuilder> builders, @NonNull final BranchBulkLinkCreateListener callback) {
+        final int linkCount = builders.size();
+        final String[] urls = new String[linkCount];
+        final BranchError[] errors = new BranchError[linkCount];
+        final boolean[] isCompleted = new boolean[linkCount];
+        final int[] pendingCount = {linkCount};
+        if (linkCount == 0) {
+            callback.onLinksCreate(Arrays.asList(urls), Arrays.asList(errors));
+            return;
+        }
+
+        List<ServerRequestCreateUrl> cacheMisses = new ArrayList<>();
+        for (int i = 0; i < linkCount; i++) {
+            final int index = i;
+            ServerRequestCreateUrl req = builders.get(i).createUrlRequest(new BranchLinkCreateListener() {
+                @Override
+                public void onLinkCreate(String url, BranchError error) {
+                    boolean isLastLink;
+                    synchronized (isCompleted) {
+                        if (isCompleted[index]) return;
+                        isCompleted[index] = true;
+                        urls[index] = url;
+                        errors[index] = error;
+                        isLastLink = --pendingCount[0] == 0;
+                    }
+                    if (isLastLink) {
+                        callback.onLinksCreate(Arrays.asList(urls), Arrays.asList(errors));
+                    }
+                }
+            });
+            if (req.constructError_) {
+                req.handleFailure(BranchError.ERR_BRANCH_INVALID_REQUEST, "");
+            } else if (!req.handleErrors(context_)) {
+                String url = linkCache_.get(req.getLinkPost());
+                if (url != null) {
+                    req.onUrlAvailable(url);
+                } else {
+                    cacheMisses.add(req);
+                }
+            }
+        }
+
+        for (int start = 0; start < cacheMisses.size(); start += ServerRequestCreateUrlBulk.MAX_LINKS_PER_REQUEST) {
+            int end = Math.min(start + ServerRequestCreateUrlBulk.MAX_LINKS_PER_REQUEST, cacheMisses.size());
+            requestQueue_.handleNewRequest(new ServerRequestCreateUrlBulk(context_, cacheMisses.subList(start, end)));
+        }
+    }
+
 
     /**
      * <p>Creates a link with given attributes and shares with the
@@ -1345,24 +1572,6 @@ public class Branch {
         return url;
     }
     
-    private JSONObject convertParamsStringToDictionary(String paramString) {
-        if (paramString.equals(PrefHelper.NO_STRING_VALUE)) {
-            return new JSONObject();
-        } else {
-            try {
-                return new JSONObject(paramString);
-            } catch (JSONException e) {
-                byte[] encodedArray = Base64.decode(paramString.getBytes(), Base64.NO_WRAP);
-                try {
-                    return new JSONObject(new String(encodedArray));
-                } catch (JSONException ex) {
-                    ex.printStackTrace();
-                    return new JSONObject();
-                }
-            }
-        }
-    }
-
     public TrackingController getTrackingController() {
         return trackingController;
     }
@@ -1372,11 +1581,27 @@ public class Branch {
     }
 
     public BranchPluginSupport getBranchPluginSupport() {
-        return branchPluginSupport_;
+        return branchPluginSupport_.get();
     }
 
     public BranchQRCodeCache getBranchQRCodeCache() {
-        return branchQRCodeCache_;
+        return branchQRCodeCache_.get();
+    }
+
+    public BranchLinkCache getLinkCache() {
+        return linkCache_;
+    }
+
+    public BranchLinkPrefetcher getLinkPrefetcher() {
+        return linkPrefetcher_.get();
+    }
+
+    public ShareSheetMetrics getShareSheetMetrics() {
+        return shareSheetMetrics_.get();
+    }
+
+    public BranchHttpCache getHttpCache() {
+        return httpCache_;
     }
 
     PrefHelper getPrefHelper() {
@@ -1460,6 +1685,7 @@ public class Branch {
      */
      void registerAppInit(@NonNull ServerRequestInitSession request, boolean forceBranchSession) {
          BranchLogger.v("registerAppInit " + request);
+         BranchStartupTimeline.record(BranchStartupTimeline.Phase.INIT_QUEUED);
          setInitState(SESSION_STATE.INITIALISING);
 
          ServerRequestInitSession r = requestQueue_.getSelfInitRequest();
@@ -1471,16 +1697,19 @@ public class Branch {
          if (r == null || forceBranchSession) {
              BranchLogger.v("Moving " + request + " " + " to front of the queue or behind network-in-progress request");
              requestQueue_.insertRequestAtFront(request);
+             BranchStartupTimeline.beginAsyncSection("Branch init request", System.identityHashCode(request));
          }
          else {
              // if false, maintain previous behavior
              BranchLogger.v("Retrieved " + r + " with callback " + r.callback_ + " in queue currently");
+             // The section begun when r was queued goes on until r is processed
              r.callback_ = request.callback_;
              BranchLogger.v(r + " now has callback " + request.callback_);
          }
          BranchLogger.v("Finished ordering init calls");
          requestQueue_.printQueue();
          initTasks(request);
+         deliverProvisionalParams(r == null || forceBranchSession ? request : r);
 
          requestQueue_.processNextQueueItem("registerAppInit");
      }
@@ -1534,6 +1763,7 @@ public class Branch {
     
     void onIntentReady(@NonNull Activity activity) {
         BranchLogger.v("onIntentReady " + activity + " removing INTENT_PENDING_WAIT_LOCK");
+        BranchStartupTimeline.record(BranchStartupTimeline.Phase.INTENT_READY);
         setIntentState(Branch.INTENT_STATE.READY);
         requestQueue_.unlockProcessWait(ServerRequest.PROCESS_WAIT_LOCK.INTENT_PENDING_WAIT_LOCK);
 
@@ -1543,9 +1773,29 @@ public class Branch {
             Uri intentData = activity.getIntent().getData();
             readAndStripParam(intentData, activity);
         }
+        deliverProvisionalParams(requestQueue_.getSelfInitRequest());
         requestQueue_.processNextQueueItem("onIntentReady");
     }
 
+    /**
+     * Gives the params decoded from a long link to the callback of the pending init request, and
+     * wraps the callback to reconcile them with the init response. Without a pending init request,
+     * the params are dropped: they are read from the intent right before the init request is queued,
+     * or when the intent is ready while it waits.
+     */
+    private void deliverProvisionalParams(@Nullable ServerRequestInitSession initRequest) {
+        if (provisionalParams_ == null) return;
+        JSONObject provisionalParams = provisionalParams_;
+        provisionalParams_ = null;
+
+        if (initRequest != null && initRequest.callback_ instanceof BranchProvisionalInitListener) {
+            BranchProvisionalInitListener listener = (BranchProvisionalInitListener) initRequest.callback_;
+            initRequest.callback_ = new BranchProvisionalInitWrapper(listener, provisionalParams);
+            BranchLogger.v("Delivering provisional link params " + provisionalParams);
+            listener.onProvisionalInitFinished(provisionalParams);
+        }
+    }
+
     /**
      * Notify Branch when network is available in order to process the next request in the queue.
      */
@@ -1606,6 +1856,20 @@ public class Branch {
     public interface BranchReferralInitListener {
         void onInitFinished(@Nullable JSONObject referringParams, @Nullable BranchError error);
     }
+
+    /**
+     * <p>A {@link BranchReferralInitListener} that is also given the params of a long link decoded
+     * locally, before the init response, when {@link #enableProvisionalLongLinkParams()} is called.
+     * Route the user with {@link #onProvisionalInitFinished(JSONObject)} without waiting for the
+     * network, then {@link #onProvisionalParamsReconciled(boolean)} tells whether the response
+     * confirmed the params, right before {@link #onInitFinished(JSONObject, BranchError)} is called
+     * with the response as usual.</p>
+     */
+    public interface BranchProvisionalInitListener extends BranchReferralInitListener {
+        void onProvisionalInitFinished(@NonNull JSONObject provisionalParams);
+
+        void onProvisionalParamsReconciled(boolean confirmed);
+    }
     
     /**
      * <p>An Interface class that is implemented by all classes that make use of
@@ -1648,6 +1912,35 @@ public class Branch {
     public interface BranchLinkCreateListener {
         void onLinkCreate(String url, BranchError error);
     }
+
+    /**
+     * <p>An Interface class that is implemented by all classes that make use of
+     * {@link BranchBulkLinkCreateListener}, defining a single method that receives the result of
+     * every link requested through {@link #generateShortUrls(List, BranchBulkLinkCreateListener)}.</p>
+     */
+    public interface BranchBulkLinkCreateListener {
+        /**
+         * @param urls   The created urls, in the order the links were requested. A url is the long url
+         *               or null if the link could not be created.
+         * @param errors The error for every link, in the same order. An error is null if the link was created.
+         */
+        void onLinksCreate(List<String> urls, List<BranchError> errors);
+    }
+
+    /**
+     * <p>An Interface class that is implemented by all classes that make use of
+     * {@link BranchLinkUpgradeListener}, defining a single method that is called when the short url
+     * of a link handed out as a long url becomes available.</p>
+     *
+     * @see BranchShortLinkBuilder#getShortUrlOfflineFirst(BranchLinkUpgradeListener)
+     */
+    public interface BranchLinkUpgradeListener {
+        /**
+         * @param longUrl  The long url returned when the link was requested.
+         * @param shortUrl The short url created for the same link.
+         */
+        void onLinkUpgraded(String longUrl, String shortUrl);
+    }
     
     /**
      * <p>An Interface class that is implemented by all classes that make use of
@@ -1959,12 +2252,51 @@ public class Branch {
 
     }
 
+    /**
+     * Enable logging with a specific log level, and keep the log in rotating files on the device for
+     * field diagnostics. Messages are written to the files, and to logcat or the logging callback, by
+     * a background thread, so logging does not slow down the calling thread. Use
+     * {@link #getLogSink()} to export the files.
+     *
+     * @param context Context used to find the app files directory.
+     * @param level The minimum log level for logging output.
+     */
+    public static void enableLogFile(@NonNull Context context, BranchLogger.BranchLogLevel level) {
+        if (BranchLogger.getLogSink() == null) {
+            BranchLogger.setLogSink(new BranchLogSink(new File(context.getFilesDir(), BranchLogSink.LOG_DIR)));
+        }
+        enableLogging(BranchLogger.getLoggerCallback(), level);
+    }
+
+    /**
+     * @return The {@link BranchLogSink} writing the log files if {@link #enableLogFile} was called, else null.
+     */
+    @Nullable
+    public static BranchLogSink getLogSink() {
+        return BranchLogger.getLogSink();
+    }
+
     /**
      * Disable Logging, independent of Debug Mode.
      */
     public static void disableLogging() {
         BranchLogger.setLoggingEnabled(false);
-        BranchLogger.setLoggerCallback(null);
+        BranchLogSink logSink = BranchLogger.getLogSink();
+        if (logSink != null) {
+            BranchLogger.setLogSink(null);
+            // The messages still queued go to the logging callback, it is cleared once they are written
+            final IBranchLoggingCallbacks loggerCallback = BranchLogger.getLoggerCallback();
+            logSink.close(new Runnable() {
+                @Override
+                public void run() {
+                    if (BranchLogger.getLoggerCallback() == loggerCallback) {
+                        BranchLogger.setLoggerCallback(null);
+                    }
+                }
+            });
+        } else {
+            BranchLogger.setLoggerCallback(null);
+        }
     }
 
     /**
@@ -2170,6 +2502,9 @@ public class Branch {
                 // Send app links only if URL is not skipped.
                 prefHelper_.setAppLink(data.toString());
             }
+            if (enableProvisionalLongLinkParams) {
+                provisionalParams_ = LongLinkDecoder.decode(data.toString(), prefHelper_.getBranchKey(), prefHelper_.getUserURL());
+            }
             intent.putExtra(Defines.IntentKeys.BranchLinkUsed.getKey(), true);
             activity.setIntent(intent);
         }
@@ -2390,6 +2725,16 @@ public class Branch {
          * and configuration variables, then initializes session.</p>
          */
         public void init() {
+            BranchStartupTrace.finish();
+            BranchStartupTimeline.beginSection("Branch init");
+            try {
+                initInternal();
+            } finally {
+                BranchStartupTimeline.endSection();
+            }
+        }
+
+        private void initInternal() {
             BranchLogger.v("Beginning session initialization");
             BranchLogger.v("Session uri is " + uri);
             BranchLogger.v("Callback is " + callback);
@@ -2402,6 +2747,7 @@ public class Branch {
                 cacheSessionBuilder(this);
                 return;
             }
+            BranchStartupTimeline.record(BranchStartupTimeline.Phase.INIT_STARTED);
 
             final Branch branch = Branch.getInstance();
             if (branch == null) {
@@ -2580,6 +2926,17 @@ public class Branch {
         PrefHelper.useEUEndpoint(true);
     }
 
+    /**
+     * Store the SDK values in a compact binary file instead of SharedPreferences. Saving a value then
+     * appends it to the file instead of rewriting every value.
+     * Must be called before the Branch instance is created. The first time, the values are migrated
+     * from SharedPreferences, after which they are only in the binary file. The binary file is then
+     * used whenever it exists, even if this is no longer called.
+     */
+    public static void enableBinaryPrefStorage() {
+        PrefHelper.useBinaryStorage(true);
+    }
+
     /**
      * Sets the Facebook App ID for the Branch instance.
      *
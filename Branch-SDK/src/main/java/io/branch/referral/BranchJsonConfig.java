@@ -4,9 +4,12 @@ import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
 import android.content.Context;
 import android.util.Log;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -70,6 +73,9 @@ public class BranchJsonConfig {
             }
 
             mConfiguration = new JSONObject(builder.toString());
+            for (String error : validate(mConfiguration)) {
+                Log.w(TAG, "Invalid branch.json: " + error);
+            }
         }
         catch (IOException e) {
             Log.e(TAG, "Error loading branch.json: " + e.getMessage());
@@ -79,14 +85,93 @@ public class BranchJsonConfig {
         }
     }
 
+    private BranchJsonConfig(@NonNull JSONObject configuration) {
+        mConfiguration = configuration;
+    }
+
     private static BranchJsonConfig instance;
-    public static BranchJsonConfig getInstance(@NonNull Context context) {
+    public static synchronized BranchJsonConfig getInstance(@NonNull Context context) {
         if (instance == null) {
             instance = new BranchJsonConfig(context);
         }
         return instance;
     }
 
+    /**
+     * <p>Uses this configuration instead of reading assets/branch.json, so that the file is neither
+     * read nor parsed at startup. Called by the class generated at build time from branch.json by
+     * gradle/branch-json-config.gradle, see the instructions there. Must be called before
+     * {@link Branch#getAutoInstance(Context)}.</p>
+     *
+     * @param configuration The branch.json values.
+     */
+    public static synchronized void setConfiguration(@NonNull JSONObject configuration) {
+        for (String error : validate(configuration)) {
+            Log.w(TAG, "Invalid branch.json: " + error);
+        }
+        instance = new BranchJsonConfig(configuration);
+    }
+
+    /**
+     * Checks the configuration against the rules above. Keep in sync with
+     * gradle/branch-json-config.gradle, which applies the same rules at build time.
+     *
+     * @return The errors found, empty if the configuration is valid.
+     */
+    static List<String> validate(@NonNull JSONObject configuration) {
+        List<String> errors = new ArrayList<>();
+        JSONArray names = configuration.names();
+        for (int i = 0; names != null && i < names.length(); i++) {
+            String name = names.optString(i);
+            try {
+                BranchJsonKey.valueOf(name);
+            } catch (IllegalArgumentException e) {
+                errors.add("unknown key " + name);
+            }
+        }
+
+        for (BranchJsonKey key : new BranchJsonKey[]{BranchJsonKey.branchKey, BranchJsonKey.liveKey, BranchJsonKey.testKey}) {
+            Object value = configuration.opt(key.toString());
+            if (value != null && !(value instanceof String && ((String) value).startsWith("key_"))) {
+                errors.add(key + " must be a Branch key, starting with key_");
+            }
+        }
+        if (!configuration.has(BranchJsonKey.branchKey.toString())) {
+            int keyCount = 0;
+            for (BranchJsonKey key : new BranchJsonKey[]{BranchJsonKey.liveKey, BranchJsonKey.testKey, BranchJsonKey.useTestInstance}) {
+                if (configuration.has(key.toString())) keyCount++;
+            }
+            if (keyCount > 0 && keyCount < 3) {
+                errors.add("without branchKey, liveKey, testKey and useTestInstance must all be set");
+            }
+        }
+
+        for (BranchJsonKey key : new BranchJsonKey[]{BranchJsonKey.useTestInstance, BranchJsonKey.enableLogging, BranchJsonKey.deferInitForPluginRuntime}) {
+            Object value = configuration.opt(key.toString());
+            if (value != null && !(value instanceof Boolean)) {
+                errors.add(key + " must be true or false");
+            }
+        }
+
+        Object apiUrl = configuration.opt(BranchJsonKey.apiUrl.toString());
+        if (apiUrl != null && !(apiUrl instanceof String && ((String) apiUrl).startsWith("https://"))) {
+            errors.add("apiUrl must be an https URL");
+        }
+        Object fbAppId = configuration.opt(BranchJsonKey.fbAppId.toString());
+        if (fbAppId != null && !(fbAppId instanceof String)) {
+            errors.add("fbAppId must be a string");
+        }
+        Object cppLevel = configuration.opt(BranchJsonKey.cppLevel.toString());
+        if (cppLevel != null) {
+            try {
+                Defines.BranchAttributionLevel.valueOf(String.valueOf(cppLevel));
+            } catch (IllegalArgumentException e) {
+                errors.add("cppLevel must be one of FULL, REDUCED, MINIMAL, NONE");
+            }
+        }
+        return errors;
+    }
+
     public boolean isValid() {
         return mConfiguration != null;
     }
@@ -0,0 +1,355 @@
+package io.branch.referral;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.SystemClock;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Cache of short links created by the SDK, keyed by the fingerprint of the link data they were
+ * created from, see {@link BranchLinkData#getFingerprint()}. Entries keep the link data, so that a
+ * link with a colliding fingerprint is a miss rather than served the url of another link.</p>
+ * <p>The cache is a least recently used map bounded by entry count and by an estimate of the memory
+ * held by its keys, link data and urls. Entries expire after a time to live. Optionally, entries are written
+ * through to a disk tier, so links created in a previous session are served without a request to
+ * the Branch API.</p>
+ */
+public class BranchLinkCache {
+    private static final String SHARED_PREF_FILE = "branch_link_cache";
+    private static final String KEY_URL = "url";
+    private static final String KEY_CREATION_TIMESTAMP = "ts";
+    private static final String KEY_LINK_DATA = "link";
+
+    static final int DEFAULT_MAX_ENTRIES = 100;
+    static final long DEFAULT_MAX_BYTES = 256 * 1024; // 256KB
+    static final long DEFAULT_TTL = 604800000L; // 7 days, in milliseconds
+
+    // Rough per-entry overhead of the map node, the entry object, the boxed key and the url string
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    // Rough overhead of the link data object and its fields
+    private static final int LINK_DATA_OVERHEAD_BYTES = 256;
+    // Rough overhead of a Json value and its map or list slot
+    private static final int JSON_VALUE_OVERHEAD_BYTES = 32;
+
+    private final Context context_;
+    private final LinkedHashMap<Long, Entry> cache_ = new LinkedHashMap<>(16, 0.75f, true);
+
+    private int maxEntries_ = DEFAULT_MAX_ENTRIES;
+    private long maxBytes_ = DEFAULT_MAX_BYTES;
+    private long ttl_ = DEFAULT_TTL;
+    private boolean persistenceEnabled_ = false;
+
+    private SharedPreferences diskCache_;
+    private boolean diskCacheLoaded_ = false;
+
+    private long sizeBytes_ = 0;
+    private long hitCount_ = 0;
+    private long missCount_ = 0;
+    private long evictionCount_ = 0;
+    private long expirationCount_ = 0;
+    private long diskLoadTimeMillis_ = 0;
+
+    private static class Entry {
+        final BranchLinkData linkData;
+        final String url;
+        final long creationTimestamp;
+        final int sizeBytes;
+
+        Entry(BranchLinkData linkData, String url, long creationTimestamp) {
+            this.linkData = linkData;
+            this.url = url;
+            this.creationTimestamp = creationTimestamp;
+            this.sizeBytes = 2 * url.length() + ENTRY_OVERHEAD_BYTES + LINK_DATA_OVERHEAD_BYTES
+                    + estimateBytes(linkData.getParams());
+        }
+    }
+
+    /**
+     * Estimates the memory held by a Json value by walking it, without serializing it.
+     */
+    private static int estimateBytes(Object value) {
+        int bytes = 0;
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                bytes += 2 * key.length() + estimateBytes(object.opt(key));
+            }
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            for (int i = 0; i < array.length(); i++) {
+                bytes += estimateBytes(array.opt(i));
+            }
+        } else if (value instanceof String) {
+            bytes += 2 * ((String) value).length();
+        }
+        return bytes + JSON_VALUE_OVERHEAD_BYTES;
+    }
+
+    BranchLinkCache(Context context) {
+        context_ = context;
+    }
+
+    /**
+     * Get the singleton instance for this class
+     *
+     * @return {@link BranchLinkCache} instance if already initialised or null
+     */
+    public static BranchLinkCache getInstance() {
+        Branch b = Branch.getInstance();
+        if (b == null) return null;
+        return b.linkCache_;
+    }
+
+    /**
+     * <p>Sets the maximum number of links kept in the cache. Default 100.</p>
+     *
+     * @param maxEntries An {@link Integer} value greater than 0.
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        if (maxEntries > 0) {
+            maxEntries_ = maxEntries;
+            trimToSize();
+        }
+    }
+
+    /**
+     * <p>Sets the maximum estimated memory, in bytes, held by the cached links. Default 256KB.</p>
+     *
+     * @param maxBytes A {@link Long} value greater than 0.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes > 0) {
+            maxBytes_ = maxBytes;
+            trimToSize();
+        }
+    }
+
+    /**
+     * <p>Sets the time to live of cached links in milliseconds. Default 7 days.</p>
+     *
+     * @param ttl A {@link Long} value greater than 0.
+     */
+    public synchronized void setTTL(long ttl) {
+        if (ttl > 0) {
+            ttl_ = ttl;
+        }
+    }
+
+    /**
+     * <p>Enables or disables the disk tier. When enabled, cached links survive app restarts. Disabling
+     * the disk tier deletes the links stored on disk. Disabled by default.</p>
+     *
+     * @param enabled {@code true} to persist cached links.
+     */
+    public synchronized void setPersistenceEnabled(boolean enabled) {
+        if (persistenceEnabled_ == enabled) return;
+        persistenceEnabled_ = enabled;
+        if (enabled) {
+            diskCacheLoaded_ = false;
+            for (Map.Entry<Long, Entry> e : cache_.entrySet()) {
+                writeToDisk(e.getKey(), e.getValue());
+            }
+        } else {
+            getDiskCache().edit().clear().apply();
+        }
+    }
+
+    synchronized String get(BranchLinkData linkData) {
+        if (linkData == null) return null;
+        loadFromDiskIfNeeded();
+
+        long key = linkData.getFingerprint();
+        Entry entry = cache_.get(key);
+        if (entry != null && isExpired(entry)) {
+            remove(key);
+            expirationCount_++;
+            entry = null;
+        } else if (entry != null && !entry.linkData.equals(linkData)) {
+            BranchLogger.v("Link fingerprint collision, not using the cached link");
+            entry = null;
+        }
+
+        if (entry == null) {
+            missCount_++;
+            return null;
+        }
+        hitCount_++;
+        return entry.url;
+    }
+
+    synchronized boolean containsKey(BranchLinkData linkData) {
+        if (linkData == null) return false;
+        loadFromDiskIfNeeded();
+
+        Entry entry = cache_.get(linkData.getFingerprint());
+        return entry != null && !isExpired(entry) && entry.linkData.equals(linkData);
+    }
+
+    synchronized void put(BranchLinkData linkData, String url) {
+        if (linkData == null || url == null) return;
+        loadFromDiskIfNeeded();
+
+        // Keeps a copy with only the fingerprinted fields, not the whole request body
+        long key = linkData.getFingerprint();
+        Entry entry = new Entry(linkData.copyForCache(), url, System.currentTimeMillis());
+        putEntry(key, entry);
+        writeToDisk(key, entry);
+        trimToSize();
+    }
+
+    /**
+     * Clears the cache, including the disk tier. Called whenever the links created so far are no
+     * longer valid for this user, e.g. on logout or when the Branch key or bundle token changes.
+     */
+    public synchronized void clear() {
+        cache_.clear();
+        sizeBytes_ = 0;
+        // Links persisted while the disk tier was enabled in a previous session are stale too
+        getDiskCache().edit().clear().apply();
+    }
+
+    public synchronized int size() {
+        return cache_.size();
+    }
+
+    public synchronized long getSizeBytes() {
+        return sizeBytes_;
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount_;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount_;
+    }
+
+    /**
+     * @return The ratio of lookups served from the cache, between 0 and 1.
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hitCount_ + missCount_;
+        return lookups == 0 ? 0 : (double) hitCount_ / lookups;
+    }
+
+    /**
+     * @return The number of links evicted to stay within the size bounds.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount_;
+    }
+
+    /**
+     * @return The number of links dropped because their time to live elapsed.
+     */
+    public synchronized long getExpirationCount() {
+        return expirationCount_;
+    }
+
+    /**
+     * @return The time in milliseconds spent loading the disk tier, 0 if it has not been loaded.
+     */
+    public synchronized long getDiskLoadTimeMillis() {
+        return diskLoadTimeMillis_;
+    }
+
+    private boolean isExpired(Entry entry) {
+        return System.currentTimeMillis() - entry.creationTimestamp > ttl_;
+    }
+
+    private void putEntry(long key, Entry entry) {
+        Entry previous = cache_.put(key, entry);
+        if (previous != null) {
+            sizeBytes_ -= previous.sizeBytes;
+        }
+        sizeBytes_ += entry.sizeBytes;
+    }
+
+    private void remove(long key) {
+        Entry removed = cache_.remove(key);
+        if (removed != null) {
+            sizeBytes_ -= removed.sizeBytes;
+            if (persistenceEnabled_) {
+                getDiskCache().edit().remove(Long.toString(key)).apply();
+            }
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<Long, Entry>> eldest = cache_.entrySet().iterator();
+        SharedPreferences.Editor editor = null;
+        while ((cache_.size() > maxEntries_ || sizeBytes_ > maxBytes_) && eldest.hasNext()) {
+            Map.Entry<Long, Entry> evicted = eldest.next();
+            eldest.remove();
+            sizeBytes_ -= evicted.getValue().sizeBytes;
+            evictionCount_++;
+            if (persistenceEnabled_) {
+                if (editor == null) editor = getDiskCache().edit();
+                editor.remove(Long.toString(evicted.getKey()));
+            }
+        }
+        if (editor != null) editor.apply();
+    }
+
+    private SharedPreferences getDiskCache() {
+        if (diskCache_ == null) {
+            diskCache_ = context_.getSharedPreferences(SHARED_PREF_FILE, Context.MODE_PRIVATE);
+        }
+        return diskCache_;
+    }
+
+    private void writeToDisk(long key, Entry entry) {
+        if (!persistenceEnabled_) return;
+        try {
+            JSONObject value = new JSONObject();
+            value.put(KEY_URL, entry.url);
+            value.put(KEY_CREATION_TIMESTAMP, entry.creationTimestamp);
+            value.put(KEY_LINK_DATA, entry.linkData.toCacheJson());
+            getDiskCache().edit().putString(Long.toString(key), value.toString()).apply();
+        } catch (JSONException e) {
+            BranchLogger.w("Caught JSONException " + e.getMessage());
+        }
+    }
+
+    private void loadFromDiskIfNeeded() {
+        if (!persistenceEnabled_ || diskCacheLoaded_) return;
+        diskCacheLoaded_ = true;
+
+        long start = SystemClock.elapsedRealtime();
+        SharedPreferences.Editor expired = null;
+        for (Map.Entry<String, ?> stored : getDiskCache().getAll().entrySet()) {
+            try {
+                long key = Long.parseLong(stored.getKey());
+                if (cache_.containsKey(key)) continue;
+                JSONObject value = new JSONObject((String) stored.getValue());
+                BranchLinkData linkData = BranchLinkData.fromCacheJson(value.getJSONObject(KEY_LINK_DATA));
+                Entry entry = new Entry(linkData, value.getString(KEY_URL), value.getLong(KEY_CREATION_TIMESTAMP));
+                if (isExpired(entry)) {
+                    if (expired == null) expired = getDiskCache().edit();
+                    expired.remove(stored.getKey());
+                    expirationCount_++;
+                } else {
+                    putEntry(key, entry);
+                }
+            } catch (JSONException | NumberFormatException | ClassCastException e) {
+                // Unreadable entry, e.g. written by an older version of the cache
+                if (expired == null) expired = getDiskCache().edit();
+                expired.remove(stored.getKey());
+            }
+        }
+        if (expired != null) expired.apply();
+        trimToSize();
+
+        diskLoadTimeMillis_ = SystemClock.elapsedRealtime() - start;
+        BranchLogger.v("Loaded " + cache_.size() + " links from disk in " + diskLoadTimeMillis_ + "ms");
+    }
+}
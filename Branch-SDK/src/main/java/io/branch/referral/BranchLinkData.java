@@ -1,13 +1,15 @@
 package io.branch.referral;
 
-import android.annotation.SuppressLint;
 import android.text.TextUtils;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 import java.util.Objects;
 
 /**
@@ -131,6 +133,13 @@ class BranchLinkData extends JSONObject {
      */
     private int duration;
 
+    /**
+     * <p>Fingerprint of the link, see {@link #getFingerprint()}. Computed lazily and reset whenever a
+     * link property is set.</p>
+     */
+    private long fingerprint;
+    private boolean hasFingerprint = false;
+
     /**
      * <p>BranchLinkData constructor requires no parameters, and is identical to
      * that of its superclass {@link JSONObject}.</p>
@@ -152,7 +161,9 @@ class BranchLinkData extends JSONObject {
      */
     public void putTags(Collection<String> tags) throws JSONException {
         if (tags != null) {
-            this.tags = tags;
+            // Copied, so that the fingerprint does not go stale if the caller changes the collection
+            this.tags = new ArrayList<>(tags);
+            this.hasFingerprint = false;
 
             JSONArray tagArray = new JSONArray();
             for (String tag : tags)
@@ -175,6 +186,7 @@ class BranchLinkData extends JSONObject {
     public void putAlias(String alias) throws JSONException {
         if (alias != null) {
             this.alias = alias;
+            this.hasFingerprint = false;
             this.put(Defines.LinkParam.Alias.getKey(), alias);
         }
     }
@@ -198,6 +210,7 @@ class BranchLinkData extends JSONObject {
     public void putType(int type) throws JSONException {
         if (type != 0) {
             this.type = type;
+            this.hasFingerprint = false;
             this.put(Defines.LinkParam.Type.getKey(), type);
         }
     }
@@ -218,6 +231,7 @@ class BranchLinkData extends JSONObject {
     public void putDuration(int duration) throws JSONException {
         if (duration > 0) {
             this.duration = duration;
+            this.hasFingerprint = false;
             this.put(Defines.LinkParam.Duration.getKey(), duration);
         }
     }
@@ -238,6 +252,7 @@ class BranchLinkData extends JSONObject {
     public void putChannel(String channel) throws JSONException {
         if (channel != null) {
             this.channel = channel;
+            this.hasFingerprint = false;
             this.put(Defines.LinkParam.Channel.getKey(), channel);
         }
     }
@@ -257,6 +272,7 @@ class BranchLinkData extends JSONObject {
     public void putFeature(String feature) throws JSONException {
         if (feature != null) {
             this.feature = feature;
+            this.hasFingerprint = false;
             this.put(Defines.LinkParam.Feature.getKey(), feature);
         }
     }
@@ -276,6 +292,7 @@ class BranchLinkData extends JSONObject {
     public void putStage(String stage) throws JSONException {
         if (stage != null) {
             this.stage = stage;
+            this.hasFingerprint = false;
             this.put(Defines.LinkParam.Stage.getKey(), stage);
         }
     }
@@ -294,6 +311,7 @@ class BranchLinkData extends JSONObject {
     public void putCampaign(String campaign) throws JSONException {
         if (campaign != null) {
             this.campaign = campaign;
+            this.hasFingerprint = false;
             this.put(Defines.LinkParam.Campaign.getKey(), campaign);
         }
     }
@@ -305,12 +323,17 @@ class BranchLinkData extends JSONObject {
     /**
      * <p>Any other params to be added; you can define your own.</p>
      *
+     * <p>The params are copied, so that changes the caller makes to them afterwards do not affect
+     * this link, nor its fingerprint.</p>
+     *
      * @param params A {@link String} containing other params in JSON format.
      * @throws JSONException The parameter value must be in valid JSON format, or a
      *                       {@link JSONException} will be thrown.
      */
     public void putParams(JSONObject params) throws JSONException {
+        params = params == null ? null : ParsedJsonCache.deepCopy(params);
         this.params = params;
+        this.hasFingerprint = false;
         this.put(Defines.LinkParam.Data.getKey(), params);
     }
 
@@ -337,6 +360,8 @@ class BranchLinkData extends JSONObject {
      * <p>Compares a BranchLinkData object by instance
      * ("is the object the exact same one in memory") and by associated
      * attributes ("is this object identically configured?")</p>
+     * <p>Params with the same keys and values are equal regardless of the order in which the keys
+     * were added. The link fingerprint is only used to reject different links quickly.</p>
      *
      * @param obj A {@link BranchLinkData} object to be compared to the one that
      *            this method belongs to.
@@ -351,100 +376,181 @@ class BranchLinkData extends JSONObject {
         if (getClass() != obj.getClass())
             return false;
         BranchLinkData other = (BranchLinkData) obj;
-        if (alias == null) {
-            if (other.alias != null)
-                return false;
-        } else if (!alias.equals(other.alias))
-            return false;
-        if (channel == null) {
-            if (other.channel != null)
-                return false;
-        } else if (!channel.equals(other.channel))
-            return false;
-        if (feature == null) {
-            if (other.feature != null)
-                return false;
-        } else if (!feature.equals(other.feature))
-            return false;
-        if (stage == null) {
-            if (other.stage != null)
-                return false;
-        } else if (!stage.equals(other.stage))
-            return false;
-        if (campaign == null) {
-            if (other.campaign != null)
-                return false;
-        } else if (!campaign.equals(other.campaign))
-            return false;
-        if (type != other.type)
-            return false;
-        if (duration != other.duration)
-            return false;
+        return type == other.type
+                && duration == other.duration
+                && Objects.equals(alias, other.alias)
+                && Objects.equals(channel, other.channel)
+                && Objects.equals(feature, other.feature)
+                && Objects.equals(stage, other.stage)
+                && Objects.equals(campaign, other.campaign)
+                && getFingerprint() == other.getFingerprint()
+                && Objects.equals(tags, other.tags)
+                && valuesEqual(params, other.params);
+    }
 
-        if (tags == null) {
-            if (other.tags != null)
+    /**
+     * Compares Json values the way the fingerprint hashes them: object keys in any order, numbers
+     * and booleans by class and value. Also used by other caches keyed by a {@link Fingerprint}.
+     */
+    static boolean valuesEqual(Object value, Object other) {
+        if (value == null || value == JSONObject.NULL) {
+            return other == null || other == JSONObject.NULL;
+        } else if (value instanceof JSONObject) {
+            if (!(other instanceof JSONObject) || ((JSONObject) other).length() != ((JSONObject) value).length()) {
                 return false;
-        } else if (!tags.toString().equals(other.tags != null ? other.tags.toString() : null))
-            return false;
-
-        // todo JSONObject's order of keys is not consistent, so this equality can lead to false positives
-        if (params == null) {
-            if (other.params != null)
+            }
+            Iterator<String> keys = ((JSONObject) value).keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (!((JSONObject) other).has(key) || !valuesEqual(((JSONObject) value).opt(key), ((JSONObject) other).opt(key))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (value instanceof JSONArray) {
+            if (!(other instanceof JSONArray) || ((JSONArray) other).length() != ((JSONArray) value).length()) {
                 return false;
-        } else if (!params.toString().equals(other.params != null ? other.params.toString() : null))
-            return false;
-
-        return true;
+            }
+            for (int i = 0; i < ((JSONArray) value).length(); i++) {
+                if (!valuesEqual(((JSONArray) value).opt(i), ((JSONArray) other).opt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return other != null && value.getClass() == other.getClass() && value.toString().equals(other.toString());
     }
 
     /**
      * <p>
-     * Calculates the hash for this object as currently configured and returns
-     * the resultant {@link Integer}.
-     * </p>
-     *  <p>
-     * The hash value is a combination of the hashCode of:
-     * </p>
-     * <ul>
-     * <li>alias</li>
-     * <li>channel</li>
-     * <li>feature</li>
-     * <li>stage</li>
-     * <li>params</li>
-     * </ul>
-     * <p>
-     * Changing any of these attributes will change the hashCode, making
-     * comparison straightforward.
+     * Calculates the hash for this object from its fingerprint, see {@link #getFingerprint()}.
      * </p>
      */
-    @SuppressLint("DefaultLocale")
     @Override
     public int hashCode() {
-        int result = 1;
-        int prime = 19;
-
-        result = prime * result + this.type;
-        result = prime * result
-                + ((alias == null) ? 0 : alias.toLowerCase().hashCode());
-        result = prime * result
-                + ((channel == null) ? 0 : channel.toLowerCase().hashCode());
-        result = prime * result
-                + ((feature == null) ? 0 : feature.toLowerCase().hashCode());
-        result = prime * result
-                + ((stage == null) ? 0 : stage.toLowerCase().hashCode());
-        result = prime * result
-                + ((campaign == null) ? 0 : campaign.toLowerCase().hashCode());
-        result = prime * result
-                + ((params == null) ? 0 : params.toString().toLowerCase().hashCode());
-        result = prime * result + this.duration;
-
-        if (this.tags != null) {
-            for (String tag : this.tags) {
-                result = prime * result + tag.toLowerCase().hashCode();
+        long fingerprint = getFingerprint();
+        return (int) (fingerprint ^ (fingerprint >>> 32));
+    }
+
+    /**
+     * <p>Returns a 64-bit fingerprint of the link properties and params of this link. The
+     * fingerprint is canonical: keys of the params, including nested objects, are hashed in sorted
+     * order, so logically equal links have the same fingerprint. It is computed once and recomputed
+     * only after a link property or the params are set again.</p>
+     * <p>Used as the key of the link cache, both in memory and on disk. Different links may collide,
+     * so the cache also keeps the link data of its entries and compares them with {@link #equals(Object)}.</p>
+     *
+     * @return A {@link Long} fingerprint of this link.
+     */
+    long getFingerprint() {
+        if (!hasFingerprint) {
+            Fingerprint fp = new Fingerprint();
+            fp.add(type);
+            fp.add(duration);
+            fp.add(alias);
+            fp.add(channel);
+            fp.add(feature);
+            fp.add(stage);
+            fp.add(campaign);
+            if (tags == null) {
+                fp.addNull();
+            } else {
+                fp.add(tags.size());
+                for (String tag : tags) {
+                    fp.add(tag);
+                }
             }
+            fp.addValue(params);
+            fingerprint = fp.hash;
+            hasFingerprint = true;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * FNV-1a 64-bit hash of a canonical form of the link. Every value is prefixed with its type and
+     * strings with their length, so that different links cannot produce the same stream of chars.
+     * Also used to key other caches by Json params, see {@link #of(Object)}.
+     */
+    static class Fingerprint {
+        private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+        private static final long FNV_PRIME = 0x100000001b3L;
+
+        long hash = FNV_OFFSET_BASIS;
+
+        /**
+         * @param value A Json value, e.g. a {@link JSONObject}.
+         * @return The canonical fingerprint of the value, independent of the order of object keys.
+         */
+        static long of(Object value) {
+            Fingerprint fp = new Fingerprint();
+            fp.addValue(value);
+            return fp.hash;
         }
 
-        return result;
+        private void addChar(char c) {
+            hash ^= (c & 0xff);
+            hash *= FNV_PRIME;
+            hash ^= (c >>> 8);
+            hash *= FNV_PRIME;
+        }
+
+        void addNull() {
+            addChar('n');
+        }
+
+        void add(long value) {
+            addChar('l');
+            for (int shift = 0; shift < 64; shift += 16) {
+                addChar((char) (value >>> shift));
+            }
+        }
+
+        void add(String value) {
+            if (value == null) {
+                addNull();
+                return;
+            }
+            addChar('s');
+            add(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                addChar(value.charAt(i));
+            }
+        }
+
+        void addValue(Object value) {
+            if (value == null || value == JSONObject.NULL) {
+                addNull();
+            } else if (value instanceof JSONObject) {
+                JSONObject object = (JSONObject) value;
+                String[] keys = new String[object.length()];
+                Iterator<String> keyIterator = object.keys();
+                for (int i = 0; i < keys.length && keyIterator.hasNext(); i++) {
+                    keys[i] = keyIterator.next();
+                }
+                Arrays.sort(keys);
+                addChar('o');
+                add(keys.length);
+                for (String key : keys) {
+                    add(key);
+                    addValue(object.opt(key));
+                }
+            } else if (value instanceof JSONArray) {
+                JSONArray array = (JSONArray) value;
+                addChar('a');
+                add(array.length());
+                for (int i = 0; i < array.length(); i++) {
+                    addValue(array.opt(i));
+                }
+            } else if (value instanceof String) {
+                add((String) value);
+            } else {
+                // Numbers and booleans, tagged with their class so that 1 and "1" differ
+                addChar('v');
+                add(value.getClass().getSimpleName());
+                add(value.toString());
+            }
+        }
     }
 
     /**
@@ -480,4 +586,71 @@ class BranchLinkData extends JSONObject {
         }
         return linkDataJson;
     }
+
+    /**
+     * Creates the Json object with the link properties and params this link is fingerprinted from,
+     * to store it in the link cache. See {@link #fromCacheJson(JSONObject)}.
+     *
+     * @return {@link JSONObject} with link params and link properties
+     */
+    JSONObject toCacheJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put(Defines.LinkParam.Type.getKey(), type);
+        json.put(Defines.LinkParam.Duration.getKey(), duration);
+        json.putOpt(Defines.LinkParam.Alias.getKey(), alias);
+        json.putOpt(Defines.LinkParam.Channel.getKey(), channel);
+        json.putOpt(Defines.LinkParam.Feature.getKey(), feature);
+        json.putOpt(Defines.LinkParam.Stage.getKey(), stage);
+        json.putOpt(Defines.LinkParam.Campaign.getKey(), campaign);
+        if (tags != null) {
+            json.put(Defines.LinkParam.Tags.getKey(), new JSONArray(tags));
+        }
+        json.putOpt(Defines.LinkParam.Data.getKey(), params);
+        return json;
+    }
+
+    /**
+     * @return A copy with only the link properties and params, and the same fingerprint, to keep in
+     * the link cache instead of the whole request body.
+     */
+    BranchLinkData copyForCache() {
+        BranchLinkData copy = new BranchLinkData();
+        copy.tags = tags == null ? null : new ArrayList<>(tags);
+        copy.alias = alias;
+        copy.type = type;
+        copy.channel = channel;
+        copy.feature = feature;
+        copy.stage = stage;
+        copy.campaign = campaign;
+        copy.params = params == null ? null : ParsedJsonCache.deepCopy(params);
+        copy.duration = duration;
+        copy.fingerprint = getFingerprint();
+        copy.hasFingerprint = true;
+        return copy;
+    }
+
+    /**
+     * @param json A Json object created by {@link #toCacheJson()}.
+     * @return The link data equal to the one the Json object was created from.
+     */
+    static BranchLinkData fromCacheJson(JSONObject json) throws JSONException {
+        BranchLinkData linkData = new BranchLinkData();
+        linkData.putType(json.getInt(Defines.LinkParam.Type.getKey()));
+        linkData.putDuration(json.getInt(Defines.LinkParam.Duration.getKey()));
+        linkData.putAlias(json.optString(Defines.LinkParam.Alias.getKey(), null));
+        linkData.putChannel(json.optString(Defines.LinkParam.Channel.getKey(), null));
+        linkData.putFeature(json.optString(Defines.LinkParam.Feature.getKey(), null));
+        linkData.putStage(json.optString(Defines.LinkParam.Stage.getKey(), null));
+        linkData.putCampaign(json.optString(Defines.LinkParam.Campaign.getKey(), null));
+        JSONArray tagArray = json.optJSONArray(Defines.LinkParam.Tags.getKey());
+        if (tagArray != null) {
+            ArrayList<String> tags = new ArrayList<>();
+            for (int i = 0; i < tagArray.length(); i++) {
+                tags.add(tagArray.getString(i));
+            }
+            linkData.putTags(tags);
+        }
+        linkData.putParams(json.optJSONObject(Defines.LinkParam.Data.getKey()));
+        return linkData;
+    }
 }
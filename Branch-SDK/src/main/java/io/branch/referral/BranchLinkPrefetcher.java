@@ -0,0 +1,184 @@
+package io.branch.referral;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * <p>Creates short links ahead of time for content that is about to be shared, so that the link is
+ * already in the link cache when the user taps share. Apps register links as their content becomes
+ * visible, e.g. from a RecyclerView scroll listener, and cancel them when the content scrolls away.</p>
+ * <p>Prefetching runs at low priority: a prefetch only enters the request queue when the queue holds
+ * nothing but other prefetches, so it never delays events, sessions or links the user asked for.
+ * At most {@link #setMaxConcurrentPrefetches(int)} prefetches are queued at a time.</p>
+ */
+public class BranchLinkPrefetcher {
+    static final int DEFAULT_MAX_CONCURRENT_PREFETCHES = 2;
+    // Registered links waiting to be prefetched. Oldest registrations are dropped beyond this.
+    static final int MAX_PENDING_PREFETCHES = 50;
+
+    private final Branch branch_;
+    private final LinkedHashMap<BranchLinkData, ServerRequestCreateUrl> pending_ = new LinkedHashMap<>();
+    private final LinkedHashMap<BranchLinkData, ServerRequestCreateUrl> inFlight_ = new LinkedHashMap<>();
+    private int maxConcurrentPrefetches_ = DEFAULT_MAX_CONCURRENT_PREFETCHES;
+
+    private long prefetchCount_ = 0;
+    private long cancelCount_ = 0;
+
+    BranchLinkPrefetcher(Branch branch) {
+        branch_ = branch;
+    }
+
+    /**
+     * Get the singleton instance for this class
+     *
+     * @return {@link BranchLinkPrefetcher} instance if already initialised or null
+     */
+    public static BranchLinkPrefetcher getInstance() {
+        Branch b = Branch.getInstance();
+        if (b == null) return null;
+        return b.getLinkPrefetcher();
+    }
+
+    /**
+     * <p>Sets the maximum number of prefetches in the request queue at the same time. Default 2.</p>
+     *
+     * @param maxConcurrentPrefetches An {@link Integer} value greater than 0.
+     */
+    public synchronized void setMaxConcurrentPrefetches(int maxConcurrentPrefetches) {
+        if (maxConcurrentPrefetches > 0) {
+            maxConcurrentPrefetches_ = maxConcurrentPrefetches;
+            dispatch();
+        }
+    }
+
+    /**
+     * <p>Registers a link to be created in the background. Links already cached, pending or being
+     * prefetched are ignored.</p>
+     *
+     * @param builder A {@link BranchShortLinkBuilder} describing the link.
+     */
+    public synchronized void prefetch(BranchShortLinkBuilder builder) {
+        PrefetchCallback callback = new PrefetchCallback();
+        ServerRequestCreateUrl req = builder.createUrlRequest(callback);
+        if (req.constructError_) return;
+
+        BranchLinkData linkData = req.getLinkPost();
+        if (pending_.containsKey(linkData) || inFlight_.containsKey(linkData) || branch_.linkCache_.containsKey(linkData)) {
+            return;
+        }
+        callback.linkData = linkData;
+        pending_.put(linkData, req);
+        if (pending_.size() > MAX_PENDING_PREFETCHES) {
+            pending_.remove(pending_.keySet().iterator().next());
+        }
+        dispatch();
+    }
+
+    /**
+     * <p>Cancels the prefetch of a link, e.g. when its content scrolls out of view. A prefetch that
+     * the request queue is already executing completes, and its link is still cached.</p>
+     *
+     * @param builder A {@link BranchShortLinkBuilder} describing the link given to {@link #prefetch(BranchShortLinkBuilder)}.
+     */
+    public synchronized void cancel(BranchShortLinkBuilder builder) {
+        ServerRequestCreateUrl req = builder.createUrlRequest(null);
+        if (req.constructError_) return;
+
+        BranchLinkData linkData = req.getLinkPost();
+        if (pending_.remove(linkData) != null) {
+            cancelCount_++;
+        } else {
+            ServerRequestCreateUrl inFlightReq = inFlight_.get(linkData);
+            if (inFlightReq != null && cancelQueuedRequest(inFlightReq)) {
+                inFlight_.remove(linkData);
+                cancelCount_++;
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * Cancels all pending prefetches, e.g. when the screen showing the content is closed.
+     */
+    public synchronized void cancelAll() {
+        cancelCount_ += pending_.size();
+        pending_.clear();
+        Iterator<ServerRequestCreateUrl> inFlight = inFlight_.values().iterator();
+        while (inFlight.hasNext()) {
+            if (cancelQueuedRequest(inFlight.next())) {
+                inFlight.remove();
+                cancelCount_++;
+            }
+        }
+    }
+
+    /**
+     * @return The number of prefetch requests sent to the Branch API.
+     */
+    public synchronized long getPrefetchCount() {
+        return prefetchCount_;
+    }
+
+    /**
+     * @return The number of prefetches cancelled before they were sent.
+     */
+    public synchronized long getCancelCount() {
+        return cancelCount_;
+    }
+
+    synchronized int getPendingCount() {
+        return pending_.size();
+    }
+
+    synchronized int getInFlightCount() {
+        return inFlight_.size();
+    }
+
+    /**
+     * Queues pending prefetches while the request queue is otherwise idle. Called on registration,
+     * when a prefetch finishes and whenever the request queue finished a request.
+     */
+    synchronized void dispatch() {
+        // Links need a session, wait for init to finish rather than failing every prefetch
+        if (branch_.initState_ != Branch.SESSION_STATE.INITIALISED) return;
+
+        // Queueing a request can fail it synchronously, which re-enters this method from the callback,
+        // so take the eldest pending link on every iteration instead of holding an iterator.
+        while (!pending_.isEmpty() && inFlight_.size() < maxConcurrentPrefetches_
+                && branch_.requestQueue_.getSize() <= inFlight_.size()) {
+            BranchLinkData linkData = pending_.keySet().iterator().next();
+            ServerRequestCreateUrl req = pending_.remove(linkData);
+            if (branch_.linkCache_.containsKey(linkData) || req.handleErrors(branch_.getApplicationContext())) {
+                continue;
+            }
+            inFlight_.put(linkData, req);
+            prefetchCount_++;
+            branch_.requestQueue_.handleNewRequest(req);
+        }
+    }
+
+    private synchronized void onPrefetchFinished(BranchLinkData linkData) {
+        if (inFlight_.remove(linkData) != null) {
+            dispatch();
+        }
+    }
+
+    private class PrefetchCallback implements Branch.BranchLinkCreateListener {
+        BranchLinkData linkData;
+
+        @Override
+        public void onLinkCreate(String url, BranchError error) {
+            // Successful links are put in the link cache by the request queue
+            onPrefetchFinished(linkData);
+        }
+    }
+
+    // Removes a prefetch from the request queue unless it is already executing
+    private boolean cancelQueuedRequest(ServerRequestCreateUrl req) {
+        if (branch_.requestQueue_.peek() == req) {
+            return false;
+        }
+        req.clearCallbacks();
+        return branch_.requestQueue_.remove(req);
+    }
+}
@@ -0,0 +1,388 @@
+package io.branch.referral;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>Asynchronous sink for the SDK log, enabled with {@link Branch#enableLogFile}.</p>
+ * <p>A log call only copies the message into a fixed size lock free ring buffer and returns. A single
+ * background writer drains the buffer, writes each message to a size capped log file and forwards it
+ * to logcat or to the {@link io.branch.interfaces.IBranchLoggingCallbacks} set on {@link BranchLogger}.
+ * When the current file is full it is rotated, keeping at most a fixed number of files, so the log
+ * never takes more than {@code maxFileBytes * maxFiles} on disk. If the writer falls behind and the
+ * buffer is full, new messages are dropped and the number dropped is written to the file.</p>
+ */
+public class BranchLogSink {
+    static final String LOG_DIR = "branch_logs";
+    static final String LOG_FILE = "branch.log";
+
+    static final int DEFAULT_CAPACITY = 1024; // Must be a power of two
+    static final long DEFAULT_MAX_FILE_BYTES = 256 * 1024; // 256KB
+    static final int DEFAULT_MAX_FILES = 4;
+
+    private static final long EXPORT_FLUSH_TIMEOUT_MILLIS = 1000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Receives each message after it is written to the file, on the writer thread.
+     */
+    interface Output {
+        void write(BranchLogger.BranchLogLevel level, String message);
+    }
+
+    private final File directory_;
+    private final long maxFileBytes_;
+    private final int maxFiles_;
+
+    // Bounded multi producer queue: a slot can be written when its sequence equals the claimed position,
+    // and read when it equals the position + 1. The arrays are preallocated so a log call allocates nothing.
+    private final int mask_;
+    private final AtomicLongArray sequences_;
+    private final long[] timestamps_;
+    private final BranchLogger.BranchLogLevel[] levels_;
+    private final String[] threadNames_;
+    private final String[] messages_;
+    private final AtomicLong tail_ = new AtomicLong();
+    private final AtomicLong droppedCount_ = new AtomicLong();
+
+    private final Object fileLock_ = new Object();
+    private final Object flushLock_ = new Object();
+    private final Thread writer_;
+    private volatile Output output_;
+    private volatile boolean running_ = true;
+    private volatile Runnable onClosed_;
+    // Set by the writer before it parks on an empty buffer. The first message appended after that
+    // clears it and wakes the writer, later ones see it cleared and do not unpark again.
+    private final AtomicBoolean writerWaiting_ = new AtomicBoolean();
+    private volatile long writtenPosition_ = 0;
+
+    // Only accessed by the writer thread, or with fileLock_ held
+    private long head_ = 0;
+    private long reportedDroppedCount_ = 0;
+    private OutputStream stream_;
+    private long fileBytes_;
+    private boolean fileFailed_ = false;
+    private final SimpleDateFormat dateFormat_ = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+    private final Date date_ = new Date();
+
+    BranchLogSink(File directory) {
+        this(directory, DEFAULT_MAX_FILE_BYTES, DEFAULT_MAX_FILES, DEFAULT_CAPACITY);
+    }
+
+    BranchLogSink(File directory, long maxFileBytes, int maxFiles, int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two");
+        }
+        directory_ = directory;
+        maxFileBytes_ = maxFileBytes;
+        maxFiles_ = Math.max(1, maxFiles);
+        mask_ = capacity - 1;
+        sequences_ = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences_.set(i, i);
+        }
+        timestamps_ = new long[capacity];
+        levels_ = new BranchLogger.BranchLogLevel[capacity];
+        threadNames_ = new String[capacity];
+        messages_ = new String[capacity];
+
+        writer_ = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "BranchLogSink");
+        writer_.setDaemon(true);
+        writer_.start();
+    }
+
+    void setOutput(Output output) {
+        output_ = output;
+    }
+
+    /**
+     * Queues a message to be written by the background writer. Never blocks.
+     *
+     * @return false if the buffer is full or the sink is closed, and the message was dropped.
+     */
+    boolean append(BranchLogger.BranchLogLevel level, String message) {
+        if (!running_) return false;
+        long position = tail_.get();
+        int index;
+        while (true) {
+            index = (int) (position & mask_);
+            long difference = sequences_.get(index) - position;
+            if (difference == 0) {
+                if (tail_.compareAndSet(position, position + 1)) break;
+                position = tail_.get();
+            } else if (difference < 0) {
+                // The writer has not read this slot yet, the buffer is full
+                droppedCount_.incrementAndGet();
+                return false;
+            } else {
+                position = tail_.get();
+            }
+        }
+        timestamps_[index] = System.currentTimeMillis();
+        levels_[index] = level;
+        threadNames_[index] = Thread.currentThread().getName();
+        messages_[index] = message;
+        sequences_.set(index, position + 1);
+
+        if (writerWaiting_.get() && writerWaiting_.compareAndSet(true, false)) {
+            LockSupport.unpark(writer_);
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of messages dropped because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return droppedCount_.get();
+    }
+
+    /**
+     * Waits until the messages queued before this call are written to the log file.
+     *
+     * @param timeoutMillis Maximum time to wait.
+     * @return true if the messages were written before the timeout.
+     */
+    public boolean flush(long timeoutMillis) {
+        long target = tail_.get();
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        LockSupport.unpark(writer_);
+        synchronized (flushLock_) {
+            while (writtenPosition_ < target && writer_.isAlive()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                try {
+                    flushLock_.wait(remaining);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return writtenPosition_ >= target;
+    }
+
+    /**
+     * @return The existing log files, oldest first.
+     */
+    public List<File> getLogFiles() {
+        List<File> files = new ArrayList<>();
+        for (int i = maxFiles_ - 1; i >= 0; i--) {
+            File file = getLogFile(i);
+            if (file.exists()) files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * Writes the whole log, oldest message first, to the given file, e.g. to attach it to a support request.
+     * Messages queued before this call are flushed first.
+     *
+     * @param destination The file to write, replaced if it exists.
+     * @return true if the log was exported.
+     */
+    public boolean export(File destination) {
+        flush(EXPORT_FLUSH_TIMEOUT_MILLIS);
+        byte[] buffer = new byte[8192];
+        synchronized (fileLock_) {
+            OutputStream out = null;
+            try {
+                out = new FileOutputStream(destination);
+                for (File file : getLogFiles()) {
+                    InputStream in = new FileInputStream(file);
+                    try {
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, read);
+                        }
+                    } finally {
+                        in.close();
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                BranchLogger.w("Failed to export the log file, " + e.getMessage());
+                return false;
+            } finally {
+                closeQuietly(out);
+            }
+        }
+    }
+
+    /**
+     * Stops the writer once the queued messages are written. Messages logged after this are dropped.
+     * Does not wait for the writer.
+     */
+    void close() {
+        close(null);
+    }
+
+    /**
+     * Stops the writer once the queued messages are written, see {@link #close()}.
+     *
+     * @param onClosed Run on the writer thread after the last queued message is written, may be null.
+     */
+    void close(Runnable onClosed) {
+        onClosed_ = onClosed;
+        running_ = false;
+        LockSupport.unpark(writer_);
+    }
+
+    private void drainLoop() {
+        while (true) {
+            boolean stopping = !running_;
+            synchronized (fileLock_) {
+                while (drainOne()) {
+                    // Keep draining while messages are available
+                }
+                reportDropped();
+                flushStream();
+            }
+            writtenPosition_ = head_;
+            synchronized (flushLock_) {
+                flushLock_.notifyAll();
+            }
+            if (stopping) break;
+
+            // Checks the buffer again after setting the flag, so a message appended in between is not missed
+            writerWaiting_.set(true);
+            if (!isReadable() && running_) {
+                LockSupport.park(this);
+            }
+            writerWaiting_.set(false);
+        }
+        synchronized (fileLock_) {
+            closeQuietly(stream_);
+            stream_ = null;
+        }
+        Runnable onClosed = onClosed_;
+        if (onClosed != null) {
+            onClosed.run();
+        }
+    }
+
+    private boolean isReadable() {
+        return sequences_.get((int) (head_ & mask_)) == head_ + 1;
+    }
+
+    private boolean drainOne() {
+        if (!isReadable()) return false;
+        int index = (int) (head_ & mask_);
+        long timestamp = timestamps_[index];
+        BranchLogger.BranchLogLevel level = levels_[index];
+        String threadName = threadNames_[index];
+        String message = messages_[index];
+        threadNames_[index] = null;
+        messages_[index] = null;
+        sequences_.set(index, head_ + mask_ + 1);
+        head_++;
+
+        writeLine(timestamp, level, threadName, message);
+        Output output = output_;
+        if (output != null) {
+            output.write(level, message);
+        }
+        return true;
+    }
+
+    private void reportDropped() {
+        long dropped = droppedCount_.get();
+        if (dropped > reportedDroppedCount_) {
+            writeLine(System.currentTimeMillis(), BranchLogger.BranchLogLevel.WARN, writer_.getName(),
+                    (dropped - reportedDroppedCount_) + " log messages dropped");
+            reportedDroppedCount_ = dropped;
+        }
+    }
+
+    private void writeLine(long timestamp, BranchLogger.BranchLogLevel level, String threadName, String message) {
+        if (fileFailed_) return;
+        date_.setTime(timestamp);
+        String line = dateFormat_.format(date_) + ' ' + level.name().charAt(0) + ' ' + threadName + ": " + message + '\n';
+        byte[] bytes = line.getBytes(UTF_8);
+        try {
+            if (stream_ != null && fileBytes_ + bytes.length > maxFileBytes_ && fileBytes_ > 0) {
+                rotate();
+            }
+            if (stream_ == null) {
+                openStream();
+            }
+            stream_.write(bytes);
+            fileBytes_ += bytes.length;
+        } catch (IOException e) {
+            // Stop writing files, the messages are still forwarded to the output
+            fileFailed_ = true;
+            closeQuietly(stream_);
+            stream_ = null;
+            Output output = output_;
+            if (output != null) {
+                output.write(BranchLogger.BranchLogLevel.ERROR, "Failed to write the log file, " + e.getMessage());
+            }
+        }
+    }
+
+    private void openStream() throws IOException {
+        if (!directory_.exists() && !directory_.mkdirs()) {
+            throw new IOException("Cannot create " + directory_);
+        }
+        File file = getLogFile(0);
+        fileBytes_ = file.length();
+        stream_ = new BufferedOutputStream(new FileOutputStream(file, true));
+    }
+
+    private void rotate() throws IOException {
+        stream_.close();
+        stream_ = null;
+        File oldest = getLogFile(maxFiles_ - 1);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("Cannot delete " + oldest);
+        }
+        for (int i = maxFiles_ - 2; i >= 0; i--) {
+            File file = getLogFile(i);
+            if (file.exists() && !file.renameTo(getLogFile(i + 1))) {
+                throw new IOException("Cannot rotate " + file);
+            }
+        }
+        fileBytes_ = 0;
+    }
+
+    private void flushStream() {
+        if (stream_ == null) return;
+        try {
+            stream_.flush();
+        } catch (IOException ignored) {
+        }
+    }
+
+    // branch.log is the current file, branch.log.1 the one before it and so on
+    private File getLogFile(int index) {
+        return new File(directory_, index == 0 ? LOG_FILE : LOG_FILE + "." + index);
+    }
+
+    private static void closeQuietly(OutputStream stream) {
+        if (stream == null) return;
+        try {
+            stream.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
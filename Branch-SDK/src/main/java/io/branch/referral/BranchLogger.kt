@@ -5,6 +5,8 @@ import io.branch.interfaces.IBranchLoggingCallbacks
 import java.io.PrintWriter
 import java.io.StringWriter
 import java.io.Writer
+import java.util.IllegalFormatException
+import java.util.Locale
 
 object BranchLogger {
 
@@ -23,7 +25,33 @@ object BranchLogger {
     @JvmStatic
     var loggerCallback: IBranchLoggingCallbacks? = null
 
-    private fun shouldLog(level: BranchLogLevel): Boolean = level.level <= loggingLevel.level
+    /**
+     * If set, messages are queued to this sink and written to logcat or [loggerCallback] by its
+     * background writer, instead of on the logging thread. See [Branch.enableLogFile].
+     */
+    @JvmStatic
+    var logSink: BranchLogSink? = null
+        set(value) {
+            value?.setOutput { level, message -> output(level, message) }
+            field = value
+        }
+
+    private fun shouldLog(level: BranchLogLevel): Boolean {
+        // A constant in builds with branchStripVerboseLogs set, where debug and verbose logs become dead code
+        if (BuildConfig.STRIP_VERBOSE_LOGS && level.level >= BranchLogLevel.DEBUG.level) {
+            return false
+        }
+        return level.level <= loggingLevel.level
+    }
+
+    /**
+     * <p>Returns true if a message of this level is logged, to skip building messages that are not,
+     * e.g. a message listing the whole request queue.</p>
+     *
+     * @param level The [BranchLogLevel] of the message.
+     */
+    @JvmStatic
+    fun isLoggable(level: BranchLogLevel): Boolean = loggingEnabled && shouldLog(level)
 
     /**
      * <p>Creates a <b>Error</b> message in the debugger. If debugging is disabled, this will fail silently.</p>
@@ -33,11 +61,7 @@ object BranchLogger {
     @JvmStatic
     fun e(message: String) {
         if (loggingEnabled && shouldLog(BranchLogLevel.ERROR) && message.isNotEmpty()) {
-            if (useCustomLogger()) {
-                loggerCallback?.onBranchLog(message, "ERROR")
-            } else {
-                Log.e(TAG, message)
-            }
+            log(BranchLogLevel.ERROR, message)
         }
     }
 
@@ -49,11 +73,7 @@ object BranchLogger {
     @JvmStatic
     fun w(message: String) {
         if (loggingEnabled && shouldLog(BranchLogLevel.WARN) && message.isNotEmpty()) {
-            if (useCustomLogger()) {
-                loggerCallback?.onBranchLog(message, "WARN")
-            } else {
-                Log.w(TAG, message)
-            }
+            log(BranchLogLevel.WARN, message)
         }
     }
 
@@ -65,11 +85,7 @@ object BranchLogger {
     @JvmStatic
     fun i(message: String) {
         if (loggingEnabled && shouldLog(BranchLogLevel.INFO) && message.isNotEmpty()) {
-            if(useCustomLogger()) {
-                loggerCallback?.onBranchLog(message, "INFO")
-            } else {
-                Log.i(TAG, message)
-            }
+            log(BranchLogLevel.INFO, message)
         }
     }
 
@@ -81,11 +97,7 @@ object BranchLogger {
     @JvmStatic
     fun d(message: String?) {
         if (loggingEnabled && shouldLog(BranchLogLevel.DEBUG) && message?.isNotEmpty() == true) {
-            if (useCustomLogger()) {
-                loggerCallback?.onBranchLog(message, "DEBUG")
-            } else {
-                Log.d(TAG, message)
-            }
+            log(BranchLogLevel.DEBUG, message)
         }
     }
 
@@ -97,21 +109,184 @@ object BranchLogger {
     @JvmStatic
     fun v(message: String) {
         if (loggingEnabled && shouldLog(BranchLogLevel.VERBOSE) && message.isNotEmpty()) {
-            if (useCustomLogger()) {
-                loggerCallback?.onBranchLog(message, "VERBOSE")
+            log(BranchLogLevel.VERBOSE, message)
+        }
+    }
+
+    // Lazy overloads: the message is only built if its level is logged. The format overloads use
+    // String.format and allocate nothing when the level is not logged, unless primitives are boxed or
+    // more than four arguments are passed; guard those calls with isLoggable on hot paths. A Throwable
+    // argument is formatted as its stack trace.
+
+    @JvmStatic
+    fun e(format: String, arg: Any?) {
+        if (isLoggable(BranchLogLevel.ERROR)) e(formatMessage(format, arg))
+    }
+
+    @JvmStatic
+    fun e(format: String, arg1: Any?, arg2: Any?) {
+        if (isLoggable(BranchLogLevel.ERROR)) e(formatMessage(format, arg1, arg2))
+    }
+
+    @JvmStatic
+    fun e(format: String, arg1: Any?, arg2: Any?, arg3: Any?) {
+        if (isLoggable(BranchLogLevel.ERROR)) e(formatMessage(format, arg1, arg2, arg3))
+    }
+
+    @JvmStatic
+    fun e(format: String, arg1: Any?, arg2: Any?, arg3: Any?, arg4: Any?) {
+        if (isLoggable(BranchLogLevel.ERROR)) e(formatMessage(format, arg1, arg2, arg3, arg4))
+    }
+
+    @JvmStatic
+    fun e(format: String, arg1: Any?, arg2: Any?, arg3: Any?, arg4: Any?, vararg args: Any?) {
+        if (isLoggable(BranchLogLevel.ERROR)) e(formatMessage(format, arg1, arg2, arg3, arg4, *args))
+    }
+
+    @JvmStatic
+    fun w(format: String, arg: Any?) {
+        if (isLoggable(BranchLogLevel.WARN)) w(formatMessage(format, arg))
+    }
+
+    @JvmStatic
+    fun w(format: String, arg1: Any?, arg2: Any?) {
+        if (isLoggable(BranchLogLevel.WARN)) w(formatMessage(format, arg1, arg2))
+    }
+
+    @JvmStatic
+    fun w(format: String, arg1: Any?, arg2: Any?, arg3: Any?) {
+        if (isLoggable(BranchLogLevel.WARN)) w(formatMessage(format, arg1, arg2, arg3))
+    }
+
+    @JvmStatic
+    fun w(format: String, arg1: Any?, arg2: Any?, arg3: Any?, arg4: Any?) {
+        if (isLoggable(BranchLogLevel.WARN)) w(formatMessage(format, arg1, arg2, arg3, arg4))
+    }
+
+    @JvmStatic
+    fun w(format: String, arg1: Any?, arg2: Any?, arg3: Any?, arg4: Any?, vararg args: Any?) {
+        if (isLoggable(BranchLogLevel.WARN)) w(formatMessage(format, arg1, arg2, arg3, arg4, *args))
+    }
+
+    @JvmStatic
+    fun i(format: String, arg: Any?) {
+        if (isLoggable(BranchLogLevel.INFO)) i(formatMessage(format, arg))
+    }
+
+    @JvmStatic
+    fun i(format: String, arg1: Any?, arg2: Any?) {
+        if (isLoggable(BranchLogLevel.INFO)) i(formatMessage(format, arg1, arg2))
+    }
+
+    @JvmStatic
+    fun i(format: String, arg1: Any?, arg2: Any?, arg3: Any?) {
+        if (isLoggable(BranchLogLevel.INFO)) i(formatMessage(format, arg1, arg2, arg3))
+    }
+
+    @JvmStatic
+    fun i(format: String, arg1: Any?, arg2: Any?, arg3: Any?, arg4: Any?) {
+        if (isLoggable(BranchLogLevel.INFO)) i(formatMessage(format, arg1, arg2, arg3, arg4))
+    }
+
+    @JvmStatic
+    fun i(format: String, arg1: Any?, arg2: Any?, arg3: Any?, arg4: Any?, vararg args: Any?) {
+        if (isLoggable(BranchLogLevel.INFO)) i(formatMessage(format, arg1, arg2, arg3, arg4, *args))
+    }
+
+    @JvmStatic
+    fun d(format: String, arg: Any?) {
+        if (isLoggable(BranchLogLevel.DEBUG)) d(formatMessage(format, arg))
+    }
+
+    @JvmStatic
+    fun d(format: String, arg1: Any?, arg2: Any?) {
+        if (isLoggable(BranchLogLevel.DEBUG)) d(formatMessage(format, arg1, arg2))
+    }
+
+    @JvmStatic
+    fun d(format: String, arg1: Any?, arg2: Any?, arg3: Any?) {
+        if (isLoggable(BranchLogLevel.DEBUG)) d(formatMessage(format, arg1, arg2, arg3))
+    }
+
+    @JvmStatic
+    fun d(format: String, arg1: Any?, arg2: Any?, arg3: Any?, arg4: Any?) {
+        if (isLoggable(BranchLogLevel.DEBUG)) d(formatMessage(format, arg1, arg2, arg3, arg4))
+    }
+
+    @JvmStatic
+    fun d(format: String, arg1: Any?, arg2: Any?, arg3: Any?, arg4: Any?, vararg args: Any?) {
+        if (isLoggable(BranchLogLevel.DEBUG)) d(formatMessage(format, arg1, arg2, arg3, arg4, *args))
+    }
+
+    @JvmStatic
+    fun v(format: String, arg: Any?) {
+        if (isLoggable(BranchLogLevel.VERBOSE)) v(formatMessage(format, arg))
+    }
+
+    @JvmStatic
+    fun v(format: String, arg1: Any?, arg2: Any?) {
+        if (isLoggable(BranchLogLevel.VERBOSE)) v(formatMessage(format, arg1, arg2))
+    }
+
+    @JvmStatic
+    fun v(format: String, arg1: Any?, arg2: Any?, arg3: Any?) {
+        if (isLoggable(BranchLogLevel.VERBOSE)) v(formatMessage(format, arg1, arg2, arg3))
+    }
+
+    @JvmStatic
+    fun v(format: String, arg1: Any?, arg2: Any?, arg3: Any?, arg4: Any?) {
+        if (isLoggable(BranchLogLevel.VERBOSE)) v(formatMessage(format, arg1, arg2, arg3, arg4))
+    }
+
+    @JvmStatic
+    fun v(format: String, arg1: Any?, arg2: Any?, arg3: Any?, arg4: Any?, vararg args: Any?) {
+        if (isLoggable(BranchLogLevel.VERBOSE)) v(formatMessage(format, arg1, arg2, arg3, arg4, *args))
+    }
+
+    private fun formatMessage(format: String, vararg args: Any?): String {
+        val formatArgs = Array(args.size) { i ->
+            val arg = args[i]
+            if (arg is Throwable) {
+                val writer = StringWriter()
+                arg.printStackTrace(PrintWriter(writer))
+                writer.toString()
             } else {
-                Log.v(TAG, message)
+                arg
             }
         }
+        return try {
+            String.format(Locale.US, format, *formatArgs)
+        } catch (e: IllegalFormatException) {
+            format + " " + formatArgs.contentToString()
+        }
     }
 
     @JvmStatic
     fun logAlways(message: String) {
         if (message.isNotEmpty()) {
-            if (useCustomLogger()) {
-                loggerCallback?.onBranchLog(message, "INFO")
-            } else {
-                Log.i(TAG, message)
+            log(BranchLogLevel.INFO, message)
+        }
+    }
+
+    private fun log(level: BranchLogLevel, message: String) {
+        val sink = logSink
+        if (sink != null) {
+            sink.append(level, message)
+        } else {
+            output(level, message)
+        }
+    }
+
+    private fun output(level: BranchLogLevel, message: String) {
+        if (useCustomLogger()) {
+            loggerCallback?.onBranchLog(message, level.name)
+        } else {
+            when (level) {
+                BranchLogLevel.ERROR -> Log.e(TAG, message)
+                BranchLogLevel.WARN -> Log.w(TAG, message)
+                BranchLogLevel.INFO -> Log.i(TAG, message)
+                BranchLogLevel.DEBUG -> Log.d(TAG, message)
+                BranchLogLevel.VERBOSE -> Log.v(TAG, message)
             }
         }
     }
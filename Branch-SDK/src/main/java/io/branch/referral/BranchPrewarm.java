@@ -0,0 +1,102 @@
+package io.branch.referral;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>Reads the files the {@link Branch} instance is created from on a background thread, before the
+ * app asks for the instance: the branch.json config, and the SDK and request queue
+ * SharedPreferences files. Started with {@link Branch#prewarm(Context)}.</p>
+ * <p>Only the files are loaded, the SDK objects are still created by
+ * {@link Branch#getAutoInstance(Context)}, so settings made after the warm up, like
+ * {@link Branch#enableBinaryPrefStorage()}, still apply. The context keeps the loaded preferences
+ * in memory, and a read of a file still being loaded waits for it instead of loading it again.</p>
+ */
+final class BranchPrewarm {
+    private static BranchPrewarm instance_;
+
+    private final CountDownLatch done_ = new CountDownLatch(1);
+    private final long startMillis_;
+    private volatile long warmUpMillis_ = -1;
+
+    private BranchPrewarm() {
+        startMillis_ = SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Starts the warm up, if it was not started yet.
+     */
+    static synchronized void start(Context context) {
+        if (instance_ != null) {
+            return;
+        }
+        instance_ = new BranchPrewarm();
+        instance_.run(context.getApplicationContext());
+    }
+
+    static synchronized BranchPrewarm getInstance() {
+        return instance_;
+    }
+
+    private void run(Context context) {
+        new PrewarmTask(context).executeTask();
+    }
+
+    private class PrewarmTask extends BranchAsyncTask<Void, Void, Void> {
+        private final Context context;
+
+        private PrewarmTask(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            try {
+                BranchJsonConfig.getInstance(context);
+                loadPreferences(PrefHelper.SHARED_PREF_FILE);
+                loadPreferences(ServerRequestQueue.SHARED_PREF_FILE);
+            } catch (Exception e) {
+                // The instance loads whatever is missing when it is created
+                BranchLogger.w("Failed to prewarm the Branch SDK, " + e.getMessage());
+            } finally {
+                warmUpMillis_ = SystemClock.elapsedRealtime() - startMillis_;
+                BranchLogger.v("Branch SDK prewarmed in %s ms", warmUpMillis_);
+                done_.countDown();
+            }
+            return null;
+        }
+
+        private void loadPreferences(String fileName) {
+            // Any read blocks until the file is loaded
+            context.getSharedPreferences(fileName, Context.MODE_PRIVATE).contains(fileName);
+        }
+    }
+
+    /**
+     * Waits for the warm up to finish.
+     *
+     * @return {@code true} if it finished before the timeout.
+     */
+    boolean await(long timeoutMillis) throws InterruptedException {
+        return done_.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    boolean isDone() {
+        return done_.getCount() == 0;
+    }
+
+    /**
+     * @return The time the warm up took, or -1 if it is in progress.
+     */
+    long getWarmUpMillis() {
+        return warmUpMillis_;
+    }
+
+    // For Unit Testing, we need to reset the Branch state
+    static synchronized void shutDown() {
+        instance_ = null;
+    }
+}
@@ -0,0 +1,61 @@
+package io.branch.referral;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * <p>Calls {@link Branch#prewarm(android.content.Context)} when the app process starts, before
+ * {@link android.app.Application#onCreate()}. It is not declared by the SDK, to opt in add it to the
+ * app manifest:</p>
+ * <pre>
+ * &lt;provider
+ *     android:name="io.branch.referral.BranchPrewarmProvider"
+ *     android:authorities="${applicationId}.branchprewarm"
+ *     android:exported="false" /&gt;
+ * </pre>
+ */
+public class BranchPrewarmProvider extends ContentProvider {
+
+    @Override
+    public boolean onCreate() {
+        if (getContext() != null) {
+            Branch.prewarm(getContext());
+        }
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection,
+                      @Nullable String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,28 @@
+package io.branch.referral;
+
+import org.json.JSONObject;
+
+/**
+ * Class for reconciling the provisional params given to a {@link Branch.BranchProvisionalInitListener}
+ * with the params of the init response, before passing the response on.
+ */
+class BranchProvisionalInitWrapper implements Branch.BranchReferralInitListener {
+    private final Branch.BranchProvisionalInitListener provisionalInitListener_;
+    private JSONObject provisionalParams_;
+
+    BranchProvisionalInitWrapper(Branch.BranchProvisionalInitListener provisionalInitListener, JSONObject provisionalParams) {
+        this.provisionalInitListener_ = provisionalInitListener;
+        this.provisionalParams_ = provisionalParams;
+    }
+
+    @Override
+    public void onInitFinished(JSONObject referringParams, BranchError error) {
+        if (provisionalParams_ != null) {
+            boolean confirmed = error == null && LongLinkDecoder.matches(provisionalParams_, referringParams);
+            BranchLogger.v("Provisional link params " + (confirmed ? "confirmed" : "not confirmed") + " by the init response");
+            provisionalParams_ = null;
+            provisionalInitListener_.onProvisionalParamsReconciled(confirmed);
+        }
+        provisionalInitListener_.onInitFinished(referringParams, error);
+    }
+}
@@ -1,25 +1,125 @@
 package io.branch.referral;
 
 import android.content.Context;
+import android.os.AsyncTask;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * <p>Cache of QR codes created by the Branch API, keyed by a canonical fingerprint of the QR code
+ * parameters, see {@link BranchLinkData.Fingerprint}. The creation timestamp of the content is not
+ * part of the key, so the same content and settings always map to the same QR code. Entries keep
+ * their parameters, so that parameters with a colliding fingerprint are a miss rather than served
+ * the QR code of other parameters.</p>
+ * <p>The cache is a least recently used map bounded by the total bytes of the cached images.
+ * Optionally, images are written through to a disk tier in the app cache directory, bounded
+ * separately, so QR codes created in a previous session are served without a request. The disk
+ * tier is only read and written on a background thread, one task at a time, see
+ * {@link #checkDiskCache(JSONObject, DiskCacheListener)}.</p>
+ */
 public class BranchQRCodeCache {
+    private static final String DISK_CACHE_DIR = "branch_qr_codes";
+
+    static final long DEFAULT_MAX_BYTES = 1024 * 1024; // 1MB
+    static final long DEFAULT_MAX_DISK_BYTES = 4 * 1024 * 1024; // 4MB
+
+    // Rough per-entry overhead of the map node, the entry object, the boxed key and the array header
+    private static final int ENTRY_OVERHEAD_BYTES = 64;
 
     private final SystemObserver systemObserver_;
     private final Context context_;
+    private File diskCacheDir_;
+
+    private final LinkedHashMap<Long, Entry> cache_ = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes_ = DEFAULT_MAX_BYTES;
+    private long sizeBytes_ = 0;
 
+    private boolean persistenceEnabled_ = false;
+    private long maxDiskBytes_ = DEFAULT_MAX_DISK_BYTES;
+
+    /**
+     * The last QR code added to the cache, keyed by its parameters. Entries put here are also found
+     * by {@link #checkQRCodeCache(JSONObject)}.
+     *
+     * @deprecated The cache holds multiple QR codes, use {@link #checkQRCodeCache(JSONObject)},
+     * {@link #addQRCodeToCache(JSONObject, byte[])} and {@link #clear()} instead.
+     */
+    @Deprecated
     public ConcurrentHashMap<JSONObject, byte[]> cache = new ConcurrentHashMap<>();
 
+    private long hitCount_ = 0;
+    private long diskHitCount_ = 0;
+    private long missCount_ = 0;
+    private long evictionCount_ = 0;
+
+    // Disk reads and writes, run in order on the executor
+    private final Executor diskExecutor_;
+    private final ArrayDeque<Runnable> diskTasks_ = new ArrayDeque<>();
+    private boolean diskTasksScheduled_ = false;
+
+    private final Runnable runDiskTasks_ = new Runnable() {
+        @Override
+        public void run() {
+            while (true) {
+                Runnable task;
+                synchronized (diskTasks_) {
+                    task = diskTasks_.poll();
+                    if (task == null) {
+                        diskTasksScheduled_ = false;
+                        return;
+                    }
+                }
+                task.run();
+            }
+        }
+    };
+
+    private static class Entry {
+        final JSONObject keyParameters;
+        final byte[] qrCodeData;
+
+        Entry(JSONObject keyParameters, byte[] qrCodeData) {
+            this.keyParameters = keyParameters;
+            this.qrCodeData = qrCodeData;
+        }
+    }
+
+    /**
+     * Receives the result of {@link #checkDiskCache(JSONObject, DiskCacheListener)}.
+     */
+    public interface DiskCacheListener {
+        /**
+         * Called on the background thread that read the disk tier.
+         *
+         * @param qrCodeData The QR code found on disk, or null.
+         */
+        void onDiskCacheChecked(byte[] qrCodeData);
+    }
+
     /**
      * Get the singleton instance for this class
      *
@@ -32,7 +132,13 @@ public class BranchQRCodeCache {
     }
 
     BranchQRCodeCache(Context context) {
+        this(context, null, AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    BranchQRCodeCache(Context context, File diskCacheDir, Executor diskExecutor) {
         context_ = context;
+        diskCacheDir_ = diskCacheDir;
+        diskExecutor_ = diskExecutor;
         systemObserver_ = new BranchQRCodeCache.SystemObserverInstance();
     }
 
@@ -52,37 +158,399 @@ public class BranchQRCodeCache {
         return systemObserver_;
     }
 
+    /**
+     * <p>Sets the maximum total bytes of the QR codes kept in memory. Default 1MB.</p>
+     *
+     * @param maxBytes A {@link Long} value greater than 0.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        if (maxBytes > 0) {
+            maxBytes_ = maxBytes;
+            trimToSize();
+        }
+    }
+
+    /**
+     * <p>Sets the maximum total bytes of the QR codes kept on disk. Default 4MB.</p>
+     *
+     * @param maxDiskBytes A {@link Long} value greater than 0.
+     */
+    public synchronized void setMaxDiskBytes(long maxDiskBytes) {
+        if (maxDiskBytes > 0) {
+            maxDiskBytes_ = maxDiskBytes;
+            if (persistenceEnabled_) trimDiskToSize(maxDiskBytes);
+        }
+    }
+
+    /**
+     * <p>Enables or disables the disk tier. When enabled, cached QR codes survive app restarts.
+     * Disabling the disk tier deletes the QR codes stored on disk. Disabled by default.</p>
+     *
+     * @param enabled {@code true} to persist cached QR codes.
+     */
+    public synchronized void setPersistenceEnabled(boolean enabled) {
+        if (persistenceEnabled_ == enabled) return;
+        persistenceEnabled_ = enabled;
+        if (enabled) {
+            for (Map.Entry<Long, Entry> e : cache_.entrySet()) {
+                writeToDisk(e.getKey(), e.getValue());
+            }
+            trimDiskToSize(maxDiskBytes_);
+        } else {
+            clearDisk();
+        }
+    }
+
+    public synchronized boolean isPersistenceEnabled() {
+        return persistenceEnabled_;
+    }
+
     //QR Code Caching Functions
-    public void addQRCodeToCache(JSONObject parameters, byte[] qrCodeData) {
+    public synchronized void addQRCodeToCache(JSONObject parameters, byte[] qrCodeData) {
+        if (parameters == null || qrCodeData == null) return;
+
+        JSONObject keyParameters = keyParametersOf(parameters);
+        long key = BranchLinkData.Fingerprint.of(keyParameters);
+        Entry entry = new Entry(ParsedJsonCache.deepCopy(keyParameters), qrCodeData);
+        putEntry(key, entry);
+        trimToSize();
+
+        if (persistenceEnabled_) {
+            writeToDisk(key, entry);
+            trimDiskToSize(maxDiskBytes_);
+        }
+
         cache.clear();
-        try {
-            parameters.getJSONObject("data").remove(Defines.Jsonkey.CreationTimestamp.getKey());
+        if (cache_.containsKey(key)) {
             cache.put(parameters, qrCodeData);
+        }
+    }
+
+    /**
+     * Looks up the QR code in memory. When the disk tier is enabled, a miss is then looked up on
+     * disk with {@link #checkDiskCache(JSONObject, DiskCacheListener)}.
+     */
+    public synchronized byte[] checkQRCodeCache(JSONObject parameters) {
+        if (parameters == null) return null;
+
+        JSONObject keyParameters = keyParametersOf(parameters);
+        long key = BranchLinkData.Fingerprint.of(keyParameters);
+        Entry entry = cache_.get(key);
+        if (entry != null && BranchLinkData.valuesEqual(entry.keyParameters, keyParameters)) {
+            hitCount_++;
+            return entry.qrCodeData;
+        }
+
+        // QR codes put in the deprecated public map by the app
+        for (Map.Entry<JSONObject, byte[]> e : cache.entrySet()) {
+            JSONObject mapKeyParameters = keyParametersOf(e.getKey());
+            if (BranchLinkData.Fingerprint.of(mapKeyParameters) == key
+                    && BranchLinkData.valuesEqual(mapKeyParameters, keyParameters)) {
+                hitCount_++;
+                return e.getValue();
+            }
+        }
+
+        if (!persistenceEnabled_) {
+            missCount_++;
+        }
+        return null;
+    }
+
+    /**
+     * Looks up the QR code on disk in the background, and keeps it in memory if found.
+     *
+     * @param parameters The QR code parameters, not found by {@link #checkQRCodeCache(JSONObject)}.
+     * @param listener   Called with the result on the background thread.
+     */
+    public void checkDiskCache(JSONObject parameters, final DiskCacheListener listener) {
+        final JSONObject keyParameters = ParsedJsonCache.deepCopy(keyParametersOf(parameters));
+        final long key = BranchLinkData.Fingerprint.of(keyParameters);
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] qrCodeData = readFromDisk(key, keyParameters);
+                synchronized (BranchQRCodeCache.this) {
+                    if (qrCodeData != null) {
+                        diskHitCount_++;
+                        putEntry(key, new Entry(keyParameters, qrCodeData));
+                        trimToSize();
+                    } else {
+                        missCount_++;
+                    }
+                }
+                listener.onDiskCacheChecked(qrCodeData);
+            }
+        });
+    }
+
+    /**
+     * Clears the cache, including the disk tier.
+     */
+    public synchronized void clear() {
+        cache_.clear();
+        cache.clear();
+        sizeBytes_ = 0;
+        clearDisk();
+    }
+
+    public synchronized int size() {
+        return cache_.size();
+    }
+
+    public synchronized long getSizeBytes() {
+        return sizeBytes_;
+    }
+
+    /**
+     * @return The number of lookups served from memory.
+     */
+    public synchronized long getHitCount() {
+        return hitCount_;
+    }
+
+    /**
+     * @return The number of lookups served from the disk tier.
+     */
+    public synchronized long getDiskHitCount() {
+        return diskHitCount_;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount_;
+    }
+
+    /**
+     * @return The ratio of lookups served from memory or disk, between 0 and 1.
+     */
+    public synchronized double getHitRatio() {
+        long hits = hitCount_ + diskHitCount_;
+        long lookups = hits + missCount_;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return The number of QR codes evicted from memory to stay within the size bound.
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount_;
+    }
+
+    /**
+     * <p>Returns the cache key of QR code parameters: the fingerprint of the parameters without the
+     * creation timestamp of the content. The parameters are not modified.</p>
+     */
+    static long keyOf(JSONObject parameters) {
+        return BranchLinkData.Fingerprint.of(keyParametersOf(parameters));
+    }
+
+    /**
+     * @return The parameters without the creation timestamp of the content, sharing their values.
+     */
+    private static JSONObject keyParametersOf(JSONObject parameters) {
+        JSONObject data = parameters.optJSONObject(Defines.Jsonkey.QRCodeData.getKey());
+        if (data == null || !data.has(Defines.Jsonkey.CreationTimestamp.getKey())) {
+            return parameters;
+        }
+        try {
+            // Shallow copies, only the top level and the data object are rebuilt
+            JSONObject keyData = new JSONObject();
+            Iterator<String> dataKeys = data.keys();
+            while (dataKeys.hasNext()) {
+                String dataKey = dataKeys.next();
+                if (!Defines.Jsonkey.CreationTimestamp.getKey().equals(dataKey)) {
+                    keyData.put(dataKey, data.opt(dataKey));
+                }
+            }
+            JSONObject keyParameters = new JSONObject();
+            Iterator<String> keys = parameters.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                keyParameters.put(key, Defines.Jsonkey.QRCodeData.getKey().equals(key) ? keyData : parameters.opt(key));
+            }
+            return keyParameters;
         } catch (JSONException e) {
-            e.printStackTrace();
+            BranchLogger.w("Caught JSONException " + e.getMessage());
+            return parameters;
         }
     }
 
-    public byte[] checkQRCodeCache(JSONObject parameters) {
-        if (cache.isEmpty()) {
-            return null;
+    private static int sizeOf(byte[] qrCodeData) {
+        return qrCodeData.length + ENTRY_OVERHEAD_BYTES;
+    }
+
+    private void putEntry(long key, Entry entry) {
+        Entry previous = cache_.put(key, entry);
+        if (previous != null) {
+            sizeBytes_ -= sizeOf(previous.qrCodeData);
+        }
+        sizeBytes_ += sizeOf(entry.qrCodeData);
+    }
+
+    private void trimToSize() {
+        Iterator<Entry> eldest = cache_.values().iterator();
+        while (sizeBytes_ > maxBytes_ && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            eldest.remove();
+            sizeBytes_ -= sizeOf(evicted.qrCodeData);
+            evictionCount_++;
+        }
+    }
+
+    private void runOnDiskThread(Runnable task) {
+        synchronized (diskTasks_) {
+            diskTasks_.add(task);
+            if (diskTasksScheduled_) return;
+            diskTasksScheduled_ = true;
         }
         try {
-            parameters.getJSONObject("data").remove(Defines.Jsonkey.CreationTimestamp.getKey());
-            JSONObject cacheParam = (JSONObject) cache.keySet().iterator().next();
+            diskExecutor_.execute(runDiskTasks_);
+        } catch (RejectedExecutionException e) {
+            runDiskTasks_.run();
+        }
+    }
+
+    // Only called on the disk thread
+    private File getDiskCacheDir() {
+        if (diskCacheDir_ == null) {
+            diskCacheDir_ = new File(context_.getCacheDir(), DISK_CACHE_DIR);
+        }
+        return diskCacheDir_;
+    }
 
-            if (areEqual(parameters, cacheParam)) {
-                return cache.get(cacheParam);
-            } else {
+    private File getDiskCacheFile(long key) {
+        return new File(getDiskCacheDir(), Long.toHexString(key));
+    }
+
+    /**
+     * Writes the entry in the background. A file holds the length of the parameters as Json, the
+     * parameters, then the image.
+     */
+    private void writeToDisk(final long key, final Entry entry) {
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                File dir = getDiskCacheDir();
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    BranchLogger.w("Could not create the QR code disk cache directory");
+                    return;
+                }
+                File file = getDiskCacheFile(key);
+                DataOutputStream out = null;
+                try {
+                    byte[] parameters = entry.keyParameters.toString().getBytes("UTF-8");
+                    out = new DataOutputStream(new FileOutputStream(file));
+                    out.writeInt(parameters.length);
+                    out.write(parameters);
+                    out.write(entry.qrCodeData);
+                } catch (IOException e) {
+                    BranchLogger.w("Caught IOException " + e.getMessage());
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                } finally {
+                    closeQuietly(out);
+                }
+            }
+        });
+    }
+
+    // Only called on the disk thread
+    private byte[] readFromDisk(long key, JSONObject keyParameters) {
+        File file = getDiskCacheFile(key);
+        if (!file.isFile()) return null;
+
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(file));
+            int parametersLength = in.readInt();
+            if (parametersLength < 0 || parametersLength > file.length() - 4) {
+                throw new IOException("Invalid QR code file");
+            }
+            byte[] parameters = new byte[parametersLength];
+            in.readFully(parameters);
+            // Compared as read back from Json, where e.g. a small long becomes an int
+            JSONObject storedParameters = new JSONObject(new String(parameters, "UTF-8"));
+            if (!BranchLinkData.valuesEqual(storedParameters, new JSONObject(keyParameters.toString()))) {
+                BranchLogger.v("QR code fingerprint collision, not using the cached QR code");
                 return null;
             }
-        } catch (JSONException e) {
-            e.printStackTrace();
+            byte[] qrCodeData = new byte[(int) file.length() - 4 - parametersLength];
+            in.readFully(qrCodeData);
+            // Keeps the disk tier least recently used as well
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return qrCodeData;
+        } catch (IOException | JSONException e) {
+            BranchLogger.w("Caught " + e.getClass().getSimpleName() + " " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
             return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void trimDiskToSize(final long maxDiskBytes) {
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                // Without a context there is no disk tier to clear
+                if (diskCacheDir_ == null && context_ == null) return;
+                File[] files = getDiskCacheDir().listFiles();
+                if (files == null) return;
+
+                long diskBytes = 0;
+                for (File file : files) {
+                    diskBytes += file.length();
+                }
+                if (diskBytes <= maxDiskBytes) return;
+
+                List<File> eldestFirst = new ArrayList<>(files.length);
+                Collections.addAll(eldestFirst, files);
+                Collections.sort(eldestFirst, new Comparator<File>() {
+                    @Override
+                    public int compare(File f1, File f2) {
+                        return Long.compare(f1.lastModified(), f2.lastModified());
+                    }
+                });
+                for (File file : eldestFirst) {
+                    if (diskBytes <= maxDiskBytes) break;
+                    long length = file.length();
+                    if (file.delete()) {
+                        diskBytes -= length;
+                    }
+                }
+            }
+        });
+    }
+
+    private void clearDisk() {
+        runOnDiskThread(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = getDiskCacheDir().listFiles();
+                if (files == null) return;
+                for (File file : files) {
+                    //noinspection ResultOfMethodCallIgnored
+                    file.delete();
+                }
+            }
+        });
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
         }
     }
 
     //Helper Functions
+    /**
+     * @deprecated No longer used by the cache, which compares QR code parameters by fingerprint.
+     */
+    @Deprecated
     public static boolean areEqual(Object ob1, Object ob2) throws JSONException {
         Object obj1Converted = convertJsonElement(ob1);
         Object obj2Converted = convertJsonElement(ob2);
@@ -111,5 +579,3 @@ public class BranchQRCodeCache {
         }
     }
 }
-
-
@@ -83,6 +83,12 @@ public class BranchShareSheetBuilder {
         copyURlText_ = "Copy link";
         urlCopiedMessage_ = "Copied link to clipboard!";
 
+        // Resolves the apps of the share sheet and their icons before it is shown
+        ShareTargetCache shareTargetCache = ShareTargetCache.getInstance();
+        if (shareTargetCache != null) {
+            shareTargetCache.warmUp();
+        }
+
         if (Branch.getInstance().getDeviceInfo().isTV()) {
             // Google TV includes a default, stub email app, so the system will appear to have an
             // email app installed, even when there is none. (https://stackoverflow.com/a/10341104)
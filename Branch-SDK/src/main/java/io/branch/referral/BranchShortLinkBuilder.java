@@ -2,6 +2,8 @@ package io.branch.referral;
 
 import android.content.Context;
 
+import androidx.annotation.Nullable;
+
 import org.json.JSONObject;
 
 /**
@@ -139,4 +141,17 @@ public class BranchShortLinkBuilder extends BranchUrlBuilder<BranchShortLinkBuil
     public void generateShortUrl(Branch.BranchLinkCreateListener callback) {
         super.generateUrlInternal(callback);
     }
+
+    /**
+     * <p>Returns a url for the link immediately, without waiting for the network. If the short url is
+     * in the link cache it is returned, otherwise the long url is returned and the short url is created
+     * in the background. Once created, the short url is put in the link cache and the
+     * {@link Branch.BranchLinkUpgradeListener} is called, so the app can replace the long url.</p>
+     *
+     * @param listener A {@link Branch.BranchLinkUpgradeListener} called when the short url is available. Not called for cached urls.
+     * @return A {@link String} containing the short url if cached, else the long url. Null is returned if Branch is not initialised.
+     */
+    public String getShortUrlOfflineFirst(@Nullable Branch.BranchLinkUpgradeListener listener) {
+        return super.getUrlOfflineFirst(listener);
+    }
 }
@@ -0,0 +1,194 @@
+package io.branch.referral;
+
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * <p>Timeline of the phases of SDK initialization, from {@link Branch#getAutoInstance(android.content.Context)}
+ * to the init callback, for every session initialized. Get it with {@link Branch#getStartupTimeline()}.</p>
+ * <p>The phases are also emitted as {@link Trace} sections, so they show in Perfetto and systrace
+ * captures: the work done on the calling thread as sections named "Branch ...", and the init, the wait
+ * locks and the network requests, which span several threads, as async sections (Android 10 and above).</p>
+ */
+public final class BranchStartupTimeline {
+    // Oldest events are dropped past this count
+    static final int MAX_EVENTS = 256;
+
+    public enum Phase {
+        /** The Branch instance is being created. */
+        INSTANCE_CREATION_STARTED,
+        /** The Branch instance was created. */
+        INSTANCE_CREATED,
+        /** {@link Branch.InitSessionBuilder#init()} was called. */
+        INIT_STARTED,
+        /** The init request was queued, waiting for its wait locks. */
+        INIT_QUEUED,
+        /** The activity intent was ready, on resume. */
+        INTENT_READY,
+        /** A wait lock of the init request was released, the detail is the lock. */
+        WAIT_LOCK_RELEASED,
+        /** The init request was sent. */
+        INIT_REQUEST_SENT,
+        /** The init response was received, the detail is the status code. */
+        INIT_RESPONSE_RECEIVED,
+        /** The init callback was called, the detail is the error code if the init failed. */
+        INIT_FINISHED
+    }
+
+    /**
+     * A phase of an init.
+     */
+    public static final class Event {
+        private final int initIndex;
+        private final Phase phase;
+        private final String detail;
+        private final long elapsedRealtimeMillis;
+
+        Event(int initIndex, Phase phase, String detail, long elapsedRealtimeMillis) {
+            this.initIndex = initIndex;
+            this.phase = phase;
+            this.detail = detail;
+            this.elapsedRealtimeMillis = elapsedRealtimeMillis;
+        }
+
+        /**
+         * @return The index of the init this event is part of, 0 before the first init started.
+         */
+        public int getInitIndex() {
+            return initIndex;
+        }
+
+        public Phase getPhase() {
+            return phase;
+        }
+
+        /**
+         * @return Details of the phase, e.g. the wait lock released, or null.
+         */
+        public String getDetail() {
+            return detail;
+        }
+
+        /**
+         * @return The time of the event, in {@link SystemClock#elapsedRealtime()} milliseconds.
+         */
+        public long getElapsedRealtimeMillis() {
+            return elapsedRealtimeMillis;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return phase + (detail == null ? "" : " " + detail);
+        }
+    }
+
+    private static final BranchStartupTimeline instance_ = new BranchStartupTimeline();
+
+    private final LinkedList<Event> events_ = new LinkedList<>();
+    private int initIndex_ = 0;
+
+    private BranchStartupTimeline() {
+    }
+
+    /**
+     * Get the singleton instance for this class
+     *
+     * @return {@link BranchStartupTimeline} instance
+     */
+    public static BranchStartupTimeline getInstance() {
+        return instance_;
+    }
+
+    /**
+     * @return The events recorded, oldest first.
+     */
+    public synchronized List<Event> getEvents() {
+        return new ArrayList<>(events_);
+    }
+
+    /**
+     * @return The events of the latest init, including the instance creation before the first init.
+     */
+    public synchronized List<Event> getLatestInitEvents() {
+        List<Event> events = new ArrayList<>();
+        for (Event event : events_) {
+            if (event.initIndex == initIndex_ || (initIndex_ == 1 && event.initIndex == 0)) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    public synchronized void clear() {
+        events_.clear();
+        initIndex_ = 0;
+    }
+
+    /**
+     * @return The events, one per line, with the time since the first one.
+     */
+    @NonNull
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        long start = events_.isEmpty() ? 0 : events_.getFirst().elapsedRealtimeMillis;
+        for (Event event : events_) {
+            builder.append(String.format(Locale.US, "#%d +%dms %s%n", event.initIndex,
+                    event.elapsedRealtimeMillis - start, event));
+        }
+        return builder.toString();
+    }
+
+    synchronized void record(Phase phase, String detail) {
+        if (phase == Phase.INIT_STARTED) {
+            initIndex_++;
+        }
+        events_.add(new Event(initIndex_, phase, detail, SystemClock.elapsedRealtime()));
+        if (events_.size() > MAX_EVENTS) {
+            events_.removeFirst();
+        }
+    }
+
+    synchronized int getInitIndex() {
+        return initIndex_;
+    }
+
+    static void record(Phase phase) {
+        instance_.record(phase, null);
+    }
+
+    /**
+     * Starts a trace section on the calling thread, ended by {@link #endSection()} on the same thread.
+     */
+    static void beginSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    static void endSection() {
+        Trace.endSection();
+    }
+
+    /**
+     * Starts a trace section that may end on another thread, with the same name and cookie.
+     */
+    static void beginAsyncSection(String name, int cookie) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.beginAsyncSection(name, cookie);
+        }
+    }
+
+    static void endAsyncSection(String name, int cookie) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            Trace.endAsyncSection(name, cookie);
+        }
+    }
+}
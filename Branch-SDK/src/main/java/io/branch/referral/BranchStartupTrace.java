@@ -0,0 +1,75 @@
+package io.branch.referral;
+
+import android.os.Debug;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Trace of the SDK objects created, and of the classes loaded by the process, from the creation
+ * of the {@link Branch} instance to the first session initialization. Objects are recorded where they
+ * are created, so the {@link LazyHolder} objects only appear once they are first used.</p>
+ * <p>Logged in verbose when the first session is initialized.</p>
+ */
+final class BranchStartupTrace {
+    private static final List<String> objects_ = new ArrayList<>();
+    private static boolean started_ = false;
+    private static boolean finished_ = false;
+    private static int startClassCount_ = 0;
+    private static int loadedClassCount_ = -1;
+
+    private BranchStartupTrace() {
+    }
+
+    /**
+     * Starts the trace, when the {@link Branch} instance is being created.
+     */
+    static synchronized void start() {
+        objects_.clear();
+        started_ = true;
+        finished_ = false;
+        startClassCount_ = Debug.getLoadedClassCount();
+        loadedClassCount_ = -1;
+    }
+
+    static synchronized void recordObject(String name) {
+        if (started_ && !finished_) {
+            objects_.add(name);
+        }
+    }
+
+    /**
+     * Ends the trace, when the first session is initialized. Later calls are ignored.
+     */
+    static synchronized void finish() {
+        if (!started_ || finished_) {
+            return;
+        }
+        finished_ = true;
+        loadedClassCount_ = Debug.getLoadedClassCount() - startClassCount_;
+        BranchLogger.v("Before the first initSession: " + loadedClassCount_ + " classes loaded, "
+                + objects_.size() + " Branch objects created " + objects_);
+    }
+
+    /**
+     * @return The names of the objects created, in order.
+     */
+    static synchronized List<String> getObjects() {
+        return new ArrayList<>(objects_);
+    }
+
+    /**
+     * @return The number of classes loaded before the first session, or -1 if it was not initialized yet.
+     */
+    static synchronized int getLoadedClassCount() {
+        return loadedClassCount_;
+    }
+
+    // For Unit Testing, we need to reset the Branch state
+    static synchronized void shutDown() {
+        objects_.clear();
+        started_ = false;
+        finished_ = false;
+        loadedClassCount_ = -1;
+    }
+}
@@ -2,6 +2,8 @@ package io.branch.referral;
 
 import android.content.Context;
 
+import androidx.annotation.Nullable;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -125,12 +127,28 @@ abstract class BranchUrlBuilder<T extends BranchUrlBuilder> {
         return shortUrl;
     }
 
+    protected String getUrlOfflineFirst(@Nullable final Branch.BranchLinkUpgradeListener listener) {
+        String url = null;
+        if (branchReferral_ != null) {
+            final String[] longUrl = new String[1];
+            ServerRequestCreateUrl req = createUrlRequest(new Branch.BranchLinkCreateListener() {
+                @Override
+                public void onLinkCreate(String url, BranchError error) {
+                    // On failure the link stays the long url already handed out
+                    if (error == null && url != null && listener != null) {
+                        listener.onLinkUpgraded(longUrl[0], url);
+                    }
+                }
+            });
+            longUrl[0] = req.getLongUrl();
+            url = branchReferral_.generateShortLinkOfflineFirst(req, longUrl[0]);
+        }
+        return url;
+    }
+
     protected void generateUrlInternal(Branch.BranchLinkCreateListener callback) {
         if (branchReferral_ != null) {
-            ServerRequestCreateUrl req = new ServerRequestCreateUrl(context_, alias_, type_, duration_, tags_,
-                    channel_, feature_, stage_, campaign_,
-                    params_, callback, true, defaultToLongUrl_);
-            branchReferral_.generateShortLinkInternal(req);
+            branchReferral_.generateShortLinkInternal(createUrlRequest(callback));
         } else {
             if (callback != null) {
                 callback.onLinkCreate(null, new BranchError("session has not been initialized", BranchError.ERR_NO_SESSION));
@@ -138,4 +156,16 @@ abstract class BranchUrlBuilder<T extends BranchUrlBuilder> {
             BranchLogger.w("Warning: User session has not been initialized");
         }
     }
+
+    /**
+     * Creates an asynchronous request for the link described by this builder, without queueing it.
+     *
+     * @param callback A {@link Branch.BranchLinkCreateListener} notified with the created link
+     * @return A {@link ServerRequestCreateUrl} for the link described by this builder
+     */
+    ServerRequestCreateUrl createUrlRequest(Branch.BranchLinkCreateListener callback) {
+        return new ServerRequestCreateUrl(context_, alias_, type_, duration_, tags_,
+                channel_, feature_, stage_, campaign_,
+                params_, callback, true, defaultToLongUrl_);
+    }
 }
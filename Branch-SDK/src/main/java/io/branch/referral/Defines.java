@@ -252,6 +252,7 @@ public class Defines {
      */
     public enum RequestPath {
         GetURL("v1/url"),
+        GetURLBulk("v1/url/bulk/"),
         GetApp("v1/app-link-settings"),
         RegisterInstall("v1/install"),
         RegisterOpen("v1/open"),
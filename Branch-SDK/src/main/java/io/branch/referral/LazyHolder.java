@@ -0,0 +1,39 @@
+package io.branch.referral;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * <p>Holds an object created on its first {@link #get()}, for the parts of {@link Branch} that most
+ * apps never use, e.g. the QR code cache.</p>
+ * <p>Lock free: threads asking for the object at the same time may each create one, but only the
+ * first one stored is ever returned. The objects held must therefore be cheap to create and not start
+ * any work from their constructor.</p>
+ */
+abstract class LazyHolder<T> {
+    private final AtomicReference<T> value_ = new AtomicReference<>();
+
+    /**
+     * Creates the object, on the first {@link #get()}.
+     */
+    abstract T create();
+
+    T get() {
+        T value = value_.get();
+        if (value == null) {
+            T created = create();
+            if (value_.compareAndSet(null, created)) {
+                value = created;
+            } else {
+                value = value_.get();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return The object if it was created, without creating it.
+     */
+    T getIfCreated() {
+        return value_.get();
+    }
+}
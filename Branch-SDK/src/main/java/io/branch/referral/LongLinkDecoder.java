@@ -0,0 +1,179 @@
+package io.branch.referral;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Iterator;
+
+/**
+ * <p>Decodes the link params of a Branch long link locally, before the open request returns them.
+ * Long links are built by {@link LongUrlBuilder}: {@code <link domain>/a/<branch key>?} followed by
+ * the link properties and the params, Base64 encoded in the {@code data} query parameter.</p>
+ * <p>The decoded params are provisional, see {@link Branch.BranchProvisionalInitListener}: the server
+ * may add params, e.g. from the dashboard, or not recognize the link.</p>
+ * <p>Any app can open the app with any url, so only long links of this app are decoded: the key in
+ * the path must be the Branch key of the app, and the host one the app creates long links on, see
+ * {@link ServerRequestCreateUrl#getLongUrl()}.</p>
+ */
+final class LongLinkDecoder {
+    // The link properties are returned by the server with this prefix, e.g. "~channel"
+    private static final String LINK_PROPERTY_PREFIX = "~";
+
+    private LongLinkDecoder() {
+    }
+
+    /**
+     * @param url       The url the app was opened with.
+     * @param branchKey The Branch key of the app.
+     * @param userUrl   The base url of the links of the app returned by the server, or
+     *                  {@link PrefHelper#NO_STRING_VALUE} if there is none yet.
+     * @return The params of the link, or null if the url is not a long link of the app with params.
+     */
+    static JSONObject decode(String url, String branchKey, String userUrl) {
+        if (url == null || !isAppLongLink(url, branchKey, userUrl)) {
+            return null;
+        }
+        int queryStart = url.indexOf('?');
+        int fragmentStart = url.indexOf('#', queryStart);
+        String query = url.substring(queryStart + 1, fragmentStart < 0 ? url.length() : fragmentStart);
+
+        JSONObject linkProperties = new JSONObject();
+        JSONArray tags = new JSONArray();
+        JSONObject params = null;
+        try {
+            for (String pair : query.split("&")) {
+                int separator = pair.indexOf('=');
+                if (separator <= 0) continue;
+                String key = pair.substring(0, separator);
+                String value = URLDecoder.decode(pair.substring(separator + 1), "UTF-8");
+
+                if (key.equals("data")) {
+                    params = new JSONObject(new String(Base64.decode(value, Base64.NO_WRAP), "UTF-8"));
+                } else if (key.equals(Defines.LinkParam.Tags.getKey())) {
+                    tags.put(value);
+                } else if (key.equals(Defines.LinkParam.Channel.getKey())
+                        || key.equals(Defines.LinkParam.Feature.getKey())
+                        || key.equals(Defines.LinkParam.Stage.getKey())
+                        || key.equals(Defines.LinkParam.Campaign.getKey())) {
+                    linkProperties.put(LINK_PROPERTY_PREFIX + key, value);
+                }
+            }
+            if (params == null) {
+                return null;
+            }
+
+            Iterator<String> keys = linkProperties.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                params.put(key, linkProperties.get(key));
+            }
+            if (tags.length() > 0) {
+                params.put(LINK_PROPERTY_PREFIX + Defines.LinkParam.Tags.getKey(), tags);
+            }
+            params.put(Defines.Jsonkey.Clicked_Branch_Link.getKey(), true);
+            return params;
+        } catch (JSONException | UnsupportedEncodingException | IllegalArgumentException e) {
+            // Not params encoded by a Branch SDK, the server decides
+            BranchLogger.d("Cannot decode long link params: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Long links of the app have a path of /a/<branch key>, on the host of the links of the app or the default host
+    private static boolean isAppLongLink(String url, String branchKey, String userUrl) {
+        if (branchKey == null || !branchKey.startsWith("key_")) {
+            return false;
+        }
+        int queryStart = url.indexOf('?');
+        String host = hostOf(url);
+        if (queryStart < 0 || host == null) {
+            return false;
+        }
+        if (!host.equalsIgnoreCase(hostOf(ServerRequestCreateUrl.DEF_BASE_URL))
+                && !host.equalsIgnoreCase(hostOf(userUrl))) {
+            return false;
+        }
+        int pathStart = url.indexOf('/', url.indexOf("://") + 3);
+        if (pathStart < 0 || pathStart > queryStart) {
+            return false;
+        }
+        String[] segments = url.substring(pathStart + 1, queryStart).split("/");
+        for (int i = 0; i + 1 < segments.length; i++) {
+            if (segments[i].equals("a") && segments[i + 1].equals(branchKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The host of the http or https url, without the port, or null if it is not such a url
+     * or it has user info.
+     */
+    private static String hostOf(String url) {
+        if (url == null) {
+            return null;
+        }
+        int schemeEnd = url.indexOf("://");
+        if (schemeEnd < 0) {
+            return null;
+        }
+        String scheme = url.substring(0, schemeEnd);
+        if (!scheme.equalsIgnoreCase("https") && !scheme.equalsIgnoreCase("http")) {
+            return null;
+        }
+        int hostStart = schemeEnd + 3;
+        int hostEnd = hostStart;
+        while (hostEnd < url.length() && "/?#".indexOf(url.charAt(hostEnd)) < 0) {
+            hostEnd++;
+        }
+        String authority = url.substring(hostStart, hostEnd);
+        if (authority.indexOf('@') >= 0) {
+            return null;
+        }
+        int portStart = authority.indexOf(':');
+        String host = portStart < 0 ? authority : authority.substring(0, portStart);
+        return host.isEmpty() ? null : host;
+    }
+
+    /**
+     * @return Whether the server returned every provisional param with the same value.
+     */
+    static boolean matches(JSONObject provisional, JSONObject authoritative) {
+        if (authoritative == null) {
+            return false;
+        }
+        Iterator<String> keys = provisional.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!valuesMatch(provisional.opt(key), authoritative.opt(key))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean valuesMatch(Object expected, Object actual) {
+        if (expected instanceof JSONObject) {
+            return actual instanceof JSONObject && ((JSONObject) actual).length() == ((JSONObject) expected).length()
+                    && matches((JSONObject) expected, (JSONObject) actual);
+        } else if (expected instanceof JSONArray) {
+            if (!(actual instanceof JSONArray) || ((JSONArray) actual).length() != ((JSONArray) expected).length()) {
+                return false;
+            }
+            for (int i = 0; i < ((JSONArray) expected).length(); i++) {
+                if (!valuesMatch(((JSONArray) expected).opt(i), ((JSONArray) actual).opt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        } else if (expected instanceof Number) {
+            // Numbers may be parsed to different types, e.g. Integer and Long
+            return actual instanceof Number && expected.toString().equals(actual.toString());
+        }
+        return expected != null && expected.equals(actual);
+    }
+}
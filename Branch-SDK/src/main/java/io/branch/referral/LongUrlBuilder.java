@@ -0,0 +1,193 @@
+package io.branch.referral;
+
+import org.json.JSONObject;
+
+import java.util.Collection;
+
+/**
+ * <p>Builds the long url of a link, the url used when a short url cannot be created.</p>
+ * <p>The url is written into a single buffer, sized up front and reused by later calls on the same
+ * thread. Values are percent-encoded and the params are Base64 encoded while they are appended, so
+ * no intermediate strings are created. The output is identical to encoding every value with
+ * {@link java.net.URLEncoder} in UTF-8 and the params with {@link Base64#NO_WRAP}.</p>
+ */
+final class LongUrlBuilder {
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final char[] BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    // Buffers grown beyond this size, e.g. by links with large params, are not kept for reuse
+    static final int MAX_REUSED_CAPACITY = 8 * 1024;
+    static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<>();
+
+    private LongUrlBuilder() {
+    }
+
+    /**
+     * @param baseUrl  The url to append the link properties and params to.
+     * @param linkData The {@link BranchLinkData} of the link.
+     * @return The long url of the link.
+     */
+    static String build(String baseUrl, BranchLinkData linkData) {
+        JSONObject params = linkData.getParams();
+        byte[] data = (params != null && params.length() > 0) ? params.toString().getBytes() : null;
+
+        StringBuilder url = obtainBuffer(estimateLength(baseUrl, linkData, data));
+        url.append(baseUrl);
+        if (baseUrl.indexOf('?') < 0) {
+            url.append('?');
+        }
+        if (url.charAt(url.length() - 1) != '?') {
+            url.append('&');
+        }
+
+        Collection<String> tags = linkData.getTags();
+        if (tags != null) {
+            for (String tag : tags) {
+                appendParam(url, Defines.LinkParam.Tags, tag);
+            }
+        }
+        appendParam(url, Defines.LinkParam.Alias, linkData.getAlias());
+        appendParam(url, Defines.LinkParam.Channel, linkData.getChannel());
+        appendParam(url, Defines.LinkParam.Feature, linkData.getFeature());
+        appendParam(url, Defines.LinkParam.Stage, linkData.getStage());
+        appendParam(url, Defines.LinkParam.Campaign, linkData.getCampaign());
+
+        url.append(Defines.LinkParam.Type.getKey()).append('=').append(linkData.getType()).append('&');
+        url.append(Defines.LinkParam.Duration.getKey()).append('=').append(linkData.getDuration());
+        url.append("&source=").append(Defines.Jsonkey.URLSource.getKey());
+
+        if (data != null) {
+            url.append("&data=");
+            appendBase64Encoded(url, data);
+        }
+
+        String longUrl = url.toString();
+        if (url.capacity() > MAX_REUSED_CAPACITY) {
+            BUFFER.remove();
+        }
+        return longUrl;
+    }
+
+    private static StringBuilder obtainBuffer(int capacity) {
+        StringBuilder buffer = BUFFER.get();
+        if (buffer == null) {
+            buffer = new StringBuilder(capacity);
+            BUFFER.set(buffer);
+        } else {
+            buffer.setLength(0);
+            buffer.ensureCapacity(capacity);
+        }
+        return buffer;
+    }
+
+    // Upper bound for ASCII values, a little short for values that need escaping
+    static int estimateLength(String baseUrl, BranchLinkData linkData, byte[] data) {
+        int length = baseUrl.length() + 64;
+        Collection<String> tags = linkData.getTags();
+        if (tags != null) {
+            for (String tag : tags) {
+                length += estimateParamLength(tag);
+            }
+        }
+        length += estimateParamLength(linkData.getAlias());
+        length += estimateParamLength(linkData.getChannel());
+        length += estimateParamLength(linkData.getFeature());
+        length += estimateParamLength(linkData.getStage());
+        length += estimateParamLength(linkData.getCampaign());
+        if (data != null) {
+            // Base64 output, plus escaping of '+', '/' and '=' in about 1 of 32 chars
+            int base64Length = (data.length + 2) / 3 * 4;
+            length += base64Length + base64Length / 16 + 8;
+        }
+        return length;
+    }
+
+    private static int estimateParamLength(String value) {
+        return value == null ? 0 : value.length() + 12;
+    }
+
+    private static void appendParam(StringBuilder url, Defines.LinkParam key, String value) {
+        if (value != null && value.length() > 0) {
+            url.append(key.getKey()).append('=');
+            appendUrlEncoded(url, value);
+            url.append('&');
+        }
+    }
+
+    /**
+     * Same output as {@link java.net.URLEncoder#encode(String, String)} with UTF-8. Unpaired
+     * surrogates are encoded as '?', the replacement used by the UTF-8 encoder.
+     */
+    static void appendUrlEncoded(StringBuilder out, String value) {
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == '*') {
+                out.append(c);
+            } else if (c == ' ') {
+                out.append('+');
+            } else if (c < 0x80) {
+                appendEscaped(out, c);
+            } else if (c < 0x800) {
+                appendEscaped(out, 0xC0 | (c >> 6));
+                appendEscaped(out, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                appendEscaped(out, 0xF0 | (codePoint >> 18));
+                appendEscaped(out, 0x80 | ((codePoint >> 12) & 0x3F));
+                appendEscaped(out, 0x80 | ((codePoint >> 6) & 0x3F));
+                appendEscaped(out, 0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                appendEscaped(out, '?');
+            } else {
+                appendEscaped(out, 0xE0 | (c >> 12));
+                appendEscaped(out, 0x80 | ((c >> 6) & 0x3F));
+                appendEscaped(out, 0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static void appendEscaped(StringBuilder out, int b) {
+        out.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+    }
+
+    /**
+     * Same output as url encoding the {@link Base64#NO_WRAP} encoding of the data, i.e. padded
+     * standard Base64 with '+', '/' and '=' percent-encoded.
+     */
+    static void appendBase64Encoded(StringBuilder out, byte[] data) {
+        int i = 0;
+        for (; i + 2 < data.length; i += 3) {
+            int bits = ((data[i] & 0xFF) << 16) | ((data[i + 1] & 0xFF) << 8) | (data[i + 2] & 0xFF);
+            appendBase64Char(out, bits >> 18);
+            appendBase64Char(out, bits >> 12);
+            appendBase64Char(out, bits >> 6);
+            appendBase64Char(out, bits);
+        }
+        int remaining = data.length - i;
+        if (remaining == 1) {
+            int bits = (data[i] & 0xFF) << 16;
+            appendBase64Char(out, bits >> 18);
+            appendBase64Char(out, bits >> 12);
+            out.append("%3D%3D");
+        } else if (remaining == 2) {
+            int bits = ((data[i] & 0xFF) << 16) | ((data[i + 1] & 0xFF) << 8);
+            appendBase64Char(out, bits >> 18);
+            appendBase64Char(out, bits >> 12);
+            appendBase64Char(out, bits >> 6);
+            out.append("%3D");
+        }
+    }
+
+    private static void appendBase64Char(StringBuilder out, int sextet) {
+        char c = BASE64_ALPHABET[sextet & 0x3F];
+        if (c == '+') {
+            out.append("%2B");
+        } else if (c == '/') {
+            out.append("%2F");
+        } else {
+            out.append(c);
+        }
+    }
+}
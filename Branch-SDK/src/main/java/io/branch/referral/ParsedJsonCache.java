@@ -0,0 +1,99 @@
+package io.branch.referral;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+/**
+ * <p>Parse-once cache of a JSON value stored as a string in {@link PrefHelper}, e.g. the session
+ * params. The string is parsed the first time it is read, and again only after it changes.</p>
+ * <p>The parsed object never leaves the cache: {@link #get(String)} returns a deep copy, which the
+ * caller may modify as it always could, without corrupting the cached object. Copying is several
+ * times cheaper than parsing.</p>
+ */
+final class ParsedJsonCache {
+    private String source_;
+    private JSONObject parsed_;
+    private int parseCount_ = 0;
+
+    /**
+     * @param stored The stored string, as read from {@link PrefHelper}.
+     * @return A copy of the object parsed from the string, empty if it is not set or not valid.
+     */
+    synchronized JSONObject get(String stored) {
+        if (parsed_ == null || (stored != source_ && !stored.equals(source_))) {
+            parsed_ = parse(stored);
+            source_ = stored;
+            parseCount_++;
+        }
+        return deepCopy(parsed_);
+    }
+
+    /**
+     * Forgets the parsed object, when the stored string is set.
+     */
+    synchronized void invalidate() {
+        parsed_ = null;
+        source_ = null;
+    }
+
+    synchronized int getParseCount() {
+        return parseCount_;
+    }
+
+    /**
+     * Parses params stored as JSON, or as Base64 encoded JSON.
+     */
+    static JSONObject parse(String paramString) {
+        if (paramString.equals(PrefHelper.NO_STRING_VALUE)) {
+            return new JSONObject();
+        } else {
+            try {
+                return new JSONObject(paramString);
+            } catch (JSONException e) {
+                byte[] encodedArray = Base64.decode(paramString.getBytes(), Base64.NO_WRAP);
+                try {
+                    return new JSONObject(new String(encodedArray));
+                } catch (JSONException ex) {
+                    BranchLogger.d("Cannot parse params: " + ex.getMessage());
+                    return new JSONObject();
+                }
+            }
+        }
+    }
+
+    static JSONObject deepCopy(JSONObject object) {
+        JSONObject copy = new JSONObject();
+        Iterator<String> keys = object.keys();
+        try {
+            while (keys.hasNext()) {
+                String key = keys.next();
+                copy.put(key, copyValue(object.get(key)));
+            }
+        } catch (JSONException e) {
+            // Not possible, the values are read from a valid object
+            BranchLogger.d(e.getMessage());
+        }
+        return copy;
+    }
+
+    private static JSONArray deepCopy(JSONArray array) throws JSONException {
+        JSONArray copy = new JSONArray();
+        for (int i = 0; i < array.length(); i++) {
+            copy.put(copyValue(array.get(i)));
+        }
+        return copy;
+    }
+
+    private static Object copyValue(Object value) throws JSONException {
+        if (value instanceof JSONObject) {
+            return deepCopy((JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            return deepCopy((JSONArray) value);
+        }
+        // Strings, numbers, booleans and JSONObject.NULL are immutable
+        return value;
+    }
+}
@@ -5,7 +5,6 @@ import static io.branch.referral.BranchUtil.isTestModeEnabled;
 import android.app.Activity;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.content.SharedPreferences.Editor;
 import android.os.Build;
 import android.text.TextUtils;
 import android.webkit.URLUtil;
@@ -16,9 +15,12 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -62,8 +64,11 @@ public class PrefHelper {
     static final long MAX_VALID_WINDOW_FOR_REFERRER_GCLID = 100000000000L; // Arbitrary maximum window to prevent overflow, 3 years, in milliseconds
     static final long MIN_VALID_WINDOW_FOR_REFERRER_GCLID = 0L; // Don't allow time set in the past , in milliseconds
     static final int DEFAULT_NO_CONNECTION_RETRY_MAX = 3;
+    static final long DEFAULT_ADVERTISING_ID_CACHE_TTL = 0L; // Advertising id cache is disabled by default
+    static final long MAX_ADVERTISING_ID_CACHE_TTL = 604800000L; // Cached advertising ids are never trusted for more than 7 days, in milliseconds
 
-    private static final String SHARED_PREF_FILE = "branch_referral_shared_pref";
+    static final String SHARED_PREF_FILE = "branch_referral_shared_pref";
+    static final String COLD_SHARED_PREF_FILE = "branch_referral_shared_pref_cold";
     
     private static final String KEY_BRANCH_KEY = "bnc_branch_key";
     private static final String KEY_APP_VERSION = "bnc_app_version";
@@ -82,6 +87,11 @@ public class PrefHelper {
     private static final String KEY_GCLID_VALUE = "bnc_gclid_value";
     private static final String KEY_GCLID_EXPIRATION_DATE = "bnc_gclid_expiration_date";
     private static final String KEY_GCLID_VALID_FOR_WINDOW = "bnc_gclid_expiration_window";
+    private static final String KEY_ADVERTISING_ID_CACHE_JSON_OBJECT = "bnc_advertising_id_cache_json_object";
+    private static final String KEY_ADVERTISING_ID_CACHE_VALUE = "bnc_advertising_id_cache_value";
+    private static final String KEY_ADVERTISING_ID_CACHE_LAT = "bnc_advertising_id_cache_lat";
+    private static final String KEY_ADVERTISING_ID_CACHE_EXPIRATION_DATE = "bnc_advertising_id_cache_expiration_date";
+    private static final String KEY_ADVERTISING_ID_CACHE_TTL = "bnc_advertising_id_cache_ttl";
     private static final String KEY_APP_LINK = "bnc_app_link";
     private static final String KEY_PUSH_IDENTIFIER = "bnc_push_identifier";
     private static final String KEY_SESSION_PARAMS = "bnc_session_params";
@@ -129,6 +139,15 @@ public class PrefHelper {
 
     static final String KEY_IS_META_CLICKTHROUGH = "bnc_is_meta_clickthrough";
 
+    /**
+     * Keys of large values that init never reads, kept in a separate store loaded on first use, see
+     * {@link SplitPrefStorage}: the install params, read when the app asks for them, and the Google
+     * Click ID saved by older SDK versions.
+     */
+    static final Set<String> COLD_KEYS = new HashSet<>(Arrays.asList(
+            KEY_INSTALL_PARAMS,
+            KEY_GCLID_JSON_OBJECT));
+
     /**
      * Internal static variable of own type {@link PrefHelper}. This variable holds the single
      * instance used when the class is instantiated via the Singleton pattern.
@@ -143,10 +162,17 @@ public class PrefHelper {
     private final SharedPreferences appSharedPrefs_;
     
     /**
-     * A single variable that holds a reference to an {@link Editor} object that is used by the
-     * helper class whenever the preferences for the application are changed.
+     * Write layer in front of the storage, {@link #appSharedPrefs_} or a {@link BinaryPrefStorage},
+     * split with the store of the {@link #COLD_KEYS}, through which all values are read and written, so that unchanged values are not saved again and the values set in {@link #edit(Runnable)}
+     * are saved together.
+     */
+    private final PrefWriteBuffer prefsBuffer_;
+
+    /**
+     * The session and install params, parsed once from their stored strings.
      */
-    private Editor prefsEditor_;
+    private final ParsedJsonCache sessionParamsCache_ = new ParsedJsonCache();
+    private final ParsedJsonCache installParamsCache_ = new ParsedJsonCache();
     
     /**
      * Arbitrary key values added to all requests.
@@ -184,9 +210,24 @@ public class PrefHelper {
      * @param context A reference to the {@link Context} that the application is operating
      *                within. This is normally the base context of the application.
      */
-    private PrefHelper(Context context) {
+    private PrefHelper(final Context context) {
         this.appSharedPrefs_ = context.getSharedPreferences(SHARED_PREF_FILE, Context.MODE_PRIVATE);
-        this.prefsEditor_ = this.appSharedPrefs_.edit();
+        // Once migrated, the values are only in the binary file, which is read even if the setting is dropped
+        final boolean binary = useBinaryStorage_ || BinaryPrefStorage.exists(context);
+        PrefStorage hotStorage = binary
+                ? BinaryPrefStorage.open(context, BinaryPrefStorage.FILE_NAME, this.appSharedPrefs_)
+                : new SharedPreferencesStorage(this.appSharedPrefs_);
+        SplitPrefStorage.Loader coldLoader = new SplitPrefStorage.Loader() {
+            @Override
+            public PrefStorage load() {
+                SharedPreferences coldPrefs = context.getSharedPreferences(COLD_SHARED_PREF_FILE, Context.MODE_PRIVATE);
+                return binary
+                        ? BinaryPrefStorage.open(context, BinaryPrefStorage.COLD_FILE_NAME, coldPrefs)
+                        : new SharedPreferencesStorage(coldPrefs);
+            }
+        };
+        this.prefsBuffer_ = new PrefWriteBuffer(new SplitPrefStorage(hotStorage, coldLoader, COLD_KEYS));
+        BranchStartupTrace.recordObject("PrefHelper");
     }
     
     /**
@@ -198,7 +239,7 @@ public class PrefHelper {
      *                constructor method.
      * @return A {@link PrefHelper} object instance.
      */
-    public static PrefHelper getInstance(Context context) {
+    public static synchronized PrefHelper getInstance(Context context) {
         if (prefHelper_ == null) {
             prefHelper_ = new PrefHelper(context);
         }
@@ -207,16 +248,13 @@ public class PrefHelper {
 
     // Package Private
     static void shutDown() {
-        if (prefHelper_ != null) {
-            prefHelper_.prefsEditor_ = null;
-        }
-
         // Reset all of the statics.
         enableLogging_ = false;
         prefHelper_ = null;
         customCDNBaseURL_ = null;
         customServerURL_ = null;
         useEUEndpoint_ = false;
+        useBinaryStorage_ = false;
     }
 
     /**
@@ -823,6 +861,97 @@ public class PrefHelper {
         return getLong(KEY_GCLID_VALID_FOR_WINDOW, DEFAULT_VALID_WINDOW_FOR_REFERRER_GCLID);
     }
 
+    /**
+     * Persists the last fetched advertising id (GAID/OAID) and LAT value, with an expiration date
+     * computed by time set + advertising id cache TTL. Does nothing if the cache is disabled.
+     * @param advertisingId The advertising id, null if limit ad tracking is enabled
+     * @param lat The limit ad tracking value
+     */
+    public void setCachedAdvertisingId(String advertisingId, int lat) {
+        long ttl = getAdvertisingIdCacheTTL();
+        if (ttl <= 0) {
+            return;
+        }
+
+        JSONObject jsonObject = new JSONObject();
+        try {
+            jsonObject.putOpt(KEY_ADVERTISING_ID_CACHE_VALUE, advertisingId);
+            jsonObject.put(KEY_ADVERTISING_ID_CACHE_LAT, lat);
+            jsonObject.put(KEY_ADVERTISING_ID_CACHE_EXPIRATION_DATE, System.currentTimeMillis() + ttl);
+
+            setString(KEY_ADVERTISING_ID_CACHE_JSON_OBJECT, jsonObject.toString());
+        } catch (JSONException e) {
+            BranchLogger.w("Caught JSONException " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the persisted advertising id cache entry as a {@link JSONObject} holding the
+     * advertising id (absent when limit ad tracking is enabled) and the LAT value.
+     * If the cache is disabled or the expiry date has passed, the entry is deleted and null is returned.
+     * @return {@link JSONObject} with the cached values or null
+     */
+    JSONObject getCachedAdvertisingId() {
+        String cacheObjectString = getString(KEY_ADVERTISING_ID_CACHE_JSON_OBJECT);
+
+        if (cacheObjectString.equals(NO_STRING_VALUE)) {
+            return null;
+        }
+
+        JSONObject cachedAdvertisingId = null;
+
+        try {
+            JSONObject cacheJsonObject = new JSONObject(cacheObjectString);
+            long expiryDate = cacheJsonObject.getLong(KEY_ADVERTISING_ID_CACHE_EXPIRATION_DATE);
+
+            // The TTL may have been shortened or disabled since the entry was written
+            if (getAdvertisingIdCacheTTL() > 0 && expiryDate - System.currentTimeMillis() > 0) {
+                cachedAdvertisingId = cacheJsonObject;
+            }
+            else {
+                removePrefValue(KEY_ADVERTISING_ID_CACHE_JSON_OBJECT);
+            }
+        } catch (JSONException e) {
+            removePrefValue(KEY_ADVERTISING_ID_CACHE_JSON_OBJECT);
+            BranchLogger.w("Caught JSONException " + e.getMessage());
+        }
+
+        return cachedAdvertisingId;
+    }
+
+    String getCachedAdvertisingIdValue(@NonNull JSONObject cachedAdvertisingId) {
+        return cachedAdvertisingId.optString(KEY_ADVERTISING_ID_CACHE_VALUE, null);
+    }
+
+    int getCachedAdvertisingIdLAT(@NonNull JSONObject cachedAdvertisingId) {
+        return cachedAdvertisingId.optInt(KEY_ADVERTISING_ID_CACHE_LAT, 0);
+    }
+
+    public void clearCachedAdvertisingId() {
+        removePrefValue(KEY_ADVERTISING_ID_CACHE_JSON_OBJECT);
+    }
+
+    /**
+     * Sets the advertising id cache TTL in milliseconds. A value of 0 disables the cache.
+     * @param ttl
+     */
+    public void setAdvertisingIdCacheTTL(long ttl) {
+        if (MAX_ADVERTISING_ID_CACHE_TTL >= ttl && ttl >= 0) {
+            setLong(KEY_ADVERTISING_ID_CACHE_TTL, ttl);
+            if (ttl == 0) {
+                clearCachedAdvertisingId();
+            }
+        }
+    }
+
+    /**
+     * Gets the advertising id cache TTL in milliseconds
+     * @return
+     */
+    public long getAdvertisingIdCacheTTL() {
+        return getLong(KEY_ADVERTISING_ID_CACHE_TTL, DEFAULT_ADVERTISING_ID_CACHE_TTL);
+    }
+
     /**
      * <p> Set the KEY_APP_LINK {@link String} values that has been started the application. </p>
      *
@@ -898,6 +1027,17 @@ public class PrefHelper {
      */
     public void setSessionParams(String params) {
         setString(KEY_SESSION_PARAMS, params);
+        sessionParamsCache_.invalidate();
+    }
+
+    /**
+     * <p>Gets the session parameters, parsed. The parsed object is cached until the parameters are set
+     * again, and each call returns a copy of it, which the caller may modify.</p>
+     *
+     * @return A {@link JSONObject} of the parameters for the current session, empty if none.
+     */
+    JSONObject getSessionParamsJson() {
+        return sessionParamsCache_.get(getSessionParams());
     }
     
     /**
@@ -918,6 +1058,18 @@ public class PrefHelper {
      */
     public void setInstallParams(String params) {
         setString(KEY_INSTALL_PARAMS, params);
+        installParamsCache_.invalidate();
+    }
+
+    /**
+     * <p>Gets the parameters as they were at the time of installation, parsed. The parsed object is
+     * cached until the parameters are set again, and each call returns a copy of it, which the caller
+     * may modify.</p>
+     *
+     * @return A {@link JSONObject} of the install parameters, empty if none.
+     */
+    JSONObject getInstallParamsJson() {
+        return installParamsCache_.get(getInstallParams());
     }
     
     public void setInstallReferrerParams(String params) {
@@ -1170,7 +1322,7 @@ public class PrefHelper {
      * @return A {@link Boolean} indicating whether some preference exists.
      */
     public boolean hasPrefValue(String key) {
-        return appSharedPrefs_.contains(key);
+        return prefsBuffer_.contains(key);
     }
 
     /**
@@ -1179,7 +1331,7 @@ public class PrefHelper {
      * @param key A {@link String} value containing the key to the value that's to be deleted.
      */
     public void removePrefValue(String key) {
-        prefsEditor_.remove(key).apply();
+        prefsBuffer_.remove(key);
     }
     
     /**
@@ -1203,7 +1355,7 @@ public class PrefHelper {
      * default value if null.
      */
     public int getInteger(String key, int defaultValue) {
-        return appSharedPrefs_.getInt(key, defaultValue);
+        return prefsBuffer_.getInt(key, defaultValue);
     }
     
     /**
@@ -1217,7 +1369,7 @@ public class PrefHelper {
     }
 
     public long getLong(String key, long defaultValue) {
-        return appSharedPrefs_.getLong(key, defaultValue);
+        return prefsBuffer_.getLong(key, defaultValue);
     }
     
     /**
@@ -1227,7 +1379,7 @@ public class PrefHelper {
      * @return A {@link Float} value of the specified key as stored in preferences.
      */
     public float getFloat(String key) {
-        return appSharedPrefs_.getFloat(key, 0);
+        return prefsBuffer_.getFloat(key, 0);
     }
     
     /**
@@ -1237,7 +1389,7 @@ public class PrefHelper {
      * @return A {@link String} value of the specified key as stored in preferences.
      */
     public String getString(String key) {
-        return appSharedPrefs_.getString(key, NO_STRING_VALUE);
+        return prefsBuffer_.getString(key, NO_STRING_VALUE);
     }
     
     /**
@@ -1247,7 +1399,7 @@ public class PrefHelper {
      * @return An {@link Boolean} value of the specified key as stored in preferences.
      */
     public boolean getBool(String key) {
-        return appSharedPrefs_.getBoolean(key, false);
+        return prefsBuffer_.getBoolean(key, false);
     }
     
     /**
@@ -1257,7 +1409,7 @@ public class PrefHelper {
      * @param value An {@link Integer} value to set the preference record to.
      */
     public void setInteger(String key, int value) {
-        prefsEditor_.putInt(key, value).apply();
+        prefsBuffer_.put(key, value);
     }
     
     /**
@@ -1267,7 +1419,7 @@ public class PrefHelper {
      * @param value A {@link Long} value to set the preference record to.
      */
     public void setLong(String key, long value) {
-        prefsEditor_.putLong(key, value).apply();
+        prefsBuffer_.put(key, value);
     }
     
     /**
@@ -1277,7 +1429,7 @@ public class PrefHelper {
      * @param value A {@link Float} value to set the preference record to.
      */
     public void setFloat(String key, float value) {
-        prefsEditor_.putFloat(key, value).apply();
+        prefsBuffer_.put(key, value);
     }
     
     /**
@@ -1287,7 +1439,7 @@ public class PrefHelper {
      * @param value A {@link String} value to set the preference record to.
      */
     public void setString(String key, String value) {
-        prefsEditor_.putString(key, value).apply();
+        prefsBuffer_.put(key, value);
     }
     
     /**
@@ -1297,7 +1449,7 @@ public class PrefHelper {
      * @param value A {@link Boolean} value to set the preference record to.
      */
     public void setBool(String key, Boolean value) {
-        prefsEditor_.putBoolean(key, value).apply();
+        prefsBuffer_.put(key, value);
     }
 
     /**
@@ -1307,17 +1459,35 @@ public class PrefHelper {
     private void clearPrefOnBranchKeyChange() {
         // If stored key isn't the same as the current key, we need to clean up
         // Note: Link Click Identifier is not cleared because of the potential for that to mess up a deep link
-        String linkClickID = getLinkClickID();
-        String linkClickIdentifier = getLinkClickIdentifier();
-        String appLink = getAppLink();
-        String pushIdentifier = getPushIdentifier();
-        prefsEditor_.clear();
-        
-        setLinkClickID(linkClickID);
-        setLinkClickIdentifier(linkClickIdentifier);
-        setAppLink(appLink);
-        setPushIdentifier(pushIdentifier);
-        prefsEditor_.apply();
+        final String linkClickID = getLinkClickID();
+        final String linkClickIdentifier = getLinkClickIdentifier();
+        final String appLink = getAppLink();
+        final String pushIdentifier = getPushIdentifier();
+        edit(new Runnable() {
+            @Override
+            public void run() {
+                prefsBuffer_.clear();
+
+                setLinkClickID(linkClickID);
+                setLinkClickIdentifier(linkClickIdentifier);
+                setAppLink(appLink);
+                setPushIdentifier(pushIdentifier);
+            }
+        });
+    }
+
+    /**
+     * <p>Runs a block of updates as one transaction: other threads see either none or all of the
+     * values it sets, and they are saved to the preferences file together.</p>
+     *
+     * @param block The updates, made with the setters of this class.
+     */
+    void edit(Runnable block) {
+        prefsBuffer_.edit(block);
+    }
+
+    long getWriteCount() {
+        return prefsBuffer_.getWriteCount();
     }
     
     public void setRequestMetadata(@NonNull String key, @NonNull String value) {
@@ -1395,6 +1565,7 @@ public class PrefHelper {
 
     private static boolean enableLogging_ = false;
     private static boolean useEUEndpoint_ = false;
+    private static boolean useBinaryStorage_ = false;
 
     public static String fbAppId_ = null;
 
@@ -1406,6 +1577,10 @@ public class PrefHelper {
         useEUEndpoint_ = enable;
     }
 
+    static void useBinaryStorage(boolean enable) {
+        useBinaryStorage_ = enable;
+    }
+
     boolean hasValidBranchKey() {
         return isValidBranchKey(getBranchKey());
     }
@@ -0,0 +1,32 @@
+package io.branch.referral;
+
+import java.util.Map;
+
+/**
+ * <p>Storage of the values of {@link PrefHelper}, behind its {@link PrefWriteBuffer}. Either the
+ * {@link android.content.SharedPreferences} file, see {@link SharedPreferencesStorage}, or the binary
+ * log of {@link BinaryPrefStorage}, split by {@link SplitPrefStorage} in the values init reads and
+ * the others.</p>
+ */
+interface PrefStorage {
+    boolean contains(String key);
+
+    int getInt(String key, int defaultValue);
+
+    long getLong(String key, long defaultValue);
+
+    float getFloat(String key, float defaultValue);
+
+    String getString(String key, String defaultValue);
+
+    boolean getBoolean(String key, boolean defaultValue);
+
+    /**
+     * Saves a batch of changes. The values are {@link Integer}, {@link Long}, {@link Float},
+     * {@link Boolean} or {@link String}, and a null value removes the key.
+     *
+     * @param clear   True to remove all the keys before the changes are made.
+     * @param changes The values to set, by key.
+     */
+    void write(boolean clear, Map<String, Object> changes);
+}
@@ -0,0 +1,151 @@
+package io.branch.referral;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>Write layer in front of the {@link PrefStorage} of {@link PrefHelper}.</p>
+ * <p>A write is handed to the storage right away, so it is in the in-memory state of the
+ * {@link android.content.SharedPreferences} before the setter returns, and the storage saves its
+ * file in the background. A write that does not change the stored value is dropped, so the repeated
+ * resets of postInitClear usually cost nothing.
+ * Writes made in {@link #edit(Runnable)} are kept in a map of pending values, which reads check first,
+ * become visible to other threads together and are handed to the storage as a single batch at the end
+ * of the block.</p>
+ */
+final class PrefWriteBuffer {
+    // Pending value of a removed key
+    private static final Object REMOVED = new Object();
+
+    private final PrefStorage storage_;
+    private final HashMap<String, Object> pending_ = new HashMap<>();
+    private boolean clearPending_ = false;
+    private int transactionDepth_ = 0;
+    private long writeCount_ = 0;
+
+    PrefWriteBuffer(PrefStorage storage) {
+        storage_ = storage;
+    }
+
+    synchronized boolean contains(String key) {
+        Object value = pending_.get(key);
+        if (value != null) return value != REMOVED;
+        return !clearPending_ && storage_.contains(key);
+    }
+
+    synchronized int getInt(String key, int defaultValue) {
+        Object value = pending_.get(key);
+        if (value != null) return value == REMOVED ? defaultValue : (Integer) value;
+        return clearPending_ ? defaultValue : storage_.getInt(key, defaultValue);
+    }
+
+    synchronized long getLong(String key, long defaultValue) {
+        Object value = pending_.get(key);
+        if (value != null) return value == REMOVED ? defaultValue : (Long) value;
+        return clearPending_ ? defaultValue : storage_.getLong(key, defaultValue);
+    }
+
+    synchronized float getFloat(String key, float defaultValue) {
+        Object value = pending_.get(key);
+        if (value != null) return value == REMOVED ? defaultValue : (Float) value;
+        return clearPending_ ? defaultValue : storage_.getFloat(key, defaultValue);
+    }
+
+    synchronized String getString(String key, String defaultValue) {
+        Object value = pending_.get(key);
+        if (value != null) return value == REMOVED ? defaultValue : (String) value;
+        return clearPending_ ? defaultValue : storage_.getString(key, defaultValue);
+    }
+
+    synchronized boolean getBoolean(String key, boolean defaultValue) {
+        Object value = pending_.get(key);
+        if (value != null) return value == REMOVED ? defaultValue : (Boolean) value;
+        return clearPending_ ? defaultValue : storage_.getBoolean(key, defaultValue);
+    }
+
+    /**
+     * Sets a value, or removes the key if the value is null. The value must be an {@link Integer},
+     * {@link Long}, {@link Float}, {@link Boolean} or {@link String}.
+     */
+    synchronized void put(String key, Object value) {
+        Object pendingValue = value == null ? REMOVED : value;
+        if (isStored(key, pendingValue)) {
+            // Nothing to write, and a pending write of another value is no longer needed
+            pending_.remove(key);
+            return;
+        }
+        pending_.put(key, pendingValue);
+        writePending();
+    }
+
+    synchronized void remove(String key) {
+        put(key, null);
+    }
+
+    /**
+     * Removes all the keys, including the ones written before in the same transaction.
+     */
+    synchronized void clear() {
+        pending_.clear();
+        clearPending_ = true;
+        writePending();
+    }
+
+    /**
+     * Runs the block while holding the buffer, so other threads see either none or all of its
+     * writes, and hands them to the storage together.
+     */
+    void edit(Runnable block) {
+        synchronized (this) {
+            transactionDepth_++;
+            try {
+                block.run();
+            } finally {
+                transactionDepth_--;
+                writePending();
+            }
+        }
+    }
+
+    synchronized boolean hasPendingWrites() {
+        return clearPending_ || !pending_.isEmpty();
+    }
+
+    /**
+     * @return The number of batches written to the storage, for tests and diagnostics.
+     */
+    synchronized long getWriteCount() {
+        return writeCount_;
+    }
+
+    // Hands the pending values to the storage, unless a transaction is open
+    private void writePending() {
+        if (transactionDepth_ > 0 || !hasPendingWrites()) return;
+
+        HashMap<String, Object> changes = new HashMap<>(pending_.size());
+        for (Map.Entry<String, Object> entry : pending_.entrySet()) {
+            changes.put(entry.getKey(), entry.getValue() == REMOVED ? null : entry.getValue());
+        }
+        storage_.write(clearPending_, changes);
+        pending_.clear();
+        clearPending_ = false;
+        writeCount_++;
+    }
+
+    // True if the storage already holds this value, ignoring pending writes
+    private boolean isStored(String key, Object value) {
+        if (clearPending_) return false;
+        if (!storage_.contains(key)) return value == REMOVED;
+        if (value == REMOVED) return false;
+        try {
+            if (value instanceof String) return value.equals(storage_.getString(key, null));
+            if (value instanceof Integer) return (Integer) value == storage_.getInt(key, 0);
+            if (value instanceof Long) return (Long) value == storage_.getLong(key, 0);
+            if (value instanceof Boolean) return (Boolean) value == storage_.getBoolean(key, false);
+            if (value instanceof Float) return (Float) value == storage_.getFloat(key, 0);
+        } catch (ClassCastException e) {
+            // Stored with another type
+        }
+        return false;
+    }
+}
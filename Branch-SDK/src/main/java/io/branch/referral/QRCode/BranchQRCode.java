@@ -3,7 +3,9 @@ package io.branch.referral.QRCode;
 import android.app.Activity;
 import android.content.Context;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Base64;
 
 import androidx.annotation.NonNull;
@@ -17,6 +19,7 @@ import java.util.Map;
 
 import io.branch.indexing.BranchUniversalObject;
 import io.branch.referral.Branch;
+import io.branch.referral.BranchAsyncTask;
 import io.branch.referral.BranchLogger;
 import io.branch.referral.BranchQRCodeCache;
 import io.branch.referral.Defines;
@@ -38,6 +41,8 @@ public class BranchQRCode {
     private Integer margin_;
     /* Image Format of the returned QR code. Can be a JPEG or PNG. */
     private BranchImageFormat imageFormat_;
+    /* Whether QR codes without a center logo are rendered on the device. */
+    private boolean renderLocally_;
 
     public enum BranchImageFormat {
         JPEG, /* QR code is returned as a JPEG */
@@ -51,6 +56,7 @@ public class BranchQRCode {
         width_ = null;
         margin_ = null;
         imageFormat_ = null;
+        renderLocally_ = false;
     }
 
     /**
@@ -173,6 +179,22 @@ public class BranchQRCode {
         return this;
     }
 
+    /**
+     * <p>
+     * Set whether this BranchQRCode is rendered on the device instead of by the Branch API. The QR
+     * code encodes the short link of the content if it is already cached, otherwise its long link,
+     * and is ready in milliseconds, also when offline. QR codes with a center logo are always
+     * created by the Branch API. Disabled by default.
+     * </p>
+     *
+     * @param renderLocally A {@link Boolean} set to true to render on the device.
+     * @return This instance to allow for chaining of calls to set methods
+     */
+    public BranchQRCode setRenderLocally(boolean renderLocally) {
+        this.renderLocally_ = renderLocally;
+        return this;
+    }
+
     public interface BranchQRCodeDataHandler<T> {
         void onSuccess(byte[] qrCodeData);
 
@@ -191,7 +213,7 @@ public class BranchQRCode {
         void onFailure(Exception e);
     }
 
-    public void getQRCodeAsData(@NonNull Context context, @NonNull BranchUniversalObject branchUniversalObject, @NonNull LinkProperties linkProperties, @NonNull final BranchQRCodeDataHandler callback) throws IOException {
+    public void getQRCodeAsData(@NonNull final Context context, @NonNull final BranchUniversalObject branchUniversalObject, @NonNull final LinkProperties linkProperties, @NonNull final BranchQRCodeDataHandler callback) throws IOException {
         Map<String, Object> settings = new HashMap<String, Object>();
         if (this.codeColor_ != null) {
             settings.put(Defines.Jsonkey.CodeColor.getKey(), codeColor_);
@@ -238,13 +260,48 @@ public class BranchQRCode {
 
         final JSONObject paramsJSON = new JSONObject(parameters);
 
-        byte[] cachedQRCode = BranchQRCodeCache.getInstance().checkQRCodeCache(paramsJSON);
+        BranchQRCodeCache qrCodeCache = BranchQRCodeCache.getInstance();
+        byte[] cachedQRCode = qrCodeCache.checkQRCodeCache(paramsJSON);
         if (cachedQRCode != null) {
             callback.onSuccess(cachedQRCode);
             return;
-        } else {
         }
 
+        if (qrCodeCache.isPersistenceEnabled()) {
+            final Handler mainHandler = new Handler(Looper.getMainLooper());
+            qrCodeCache.checkDiskCache(paramsJSON, new BranchQRCodeCache.DiskCacheListener() {
+                @Override
+                public void onDiskCacheChecked(final byte[] qrCodeData) {
+                    mainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (qrCodeData != null) {
+                                callback.onSuccess(qrCodeData);
+                            } else {
+                                createQRCode(context, branchUniversalObject, linkProperties, parameters, paramsJSON, callback);
+                            }
+                        }
+                    });
+                }
+            });
+            return;
+        }
+        createQRCode(context, branchUniversalObject, linkProperties, parameters, paramsJSON, callback);
+    }
+
+    private void createQRCode(Context context, BranchUniversalObject branchUniversalObject, LinkProperties linkProperties,
+                              Map<String, Object> parameters, JSONObject paramsJSON, BranchQRCodeDataHandler callback) {
+        if (renderLocally_ && centerLogo_ == null) {
+            String url = branchUniversalObject.getShortUrlOfflineFirst(context, linkProperties, null);
+            if (url != null) {
+                new RenderQRCodeTask(context, url, parameters, paramsJSON, callback).executeTask();
+                return;
+            }
+        }
+        requestQRCode(context, parameters, paramsJSON, callback);
+    }
+
+    private void requestQRCode(Context context, final Map<String, Object> parameters, JSONObject paramsJSON, final BranchQRCodeDataHandler callback) {
         ServerRequestCreateQRCode req = new ServerRequestCreateQRCode(Defines.RequestPath.QRCode, paramsJSON, context, new BranchQRCodeRequestHandler() {
             @Override
             public void onDataReceived(ServerResponse data) {
@@ -270,12 +327,78 @@ public class BranchQRCode {
         Branch.getInstance().requestQueue_.handleNewRequest(req);
     }
 
+    /**
+     * Encodes and draws the QR code in the background, falling back to the Branch API when the url
+     * does not fit in a QR code or the settings cannot be drawn.
+     */
+    private class RenderQRCodeTask extends BranchAsyncTask<Void, Void, byte[]> {
+        private final Context context_;
+        private final String url_;
+        private final Map<String, Object> parameters_;
+        private final JSONObject paramsJSON_;
+        private final BranchQRCodeDataHandler callback_;
+
+        RenderQRCodeTask(Context context, String url, Map<String, Object> parameters, JSONObject paramsJSON, BranchQRCodeDataHandler callback) {
+            context_ = context;
+            url_ = url;
+            parameters_ = parameters;
+            paramsJSON_ = paramsJSON;
+            callback_ = callback;
+        }
+
+        @Override
+        protected byte[] doInBackground(Void... voids) {
+            try {
+                boolean[][] modules = QRCodeEncoder.encode(url_, QRCodeEncoder.ErrorCorrectionLevel.M);
+                if (modules == null) {
+                    BranchLogger.v("Link is too long for a QR code rendered on the device");
+                    return null;
+                }
+                int codeColor = codeColor_ == null ? Color.BLACK : Color.parseColor(codeColor_);
+                int backgroundColor = backgroundColor_ == null ? Color.WHITE : Color.parseColor(backgroundColor_);
+                int width = width_ == null ? QRCodeRenderer.DEFAULT_WIDTH : width_;
+
+                Bitmap bitmap = QRCodeRenderer.render(modules, width, margin_, codeColor, backgroundColor);
+                byte[] qrCodeData = QRCodeRenderer.compress(bitmap, imageFormat_);
+                bitmap.recycle();
+                return qrCodeData;
+            } catch (IllegalArgumentException e) {
+                BranchLogger.w("Caught IllegalArgumentException rendering QR code: " + e.getMessage());
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(byte[] qrCodeData) {
+            if (qrCodeData != null) {
+                callback_.onSuccess(qrCodeData);
+            } else {
+                requestQRCode(context_, parameters_, paramsJSON_, callback_);
+            }
+        }
+    }
+
     public void getQRCodeAsImage(@NonNull Activity activity, @NonNull BranchUniversalObject branchUniversalObject, @NonNull LinkProperties linkProperties, @NonNull final BranchQRCodeImageHandler callback) throws IOException {
+        getQRCodeAsImage(activity, branchUniversalObject, linkProperties, 0, 0, callback);
+    }
+
+    /**
+     * <p>
+     * Creates the QR code and decodes it no larger than needed for a view of the given size. The
+     * image is downsampled by a power of two while it stays at least that large, and is decoded on
+     * a background thread into a bitmap released with {@link #releaseQRCodeImage(Bitmap)} when one
+     * is large enough. The callback is called on the main thread.
+     * </p>
+     *
+     * @param reqWidth  The width in pixels the QR code is displayed at, 0 for the full size.
+     * @param reqHeight The height in pixels the QR code is displayed at, 0 for the full size.
+     */
+    public void getQRCodeAsImage(@NonNull Activity activity, @NonNull BranchUniversalObject branchUniversalObject, @NonNull LinkProperties linkProperties,
+                                 final int reqWidth, final int reqHeight, @NonNull final BranchQRCodeImageHandler callback) throws IOException {
         getQRCodeAsData(activity, branchUniversalObject, linkProperties, new BranchQRCodeDataHandler() {
             @Override
             public void onSuccess(byte[] qrCodeData) {
-                Bitmap bmp = BitmapFactory.decodeByteArray(qrCodeData, 0, qrCodeData.length);
-                callback.onSuccess(bmp);
+                new DecodeQRCodeTask(qrCodeData, reqWidth, reqHeight, callback).executeTask();
             }
 
             @Override
@@ -284,4 +407,45 @@ public class BranchQRCode {
             }
         });
     }
+
+    /**
+     * <p>
+     * Hands a QR code image that is no longer displayed back to the SDK, e.g. when its view is
+     * recycled, so that its memory is reused by the next QR code decoded. The bitmap must not be
+     * used after this call.
+     * </p>
+     *
+     * @param qrCodeImage A {@link Bitmap} returned by a {@link BranchQRCodeImageHandler}.
+     */
+    public static void releaseQRCodeImage(@NonNull Bitmap qrCodeImage) {
+        QRCodeBitmapPool.getInstance().put(qrCodeImage);
+    }
+
+    private static class DecodeQRCodeTask extends BranchAsyncTask<Void, Void, Bitmap> {
+        private final byte[] qrCodeData_;
+        private final int reqWidth_;
+        private final int reqHeight_;
+        private final BranchQRCodeImageHandler callback_;
+
+        DecodeQRCodeTask(byte[] qrCodeData, int reqWidth, int reqHeight, BranchQRCodeImageHandler callback) {
+            qrCodeData_ = qrCodeData;
+            reqWidth_ = reqWidth;
+            reqHeight_ = reqHeight;
+            callback_ = callback;
+        }
+
+        @Override
+        protected Bitmap doInBackground(Void... voids) {
+            return QRCodeImageDecoder.decode(qrCodeData_, reqWidth_, reqHeight_, QRCodeBitmapPool.getInstance());
+        }
+
+        @Override
+        protected void onPostExecute(Bitmap qrCodeImage) {
+            if (qrCodeImage != null) {
+                callback_.onSuccess(qrCodeImage);
+            } else {
+                callback_.onFailure(new IOException("Could not decode the QR code image"));
+            }
+        }
+    }
 }
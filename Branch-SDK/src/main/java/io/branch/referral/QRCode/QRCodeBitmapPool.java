@@ -0,0 +1,98 @@
+package io.branch.referral.QRCode;
+
+import android.graphics.Bitmap;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * <p>Small pool of QR code bitmaps the app no longer displays, see
+ * {@link BranchQRCode#releaseQRCodeImage(Bitmap)}. Decoding a QR code into a pooled bitmap reuses
+ * its memory instead of allocating a new bitmap for every code, e.g. in a carousel of QR codes.</p>
+ * <p>The pool is bounded by count and by bytes; the oldest bitmaps are recycled beyond that.</p>
+ */
+final class QRCodeBitmapPool {
+    static final int MAX_BITMAPS = 4;
+    static final long MAX_BYTES = 8 * 1024 * 1024; // 8MB
+
+    private static final QRCodeBitmapPool INSTANCE = new QRCodeBitmapPool();
+
+    private final LinkedList<Bitmap> bitmaps_ = new LinkedList<>();
+    private long sizeBytes_ = 0;
+
+    private long reuseCount_ = 0;
+
+    static QRCodeBitmapPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param bitmap A mutable bitmap no longer in use. Other bitmaps are ignored.
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || bitmap.getConfig() != Bitmap.Config.ARGB_8888 || bitmaps_.contains(bitmap)) {
+            return;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        if (bytes > MAX_BYTES) return;
+
+        bitmaps_.addLast(bitmap);
+        sizeBytes_ += bytes;
+        while (bitmaps_.size() > MAX_BITMAPS || sizeBytes_ > MAX_BYTES) {
+            Bitmap evicted = bitmaps_.removeFirst();
+            sizeBytes_ -= evicted.getAllocationByteCount();
+            evicted.recycle();
+        }
+    }
+
+    /**
+     * @param minBytes The bytes needed by the image to decode.
+     * @return The smallest pooled bitmap of at least that size, removed from the pool, or
+     * {@code null} if there is none.
+     */
+    synchronized Bitmap get(long minBytes) {
+        Bitmap best = null;
+        for (Bitmap bitmap : bitmaps_) {
+            int bytes = bitmap.getAllocationByteCount();
+            if (bytes >= minBytes && (best == null || bytes < best.getAllocationByteCount())) {
+                best = bitmap;
+            }
+        }
+        if (best != null) {
+            remove(best);
+            reuseCount_++;
+        }
+        return best;
+    }
+
+    synchronized void clear() {
+        for (Bitmap bitmap : bitmaps_) {
+            bitmap.recycle();
+        }
+        bitmaps_.clear();
+        sizeBytes_ = 0;
+    }
+
+    synchronized int size() {
+        return bitmaps_.size();
+    }
+
+    /**
+     * @return The number of decodes into a pooled bitmap.
+     */
+    synchronized long getReuseCount() {
+        return reuseCount_;
+    }
+
+    private void remove(Bitmap bitmap) {
+        Iterator<Bitmap> iterator = bitmaps_.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == bitmap) {
+                iterator.remove();
+                sizeBytes_ -= bitmap.getAllocationByteCount();
+                return;
+            }
+        }
+    }
+}
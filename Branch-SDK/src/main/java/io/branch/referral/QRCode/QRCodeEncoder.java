@@ -0,0 +1,525 @@
+package io.branch.referral.QRCode;
+
+import java.nio.charset.Charset;
+
+/**
+ * <p>Encodes text into a QR code symbol (ISO/IEC 18004) so that QR codes can be rendered on the
+ * device instead of being requested from the Branch API.</p>
+ * <p>The text is encoded in byte mode as UTF-8, in the smallest version that fits at the requested
+ * error correction level. Of the eight masks, the one with the lowest penalty score is applied.</p>
+ */
+final class QRCodeEncoder {
+
+    enum ErrorCorrectionLevel {
+        L(1), M(0), Q(3), H(2);
+
+        // The two bits of the level in the format information
+        final int formatBits;
+
+        ErrorCorrectionLevel(int formatBits) {
+            this.formatBits = formatBits;
+        }
+    }
+
+    static final int MIN_VERSION = 1;
+    static final int MAX_VERSION = 40;
+
+    private static final int MODE_BYTE = 0x4;
+
+    private static final int PENALTY_N1 = 3;
+    private static final int PENALTY_N2 = 3;
+    private static final int PENALTY_N3 = 40;
+    private static final int PENALTY_N4 = 10;
+
+    // Dark-light-dark-dark-dark-light-dark followed by four light modules, the finder-like pattern
+    private static final boolean[] FINDER_LIKE = {true, false, true, true, true, false, true, false, false, false, false};
+
+    // Error correction codewords per block, by level (in ordinal order) and version
+    private static final byte[][] ECC_CODEWORDS_PER_BLOCK = {
+            {-1, 7, 10, 15, 20, 26, 18, 20, 24, 30, 18, 20, 24, 26, 30, 22, 24, 28, 30, 28, 28, 28, 28, 30, 30, 26, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30},
+            {-1, 10, 16, 26, 18, 24, 16, 18, 22, 22, 26, 30, 22, 22, 24, 24, 28, 28, 26, 26, 26, 26, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28},
+            {-1, 13, 22, 18, 26, 18, 24, 18, 22, 20, 24, 28, 26, 24, 20, 30, 24, 28, 28, 26, 30, 28, 30, 30, 30, 30, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30},
+            {-1, 17, 28, 22, 16, 22, 28, 26, 26, 24, 28, 24, 28, 22, 24, 24, 30, 28, 28, 26, 28, 30, 24, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30},
+    };
+
+    // Error correction blocks, by level (in ordinal order) and version
+    private static final byte[][] NUM_ERROR_CORRECTION_BLOCKS = {
+            {-1, 1, 1, 1, 1, 1, 2, 2, 2, 2, 4, 4, 4, 4, 4, 6, 6, 6, 6, 7, 8, 8, 9, 9, 10, 12, 12, 12, 13, 14, 15, 16, 17, 18, 19, 19, 20, 21, 22, 24, 25},
+            {-1, 1, 1, 1, 2, 2, 4, 4, 4, 5, 5, 5, 8, 9, 9, 10, 10, 11, 13, 14, 16, 17, 17, 18, 20, 21, 23, 25, 26, 28, 29, 31, 33, 35, 37, 38, 40, 43, 45, 47, 49},
+            {-1, 1, 1, 2, 2, 4, 4, 6, 6, 8, 8, 8, 10, 12, 16, 12, 17, 16, 18, 21, 20, 23, 23, 25, 27, 29, 34, 34, 35, 38, 40, 43, 45, 48, 51, 53, 56, 59, 62, 65, 68},
+            {-1, 1, 1, 2, 4, 4, 4, 5, 6, 8, 8, 11, 11, 16, 16, 18, 16, 19, 21, 25, 25, 25, 34, 30, 32, 35, 37, 40, 42, 45, 48, 51, 54, 57, 60, 63, 66, 70, 74, 77, 81},
+    };
+
+    private final int version_;
+    private final int size_;
+    private final ErrorCorrectionLevel level_;
+    // Dark modules, indexed [y][x]
+    private final boolean[][] modules_;
+    // Modules of the function patterns, which are never masked
+    private final boolean[][] isFunction_;
+
+    private QRCodeEncoder(int version, ErrorCorrectionLevel level) {
+        version_ = version;
+        size_ = version * 4 + 17;
+        level_ = level;
+        modules_ = new boolean[size_][size_];
+        isFunction_ = new boolean[size_][size_];
+    }
+
+    /**
+     * @param text  The text to encode, e.g. a link.
+     * @param level The {@link ErrorCorrectionLevel} of the symbol.
+     * @return The modules of the symbol indexed [y][x], {@code true} for dark modules, without the
+     * quiet zone. {@code null} if the text does not fit in a version 40 symbol.
+     */
+    static boolean[][] encode(String text, ErrorCorrectionLevel level) {
+        byte[] data = text.getBytes(Charset.forName("UTF-8"));
+        for (int version = MIN_VERSION; version <= MAX_VERSION; version++) {
+            int capacityBits = getNumDataCodewords(version, level) * 8;
+            int usedBits = 4 + getCharCountBits(version) + data.length * 8;
+            if (usedBits <= capacityBits) {
+                QRCodeEncoder encoder = new QRCodeEncoder(version, level);
+                encoder.drawFunctionPatterns();
+                encoder.drawCodewords(encoder.addEccAndInterleave(encoder.encodeData(data)));
+                encoder.applyBestMask();
+                return encoder.modules_;
+            }
+        }
+        return null;
+    }
+
+    private static int getCharCountBits(int version) {
+        return version <= 9 ? 8 : 16;
+    }
+
+    // Bit stream of the segment, terminator and padding, as data codewords
+    private byte[] encodeData(byte[] data) {
+        byte[] codewords = new byte[getNumDataCodewords(version_, level_)];
+        BitWriter writer = new BitWriter(codewords);
+        writer.append(MODE_BYTE, 4);
+        writer.append(data.length, getCharCountBits(version_));
+        for (byte b : data) {
+            writer.append(b & 0xFF, 8);
+        }
+
+        int capacityBits = codewords.length * 8;
+        writer.append(0, Math.min(4, capacityBits - writer.length));
+        writer.append(0, (8 - writer.length % 8) % 8);
+        for (int pad = 0xEC; writer.length < capacityBits; pad ^= 0xEC ^ 0x11) {
+            writer.append(pad, 8);
+        }
+        return codewords;
+    }
+
+    private static class BitWriter {
+        final byte[] bytes;
+        int length = 0;
+
+        BitWriter(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        void append(int value, int bitCount) {
+            for (int i = bitCount - 1; i >= 0; i--, length++) {
+                bytes[length >>> 3] |= ((value >>> i) & 1) << (7 - (length & 7));
+            }
+        }
+    }
+
+    // ---- Function patterns ----
+
+    private void drawFunctionPatterns() {
+        for (int i = 0; i < size_; i++) {
+            setFunctionModule(6, i, i % 2 == 0);
+            setFunctionModule(i, 6, i % 2 == 0);
+        }
+
+        drawFinderPattern(3, 3);
+        drawFinderPattern(size_ - 4, 3);
+        drawFinderPattern(3, size_ - 4);
+
+        int[] alignPositions = getAlignmentPatternPositions(version_);
+        int numAlign = alignPositions.length;
+        for (int i = 0; i < numAlign; i++) {
+            for (int j = 0; j < numAlign; j++) {
+                // Skip the three corners occupied by finder patterns
+                boolean isFinderCorner = (i == 0 && j == 0) || (i == 0 && j == numAlign - 1) || (i == numAlign - 1 && j == 0);
+                if (!isFinderCorner) {
+                    drawAlignmentPattern(alignPositions[i], alignPositions[j]);
+                }
+            }
+        }
+
+        // Reserves the format modules, drawn again once the mask is chosen
+        drawFormatBits(0);
+        drawVersion();
+    }
+
+    private void drawFinderPattern(int x, int y) {
+        for (int dy = -4; dy <= 4; dy++) {
+            for (int dx = -4; dx <= 4; dx++) {
+                int dist = Math.max(Math.abs(dx), Math.abs(dy));
+                int xx = x + dx;
+                int yy = y + dy;
+                if (0 <= xx && xx < size_ && 0 <= yy && yy < size_) {
+                    setFunctionModule(xx, yy, dist != 2 && dist != 4);
+                }
+            }
+        }
+    }
+
+    private void drawAlignmentPattern(int x, int y) {
+        for (int dy = -2; dy <= 2; dy++) {
+            for (int dx = -2; dx <= 2; dx++) {
+                setFunctionModule(x + dx, y + dy, Math.max(Math.abs(dx), Math.abs(dy)) != 1);
+            }
+        }
+    }
+
+    private void drawFormatBits(int mask) {
+        int bits = getFormatBits(level_, mask);
+
+        // First copy, around the top left finder
+        for (int i = 0; i <= 5; i++) {
+            setFunctionModule(8, i, getBit(bits, i));
+        }
+        setFunctionModule(8, 7, getBit(bits, 6));
+        setFunctionModule(8, 8, getBit(bits, 7));
+        setFunctionModule(7, 8, getBit(bits, 8));
+        for (int i = 9; i < 15; i++) {
+            setFunctionModule(14 - i, 8, getBit(bits, i));
+        }
+
+        // Second copy, split between the top right and bottom left finders
+        for (int i = 0; i < 8; i++) {
+            setFunctionModule(size_ - 1 - i, 8, getBit(bits, i));
+        }
+        for (int i = 8; i < 15; i++) {
+            setFunctionModule(8, size_ - 15 + i, getBit(bits, i));
+        }
+        setFunctionModule(8, size_ - 8, true);
+    }
+
+    private void drawVersion() {
+        if (version_ < 7) return;
+
+        int bits = getVersionBits(version_);
+        for (int i = 0; i < 18; i++) {
+            boolean bit = getBit(bits, i);
+            int a = size_ - 11 + i % 3;
+            int b = i / 3;
+            setFunctionModule(a, b, bit);
+            setFunctionModule(b, a, bit);
+        }
+    }
+
+    private void setFunctionModule(int x, int y, boolean isDark) {
+        modules_[y][x] = isDark;
+        isFunction_[y][x] = true;
+    }
+
+    /**
+     * @return The 15 bits of format information: the level and mask, their BCH(15,5) code and the
+     * format mask pattern.
+     */
+    static int getFormatBits(ErrorCorrectionLevel level, int mask) {
+        int data = level.formatBits << 3 | mask;
+        int rem = data;
+        for (int i = 0; i < 10; i++) {
+            rem = (rem << 1) ^ ((rem >>> 9) * 0x537);
+        }
+        return (data << 10 | rem) ^ 0x5412;
+    }
+
+    /**
+     * @return The 18 bits of version information: the version and its BCH(18,6) code.
+     */
+    static int getVersionBits(int version) {
+        int rem = version;
+        for (int i = 0; i < 12; i++) {
+            rem = (rem << 1) ^ ((rem >>> 11) * 0x1F25);
+        }
+        return version << 12 | rem;
+    }
+
+    /**
+     * @return The row and column coordinates of the centers of the alignment patterns, in
+     * ascending order.
+     */
+    static int[] getAlignmentPatternPositions(int version) {
+        if (version == 1) return new int[0];
+
+        int numAlign = version / 7 + 2;
+        int step = (version * 8 + numAlign * 3 + 5) / (numAlign * 4 - 4) * 2;
+        int[] positions = new int[numAlign];
+        positions[0] = 6;
+        for (int i = numAlign - 1, pos = version * 4 + 10; i >= 1; i--, pos -= step) {
+            positions[i] = pos;
+        }
+        return positions;
+    }
+
+    // ---- Codewords ----
+
+    /**
+     * @return The number of modules available for data and error correction codewords, including
+     * remainder bits.
+     */
+    static int getNumRawDataModules(int version) {
+        int result = (16 * version + 128) * version + 64;
+        if (version >= 2) {
+            int numAlign = version / 7 + 2;
+            result -= (25 * numAlign - 10) * numAlign - 55;
+            if (version >= 7) {
+                result -= 36;
+            }
+        }
+        return result;
+    }
+
+    static int getNumDataCodewords(int version, ErrorCorrectionLevel level) {
+        return getNumRawDataModules(version) / 8 - getEccCodewordsPerBlock(version, level) * getNumErrorCorrectionBlocks(version, level);
+    }
+
+    static int getEccCodewordsPerBlock(int version, ErrorCorrectionLevel level) {
+        return ECC_CODEWORDS_PER_BLOCK[level.ordinal()][version];
+    }
+
+    static int getNumErrorCorrectionBlocks(int version, ErrorCorrectionLevel level) {
+        return NUM_ERROR_CORRECTION_BLOCKS[level.ordinal()][version];
+    }
+
+    // Splits the data into blocks, adds the error correction codewords of each and interleaves them
+    private byte[] addEccAndInterleave(byte[] data) {
+        int numBlocks = getNumErrorCorrectionBlocks(version_, level_);
+        int blockEccLen = getEccCodewordsPerBlock(version_, level_);
+        int rawCodewords = getNumRawDataModules(version_) / 8;
+        int numShortBlocks = numBlocks - rawCodewords % numBlocks;
+        int shortBlockLen = rawCodewords / numBlocks;
+
+        byte[][] blocks = new byte[numBlocks][];
+        byte[] divisor = reedSolomonComputeDivisor(blockEccLen);
+        for (int i = 0, k = 0; i < numBlocks; i++) {
+            int datLen = shortBlockLen - blockEccLen + (i < numShortBlocks ? 0 : 1);
+            byte[] dat = new byte[datLen];
+            System.arraycopy(data, k, dat, 0, datLen);
+            k += datLen;
+
+            // Short blocks get a placeholder byte so that all blocks have the same length
+            byte[] block = new byte[shortBlockLen + 1];
+            System.arraycopy(dat, 0, block, 0, datLen);
+            byte[] ecc = reedSolomonComputeRemainder(dat, divisor);
+            System.arraycopy(ecc, 0, block, block.length - blockEccLen, blockEccLen);
+            blocks[i] = block;
+        }
+
+        byte[] result = new byte[rawCodewords];
+        for (int i = 0, k = 0; i < blocks[0].length; i++) {
+            for (int j = 0; j < blocks.length; j++) {
+                if (i != shortBlockLen - blockEccLen || j >= numShortBlocks) {
+                    result[k++] = blocks[j][i];
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The coefficients of the Reed-Solomon generator polynomial of the given degree,
+     * highest to lowest power, without the leading 1.
+     */
+    static byte[] reedSolomonComputeDivisor(int degree) {
+        byte[] result = new byte[degree];
+        result[degree - 1] = 1;
+
+        // Multiplies by (x - r^i) for every i, where r = 0x02 generates GF(2^8/0x11D)
+        int root = 1;
+        for (int i = 0; i < degree; i++) {
+            for (int j = 0; j < result.length; j++) {
+                result[j] = (byte) reedSolomonMultiply(result[j] & 0xFF, root);
+                if (j + 1 < result.length) {
+                    result[j] ^= result[j + 1];
+                }
+            }
+            root = reedSolomonMultiply(root, 0x02);
+        }
+        return result;
+    }
+
+    static byte[] reedSolomonComputeRemainder(byte[] data, byte[] divisor) {
+        byte[] result = new byte[divisor.length];
+        for (byte b : data) {
+            int factor = (b ^ result[0]) & 0xFF;
+            System.arraycopy(result, 1, result, 0, result.length - 1);
+            result[result.length - 1] = 0;
+            for (int i = 0; i < result.length; i++) {
+                result[i] ^= (byte) reedSolomonMultiply(divisor[i] & 0xFF, factor);
+            }
+        }
+        return result;
+    }
+
+    // Product of two GF(2^8/0x11D) elements, Russian peasant multiplication
+    private static int reedSolomonMultiply(int x, int y) {
+        int z = 0;
+        for (int i = 7; i >= 0; i--) {
+            z = (z << 1) ^ ((z >>> 7) * 0x11D);
+            z ^= ((y >>> i) & 1) * x;
+        }
+        return z;
+    }
+
+    // Places the codewords in the zigzag order, two columns at a time, skipping function modules
+    private void drawCodewords(byte[] data) {
+        int i = 0;
+        for (int right = size_ - 1; right >= 1; right -= 2) {
+            // The vertical timing pattern is skipped as a whole column
+            if (right == 6) right = 5;
+            for (int vert = 0; vert < size_; vert++) {
+                for (int j = 0; j < 2; j++) {
+                    int x = right - j;
+                    boolean upward = ((right + 1) & 2) == 0;
+                    int y = upward ? size_ - 1 - vert : vert;
+                    if (!isFunction_[y][x] && i < data.length * 8) {
+                        modules_[y][x] = getBit(data[i >>> 3], 7 - (i & 7));
+                        i++;
+                    }
+                    // Remainder bits are left light
+                }
+            }
+        }
+    }
+
+    // ---- Masking ----
+
+    private void applyBestMask() {
+        int bestMask = 0;
+        int minPenalty = Integer.MAX_VALUE;
+        for (int mask = 0; mask < 8; mask++) {
+            applyMask(mask);
+            drawFormatBits(mask);
+            int penalty = getPenaltyScore();
+            if (penalty < minPenalty) {
+                bestMask = mask;
+                minPenalty = penalty;
+            }
+            // Masking is an XOR, applying it again undoes it
+            applyMask(mask);
+        }
+        applyMask(bestMask);
+        drawFormatBits(bestMask);
+    }
+
+    private void applyMask(int mask) {
+        for (int y = 0; y < size_; y++) {
+            for (int x = 0; x < size_; x++) {
+                if (!isFunction_[y][x] && isMasked(mask, x, y)) {
+                    modules_[y][x] = !modules_[y][x];
+                }
+            }
+        }
+    }
+
+    static boolean isMasked(int mask, int x, int y) {
+        switch (mask) {
+            case 0:
+                return (x + y) % 2 == 0;
+            case 1:
+                return y % 2 == 0;
+            case 2:
+                return x % 3 == 0;
+            case 3:
+                return (x + y) % 3 == 0;
+            case 4:
+                return (x / 3 + y / 2) % 2 == 0;
+            case 5:
+                return x * y % 2 + x * y % 3 == 0;
+            case 6:
+                return (x * y % 2 + x * y % 3) % 2 == 0;
+            case 7:
+                return ((x + y) % 2 + x * y % 3) % 2 == 0;
+            default:
+                throw new IllegalArgumentException("Mask " + mask);
+        }
+    }
+
+    private int getPenaltyScore() {
+        int result = 0;
+
+        // Runs of five or more modules of the same color in rows and columns
+        for (int y = 0; y < size_; y++) {
+            result += getRunPenalty(y, true);
+        }
+        for (int x = 0; x < size_; x++) {
+            result += getRunPenalty(x, false);
+        }
+
+        // 2x2 blocks of the same color
+        for (int y = 0; y < size_ - 1; y++) {
+            for (int x = 0; x < size_ - 1; x++) {
+                boolean color = modules_[y][x];
+                if (color == modules_[y][x + 1] && color == modules_[y + 1][x] && color == modules_[y + 1][x + 1]) {
+                    result += PENALTY_N2;
+                }
+            }
+        }
+
+        // Patterns that look like finders
+        for (int y = 0; y < size_; y++) {
+            for (int x = 0; x + 10 < size_; x++) {
+                if (isFinderLike(x, y, true)) result += PENALTY_N3;
+            }
+        }
+        for (int x = 0; x < size_; x++) {
+            for (int y = 0; y + 10 < size_; y++) {
+                if (isFinderLike(x, y, false)) result += PENALTY_N3;
+            }
+        }
+
+        // Deviation of the proportion of dark modules from 50%, in steps of 5%
+        int dark = 0;
+        for (boolean[] row : modules_) {
+            for (boolean module : row) {
+                if (module) dark++;
+            }
+        }
+        int total = size_ * size_;
+        int k = (Math.abs(dark * 20 - total * 10) + total - 1) / total - 1;
+        result += k * PENALTY_N4;
+        return result;
+    }
+
+    private int getRunPenalty(int line, boolean isRow) {
+        int result = 0;
+        int runLength = 0;
+        boolean runColor = false;
+        for (int i = 0; i < size_; i++) {
+            boolean color = isRow ? modules_[line][i] : modules_[i][line];
+            if (i > 0 && color == runColor) {
+                runLength++;
+            } else {
+                if (runLength >= 5) result += PENALTY_N1 + runLength - 5;
+                runColor = color;
+                runLength = 1;
+            }
+        }
+        if (runLength >= 5) result += PENALTY_N1 + runLength - 5;
+        return result;
+    }
+
+    // Matches the 11 module pattern, or its reverse, starting at (x, y)
+    private boolean isFinderLike(int x, int y, boolean isRow) {
+        boolean forward = true;
+        boolean reverse = true;
+        for (int i = 0; i < FINDER_LIKE.length && (forward || reverse); i++) {
+            boolean color = isRow ? modules_[y][x + i] : modules_[y + i][x];
+            forward &= color == FINDER_LIKE[i];
+            reverse &= color == FINDER_LIKE[FINDER_LIKE.length - 1 - i];
+        }
+        return forward || reverse;
+    }
+
+    private static boolean getBit(int value, int i) {
+        return ((value >>> i) & 1) != 0;
+    }
+}
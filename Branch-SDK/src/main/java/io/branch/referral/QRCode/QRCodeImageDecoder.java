@@ -0,0 +1,72 @@
+package io.branch.referral.QRCode;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import io.branch.referral.BranchLogger;
+
+/**
+ * <p>Decodes QR code images no larger than needed for the view showing them. Images are downsampled
+ * by a power of two while they stay at least as large as the requested size, and decoded into a
+ * bitmap from the {@link QRCodeBitmapPool} when one is large enough.</p>
+ */
+final class QRCodeImageDecoder {
+
+    private QRCodeImageDecoder() {
+    }
+
+    /**
+     * @param data      The compressed image, PNG or JPEG.
+     * @param reqWidth  The width the image is displayed at, 0 or less to decode at full size.
+     * @param reqHeight The height the image is displayed at, 0 or less to decode at full size.
+     * @param pool      The {@link QRCodeBitmapPool} to take a reusable bitmap from.
+     * @return The decoded {@link Bitmap}, or {@code null} if the data is not an image.
+     */
+    static Bitmap decode(byte[] data, int reqWidth, int reqHeight, QRCodeBitmapPool pool) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+
+        // Decoders round the sampled size differently, leave room for one more row and column
+        long sampledBytes = 4L * (options.outWidth / options.inSampleSize + 1) * (options.outHeight / options.inSampleSize + 1);
+        Bitmap reusable = pool.get(sampledBytes);
+        options.inBitmap = reusable;
+        Bitmap decoded;
+        try {
+            decoded = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused for this image
+            BranchLogger.v("Could not reuse bitmap for QR code: " + e.getMessage());
+            options.inBitmap = null;
+            decoded = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        // The pooled bitmap goes back to the pool unless it holds the image, also if decoding failed
+        if (reusable != null && decoded != reusable) {
+            pool.put(reusable);
+        }
+        return decoded;
+    }
+
+    /**
+     * @return The largest power of two that keeps the decoded image at least as large as the
+     * requested size in both dimensions, 1 if no size is requested.
+     */
+    static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        if (reqWidth <= 0 || reqHeight <= 0) {
+            return 1;
+        }
+        int inSampleSize = 1;
+        while (width / (inSampleSize * 2) >= reqWidth && height / (inSampleSize * 2) >= reqHeight) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+}
@@ -0,0 +1,79 @@
+package io.branch.referral.QRCode;
+
+import android.graphics.Bitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * <p>Draws the modules of a QR code symbol into an image with the settings of a {@link BranchQRCode}.</p>
+ * <p>Modules are drawn as squares of a whole number of pixels, so the code stays sharp, and the
+ * symbol is centered in the image. The bitmap is filled one module row at a time from a single
+ * row buffer rather than from a buffer of the whole image.</p>
+ */
+final class QRCodeRenderer {
+    static final int DEFAULT_WIDTH = 512;
+    // Quiet zone in modules when no margin is set, the minimum readers expect
+    static final int DEFAULT_QUIET_ZONE_MODULES = 4;
+
+    private static final int JPEG_QUALITY = 100;
+
+    private QRCodeRenderer() {
+    }
+
+    /**
+     * @param modules         The modules of the symbol indexed [y][x], see {@link QRCodeEncoder#encode}.
+     * @param width           The width and height of the image in pixels.
+     * @param margin          The minimum border around the symbol in pixels, {@code null} for a
+     *                        border of {@link #DEFAULT_QUIET_ZONE_MODULES} modules.
+     * @param codeColor       The ARGB color of dark modules.
+     * @param backgroundColor The ARGB color of light modules and of the border.
+     * @return The modules drawn into a square {@link Bitmap}.
+     */
+    static Bitmap render(boolean[][] modules, int width, Integer margin, int codeColor, int backgroundColor) {
+        int count = modules.length;
+        int moduleSize;
+        if (margin == null) {
+            moduleSize = width / (count + 2 * DEFAULT_QUIET_ZONE_MODULES);
+        } else {
+            moduleSize = (width - 2 * margin) / count;
+        }
+        moduleSize = Math.max(1, moduleSize);
+        int offset = Math.max(0, (width - moduleSize * count) / 2);
+
+        Bitmap bitmap = Bitmap.createBitmap(width, width, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(backgroundColor);
+
+        int[] row = new int[width];
+        for (int y = 0; y < count; y++) {
+            int top = offset + y * moduleSize;
+            if (top >= width) break;
+
+            Arrays.fill(row, backgroundColor);
+            for (int x = 0; x < count; x++) {
+                if (modules[y][x]) {
+                    int left = offset + x * moduleSize;
+                    Arrays.fill(row, Math.min(left, width), Math.min(left + moduleSize, width), codeColor);
+                }
+            }
+            int rows = Math.min(moduleSize, width - top);
+            for (int i = 0; i < rows; i++) {
+                bitmap.setPixels(row, 0, width, 0, top + i, width, 1);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * @return The bitmap compressed in the image format, as returned by the Branch API.
+     */
+    static byte[] compress(Bitmap bitmap, BranchQRCode.BranchImageFormat imageFormat) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (imageFormat == BranchQRCode.BranchImageFormat.JPEG) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } else {
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+        }
+        return out.toByteArray();
+    }
+}
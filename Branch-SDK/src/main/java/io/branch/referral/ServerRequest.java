@@ -262,7 +262,7 @@ public abstract class ServerRequest {
      *             as key-value pairs.
      */
     protected void setPost(JSONObject post) throws JSONException {
-        BranchLogger.v("setPost " + post);
+        BranchLogger.v("setPost %s", post);
         params_ = post;
 
         if (getBranchRemoteAPIVersion() == BRANCH_API_VERSION.V1) {
@@ -759,8 +759,8 @@ public abstract class ServerRequest {
      * @param lock {@link PROCESS_WAIT_LOCK} type of lock
      */
     public void addProcessWaitLock(PROCESS_WAIT_LOCK lock) {
-        if (lock != null) {
-            locks_.add(lock);
+        if (lock != null && locks_.add(lock) && this instanceof ServerRequestInitSession) {
+            BranchStartupTimeline.beginAsyncSection("Branch " + lock, waitLockCookie(lock));
         }
     }
     
@@ -770,7 +770,15 @@ public abstract class ServerRequest {
      * @param lock {@link PROCESS_WAIT_LOCK} type of lock
      */
     public void removeProcessWaitLock(PROCESS_WAIT_LOCK lock) {
-        locks_.remove(lock);
+        if (locks_.remove(lock) && this instanceof ServerRequestInitSession) {
+            BranchStartupTimeline.getInstance().record(BranchStartupTimeline.Phase.WAIT_LOCK_RELEASED, lock.toString());
+            BranchStartupTimeline.endAsyncSection("Branch " + lock, waitLockCookie(lock));
+        }
+    }
+
+    // Identifies the trace section of a wait lock of this request
+    private int waitLockCookie(PROCESS_WAIT_LOCK lock) {
+        return 31 * System.identityHashCode(this) + lock.ordinal();
     }
 
     public String printWaitLocks(){
@@ -792,7 +800,7 @@ public abstract class ServerRequest {
      * Also attaches any required URL query parameters based on the request type.
      */
     public void onPreExecute() {
-        BranchLogger.v("onPreExecute " + this);
+        BranchLogger.v("onPreExecute %s", this);
         if (this instanceof ServerRequestRegisterOpen || this instanceof ServerRequestLogEvent) {
             try {
                 ReferringUrlUtility utility = new ReferringUrlUtility(prefHelper_);
@@ -809,7 +817,7 @@ public abstract class ServerRequest {
                 }
 
             } catch (Exception e) {
-                BranchLogger.e("Caught exception in onPreExecute: " + e.getMessage() + " stacktrace " + BranchLogger.stackTraceToString(e));
+                BranchLogger.e("Caught exception in onPreExecute: %s stacktrace %s", e.getMessage(), e);
             }
         }
     }
@@ -8,7 +8,6 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.net.URL;
-import java.net.URLEncoder;
 import java.util.Collection;
 
 /**
@@ -22,7 +21,7 @@ class ServerRequestCreateUrl extends ServerRequest {
     private boolean isAsync_ = true;
     private Branch.BranchLinkCreateListener callback_;
     /* Default long link base url*/
-    private static final String DEF_BASE_URL = "https://bnc.lt/a/";
+    static final String DEF_BASE_URL = "https://bnc.lt/a/";
     private boolean defaultToLongUrl_ = true;
 
     /**
@@ -197,58 +196,7 @@ class ServerRequestCreateUrl extends ServerRequest {
                 // By def the base url contains randomized bundle token as query param. This should be removed when tracking is disabled.
                 longUrl = longUrl.replace(new URL(longUrl).getQuery(), "");
             }
-            longUrl += longUrl.contains("?") ? "" : "?";
-            longUrl += longUrl.endsWith("?") ? "" : "&";
-
-            Collection<String> tags = linkPost_.getTags();
-            if (tags != null) {
-                for (String tag : tags) {
-                    if (tag != null && tag.length() > 0)
-                        longUrl = longUrl + Defines.LinkParam.Tags + "=" + URLEncoder.encode(tag, "UTF8") + "&";
-                }
-            }
-            String alias = linkPost_.getAlias();
-            if (alias != null && alias.length() > 0) {
-                longUrl = longUrl + Defines.LinkParam.Alias + "=" + URLEncoder.encode(alias, "UTF8") + "&";
-            }
-
-            String channel = linkPost_.getChannel();
-            if (channel != null && channel.length() > 0) {
-                longUrl = longUrl + Defines.LinkParam.Channel + "=" + URLEncoder.encode(channel, "UTF8") + "&";
-            }
-
-            String feature = linkPost_.getFeature();
-            if (feature != null && feature.length() > 0) {
-                longUrl = longUrl + Defines.LinkParam.Feature + "=" + URLEncoder.encode(feature, "UTF8") + "&";
-            }
-
-            String stage = linkPost_.getStage();
-            if (stage != null && stage.length() > 0) {
-                longUrl = longUrl + Defines.LinkParam.Stage + "=" + URLEncoder.encode(stage, "UTF8") + "&";
-            }
-
-            String campaign = linkPost_.getCampaign();
-            if (campaign != null && campaign.length() > 0) {
-                longUrl = longUrl + Defines.LinkParam.Campaign + "=" + URLEncoder.encode(campaign, "UTF8") + "&";
-            }
-
-            long type = linkPost_.getType();
-            longUrl = longUrl + Defines.LinkParam.Type + "=" + type + "&";
-
-            long duration = linkPost_.getDuration();
-            longUrl = longUrl + Defines.LinkParam.Duration + "=" + duration;
-
-            String source = Defines.Jsonkey.URLSource.getKey();
-            longUrl = longUrl + "&source=" + source;
-
-            JSONObject params = linkPost_.getParams();
-            if (params != null && params.length() > 0) {
-                String paramsString = params.toString();
-                byte[] data = paramsString.getBytes();
-                String base64Data = Base64.encodeToString(data, android.util.Base64.NO_WRAP);
-                String urlEncodedBase64Data = URLEncoder.encode(base64Data, "UTF8");
-                longUrl = longUrl + "&data=" + urlEncodedBase64Data;
-            }
+            longUrl = LongUrlBuilder.build(longUrl, linkPost_);
         } catch (Exception exception) {
             BranchLogger.e("Caught Exception ServerRequestCreateUrl generateLongUrlWithParams: " + exception.getMessage() + " stacktrace: " + BranchLogger.stackTraceToString(exception));
             callback_.onLinkCreate(null, new BranchError("Trouble creating a URL.", BranchError.ERR_BRANCH_INVALID_REQUEST));
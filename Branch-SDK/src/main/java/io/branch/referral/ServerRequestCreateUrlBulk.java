@@ -0,0 +1,121 @@
+package io.branch.referral;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * The server request for creating several short urls in a single round trip. Each link is described by a
+ * {@link ServerRequestCreateUrl} that is never queued on its own; this request posts their link data as one
+ * array and reports the result of every link through the callback of its {@link ServerRequestCreateUrl}.
+ * </p>
+ */
+class ServerRequestCreateUrlBulk extends ServerRequest {
+
+    /* Maximum number of links the Branch API accepts in a single bulk request */
+    static final int MAX_LINKS_PER_REQUEST = 100;
+
+    private final List<ServerRequestCreateUrl> linkRequests_;
+
+    /**
+     * @param context      Current application context
+     * @param linkRequests The link requests to create in this round trip. Should not exceed {@link #MAX_LINKS_PER_REQUEST}
+     */
+    ServerRequestCreateUrlBulk(Context context, List<ServerRequestCreateUrl> linkRequests) {
+        super(context, Defines.RequestPath.GetURLBulk);
+        linkRequests_ = new ArrayList<>(linkRequests);
+    }
+
+    /**
+     * @return A {@link JSONArray} with the link data of every link, in the order the links were added.
+     */
+    JSONArray getLinkPosts() {
+        JSONArray linkPosts = new JSONArray();
+        for (ServerRequestCreateUrl linkRequest : linkRequests_) {
+            linkPosts.put(linkRequest.getPost());
+        }
+        return linkPosts;
+    }
+
+    int getLinkCount() {
+        return linkRequests_.size();
+    }
+
+    @Override
+    public String getRequestUrl() {
+        // The bulk end point takes the Branch key as part of the path instead of the body
+        return super.getRequestUrl() + prefHelper_.getBranchKey();
+    }
+
+    @Override
+    public boolean handleErrors(Context context) {
+        if (!super.doesAppHasInternetPermission(context)) {
+            for (ServerRequestCreateUrl linkRequest : linkRequests_) {
+                linkRequest.handleErrors(context);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void onRequestSucceeded(ServerResponse resp, Branch branch) {
+        JSONArray urls = resp.getArray();
+        for (int i = 0; i < linkRequests_.size(); i++) {
+            ServerRequestCreateUrl linkRequest = linkRequests_.get(i);
+            JSONObject result = urls != null ? urls.optJSONObject(i) : null;
+            String url = result != null ? result.optString("url", null) : null;
+            if (url != null) {
+                branch.linkCache_.put(linkRequest.getLinkPost(), url);
+                linkRequest.onUrlAvailable(url);
+            } else {
+                linkRequest.handleFailure(BranchError.ERR_BRANCH_INVALID_REQUEST, "No url in bulk response.");
+            }
+        }
+    }
+
+    @Override
+    public void handleFailure(int statusCode, String causeMsg) {
+        for (ServerRequestCreateUrl linkRequest : linkRequests_) {
+            linkRequest.handleFailure(statusCode, causeMsg);
+        }
+    }
+
+    @Override
+    public boolean isGetRequest() {
+        return false;
+    }
+
+    @Override
+    public void clearCallbacks() {
+        for (ServerRequestCreateUrl linkRequest : linkRequests_) {
+            linkRequest.clearCallbacks();
+        }
+    }
+
+    @Override
+    void doFinalUpdateOnMainThread() {
+        // The link data of every link is what gets posted, so it receives the updates a single link request would
+        for (ServerRequestCreateUrl linkRequest : linkRequests_) {
+            linkRequest.doFinalUpdateOnMainThread();
+        }
+    }
+
+    @Override
+    void doFinalUpdateOnBackgroundThread() {
+        for (ServerRequestCreateUrl linkRequest : linkRequests_) {
+            linkRequest.doFinalUpdateOnBackgroundThread();
+        }
+    }
+
+    @Override
+    protected boolean prepareExecuteWithoutTracking() {
+        // Same as ServerRequestCreateUrl, short links can be created when tracking is disabled.
+        return true;
+    }
+}
@@ -92,6 +92,15 @@ abstract class ServerRequestInitSession extends ServerRequest {
         Branch.getInstance().unlockSDKInitWaitLock();
     }
 
+    /**
+     * Calls the init callback, which ends the init in the {@link BranchStartupTimeline}.
+     */
+    void deliverInitFinished(JSONObject referringParams, BranchError error) {
+        BranchStartupTimeline.getInstance().record(BranchStartupTimeline.Phase.INIT_FINISHED,
+                error == null ? null : String.valueOf(error.getErrorCode()));
+        callback_.onInitFinished(referringParams, error);
+    }
+
     void onInitSessionCompleted(ServerResponse response, Branch branch) {
         DeepLinkRoutingValidator.validate(branch.currentActivityReference_);
         branch.updateSkipURLFormats();
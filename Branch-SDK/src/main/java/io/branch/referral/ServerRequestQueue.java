@@ -31,9 +31,10 @@ import java.util.concurrent.TimeUnit;
  * opened.</p>
  */
 public class ServerRequestQueue {
+    static final String SHARED_PREF_FILE = "BNC_Server_Request_Queue";
     private static final String PREF_KEY = "BNCServerRequestQueue";
     private static final int MAX_ITEMS = 25;
-    private static ServerRequestQueue SharedInstance;
+    private static volatile ServerRequestQueue SharedInstance;
     private SharedPreferences sharedPref;
     private SharedPreferences.Editor editor;
     private final List<ServerRequest> queue;
@@ -81,9 +82,10 @@ public class ServerRequestQueue {
      */
     @SuppressLint("CommitPrefEdits")
     private ServerRequestQueue(Context c) {
-        sharedPref = c.getSharedPreferences("BNC_Server_Request_Queue", Context.MODE_PRIVATE);
+        sharedPref = c.getSharedPreferences(SHARED_PREF_FILE, Context.MODE_PRIVATE);
         editor = sharedPref.edit();
         queue = Collections.synchronizedList(new LinkedList<ServerRequest>());
+        BranchStartupTrace.recordObject("ServerRequestQueue");
     }
     
     /**
@@ -135,7 +137,7 @@ public class ServerRequestQueue {
 
     public void printQueue(){
         // Only print the queue if the log level is verbose
-        if (BranchLogger.getLoggingLevel().getLevel() == BranchLogger.BranchLogLevel.VERBOSE.getLevel()) {
+        if (BranchLogger.isLoggable(BranchLogger.BranchLogLevel.VERBOSE)) {
             synchronized (reqQueueLockObject) {
                 StringBuilder stringBuilder = new StringBuilder();
                 for (int i = 0; i < queue.size(); i++) {
@@ -282,30 +284,35 @@ public class ServerRequestQueue {
     // Then when init request count in the queue is either the last or none, clear.
     public void postInitClear() {
         // Check for any Third party SDK for data handling
-        PrefHelper prefHelper_ = Branch.getInstance().getPrefHelper();
+        final PrefHelper prefHelper_ = Branch.getInstance().getPrefHelper();
         boolean canClear = this.canClearInitData();
-        BranchLogger.v("postInitClear " + prefHelper_ + " can clear init data " + canClear);
+        BranchLogger.v("postInitClear %s can clear init data %s", prefHelper_, canClear);
 
         if(prefHelper_ != null && canClear) {
-            prefHelper_.setLinkClickIdentifier(PrefHelper.NO_STRING_VALUE);
-            prefHelper_.setGoogleSearchInstallIdentifier(PrefHelper.NO_STRING_VALUE);
-            prefHelper_.setAppStoreReferrer(PrefHelper.NO_STRING_VALUE);
-            prefHelper_.setExternalIntentUri(PrefHelper.NO_STRING_VALUE);
-            prefHelper_.setExternalIntentExtra(PrefHelper.NO_STRING_VALUE);
-            prefHelper_.setAppLink(PrefHelper.NO_STRING_VALUE);
-            prefHelper_.setPushIdentifier(PrefHelper.NO_STRING_VALUE);
-            prefHelper_.setInstallReferrerParams(PrefHelper.NO_STRING_VALUE);
-            prefHelper_.setIsFullAppConversion(false);
-            prefHelper_.setInitialReferrer(PrefHelper.NO_STRING_VALUE);
-
-            if (prefHelper_.getLong(PrefHelper.KEY_PREVIOUS_UPDATE_TIME) == 0) {
-                prefHelper_.setLong(PrefHelper.KEY_PREVIOUS_UPDATE_TIME, prefHelper_.getLong(PrefHelper.KEY_LAST_KNOWN_UPDATE_TIME));
-            }
+            prefHelper_.edit(new Runnable() {
+                @Override
+                public void run() {
+                    prefHelper_.setLinkClickIdentifier(PrefHelper.NO_STRING_VALUE);
+                    prefHelper_.setGoogleSearchInstallIdentifier(PrefHelper.NO_STRING_VALUE);
+                    prefHelper_.setAppStoreReferrer(PrefHelper.NO_STRING_VALUE);
+                    prefHelper_.setExternalIntentUri(PrefHelper.NO_STRING_VALUE);
+                    prefHelper_.setExternalIntentExtra(PrefHelper.NO_STRING_VALUE);
+                    prefHelper_.setAppLink(PrefHelper.NO_STRING_VALUE);
+                    prefHelper_.setPushIdentifier(PrefHelper.NO_STRING_VALUE);
+                    prefHelper_.setInstallReferrerParams(PrefHelper.NO_STRING_VALUE);
+                    prefHelper_.setIsFullAppConversion(false);
+                    prefHelper_.setInitialReferrer(PrefHelper.NO_STRING_VALUE);
+
+                    if (prefHelper_.getLong(PrefHelper.KEY_PREVIOUS_UPDATE_TIME) == 0) {
+                        prefHelper_.setLong(PrefHelper.KEY_PREVIOUS_UPDATE_TIME, prefHelper_.getLong(PrefHelper.KEY_LAST_KNOWN_UPDATE_TIME));
+                    }
+                }
+            });
         }
     }
 
     void processNextQueueItem(String callingMethodName) {
-        BranchLogger.v("processNextQueueItem " + callingMethodName);
+        BranchLogger.v("processNextQueueItem %s", callingMethodName);
         this.printQueue();
         try {
             serverSema_.acquire();
@@ -315,7 +322,7 @@ public class ServerRequestQueue {
 
                 serverSema_.release();
                 if (req != null) {
-                    BranchLogger.d("processNextQueueItem, req " + req);
+                    BranchLogger.d("processNextQueueItem, req %s", req);
                     if (!req.isWaitingOnProcessToFinish()) {
                         // All request except Install request need a valid RandomizedBundleToken
                         if (!(req instanceof ServerRequestRegisterInstall) && !hasUser()) {
@@ -343,7 +350,7 @@ public class ServerRequestQueue {
                 serverSema_.release();
             }
         } catch (Exception e) {
-            BranchLogger.e("Caught Exception " + callingMethodName + " processNextQueueItem: " + e.getMessage() + " stacktrace: " + BranchLogger.stackTraceToString(e));
+            BranchLogger.e("Caught Exception %s processNextQueueItem: %s stacktrace: %s", callingMethodName, e.getMessage(), e);
         }
     }
 
@@ -360,7 +367,7 @@ public class ServerRequestQueue {
         if (request instanceof ServerRequestInitSession) {
             return false;
         }
-        else if (request instanceof ServerRequestCreateUrl) {
+        else if (request instanceof ServerRequestCreateUrl || request instanceof ServerRequestCreateUrlBulk) {
             return false;
         }
 
@@ -410,9 +417,9 @@ public class ServerRequestQueue {
     }
 
     private void executeTimedBranchPostTask(final ServerRequest req, final int timeout) {
-        BranchLogger.v("executeTimedBranchPostTask " + req);
+        BranchLogger.v("executeTimedBranchPostTask %s", req);
         if(req instanceof ServerRequestInitSession){
-            BranchLogger.v("callback to be returned " + ((ServerRequestInitSession) req).callback_);
+            BranchLogger.v("callback to be returned %s", ((ServerRequestInitSession) req).callback_);
         }
 
         final CountDownLatch latch = new CountDownLatch(1);
@@ -452,17 +459,17 @@ public class ServerRequestQueue {
      * @param req The {@link ServerRequest} to execute
      */
     public void handleNewRequest(ServerRequest req) {
-        BranchLogger.d("handleNewRequest " + req);
+        BranchLogger.d("handleNewRequest %s", req);
         // If Tracking is disabled fail all messages with ERR_BRANCH_TRACKING_DISABLED
         if (Branch.getInstance().getTrackingController().isTrackingDisabled() && !req.prepareExecuteWithoutTracking()) {
-            BranchLogger.d("Requested operation cannot be completed since tracking is disabled [" + req.requestPath_.getPath() + "]");
+            BranchLogger.d("Requested operation cannot be completed since tracking is disabled [%s]", req.requestPath_.getPath());
             req.handleFailure(BranchError.ERR_BRANCH_TRACKING_DISABLED, "");
             return;
         }
         //If not initialised put an open or install request in front of this request(only if this needs session)
         if (Branch.getInstance().initState_ != Branch.SESSION_STATE.INITIALISED && !(req instanceof ServerRequestInitSession)) {
             if (requestNeedsSession(req)) {
-                BranchLogger.d("handleNewRequest " + req + " needs a session");
+                BranchLogger.d("handleNewRequest %s needs a session", req);
                 req.addProcessWaitLock(ServerRequest.PROCESS_WAIT_LOCK.SDK_INIT_WAIT_LOCK);
             }
         }
@@ -517,12 +524,24 @@ public class ServerRequestQueue {
                 return new ServerResponse(thisReq_.getRequestPath(), BranchError.ERR_BRANCH_TRACKING_DISABLED, "", "");
             }
             String branchKey = Branch.getInstance().prefHelper_.getBranchKey();
+            if (thisReq_ instanceof ServerRequestInitSession) {
+                BranchStartupTimeline.record(BranchStartupTimeline.Phase.INIT_REQUEST_SENT);
+            }
+            String traceSection = "Branch request " + thisReq_.getRequestPath();
+            BranchStartupTimeline.beginAsyncSection(traceSection, System.identityHashCode(thisReq_));
             ServerResponse result;
-            if (thisReq_.isGetRequest()) {
-                result = Branch.getInstance().getBranchRemoteInterface().make_restful_get(thisReq_.getRequestUrl(), thisReq_.getGetParams(), thisReq_.getRequestPath(), branchKey);
-            } else {
-                BranchLogger.v("Beginning rest post for " + thisReq_);
-                result = Branch.getInstance().getBranchRemoteInterface().make_restful_post(thisReq_.getPostWithInstrumentationValues(instrumentationExtraData_), thisReq_.getRequestUrl(), thisReq_.getRequestPath(), branchKey);
+            try {
+                if (thisReq_.isGetRequest()) {
+                    result = Branch.getInstance().getBranchRemoteInterface().make_restful_get(thisReq_.getRequestUrl(), thisReq_.getGetParams(), thisReq_.getRequestPath(), branchKey);
+                } else if (thisReq_ instanceof ServerRequestCreateUrlBulk) {
+                    BranchLogger.v("Beginning rest post for %s", thisReq_);
+                    result = Branch.getInstance().getBranchRemoteInterface().make_restful_post(((ServerRequestCreateUrlBulk) thisReq_).getLinkPosts(), thisReq_.getRequestUrl(), thisReq_.getRequestPath(), branchKey);
+                } else {
+                    BranchLogger.v("Beginning rest post for %s", thisReq_);
+                    result = Branch.getInstance().getBranchRemoteInterface().make_restful_post(thisReq_.getPostWithInstrumentationValues(instrumentationExtraData_), thisReq_.getRequestUrl(), thisReq_.getRequestPath(), branchKey);
+                }
+            } finally {
+                BranchStartupTimeline.endAsyncSection(traceSection, System.identityHashCode(thisReq_));
             }
             if (latch_ != null) {
                 latch_.countDown();
@@ -537,20 +556,37 @@ public class ServerRequestQueue {
         }
 
         void onPostExecuteInner(ServerResponse serverResponse) {
-            BranchLogger.v("onPostExecuteInner " + this + " " + serverResponse);
+            BranchLogger.v("onPostExecuteInner %s %s", this, serverResponse);
             if (latch_ != null) {
                 latch_.countDown();
             }
-            if (serverResponse == null) {
-                thisReq_.handleFailure(BranchError.ERR_BRANCH_INVALID_REQUEST, "Null response.");
-                return;
-            }
+            boolean isInitRequest = thisReq_ instanceof ServerRequestInitSession;
+            try {
+                if (serverResponse == null) {
+                    thisReq_.handleFailure(BranchError.ERR_BRANCH_INVALID_REQUEST, "Null response.");
+                    return;
+                }
 
-            int status = serverResponse.getStatusCode();
-            if (status == 200) {
-                onRequestSuccess(serverResponse);
-            } else {
-                onRequestFailed(serverResponse, status);
+                int status = serverResponse.getStatusCode();
+                if (isInitRequest) {
+                    BranchStartupTimeline.getInstance().record(BranchStartupTimeline.Phase.INIT_RESPONSE_RECEIVED, String.valueOf(status));
+                    BranchStartupTimeline.beginSection("Branch init response");
+                }
+                try {
+                    if (status == 200) {
+                        onRequestSuccess(serverResponse);
+                    } else {
+                        onRequestFailed(serverResponse, status);
+                    }
+                } finally {
+                    if (isInitRequest) {
+                        BranchStartupTimeline.endSection();
+                    }
+                }
+            } finally {
+                if (isInitRequest) {
+                    BranchStartupTimeline.endAsyncSection("Branch init request", System.identityHashCode(thisReq_));
+                }
             }
             ServerRequestQueue.this.networkCount_ = 0;
 
@@ -562,15 +598,23 @@ public class ServerRequestQueue {
                 @Override
                 public void run() {
                     ServerRequestQueue.this.processNextQueueItem("onPostExecuteInner");
+                    // Link prefetches only run while no other request is waiting
+                    BranchLinkPrefetcher prefetcher = Branch.getInstance().linkPrefetcher_.getIfCreated();
+                    if (prefetcher != null) {
+                        prefetcher.dispatch();
+                    }
                 }
             });
         }
 
         private void onRequestSuccess(ServerResponse serverResponse) {
-            BranchLogger.v("onRequestSuccess " + serverResponse);
+            BranchLogger.v("onRequestSuccess %s", serverResponse);
             // If the request succeeded
             @Nullable final JSONObject respJson = serverResponse.getObject();
-            if (respJson == null) {
+            // Bulk requests are answered with an array, one item per request in the bulk
+            final boolean hasResponseBody = respJson != null
+                    || (thisReq_ instanceof ServerRequestCreateUrlBulk && serverResponse.getArray() != null);
+            if (!hasResponseBody) {
                 thisReq_.handleFailure(500, "Null response json.");
             }
 
@@ -631,7 +675,7 @@ public class ServerRequestQueue {
                 }
             }
 
-            if (respJson != null) {
+            if (hasResponseBody) {
                 thisReq_.onRequestSucceeded(serverResponse, Branch.getInstance());
                 ServerRequestQueue.this.remove(thisReq_);
             } else if (thisReq_.shouldRetryOnFail()) {
@@ -643,7 +687,7 @@ public class ServerRequestQueue {
         }
 
         void onRequestFailed(ServerResponse serverResponse, int status) {
-            BranchLogger.v("onRequestFailed " + serverResponse.getMessage());
+            BranchLogger.v("onRequestFailed %s", serverResponse.getMessage());
             // If failed request is an initialisation request (but not in the intra-app linking scenario) then mark session as not initialised
             if (thisReq_ instanceof ServerRequestInitSession && PrefHelper.NO_STRING_VALUE.equals(Branch.getInstance().prefHelper_.getSessionParams())) {
                 Branch.getInstance().setInitState(Branch.SESSION_STATE.UNINITIALISED);
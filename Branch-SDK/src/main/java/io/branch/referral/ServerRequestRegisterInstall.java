@@ -91,7 +91,7 @@ class ServerRequestRegisterInstall extends ServerRequestInitSession {
                 prefHelper_.setSessionParams(PrefHelper.NO_STRING_VALUE);
             }
             if (callback_ != null) {
-                callback_.onInitFinished(branch.getLatestReferringParams(), null);
+                deliverInitFinished(branch.getLatestReferringParams(), null);
             }
             
             prefHelper_.setAppVersion(DeviceInfo.getInstance().getAppVersion());
@@ -111,7 +111,7 @@ class ServerRequestRegisterInstall extends ServerRequestInitSession {
             } catch (JSONException ex) {
                 BranchLogger.w("Caught JSONException " + ex.getMessage());
             }
-            callback_.onInitFinished(obj, new BranchError("Trouble initializing Branch. " + causeMsg, statusCode));
+            deliverInitFinished(obj, new BranchError("Trouble initializing Branch. " + causeMsg, statusCode));
         }
     }
     
@@ -119,7 +119,7 @@ class ServerRequestRegisterInstall extends ServerRequestInitSession {
     public boolean handleErrors(Context context) {
         if (!super.doesAppHasInternetPermission(context)) {
             if (callback_ != null) {
-                callback_.onInitFinished(null, new BranchError("Trouble initializing Branch.", BranchError.ERR_NO_INTERNET_PERMISSION));
+                deliverInitFinished(null, new BranchError("Trouble initializing Branch.", BranchError.ERR_NO_INTERNET_PERMISSION));
             }
             return true;
         }
@@ -47,7 +47,7 @@ class ServerRequestRegisterOpen extends ServerRequestInitSession {
         // onResume to ensure that we have the latest intent data.
         if (Branch.getInstance().isInstantDeepLinkPossible()) {
             if (callback_ != null) {
-                callback_.onInitFinished(Branch.getInstance().getLatestReferringParams(), null);
+                deliverInitFinished(Branch.getInstance().getLatestReferringParams(), null);
             }
             Branch.getInstance().requestQueue_.addExtraInstrumentationData(Defines.Jsonkey.InstantDeepLinkSession.getKey(), "true");
             Branch.getInstance().setInstantDeepLinkPossible(false);
@@ -73,7 +73,7 @@ class ServerRequestRegisterOpen extends ServerRequestInitSession {
             }
 
             if (callback_ != null && !Branch.getInstance().isIDLSession()) {
-                callback_.onInitFinished(branch.getLatestReferringParams(), null);
+                deliverInitFinished(branch.getLatestReferringParams(), null);
             }
             
             prefHelper_.setAppVersion(DeviceInfo.getInstance().getAppVersion());
@@ -93,7 +93,7 @@ class ServerRequestRegisterOpen extends ServerRequestInitSession {
             } catch (JSONException ex) {
                 BranchLogger.w("Caught JSONException " + ex.getMessage());
             }
-            callback_.onInitFinished(obj, new BranchError("Trouble initializing Branch. " + causeMsg, statusCode));
+            deliverInitFinished(obj, new BranchError("Trouble initializing Branch. " + causeMsg, statusCode));
         }
     }
     
@@ -101,7 +101,7 @@ class ServerRequestRegisterOpen extends ServerRequestInitSession {
     public boolean handleErrors(Context context) {
         if (!super.doesAppHasInternetPermission(context)) {
             if (callback_ != null && !Branch.getInstance().isIDLSession()) {
-                callback_.onInitFinished(null, new BranchError("Trouble initializing Branch.", BranchError.ERR_NO_INTERNET_PERMISSION));
+                deliverInitFinished(null, new BranchError("Trouble initializing Branch.", BranchError.ERR_NO_INTERNET_PERMISSION));
             }
             return true;
         }
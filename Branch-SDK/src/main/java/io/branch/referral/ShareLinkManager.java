@@ -11,6 +11,7 @@ import android.graphics.Color;
 import android.graphics.drawable.ColorDrawable;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.view.Gravity;
 import android.view.KeyEvent;
@@ -23,8 +24,10 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * <p>Class that provides a chooser dialog with customised share options to share a link.
@@ -61,6 +64,14 @@ class ShareLinkManager {
     final int leftMargin = 100;
     private List<String> includeInShareSheet = new ArrayList<>();
     private List<String> excludeFromShareSheet = new ArrayList<>();
+    /* Cache of the share targets with their labels and icons. */
+    private ShareTargetCache shareTargetCache_;
+    /* Rebinds the list once labels and icons loaded in the background are available. */
+    private Runnable onTargetInfoLoaded_;
+    /* Maximum number of links created when the share sheet opens. */
+    static final int MAX_SPECULATIVE_LINKS = 4;
+    /* Links created when the share sheet opened, by channel name. */
+    private final Map<String, SpeculativeLink> speculativeLinks_ = new HashMap<>();
     
     /**
      * Creates an application selector and shares a link on user selecting the application.
@@ -79,6 +90,7 @@ class ShareLinkManager {
         includeInShareSheet = builder.getIncludedInShareSheet();
         excludeFromShareSheet = builder.getExcludedFromShareSheet();
         iconSize_ = builder.getIconSize();
+        shareTargetCache_ = ShareTargetCache.getInstance();
         try {
             createShareDialog(builder.getPreferredOptions());
         } catch (Exception e) {
@@ -117,8 +129,12 @@ class ShareLinkManager {
      * @param preferredOptions List of {@link io.branch.referral.SharingHelper.SHARE_WITH} options.
      */
     private void createShareDialog(List<SharingHelper.SHARE_WITH> preferredOptions) {
-        final List<ResolveInfo> matchingApps = context_.getPackageManager().queryIntentActivities(
-                shareLinkIntent_, PackageManager.MATCH_DEFAULT_ONLY);
+        final List<ResolveInfo> matchingApps;
+        if (shareTargetCache_ != null) {
+            matchingApps = shareTargetCache_.getShareTargets();
+        } else {
+            matchingApps = context_.getPackageManager().queryIntentActivities(shareLinkIntent_, PackageManager.MATCH_DEFAULT_ONLY);
+        }
 
         // if includeInShareSheet is not empty, add those apps, else add all matchingApps, then exclude whatever is in excludeFromShareSheet
         final List<ResolveInfo> completeAppList = new ArrayList<>(getExplicitlyIncludedMatchingApps(matchingApps));
@@ -148,6 +164,14 @@ class ShareLinkManager {
 
         /* Copy link option will be always there for sharing. */
         final ChooserArrayAdapter adapter = new ChooserArrayAdapter();
+        onTargetInfoLoaded_ = new Runnable() {
+            @Override
+            public void run() {
+                if (shareDlg_ != null) {
+                    adapter.notifyDataSetChanged();
+                }
+            }
+        };
         final ListView shareOptionListView;
         if (shareDialogThemeID_ > 1 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             shareOptionListView = new ListView(context_, null, 0, shareDialogThemeID_);
@@ -188,12 +212,8 @@ class ShareLinkManager {
                 } else if (view.getTag() instanceof ResolveInfo) {
                     ResolveInfo resolveInfo = (ResolveInfo) view.getTag();
                     if (callback_ != null) {
-                        String selectedChannelName = "";
-                        final PackageManager packageManager = context_.getPackageManager();
-                        if (context_ != null && resolveInfo.loadLabel(packageManager) != null) {
-                            selectedChannelName = resolveInfo.loadLabel(packageManager).toString();
-                        }
-                        builder_.getShortLinkBuilder().setChannel(resolveInfo.loadLabel(packageManager).toString());
+                        String selectedChannelName = getLabel(resolveInfo);
+                        builder_.getShortLinkBuilder().setChannel(selectedChannelName);
                         callback_.onChannelSelected(selectedChannelName);
                     }
                     adapter.selectedPos = pos - shareOptionListView.getHeaderViewsCount();
@@ -212,6 +232,8 @@ class ShareLinkManager {
         }
         shareDlg_.setContentView(shareOptionListView);
         shareDlg_.show();
+        // The user is likely to pick one of these, create their links while the sheet is shown
+        createSpeculativeLinks(availablePreferredApps);
         if (callback_ != null) {
             callback_.onShareLinkDialogLaunched();
         }
@@ -222,6 +244,9 @@ class ShareLinkManager {
                     callback_.onShareLinkDialogDismissed();
                     callback_ = null;
                 }
+                if (shareTargetCache_ != null) {
+                    shareTargetCache_.removeLoadListener(onTargetInfoLoaded_);
+                }
                 // Release  context to prevent leaks
                 if (!isShareInProgress_) {
                     context_ = null;
@@ -319,6 +344,48 @@ class ShareLinkManager {
         }
     }
     
+    // Label of a share target, from the cache when it has been loaded
+    private String getLabel(ResolveInfo resolveInfo) {
+        if (shareTargetCache_ != null && !isShareSheetItem(resolveInfo)) {
+            return shareTargetCache_.getLabel(resolveInfo);
+        }
+        return String.valueOf(resolveInfo.loadLabel(context_.getPackageManager()));
+    }
+
+    /**
+     * Starts creating the links of the preferred share targets and of the copy link item, so that a
+     * tap on one of them does not wait for the link to be created.
+     *
+     * @param targets The {@link ResolveInfo} of the preferred share targets.
+     */
+    private void createSpeculativeLinks(List<ResolveInfo> targets) {
+        Branch branch = Branch.getInstance();
+        BranchShortLinkBuilder shortLinkBuilder = builder_.getShortLinkBuilder();
+        if (branch == null || shortLinkBuilder == null) return;
+
+        // The channel is set on the shared builder when a target is tapped, restore it afterwards
+        String channel = shortLinkBuilder.channel_;
+        for (ResolveInfo target : targets) {
+            if (speculativeLinks_.size() >= MAX_SPECULATIVE_LINKS) break;
+            if (target instanceof MoreShareItem) continue;
+
+            String channelName = getLabel(target);
+            if (speculativeLinks_.containsKey(channelName)) continue;
+            SpeculativeLink link = new SpeculativeLink();
+            ServerRequestCreateUrl req = shortLinkBuilder.setChannel(channelName).createUrlRequest(link);
+            if (req.constructError_) continue;
+            link.linkData_ = req.getLinkPost();
+            speculativeLinks_.put(channelName, link);
+            branch.generateShortLinkInternal(req);
+        }
+        shortLinkBuilder.setChannel(channel);
+    }
+
+    // The copy link and more items are not apps, their labels and icons are set on the builder
+    private static boolean isShareSheetItem(ResolveInfo resolveInfo) {
+        return resolveInfo instanceof CopyLinkItem || resolveInfo instanceof MoreShareItem;
+    }
+
     /**
      * Invokes a sharing client with a link created by the given json objects.
      *
@@ -326,12 +393,22 @@ class ShareLinkManager {
      */
     private void invokeSharingClient(final ResolveInfo selectedResolveInfo) {
         isShareInProgress_ = true;
-        final String channelName = selectedResolveInfo.loadLabel(context_.getPackageManager()).toString();
+        final String channelName = getLabel(selectedResolveInfo);
         BranchShortLinkBuilder shortLinkBuilder = builder_.getShortLinkBuilder();
-        
-        shortLinkBuilder.generateShortUrl(new Branch.BranchLinkCreateListener() {
+        final long tapTime = SystemClock.elapsedRealtime();
+        // The app may change the builder in onChannelSelected, or not set the channel at all
+        final SpeculativeLink speculativeLink = getSpeculativeLink(channelName, shortLinkBuilder);
+
+        Branch.BranchLinkCreateListener linkCreateListener = new Branch.BranchLinkCreateListener() {
             @Override
             public void onLinkCreate(String url, BranchError error) {
+                long tapToShareMillis = SystemClock.elapsedRealtime() - tapTime;
+                BranchLogger.v("Link for " + channelName + " ready " + tapToShareMillis + "ms after tap"
+                        + (speculativeLink != null ? ", created when the share sheet opened" : ""));
+                ShareSheetMetrics metrics = ShareSheetMetrics.getInstance();
+                if (metrics != null) {
+                    metrics.recordShare(tapToShareMillis, speculativeLink != null);
+                }
                 if (error == null) {
                     shareWithClient(selectedResolveInfo, url, channelName);
                 } else {
@@ -355,7 +432,61 @@ class ShareLinkManager {
                     }
                 }
             }
-        });
+        };
+        if (speculativeLink != null) {
+            // Reuses the link created when the share sheet opened, whether or not it is created yet
+            speculativeLink.setListener(linkCreateListener);
+        } else {
+            shortLinkBuilder.generateShortUrl(linkCreateListener);
+        }
+    }
+
+    /**
+     * @return The link created for the channel when the share sheet opened, if the builder still
+     * describes the same link, else null.
+     */
+    private SpeculativeLink getSpeculativeLink(String channelName, BranchShortLinkBuilder shortLinkBuilder) {
+        SpeculativeLink speculativeLink = speculativeLinks_.get(channelName);
+        if (speculativeLink == null) return null;
+        ServerRequestCreateUrl req = shortLinkBuilder.createUrlRequest(null);
+        if (req.constructError_ || !speculativeLink.linkData_.equals(req.getLinkPost())) {
+            BranchLogger.v("Link for " + channelName + " changed since the share sheet opened");
+            return null;
+        }
+        return speculativeLink;
+    }
+
+    /**
+     * A link created when the share sheet opened. The share of a tapped target waits for it instead
+     * of creating the same link again.
+     */
+    private static class SpeculativeLink implements Branch.BranchLinkCreateListener {
+        private BranchLinkData linkData_;
+        private boolean isCreated_ = false;
+        private String url_;
+        private BranchError error_;
+        private Branch.BranchLinkCreateListener listener_;
+
+        @Override
+        public void onLinkCreate(String url, BranchError error) {
+            isCreated_ = true;
+            url_ = url;
+            error_ = error;
+            if (listener_ != null) {
+                Branch.BranchLinkCreateListener listener = listener_;
+                listener_ = null;
+                listener.onLinkCreate(url, error);
+            }
+        }
+
+        // Calls the listener once the link is created, right away if it already is
+        void setListener(Branch.BranchLinkCreateListener listener) {
+            if (isCreated_) {
+                listener.onLinkCreate(url_, error_);
+            } else {
+                listener_ = listener;
+            }
+        }
     }
     
     private void shareWithClient(ResolveInfo selectedResolveInfo, String url, String channelName) {
@@ -441,8 +572,20 @@ class ShareLinkManager {
             }
             ResolveInfo resolveInfo = displayedAppList_.get(position);
             boolean setSelected = position == selectedPos;
-            itemView.setLabel(resolveInfo.loadLabel(context_.getPackageManager()).toString(),
-                    resolveInfo.loadIcon(context_.getPackageManager()), setSelected);
+            if (shareTargetCache_ == null || isShareSheetItem(resolveInfo)) {
+                itemView.setLabel(resolveInfo.loadLabel(context_.getPackageManager()).toString(),
+                        resolveInfo.loadIcon(context_.getPackageManager()), setSelected);
+            } else {
+                ShareTargetCache.TargetInfo targetInfo = shareTargetCache_.getTargetInfo(resolveInfo);
+                if (targetInfo != null) {
+                    itemView.setLabel(targetInfo.label, targetInfo.newIcon(), setSelected);
+                } else {
+                    // Placeholder until the label and icon are loaded in the background
+                    CharSequence label = resolveInfo.nonLocalizedLabel != null ? resolveInfo.nonLocalizedLabel : "";
+                    itemView.setLabel(label.toString(), new ColorDrawable(Color.TRANSPARENT), setSelected);
+                    shareTargetCache_.loadAsync(resolveInfo, onTargetInfoLoaded_);
+                }
+            }
             itemView.setTag(resolveInfo);
             return itemView;
         }
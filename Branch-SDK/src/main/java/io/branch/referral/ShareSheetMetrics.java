@@ -0,0 +1,75 @@
+package io.branch.referral;
+
+/**
+ * <p>Latency of the Branch share sheet, from the tap on a share target to the link being handed to
+ * that target. Links created speculatively when the share sheet opens are counted separately, so
+ * apps can see how often a share did not have to wait for the network.</p>
+ */
+public class ShareSheetMetrics {
+    private long shareCount_ = 0;
+    private long speculativeHitCount_ = 0;
+    private long totalTapToShareMillis_ = 0;
+    private long maxTapToShareMillis_ = 0;
+    private long lastTapToShareMillis_ = 0;
+
+    ShareSheetMetrics() {
+    }
+
+    /**
+     * Get the singleton instance for this class
+     *
+     * @return {@link ShareSheetMetrics} instance if already initialised or null
+     */
+    public static ShareSheetMetrics getInstance() {
+        Branch b = Branch.getInstance();
+        if (b == null) return null;
+        return b.getShareSheetMetrics();
+    }
+
+    synchronized void recordShare(long tapToShareMillis, boolean speculative) {
+        shareCount_++;
+        if (speculative) {
+            speculativeHitCount_++;
+        }
+        totalTapToShareMillis_ += tapToShareMillis;
+        maxTapToShareMillis_ = Math.max(maxTapToShareMillis_, tapToShareMillis);
+        lastTapToShareMillis_ = tapToShareMillis;
+    }
+
+    /**
+     * @return The number of links shared from the share sheet.
+     */
+    public synchronized long getShareCount() {
+        return shareCount_;
+    }
+
+    /**
+     * @return The number of shares that used a link created when the share sheet opened.
+     */
+    public synchronized long getSpeculativeHitCount() {
+        return speculativeHitCount_;
+    }
+
+    /**
+     * @return The average time from a tap to the share, in milliseconds, 0 before the first share.
+     */
+    public synchronized long getAverageTapToShareMillis() {
+        return shareCount_ == 0 ? 0 : totalTapToShareMillis_ / shareCount_;
+    }
+
+    public synchronized long getMaxTapToShareMillis() {
+        return maxTapToShareMillis_;
+    }
+
+    public synchronized long getLastTapToShareMillis() {
+        return lastTapToShareMillis_;
+    }
+
+    public synchronized void reset() {
+        shareCount_ = 0;
+        speculativeHitCount_ = 0;
+        totalTapToShareMillis_ = 0;
+        maxTapToShareMillis_ = 0;
+        lastTapToShareMillis_ = 0;
+    }
+}
@@ -0,0 +1,253 @@
+package io.branch.referral;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>Cache of the apps shown in the Branch share sheet. Resolving the share targets, loading their
+ * labels and loading their icons are slow package manager calls, too slow for the main thread every
+ * time the share sheet opens or a row is bound.</p>
+ * <p>The list of share targets is resolved once and kept until an app is installed, updated or
+ * removed. Labels and icons are loaded in the background into a cache bounded by the estimated
+ * memory of the icons; {@link ShareLinkManager} shows placeholders until they are loaded.</p>
+ */
+class ShareTargetCache {
+    static final int DEFAULT_MAX_BYTES = 2 * 1024 * 1024; // 2MB
+
+    private final Context context_;
+    private List<ResolveInfo> shareTargets_;
+    private boolean isReceiverRegistered_ = false;
+
+    private final LruCache<String, TargetInfo> targetInfoCache_;
+    private final Set<String> loading_ = new HashSet<>();
+    private final List<Runnable> loadListeners_ = new ArrayList<>();
+
+    private long targetListLoadCount_ = 0;
+
+    /**
+     * Label and icon of a share target.
+     */
+    static class TargetInfo {
+        final String label;
+        final Drawable icon;
+        final int sizeBytes;
+
+        TargetInfo(String label, Drawable icon) {
+            this.label = label;
+            this.icon = icon;
+            this.sizeBytes = 2 * label.length() + estimateSize(icon);
+        }
+
+        /**
+         * @return The icon, as a new drawable when it can be, so that bounds set by one view do not
+         * affect another.
+         */
+        Drawable newIcon() {
+            if (icon == null) return null;
+            Drawable.ConstantState state = icon.getConstantState();
+            return state != null ? state.newDrawable() : icon;
+        }
+    }
+
+    ShareTargetCache(Context context) {
+        context_ = context;
+        targetInfoCache_ = new LruCache<String, TargetInfo>(DEFAULT_MAX_BYTES) {
+            @Override
+            protected int sizeOf(String key, TargetInfo value) {
+                return value.sizeBytes;
+            }
+        };
+    }
+
+    /**
+     * Get the singleton instance for this class
+     *
+     * @return {@link ShareTargetCache} instance if already initialised or null
+     */
+    static ShareTargetCache getInstance() {
+        Branch b = Branch.getInstance();
+        if (b == null) return null;
+        return b.shareTargetCache_.get();
+    }
+
+    /**
+     * @return The apps that handle {@link Intent#ACTION_SEND} of plain text, resolved on the first
+     * call and after an app was installed, updated or removed.
+     */
+    synchronized List<ResolveInfo> getShareTargets() {
+        if (shareTargets_ != null) return shareTargets_;
+
+        registerPackageReceiver();
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("text/plain");
+        List<ResolveInfo> shareTargets = Collections.unmodifiableList(new ArrayList<>(
+                context_.getPackageManager().queryIntentActivities(shareIntent, PackageManager.MATCH_DEFAULT_ONLY)));
+        targetListLoadCount_++;
+        // Without the receiver the list could go stale, so it is only kept with it
+        if (isReceiverRegistered_) {
+            shareTargets_ = shareTargets;
+        }
+        return shareTargets;
+    }
+
+    /**
+     * Resolves the share targets and loads their labels and icons in the background, e.g. before the
+     * share sheet is shown.
+     */
+    void warmUp() {
+        new BranchAsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... voids) {
+                for (ResolveInfo target : getShareTargets()) {
+                    if (getTargetInfo(target) == null) {
+                        load(target);
+                    }
+                }
+                return null;
+            }
+        }.executeTask();
+    }
+
+    /**
+     * @return The cached label and icon of the target, or {@code null} if they are not loaded yet.
+     */
+    TargetInfo getTargetInfo(ResolveInfo target) {
+        return targetInfoCache_.get(keyOf(target));
+    }
+
+    /**
+     * <p>Returns the label of the target, loading and caching it on this thread if needed, e.g. for
+     * the channel name of the target the user tapped.</p>
+     */
+    String getLabel(ResolveInfo target) {
+        TargetInfo info = getTargetInfo(target);
+        if (info != null) return info.label;
+        return String.valueOf(target.loadLabel(context_.getPackageManager()));
+    }
+
+    /**
+     * <p>Loads the label and icon of the target in the background, unless they are cached or
+     * already loading. The listener is called on the main thread once they are loaded.</p>
+     *
+     * @param target   The {@link ResolveInfo} of the share target.
+     * @param listener A {@link Runnable} to call once loaded, e.g. to rebind the list.
+     */
+    void loadAsync(final ResolveInfo target, Runnable listener) {
+        final String key = keyOf(target);
+        synchronized (this) {
+            if (listener != null && !loadListeners_.contains(listener)) {
+                loadListeners_.add(listener);
+            }
+            if (targetInfoCache_.get(key) != null || !loading_.add(key)) return;
+        }
+        new BranchAsyncTask<Void, Void, Void>() {
+            @Override
+            protected Void doInBackground(Void... voids) {
+                load(target);
+                return null;
+            }
+
+            @Override
+            protected void onPostExecute(Void result) {
+                List<Runnable> listeners;
+                synchronized (ShareTargetCache.this) {
+                    loading_.remove(key);
+                    listeners = new ArrayList<>(loadListeners_);
+                }
+                for (Runnable listener : listeners) {
+                    listener.run();
+                }
+            }
+        }.executeTask();
+    }
+
+    /**
+     * @param listener A listener given to {@link #loadAsync(ResolveInfo, Runnable)} that is no
+     *                 longer interested, e.g. when the share sheet is dismissed.
+     */
+    synchronized void removeLoadListener(Runnable listener) {
+        loadListeners_.remove(listener);
+    }
+
+    synchronized long getTargetListLoadCount() {
+        return targetListLoadCount_;
+    }
+
+    private void load(ResolveInfo target) {
+        PackageManager packageManager = context_.getPackageManager();
+        try {
+            String label = String.valueOf(target.loadLabel(packageManager));
+            Drawable icon = target.loadIcon(packageManager);
+            targetInfoCache_.put(keyOf(target), new TargetInfo(label, icon));
+        } catch (Exception e) {
+            BranchLogger.w("Caught Exception loading share target " + keyOf(target) + ": " + e.getMessage());
+            // Cached anyway, so that the share sheet does not keep retrying it
+            String label = target.activityInfo != null ? target.activityInfo.packageName : "";
+            targetInfoCache_.put(keyOf(target), new TargetInfo(label, null));
+        }
+    }
+
+    synchronized void invalidate(String packageName) {
+        shareTargets_ = null;
+        if (packageName == null) {
+            targetInfoCache_.evictAll();
+            return;
+        }
+        for (String key : targetInfoCache_.snapshot().keySet()) {
+            if (key.startsWith(packageName + "/")) {
+                targetInfoCache_.remove(key);
+            }
+        }
+    }
+
+    private void registerPackageReceiver() {
+        if (isReceiverRegistered_) return;
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        try {
+            context_.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context context, Intent intent) {
+                    Uri data = intent.getData();
+                    invalidate(data != null ? data.getSchemeSpecificPart() : null);
+                }
+            }, filter);
+            isReceiverRegistered_ = true;
+        } catch (Exception e) {
+            BranchLogger.w("Caught Exception registering package receiver: " + e.getMessage());
+        }
+    }
+
+    private static String keyOf(ResolveInfo target) {
+        if (target.activityInfo == null) return String.valueOf(System.identityHashCode(target));
+        return target.activityInfo.packageName + "/" + target.activityInfo.name;
+    }
+
+    private static int estimateSize(Drawable icon) {
+        if (icon instanceof BitmapDrawable) {
+            Bitmap bitmap = ((BitmapDrawable) icon).getBitmap();
+            if (bitmap != null) return bitmap.getByteCount();
+        }
+        if (icon == null) return 0;
+        return Math.max(1, icon.getIntrinsicWidth()) * Math.max(1, icon.getIntrinsicHeight()) * 4;
+    }
+}
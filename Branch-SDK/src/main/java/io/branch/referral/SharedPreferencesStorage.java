@@ -0,0 +1,74 @@
+package io.branch.referral;
+
+import android.content.SharedPreferences;
+
+import java.util.Map;
+
+/**
+ * <p>{@link PrefStorage} in a {@link SharedPreferences} file, the default. Each batch of changes is
+ * saved with one {@link SharedPreferences.Editor#apply()}, which rewrites the whole file in the
+ * background.</p>
+ */
+class SharedPreferencesStorage implements PrefStorage {
+    private final SharedPreferences prefs_;
+
+    SharedPreferencesStorage(SharedPreferences prefs) {
+        prefs_ = prefs;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return prefs_.contains(key);
+    }
+
+    @Override
+    public int getInt(String key, int defaultValue) {
+        return prefs_.getInt(key, defaultValue);
+    }
+
+    @Override
+    public long getLong(String key, long defaultValue) {
+        return prefs_.getLong(key, defaultValue);
+    }
+
+    @Override
+    public float getFloat(String key, float defaultValue) {
+        return prefs_.getFloat(key, defaultValue);
+    }
+
+    @Override
+    public String getString(String key, String defaultValue) {
+        return prefs_.getString(key, defaultValue);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defaultValue) {
+        return prefs_.getBoolean(key, defaultValue);
+    }
+
+    @Override
+    public void write(boolean clear, Map<String, Object> changes) {
+        SharedPreferences.Editor editor = prefs_.edit();
+        if (clear) {
+            editor.clear();
+        }
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            String key = change.getKey();
+            Object value = change.getValue();
+            if (value == null) {
+                editor.remove(key);
+            } else if (value instanceof String) {
+                editor.putString(key, (String) value);
+            } else if (value instanceof Integer) {
+                editor.putInt(key, (Integer) value);
+            } else if (value instanceof Long) {
+                editor.putLong(key, (Long) value);
+            } else if (value instanceof Boolean) {
+                editor.putBoolean(key, (Boolean) value);
+            } else if (value instanceof Float) {
+                editor.putFloat(key, (Float) value);
+            }
+        }
+        editor.apply();
+    }
+}
@@ -0,0 +1,167 @@
+package io.branch.referral;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>{@link PrefStorage} split in a hot store, loaded with {@link PrefHelper}, and a cold store for
+ * large values that init never reads, e.g. the install params. The cold store is only loaded the first
+ * time one of its values is read or written, so loading the hot store, which init needs to read the
+ * branch key, does not parse them.</p>
+ * <p>The hot store lists the cold keys that hold a value, so reading or removing a cold key without
+ * a value does not load the cold store either.</p>
+ * <p>Cold values used to be in the hot store. They are moved to the cold store the first time the
+ * split is used.</p>
+ */
+class SplitPrefStorage implements PrefStorage {
+    // The cold keys holding a value, comma separated. Missing until the cold values were moved.
+    static final String KEY_STORED_COLD_KEYS = "bnc_stored_cold_keys";
+
+    /**
+     * Loads the cold store, on first use.
+     */
+    interface Loader {
+        PrefStorage load();
+    }
+
+    private final PrefStorage hot_;
+    private final Loader coldLoader_;
+    private final Set<String> coldKeys_;
+    private final Set<String> storedColdKeys_ = new HashSet<>();
+    private PrefStorage cold_;
+
+    /**
+     * @param coldKeys The keys kept in the cold store. Their values must be strings.
+     */
+    SplitPrefStorage(PrefStorage hot, Loader coldLoader, Set<String> coldKeys) {
+        hot_ = hot;
+        coldLoader_ = coldLoader;
+        coldKeys_ = coldKeys;
+
+        String storedColdKeys = hot_.getString(KEY_STORED_COLD_KEYS, null);
+        if (storedColdKeys == null) {
+            moveColdKeys();
+        } else if (!storedColdKeys.isEmpty()) {
+            storedColdKeys_.addAll(Arrays.asList(storedColdKeys.split(",")));
+        }
+    }
+
+    synchronized boolean isColdLoaded() {
+        return cold_ != null;
+    }
+
+    private synchronized PrefStorage cold() {
+        if (cold_ == null) {
+            cold_ = coldLoader_.load();
+        }
+        return cold_;
+    }
+
+    private void moveColdKeys() {
+        Map<String, Object> moved = new HashMap<>();
+        Map<String, Object> removed = new HashMap<>();
+        for (String key : coldKeys_) {
+            if (hot_.contains(key)) {
+                moved.put(key, hot_.getString(key, null));
+                removed.put(key, null);
+                storedColdKeys_.add(key);
+            }
+        }
+        if (!moved.isEmpty()) {
+            cold().write(false, moved);
+            BranchLogger.v("Moved %s large preference values to the cold store", moved.keySet());
+        }
+        removed.put(KEY_STORED_COLD_KEYS, join(storedColdKeys_));
+        hot_.write(false, removed);
+    }
+
+    private static String join(Set<String> keys) {
+        StringBuilder joined = new StringBuilder();
+        for (String key : keys) {
+            if (joined.length() > 0) joined.append(',');
+            joined.append(key);
+        }
+        return joined.toString();
+    }
+
+    // The cold store of a cold key with a value, else null
+    private PrefStorage coldStorageOf(String key) {
+        return storedColdKeys_.contains(key) ? cold() : null;
+    }
+
+    @Override
+    public boolean contains(String key) {
+        return coldKeys_.contains(key) ? storedColdKeys_.contains(key) : hot_.contains(key);
+    }
+
+    @Override
+    public int getInt(String key, int defaultValue) {
+        if (!coldKeys_.contains(key)) return hot_.getInt(key, defaultValue);
+        PrefStorage cold = coldStorageOf(key);
+        return cold == null ? defaultValue : cold.getInt(key, defaultValue);
+    }
+
+    @Override
+    public long getLong(String key, long defaultValue) {
+        if (!coldKeys_.contains(key)) return hot_.getLong(key, defaultValue);
+        PrefStorage cold = coldStorageOf(key);
+        return cold == null ? defaultValue : cold.getLong(key, defaultValue);
+    }
+
+    @Override
+    public float getFloat(String key, float defaultValue) {
+        if (!coldKeys_.contains(key)) return hot_.getFloat(key, defaultValue);
+        PrefStorage cold = coldStorageOf(key);
+        return cold == null ? defaultValue : cold.getFloat(key, defaultValue);
+    }
+
+    @Override
+    public String getString(String key, String defaultValue) {
+        if (!coldKeys_.contains(key)) return hot_.getString(key, defaultValue);
+        PrefStorage cold = coldStorageOf(key);
+        return cold == null ? defaultValue : cold.getString(key, defaultValue);
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defaultValue) {
+        if (!coldKeys_.contains(key)) return hot_.getBoolean(key, defaultValue);
+        PrefStorage cold = coldStorageOf(key);
+        return cold == null ? defaultValue : cold.getBoolean(key, defaultValue);
+    }
+
+    @Override
+    public void write(boolean clear, Map<String, Object> changes) {
+        Map<String, Object> hotChanges = new HashMap<>();
+        Map<String, Object> coldChanges = new HashMap<>();
+        // Only a cold store holding values needs to be cleared
+        boolean clearCold = clear && !storedColdKeys_.isEmpty();
+        boolean storedColdKeysChanged = clearCold;
+        if (clearCold) {
+            storedColdKeys_.clear();
+        }
+        for (Map.Entry<String, Object> change : changes.entrySet()) {
+            String key = change.getKey();
+            if (!coldKeys_.contains(key)) {
+                hotChanges.put(key, change.getValue());
+            } else if (change.getValue() != null) {
+                coldChanges.put(key, change.getValue());
+                storedColdKeysChanged |= storedColdKeys_.add(key);
+            } else if (storedColdKeys_.remove(key)) {
+                coldChanges.put(key, null);
+                storedColdKeysChanged = true;
+            }
+        }
+        if (clearCold || !coldChanges.isEmpty()) {
+            cold().write(clearCold, coldChanges);
+        }
+        if (clear || storedColdKeysChanged) {
+            hotChanges.put(KEY_STORED_COLD_KEYS, join(storedColdKeys_));
+        }
+        if (clear || !hotChanges.isEmpty()) {
+            hot_.write(clear, hotChanges);
+        }
+    }
+}
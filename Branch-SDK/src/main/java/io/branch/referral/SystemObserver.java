@@ -13,6 +13,7 @@ import android.hardware.display.DisplayManager;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.os.Build;
+import android.os.SystemClock;
 import android.provider.Settings.Secure;
 import android.telephony.TelephonyManager;
 import android.text.TextUtils;
@@ -29,11 +30,15 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static android.content.Context.UI_MODE_SERVICE;
 
 import com.google.android.gms.ads.identifier.AdvertisingIdClient;
 
+import org.json.JSONObject;
+
 import io.branch.coroutines.AdvertisingIdsKt;
 import io.branch.coroutines.InstallReferrersKt;
 import io.branch.data.InstallReferrerResult;
@@ -63,6 +68,13 @@ abstract class SystemObserver {
     /* Needed to avoid duplicating GAID initialization from App.onCreate and Activity.onStart */
     private String AIDInitializationSessionID_;
 
+    /* Number of advertising id fetches that were served from the persisted cache */
+    private final AtomicInteger adIdCacheHitCount_ = new AtomicInteger();
+    /* Total time in milliseconds that init requests did not have to wait on advertising id fetches served from the cache */
+    private final AtomicLong adIdWaitTimeSavedMillis_ = new AtomicLong();
+    /* Incremented by setGAID, which the fetches only call when they succeed */
+    private final AtomicInteger adIdUpdateCount_ = new AtomicInteger();
+
     /**
      * <p>Gets the {@link String} value of the {@link Secure#ANDROID_ID} setting in the device. This
      * immutable value is generated upon initial device setup, and re-used throughout the life of
@@ -449,12 +461,85 @@ abstract class SystemObserver {
     public void fetchAdId(Context context, AdsParamsFetchEvents callback) {
         if (isFireOSDevice()) {
             setFireAdId(context, callback);
+            return;
         }
-        else if (isHuaweiMobileServicesAvailable(context)) {
-            this.fetchHuaweiAdId(context, callback);
+
+        AdsParamsFetchEvents fetchCallback = getCachingAdsParamsFetchCallback(context, callback);
+        if (isHuaweiMobileServicesAvailable(context)) {
+            this.fetchHuaweiAdId(context, fetchCallback);
         }
         else {
-            this.fetchGoogleAdId(context, callback);
+            this.fetchGoogleAdId(context, fetchCallback);
+        }
+    }
+
+    /**
+     * If a fresh advertising id is persisted, applies it and notifies the callback immediately so
+     * that init does not wait on the Play Services / HMS binder call. The returned callback is to be
+     * notified once the real fetch finishes; it persists the fetched value if the fetch succeeded
+     * with an advertising id and, when the cached value was used, logs how long init would otherwise
+     * have waited.
+     */
+    private AdsParamsFetchEvents getCachingAdsParamsFetchCallback(Context context, final AdsParamsFetchEvents callback) {
+        final PrefHelper prefHelper = PrefHelper.getInstance(context);
+        final JSONObject cachedAdvertisingId = prefHelper.getCachedAdvertisingId();
+        final long fetchStartTime = SystemClock.elapsedRealtime();
+
+        if (cachedAdvertisingId == null) {
+            final int updateCount = adIdUpdateCount_.get();
+            return new AdsParamsFetchEvents() {
+                @Override
+                public void onAdsParamsFetchFinished() {
+                    updateCachedAdvertisingId(prefHelper, updateCount);
+                    if (callback != null) {
+                        callback.onAdsParamsFetchFinished();
+                    }
+                }
+            };
+        }
+
+        final String cachedAid = prefHelper.getCachedAdvertisingIdValue(cachedAdvertisingId);
+        final int cachedLat = prefHelper.getCachedAdvertisingIdLAT(cachedAdvertisingId);
+        BranchLogger.v("Using cached advertising id, refreshing in background");
+        setLAT(cachedLat);
+        setGAID(cachedAid);
+        if (callback != null) {
+            callback.onAdsParamsFetchFinished();
+        }
+
+        final int updateCount = adIdUpdateCount_.get();
+        return new AdsParamsFetchEvents() {
+            @Override
+            public void onAdsParamsFetchFinished() {
+                long waitTimeSaved = SystemClock.elapsedRealtime() - fetchStartTime;
+                int cacheHitCount = adIdCacheHitCount_.incrementAndGet();
+                long totalWaitTimeSaved = adIdWaitTimeSavedMillis_.addAndGet(waitTimeSaved);
+                BranchLogger.v("Advertising id cache saved " + waitTimeSaved + "ms of init wait time (" + totalWaitTimeSaved + "ms over " + cacheHitCount + " fetches)");
+
+                // A failed fetch keeps the cached values, which stay valid until they expire
+                boolean changed = getLATVal() != cachedLat || !TextUtils.equals(getAID(), cachedAid);
+                if (changed) {
+                    BranchLogger.v("Advertising id changed since it was cached, subsequent requests will use the new value");
+                    updateCachedAdvertisingId(prefHelper, updateCount);
+                }
+            }
+        };
+    }
+
+    /**
+     * Persists the fetched advertising id if a fetch succeeded since updateCount was read. A fetch
+     * without an advertising id, e.g. with limit ad tracking enabled, deletes the cached one instead,
+     * so that the next init waits for a real fetch.
+     */
+    private void updateCachedAdvertisingId(PrefHelper prefHelper, int updateCount) {
+        if (adIdUpdateCount_.get() == updateCount) {
+            BranchLogger.v("Advertising id fetch failed, not caching it");
+            return;
+        }
+        if (TextUtils.isEmpty(getAID())) {
+            prefHelper.clearCachedAdvertisingId();
+        } else {
+            prefHelper.setCachedAdvertisingId(getAID(), getLATVal());
         }
     }
 
@@ -802,9 +887,18 @@ abstract class SystemObserver {
 
     void setGAID(String gaid) {
         GAIDString_ = gaid;
+        adIdUpdateCount_.incrementAndGet();
     }
 
     void setLAT(int lat) {
         LATVal_ = lat;
     }
+
+    int getAdIdCacheHitCount() {
+        return adIdCacheHitCount_.get();
+    }
+
+    long getAdIdWaitTimeSavedMillis() {
+        return adIdWaitTimeSavedMillis_.get();
+    }
 }
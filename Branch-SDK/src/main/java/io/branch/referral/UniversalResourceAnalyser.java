@@ -14,11 +14,11 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import javax.net.ssl.HttpsURLConnection;
 
+import io.branch.referral.network.BranchHttpCache;
+
 /**
  * Created by sojanpr on 2/8/18.
  * <p>
@@ -38,6 +38,11 @@ class UniversalResourceAnalyser {
     
     private final JSONObject DEFAULT_SKIP_URL_LIST;
 
+    // Compiled skip list and the array it was compiled from, compiled again when the list changes
+    private UrlPatternSet skipPatterns_;
+    private JSONArray skipPatternsSource_;
+    private UrlPatternSet acceptPatterns_;
+
     private static UniversalResourceAnalyser instance;
     
     
@@ -97,12 +102,14 @@ class UniversalResourceAnalyser {
         }
     }
     
-    void addToAcceptURLFormats(String acceptUrl) {
+    synchronized void addToAcceptURLFormats(String acceptUrl) {
         acceptURLFormats.add(acceptUrl);
+        acceptPatterns_ = null;
     }
     
-    void addToAcceptURLFormats(List<String> acceptUrls) {
+    synchronized void addToAcceptURLFormats(List<String> acceptUrls) {
         acceptURLFormats.addAll(acceptUrls);
+        acceptPatterns_ = null;
     }
     
     void checkAndUpdateSkipURLFormats(Context context) {
@@ -116,30 +123,19 @@ class UniversalResourceAnalyser {
     String getStrippedURL(String url) {
         String strippedURL = null;
         try {
-            JSONArray skipURLArray = skipURLFormats.optJSONArray(SKIP_LIST_KEY);
-            if (skipURLArray != null) {
-                for (int i = 0; i < skipURLArray.length(); i++) {
-                    try {
-                        String skipPattern = skipURLArray.getString(i);
-                        Pattern p = Pattern.compile(skipPattern);
-                        Matcher m = p.matcher(url);
-                        if (m.find()) {
-                            strippedURL = skipPattern;
-                            break;
-                        }
-                        
-                    } catch (JSONException e) {
-                        BranchLogger.d(e.getMessage());
-                    }
-                }
+            UrlPatternSet skipPatterns = getSkipPatterns();
+            int skipIndex = skipPatterns.indexOfMatch(url);
+            if (skipIndex == UrlPatternSet.INVALID_PATTERN) {
+                return url;
+            } else if (skipIndex >= 0) {
+                strippedURL = skipPatterns.getPattern(skipIndex);
             }
             if (strippedURL == null) {
-                if (acceptURLFormats.size() > 0) {
-                    for (String skipPattern : acceptURLFormats) {
-                        if (url.matches(skipPattern)) {
-                            strippedURL = url;
-                            break;
-                        }
+                UrlPatternSet acceptPatterns = getAcceptPatterns();
+                if (acceptPatterns.size() > 0) {
+                    int acceptIndex = acceptPatterns.indexOfMatch(url);
+                    if (acceptIndex >= 0 || acceptIndex == UrlPatternSet.INVALID_PATTERN) {
+                        strippedURL = url;
                     }
                 } else {
                     strippedURL = url;
@@ -150,6 +146,31 @@ class UniversalResourceAnalyser {
         }
         return strippedURL;
     }
+
+    // The skip list changes when a pattern is added to it or an updated list is downloaded
+    private synchronized UrlPatternSet getSkipPatterns() {
+        JSONArray skipURLArray = skipURLFormats.optJSONArray(SKIP_LIST_KEY);
+        if (skipURLArray == null) {
+            skipURLArray = new JSONArray();
+        }
+        if (skipPatterns_ == null || skipPatternsSource_ != skipURLArray || skipPatterns_.size() != skipURLArray.length()) {
+            List<String> patterns = new ArrayList<>();
+            for (int i = 0; i < skipURLArray.length(); i++) {
+                Object pattern = skipURLArray.opt(i);
+                patterns.add(pattern instanceof String ? (String) pattern : null);
+            }
+            skipPatterns_ = new UrlPatternSet(patterns, false);
+            skipPatternsSource_ = skipURLArray;
+        }
+        return skipPatterns_;
+    }
+
+    private synchronized UrlPatternSet getAcceptPatterns() {
+        if (acceptPatterns_ == null) {
+            acceptPatterns_ = new UrlPatternSet(acceptURLFormats, true);
+        }
+        return acceptPatterns_;
+    }
     
     private static class UrlSkipListUpdateTask extends BranchAsyncTask<Void, Void, JSONObject> {
         private final PrefHelper prefHelper;
@@ -166,17 +187,40 @@ class UniversalResourceAnalyser {
             HttpsURLConnection connection = null;
             try {
                 String update_url_path = UPDATE_URL_PATH.replace("%", PrefHelper.getCDNBaseUrl());
-                URL urlObject = new URL(update_url_path.replace("#", Integer.toString(skipURLFormats.optInt(VERSION_KEY) + 1)));
-                connection = (HttpsURLConnection) urlObject.openConnection();
-                connection.setConnectTimeout(TIME_OUT);
-                connection.setReadTimeout(TIME_OUT);
-                int responseCode = connection.getResponseCode();
-                if (responseCode == HttpsURLConnection.HTTP_OK) {
-                    if (connection.getInputStream() != null) {
-                        BufferedReader rd = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-                        respObject = new JSONObject(rd.readLine());
+                String url = update_url_path.replace("#", Integer.toString(skipURLFormats.optInt(VERSION_KEY) + 1));
+
+                // The next version of the list usually does not exist yet, its 404 is cached too
+                BranchHttpCache httpCache = BranchHttpCache.getInstance();
+                BranchHttpCache.Entry cached = httpCache != null ? httpCache.getFresh(url) : null;
+                int responseCode;
+                String response = null;
+                if (cached != null) {
+                    responseCode = cached.getResponseCode();
+                    response = cached.getBody();
+                } else {
+                    cached = httpCache != null ? httpCache.get(url) : null;
+                    connection = (HttpsURLConnection) new URL(url).openConnection();
+                    connection.setConnectTimeout(TIME_OUT);
+                    connection.setReadTimeout(TIME_OUT);
+                    BranchHttpCache.addConditionalHeaders(connection, cached);
+                    responseCode = connection.getResponseCode();
+                    if (responseCode == HttpsURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                        cached = httpCache.revalidate(url, cached, connection);
+                        responseCode = cached.getResponseCode();
+                        response = cached.getBody();
+                    } else {
+                        if (responseCode == HttpsURLConnection.HTTP_OK && connection.getInputStream() != null) {
+                            BufferedReader rd = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+                            response = rd.readLine();
+                        }
+                        if (httpCache != null) {
+                            httpCache.store(url, responseCode, response, connection);
+                        }
                     }
                 }
+                if (responseCode == HttpsURLConnection.HTTP_OK && response != null) {
+                    respObject = new JSONObject(response);
+                }
             } catch (Exception e) {
                 BranchLogger.d(e.getMessage());
             } finally {
@@ -0,0 +1,151 @@
+package io.branch.referral;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * <p>An ordered list of URL patterns compiled once, for the skip and accept lists of
+ * {@link UniversalResourceAnalyser}.</p>
+ * <p>Most patterns start with a literal, e.g. {@code ^fb\d+:} or {@code ^twitterkit-.*:}. That literal
+ * prefix is extracted when the pattern is compiled, and a URL not starting with it is rejected with
+ * {@link String#startsWith(String)} instead of running the regex.</p>
+ */
+final class UrlPatternSet {
+    /* Returned by indexOfMatch when an invalid pattern is reached before any match. */
+    static final int INVALID_PATTERN = -2;
+
+    private final String[] sources_;
+    private final Pattern[] patterns_;
+    private final String[] prefixes_;
+    private final boolean fullMatch_;
+
+    /**
+     * @param patterns  The regular expressions, in the order they are tried.
+     * @param fullMatch {@code true} if a pattern must match the whole URL as {@link String#matches(String)}
+     *                  does, {@code false} if it may match anywhere in the URL as {@link Matcher#find()} does.
+     */
+    UrlPatternSet(List<String> patterns, boolean fullMatch) {
+        int count = patterns.size();
+        sources_ = new String[count];
+        patterns_ = new Pattern[count];
+        prefixes_ = new String[count];
+        fullMatch_ = fullMatch;
+        for (int i = 0; i < count; i++) {
+            String source = patterns.get(i);
+            sources_[i] = source;
+            if (source == null) continue;
+            try {
+                patterns_[i] = Pattern.compile(source);
+                prefixes_[i] = literalPrefix(source, fullMatch);
+            } catch (PatternSyntaxException e) {
+                BranchLogger.d("Invalid URL pattern " + source + ": " + e.getMessage());
+            }
+        }
+    }
+
+    int size() {
+        return sources_.length;
+    }
+
+    String getPattern(int index) {
+        return sources_[index];
+    }
+
+    /**
+     * @return The index of the first pattern matching the URL, -1 if none does, or
+     * {@link #INVALID_PATTERN} if a pattern that does not compile is reached first.
+     */
+    int indexOfMatch(String url) {
+        for (int i = 0; i < patterns_.length; i++) {
+            Pattern pattern = patterns_[i];
+            if (sources_[i] == null) {
+                // Entries of the list that are not strings never match
+                continue;
+            } else if (pattern == null) {
+                return INVALID_PATTERN;
+            }
+            if (!url.startsWith(prefixes_[i])) {
+                continue;
+            }
+            Matcher matcher = pattern.matcher(url);
+            if (fullMatch_ ? matcher.matches() : matcher.find()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * <p>Returns the literal text every match of the pattern starts with, e.g. {@code com.google}
+     * for {@code ^com\.google\d+}. Without full matching, only patterns anchored with {@code ^} have
+     * one. The prefix stops at the first metacharacter, escape class or optional character, and is
+     * empty for patterns with a top level alternation.</p>
+     */
+    static String literalPrefix(String regex, boolean fullMatch) {
+        int i = 0;
+        int length = regex.length();
+        if (regex.startsWith("^")) {
+            i = 1;
+        } else if (!fullMatch) {
+            return "";
+        }
+        if (hasTopLevelAlternation(regex)) {
+            return "";
+        }
+
+        StringBuilder prefix = new StringBuilder();
+        while (i < length) {
+            char c = regex.charAt(i);
+            char literal;
+            int next;
+            if (c == '\\') {
+                // Escaped letters and digits are classes, quotes or back references, not literals
+                if (i + 1 >= length || Character.isLetterOrDigit(regex.charAt(i + 1))) break;
+                literal = regex.charAt(i + 1);
+                next = i + 2;
+            } else if (".[]()|?*+{}^$".indexOf(c) >= 0 || Character.isSurrogate(c)) {
+                break;
+            } else {
+                literal = c;
+                next = i + 1;
+            }
+            char quantifier = next < length ? regex.charAt(next) : 0;
+            if (quantifier == '?' || quantifier == '*' || quantifier == '{') {
+                // The character may be absent
+                break;
+            }
+            prefix.append(literal);
+            if (quantifier == '+') {
+                // The character is present at least once, but what follows it is not known
+                break;
+            }
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+    // True if the regex is an alternation outside of any group or character class, e.g. ^a|b
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                if (c == ']') inClass = false;
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
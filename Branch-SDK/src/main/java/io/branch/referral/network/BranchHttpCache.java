@@ -0,0 +1,413 @@
+package io.branch.referral.network;
+
+import android.content.Context;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import io.branch.referral.Branch;
+import io.branch.referral.BranchLogger;
+import io.branch.referral.Defines;
+
+/**
+ * <p>Small HTTP cache for GET resources such as the app config and the CDN skip lists, which rarely
+ * change between requests.</p>
+ * <p>Responses are kept in memory and on disk with their {@code ETag} and {@code Last-Modified}
+ * validators. A response still fresh per its {@code Cache-Control: max-age} is served without a
+ * request; a stale one is revalidated with {@code If-None-Match} or {@code If-Modified-Since}, so an
+ * unchanged resource costs a 304 without a body. {@code no-store} responses are never cached and
+ * {@code no-cache} responses are always revalidated.</p>
+ */
+public class BranchHttpCache {
+    static final String DISK_CACHE_DIR = "branch_http_cache";
+    // Responses larger than this are not cached
+    static final int MAX_ENTRY_BYTES = 256 * 1024;
+    // Number of responses kept, the least recently used are removed beyond that
+    static final int MAX_ENTRIES = 32;
+
+    static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    static final String HEADER_ETAG = "ETag";
+    static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+
+    private final File directory_;
+    private final LinkedHashMap<String, Entry> entries_ = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private long hitCount_ = 0;
+    private long notModifiedCount_ = 0;
+    private long missCount_ = 0;
+
+    /**
+     * A cached response and what is needed to reuse or revalidate it.
+     */
+    public static class Entry {
+        private final String url_;
+        private final int responseCode_;
+        private final String body_;
+        private final String etag_;
+        private final String lastModified_;
+        private final long storedAt_;
+        private final long maxAgeMillis_;
+        private final boolean noCache_;
+        private final String requestId_;
+
+        Entry(String url, int responseCode, String body, String etag, String lastModified,
+              long storedAt, long maxAgeMillis, boolean noCache, String requestId) {
+            url_ = url;
+            responseCode_ = responseCode;
+            body_ = body;
+            etag_ = etag;
+            lastModified_ = lastModified;
+            storedAt_ = storedAt;
+            maxAgeMillis_ = maxAgeMillis;
+            noCache_ = noCache;
+            requestId_ = requestId;
+        }
+
+        public int getResponseCode() {
+            return responseCode_;
+        }
+
+        public String getBody() {
+            return body_;
+        }
+
+        /**
+         * @return The request id of the response the entry was stored or last revalidated with, or null.
+         */
+        public String getRequestId() {
+            return requestId_;
+        }
+
+        /**
+         * @return True if the response can be used without asking the server.
+         */
+        public boolean isFresh() {
+            return isFresh(System.currentTimeMillis());
+        }
+
+        boolean isFresh(long now) {
+            // A clock set back makes the age unknown, the response is then revalidated
+            return !noCache_ && maxAgeMillis_ > 0 && now >= storedAt_ && now - storedAt_ < maxAgeMillis_;
+        }
+
+        String getEtag() {
+            return etag_;
+        }
+
+        String getLastModified() {
+            return lastModified_;
+        }
+
+        private JSONObject toJson() throws JSONException {
+            return new JSONObject()
+                    .put("url", url_)
+                    .put("code", responseCode_)
+                    .putOpt("body", body_)
+                    .putOpt("etag", etag_)
+                    .putOpt("last_modified", lastModified_)
+                    .put("stored_at", storedAt_)
+                    .put("max_age", maxAgeMillis_)
+                    .put("no_cache", noCache_)
+                    .putOpt("request_id", requestId_);
+        }
+
+        private static Entry fromJson(JSONObject json) throws JSONException {
+            return new Entry(json.getString("url"), json.getInt("code"),
+                    json.has("body") ? json.getString("body") : null,
+                    json.has("etag") ? json.getString("etag") : null,
+                    json.has("last_modified") ? json.getString("last_modified") : null,
+                    json.getLong("stored_at"), json.getLong("max_age"), json.getBoolean("no_cache"),
+                    json.has("request_id") ? json.getString("request_id") : null);
+        }
+    }
+
+    public BranchHttpCache(Context context) {
+        this(new File(context.getCacheDir(), DISK_CACHE_DIR));
+    }
+
+    BranchHttpCache(File directory) {
+        directory_ = directory;
+    }
+
+    /**
+     * Get the singleton instance for this class
+     *
+     * @return {@link BranchHttpCache} instance if already initialised or null
+     */
+    public static BranchHttpCache getInstance() {
+        Branch b = Branch.getInstance();
+        if (b == null) return null;
+        return b.getHttpCache();
+    }
+
+    /**
+     * @return The cached response of the url, fresh or not, or null if there is none.
+     */
+    public synchronized Entry get(String url) {
+        Entry entry = entries_.get(url);
+        if (entry == null) {
+            entry = readFromDisk(url);
+            if (entry != null) {
+                entries_.put(url, entry);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * <p>Returns the cached response of the url if it is fresh, counting it as a hit, so that the
+     * request can be skipped. Otherwise counts a miss and returns null.</p>
+     */
+    public synchronized Entry getFresh(String url) {
+        Entry entry = get(url);
+        if (entry != null && entry.isFresh()) {
+            hitCount_++;
+            return entry;
+        }
+        missCount_++;
+        return null;
+    }
+
+    /**
+     * Adds the validators of a cached response to a request, so that the server can answer 304.
+     */
+    public static void addConditionalHeaders(URLConnection connection, Entry cached) {
+        if (cached == null) return;
+        if (cached.getEtag() != null) {
+            connection.setRequestProperty(HEADER_IF_NONE_MATCH, cached.getEtag());
+        }
+        if (cached.getLastModified() != null) {
+            connection.setRequestProperty(HEADER_IF_MODIFIED_SINCE, cached.getLastModified());
+        }
+    }
+
+    /**
+     * <p>Caches a response if its status and headers allow it, or removes the cached response of the
+     * url if they forbid it.</p>
+     *
+     * @return The cached {@link Entry}, or null if the response was not cached.
+     */
+    public Entry store(String url, int responseCode, String body, URLConnection connection) {
+        return store(url, responseCode, body, connection.getHeaderField(HEADER_ETAG),
+                connection.getHeaderField(HEADER_LAST_MODIFIED), connection.getHeaderField(HEADER_CACHE_CONTROL),
+                connection.getHeaderField(Defines.HeaderKey.RequestId.getKey()), System.currentTimeMillis());
+    }
+
+    synchronized Entry store(String url, int responseCode, String body, String etag, String lastModified,
+                             String cacheControl, String requestId, long now) {
+        CacheControl directives = CacheControl.parse(cacheControl);
+        boolean cacheable = !directives.noStore
+                && (responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_NOT_FOUND)
+                && (body != null || responseCode != HttpURLConnection.HTTP_OK)
+                && (body == null || body.length() <= MAX_ENTRY_BYTES)
+                && (directives.maxAgeMillis > 0 || etag != null || lastModified != null);
+        if (!cacheable) {
+            remove(url);
+            return null;
+        }
+        Entry entry = new Entry(url, responseCode, body, etag, lastModified, now, directives.maxAgeMillis, directives.noCache, requestId);
+        entries_.put(url, entry);
+        writeToDisk(entry);
+        return entry;
+    }
+
+    /**
+     * <p>Marks a cached response as still valid after a 304, with the freshness of the 304 if it has a
+     * {@code Cache-Control} header.</p>
+     *
+     * @return The revalidated {@link Entry}, with the body of the cached response.
+     */
+    public Entry revalidate(String url, Entry cached, URLConnection connection) {
+        return revalidate(url, cached, connection.getHeaderField(HEADER_CACHE_CONTROL),
+                connection.getHeaderField(Defines.HeaderKey.RequestId.getKey()), System.currentTimeMillis());
+    }
+
+    synchronized Entry revalidate(String url, Entry cached, String cacheControl, String requestId, long now) {
+        notModifiedCount_++;
+        long maxAgeMillis = cached.maxAgeMillis_;
+        boolean noCache = cached.noCache_;
+        if (cacheControl != null) {
+            CacheControl directives = CacheControl.parse(cacheControl);
+            maxAgeMillis = directives.maxAgeMillis;
+            noCache = directives.noCache;
+        }
+        Entry entry = new Entry(url, cached.responseCode_, cached.body_, cached.etag_, cached.lastModified_, now, maxAgeMillis, noCache,
+                requestId != null ? requestId : cached.requestId_);
+        entries_.put(url, entry);
+        writeToDisk(entry);
+        return entry;
+    }
+
+    public synchronized void clear() {
+        entries_.clear();
+        File[] files = directory_.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * @return The number of requests skipped because the cached response was fresh.
+     */
+    public synchronized long getHitCount() {
+        return hitCount_;
+    }
+
+    /**
+     * @return The number of requests answered with 304 Not Modified.
+     */
+    public synchronized long getNotModifiedCount() {
+        return notModifiedCount_;
+    }
+
+    /**
+     * @return The number of lookups without a fresh cached response, which needed a request. Those
+     * answered with 304 Not Modified are also counted by {@link #getNotModifiedCount()}.
+     */
+    public synchronized long getMissCount() {
+        return missCount_;
+    }
+
+    private void remove(String url) {
+        entries_.remove(url);
+        //noinspection ResultOfMethodCallIgnored
+        getDiskCacheFile(url).delete();
+    }
+
+    private File getDiskCacheFile(String url) {
+        return new File(directory_, Integer.toHexString(url.hashCode()));
+    }
+
+    private void writeToDisk(Entry entry) {
+        if (!directory_.isDirectory() && !directory_.mkdirs()) {
+            BranchLogger.w("Could not create the HTTP cache directory");
+            return;
+        }
+        File file = getDiskCacheFile(entry.url_);
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            out.write(entry.toJson().toString().getBytes("UTF-8"));
+        } catch (IOException | JSONException e) {
+            BranchLogger.w("Caught Exception writing HTTP cache entry: " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        } finally {
+            closeQuietly(out);
+        }
+        trimDiskToSize();
+    }
+
+    private Entry readFromDisk(String url) {
+        File file = getDiskCacheFile(url);
+        if (!file.isFile()) return null;
+
+        InputStream in = null;
+        try {
+            byte[] data = new byte[(int) file.length()];
+            in = new FileInputStream(file);
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) throw new IOException("Unexpected end of file");
+                offset += read;
+            }
+            Entry entry = Entry.fromJson(new JSONObject(new String(data, "UTF-8")));
+            // Another url with the same hash
+            if (!url.equals(entry.url_)) return null;
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return entry;
+        } catch (IOException | JSONException e) {
+            BranchLogger.w("Caught Exception reading HTTP cache entry: " + e.getMessage());
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void trimDiskToSize() {
+        File[] files = directory_.listFiles();
+        if (files == null || files.length <= MAX_ENTRIES) return;
+
+        List<File> eldestFirst = new ArrayList<>(files.length);
+        Collections.addAll(eldestFirst, files);
+        Collections.sort(eldestFirst, new Comparator<File>() {
+            @Override
+            public int compare(File f1, File f2) {
+                return Long.compare(f1.lastModified(), f2.lastModified());
+            }
+        });
+        for (int i = 0; i < eldestFirst.size() - MAX_ENTRIES; i++) {
+            //noinspection ResultOfMethodCallIgnored
+            eldestFirst.get(i).delete();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * The directives of a {@code Cache-Control} response header that matter to a private cache.
+     */
+    static class CacheControl {
+        boolean noStore = false;
+        boolean noCache = false;
+        long maxAgeMillis = 0;
+
+        static CacheControl parse(String header) {
+            CacheControl directives = new CacheControl();
+            if (header == null) return directives;
+            for (String directive : header.split(",")) {
+                String name = directive.trim().toLowerCase(Locale.US);
+                if (name.equals("no-store")) {
+                    directives.noStore = true;
+                } else if (name.equals("no-cache")) {
+                    directives.noCache = true;
+                } else if (name.startsWith("max-age=")) {
+                    String value = name.substring("max-age=".length()).replace("\"", "");
+                    try {
+                        directives.maxAgeMillis = Math.max(0, Long.parseLong(value)) * 1000;
+                    } catch (NumberFormatException e) {
+                        // An invalid max-age makes the response stale
+                        directives.maxAgeMillis = 0;
+                    }
+                }
+            }
+            return directives;
+        }
+    }
+}
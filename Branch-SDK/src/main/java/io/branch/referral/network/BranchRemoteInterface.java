@@ -9,7 +9,6 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.Locale;
 import java.util.Objects;
 
 import io.branch.referral.Branch;
@@ -77,6 +76,23 @@ public abstract class BranchRemoteInterface {
      */
     public abstract BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException;
 
+    /**
+     * <p>
+     * Method to implement the network layer to do a RESTful POST with a {@link JSONArray} payload to Branch servers.
+     * This method is called for bulk requests, such as creating several short links in one round trip.
+     * Custom network interfaces should override this method to support bulk requests. By default the request
+     * fails and every item of the bulk request is reported as failed.
+     *
+     * @param url     The url end point
+     * @param payload The JSon array payload for the post request
+     * @return {@link io.branch.referral.network.BranchRemoteInterface.BranchResponse} with the post result data and http status code
+     * @throws BranchRemoteException Branch remote exception is thrown when there is an error in communicating to the Branch servers
+     *                               </p>
+     */
+    public BranchResponse doRestfulPost(String url, JSONArray payload) throws BranchRemoteException {
+        throw new BranchRemoteException(BranchError.ERR_OTHER, "Bulk requests are not supported by " + getClass().getName());
+    }
+
     //--------- public methods-----------------//
 
     /**
@@ -98,7 +114,7 @@ public abstract class BranchRemoteInterface {
         }
 
         long reqStartTime = System.currentTimeMillis();
-        BranchLogger.v("getting " + modifiedUrl);
+        BranchLogger.v("getting %s", modifiedUrl);
 
         try {
             BranchResponse response = doRestfulGet(modifiedUrl);
@@ -106,11 +122,7 @@ public abstract class BranchRemoteInterface {
         } catch (BranchRemoteException branchError) {
             return new ServerResponse(tag, branchError.branchErrorCode, "", branchError.branchErrorMessage);
         } finally {
-            // Add total round trip time
-            if (Branch.getInstance() != null) {
-                int brttVal = (int) (System.currentTimeMillis() - reqStartTime);
-                Branch.getInstance().requestQueue_.addExtraInstrumentationData(tag + "-" + Defines.Jsonkey.Branch_Round_Trip_Time.getKey(), String.valueOf(brttVal));
-            }
+            addRoundTripTime(tag, reqStartTime);
         }
     }
 
@@ -130,8 +142,8 @@ public abstract class BranchRemoteInterface {
         if (!addCommonParams(body, branchKey)) {
             return new ServerResponse(tag, BranchError.ERR_BRANCH_KEY_INVALID, "", "");
         }
-        BranchLogger.v("posting to " + url);
-        BranchLogger.v("Post value = " + body.toString());
+        BranchLogger.v("posting to %s", url);
+        BranchLogger.v("Post value = %s", body);
 
         try {
             BranchResponse response = doRestfulPost(url, body);
@@ -139,10 +151,38 @@ public abstract class BranchRemoteInterface {
         } catch (BranchRemoteException branchError) {
             return new ServerResponse(tag, branchError.branchErrorCode, "", branchError.branchErrorMessage);
         } finally {
-            if (Branch.getInstance() != null) {
-                int brttVal = (int) (System.currentTimeMillis() - reqStartTime);
-                Branch.getInstance().requestQueue_.addExtraInstrumentationData(tag + "-" + Defines.Jsonkey.Branch_Round_Trip_Time.getKey(), String.valueOf(brttVal));
-            }
+            addRoundTripTime(tag, reqStartTime);
+        }
+    }
+
+    /**
+     * Method for handling the RESTful POST operations with a {@link JSONArray} body to Branch Servers.
+     * Internally calls method {@link #doRestfulPost(String, JSONArray)}. Common params are not added to
+     * the items of the array, so the Branch key is expected to be part of the url.
+     *
+     * @param body      {@link JSONArray} with the items of the POST call
+     * @param url       The url end point
+     * @param tag       {@link String} Tag for identifying the request for analytical or debugging purpose
+     * @param branchKey {@link String} Branch key
+     * @return {@link ServerResponse} object representing the result of RESTful POST to Branch Server
+     */
+    public final ServerResponse make_restful_post(JSONArray body, String url, String tag, String branchKey) {
+        long reqStartTime = System.currentTimeMillis();
+        body = body != null ? body : new JSONArray();
+
+        if (branchKey.equals(PrefHelper.NO_STRING_VALUE)) {
+            return new ServerResponse(tag, BranchError.ERR_BRANCH_KEY_INVALID, "", "");
+        }
+        BranchLogger.v("posting to %s", url);
+        BranchLogger.v("Post value = %s", body);
+
+        try {
+            BranchResponse response = doRestfulPost(url, body);
+            return processEntityForJSON(response, tag, response.requestId);
+        } catch (BranchRemoteException branchError) {
+            return new ServerResponse(tag, branchError.branchErrorCode, "", branchError.branchErrorMessage);
+        } finally {
+            addRoundTripTime(tag, reqStartTime);
         }
     }
 
@@ -169,9 +209,12 @@ public abstract class BranchRemoteInterface {
 
         ServerResponse result = new ServerResponse(tag, statusCode, requestId, "");
         if(!TextUtils.isEmpty(requestId)){
-            BranchLogger.v(String.format(Locale.getDefault(), "Server returned: [%s] Status: [%d]; Data: %s", requestId, statusCode, responseString));
+            // The status code is boxed
+            if (BranchLogger.isLoggable(BranchLogger.BranchLogLevel.VERBOSE)) {
+                BranchLogger.v("Server returned: [%s] Status: [%d]; Data: %s", requestId, statusCode, responseString);
+            }
         } else {
-            BranchLogger.v(String.format("returned %s", responseString));
+            BranchLogger.v("returned %s", responseString);
         }
 
         if (responseString != null) {
@@ -200,6 +243,14 @@ public abstract class BranchRemoteInterface {
         return result;
     }
 
+    private void addRoundTripTime(String tag, long reqStartTime) {
+        // Add total round trip time
+        if (Branch.getInstance() != null) {
+            int brttVal = (int) (System.currentTimeMillis() - reqStartTime);
+            Branch.getInstance().requestQueue_.addExtraInstrumentationData(tag + "-" + Defines.Jsonkey.Branch_Round_Trip_Time.getKey(), String.valueOf(brttVal));
+        }
+    }
+
     private boolean addCommonParams(JSONObject post, String branch_key) {
         try {
             if (!post.has(Defines.Jsonkey.UserData.getKey())) { // user data already has the sdk in it as part of v2 request
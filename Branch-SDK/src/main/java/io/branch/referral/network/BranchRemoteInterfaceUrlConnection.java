@@ -11,6 +11,7 @@ import androidx.annotation.NonNull;
 
 import com.google.android.gms.common.util.Strings;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -59,12 +60,27 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
 
     @Override
     public BranchResponse doRestfulGet(String url) throws BranchRemoteException {
+        BranchHttpCache httpCache = branch.getHttpCache();
+        if (httpCache != null) {
+            BranchHttpCache.Entry fresh = httpCache.getFresh(url);
+            if (fresh != null) {
+                BranchLogger.v("Using cached response for %s", url);
+                BranchResponse result = new BranchResponse(fresh.getBody(), fresh.getResponseCode());
+                result.requestId = fresh.getRequestId();
+                return result;
+            }
+        }
         return doRestfulGet(url, 0);
     }
 
     @Override
     public BranchResponse doRestfulPost(String url, JSONObject payload) throws BranchRemoteException {
-        return doRestfulPost(url, payload, 0);
+        return doRestfulPost(url, (Object) payload, 0);
+    }
+
+    @Override
+    public BranchResponse doRestfulPost(String url, JSONArray payload) throws BranchRemoteException {
+        return doRestfulPost(url, (Object) payload, 0);
     }
 
 
@@ -81,6 +97,10 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
             connection = (HttpsURLConnection) urlObject.openConnection();
             connection.setConnectTimeout(connectTimeout);
             connection.setReadTimeout(timeout);
+            // Cached by url without the retry number, which is not part of the resource
+            BranchHttpCache httpCache = branch.getHttpCache();
+            BranchHttpCache.Entry cached = httpCache != null ? httpCache.get(url) : null;
+            BranchHttpCache.addConditionalHeaders(connection, cached);
 
             String requestId = connection.getHeaderField(Defines.HeaderKey.RequestId.getKey());
 
@@ -90,32 +110,42 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
                     Thread.sleep(prefHelper.getRetryInterval());
                 }
                 catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
+                    logNetworkError(e, url, retryNumber);
                 }
                 retryNumber++;
                 return doRestfulGet(url, retryNumber);
             }
+            else if (responseCode == HttpsURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                BranchHttpCache.Entry revalidated = httpCache.revalidate(url, cached, connection);
+                BranchResponse result = new BranchResponse(revalidated.getBody(), revalidated.getResponseCode());
+                result.requestId = Strings.emptyToNull(requestId);
+                return result;
+            }
             else {
-                BranchResponse result;
+                String responseString;
                 try {
                     if (responseCode != HttpsURLConnection.HTTP_OK && connection.getErrorStream() != null) {
-                        result = new BranchResponse(getResponseString(connection.getErrorStream()), responseCode);
+                        responseString = getResponseString(connection.getErrorStream());
                     }
                     else {
-                        result = new BranchResponse(getResponseString(connection.getInputStream()), responseCode);
+                        responseString = getResponseString(connection.getInputStream());
                     }
                 }
                 catch (FileNotFoundException ex) {
                     // In case of Resource conflict getInputStream will throw FileNotFoundException. Handle it here in order to send the right status code
-                    BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
-                    result = new BranchResponse(null, responseCode);
+                    logNetworkError(ex, url, retryNumber);
+                    responseString = null;
+                }
+                if (httpCache != null) {
+                    httpCache.store(url, responseCode, responseString, connection);
                 }
+                BranchResponse result = new BranchResponse(responseString, responseCode);
                 result.requestId = Strings.emptyToNull(requestId);
                 return result;
             }
         }
         catch (SocketException ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
+            logNetworkError(ex, url, retryNumber);
             throw new BranchRemoteException(BranchError.ERR_BRANCH_NO_CONNECTIVITY, ex.getMessage());
         }
         catch (SocketTimeoutException ex) {
@@ -125,7 +155,7 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
                     Thread.sleep(prefHelper.getRetryInterval());
                 }
                 catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
+                    logNetworkError(e, url, retryNumber);
                 }
                 retryNumber++;
                 return doRestfulGet(url, retryNumber);
@@ -135,14 +165,14 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
             }
         }
         catch (InterruptedIOException ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
+            logNetworkError(ex, url, retryNumber);
             // When the thread times out before or while sending the request
             if (retryNumber < retryLimit) {
                 try {
                     Thread.sleep(prefHelper.getRetryInterval());
                 }
                 catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
+                    logNetworkError(e, url, retryNumber);
                 }
                 retryNumber++;
                 return doRestfulGet(url, retryNumber);
@@ -152,7 +182,7 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
             }
         }
         catch (IOException ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
+            logNetworkError(ex, url, retryNumber);
             throw new BranchRemoteException(BranchError.ERR_BRANCH_NO_CONNECTIVITY, ex.getMessage());
         }
         finally {
@@ -164,17 +194,22 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
     }
 
 
-    private BranchResponse doRestfulPost(String url, JSONObject payload, int retryNumber) throws BranchRemoteException {
+    // The payload is either a JSONObject or, for bulk requests, a JSONArray
+    private BranchResponse doRestfulPost(String url, Object payload, int retryNumber) throws BranchRemoteException {
         HttpsURLConnection connection = null;
         PrefHelper prefHelper = PrefHelper.getInstance(branch.getApplicationContext());
         int timeout = prefHelper.getTimeout();
         int connectTimeout = prefHelper.getConnectTimeout();
 
-        try {
-            payload.put(RETRY_NUMBER, retryNumber);
-        }
-        catch (JSONException e) {
-            BranchLogger.e("Caught JSONException, retry number: " + retryNumber + " " + e.getMessage() + " stacktrace: " + BranchLogger.stackTraceToString(e));
+        if (payload instanceof JSONObject) {
+            try {
+                ((JSONObject) payload).put(RETRY_NUMBER, retryNumber);
+            }
+            catch (JSONException e) {
+                if (BranchLogger.isLoggable(BranchLogger.BranchLogLevel.ERROR)) {
+                    BranchLogger.e("Caught JSONException, retry number: %d %s stacktrace: %s", retryNumber, e.getMessage(), e);
+                }
+            }
         }
         try {
             // set the setThreadStatsTag for POST if API 26+
@@ -210,14 +245,14 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
             int responseCode = connection.getResponseCode();
             lastResponseCode = responseCode;
             lastResponseMessage = connection.getResponseMessage(); // If we have the response code, this will not invoke any more data transfer
-            BranchLogger.d("lastResponseMessage " + lastResponseMessage);
+            BranchLogger.d("lastResponseMessage %s", lastResponseMessage);
 
             if (responseCode >= HttpsURLConnection.HTTP_INTERNAL_ERROR && retryNumber < retryLimit) {
                 try {
                     Thread.sleep(prefHelper.getRetryInterval());
                 }
                 catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
+                    logNetworkError(e, url, retryNumber);
                 }
                 retryNumber++;
                 return doRestfulPost(url, payload, retryNumber);
@@ -226,8 +261,11 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
                 BranchResponse result;
                 try {
                     if (responseCode != HttpsURLConnection.HTTP_OK && connection.getErrorStream() != null) {
-                        BranchLogger.e("Branch Networking Error: " + "\nURL: " + url + "" + "\nResponse Code: " + lastResponseCode + "\nResponse Message: " + lastResponseMessage + "\nRetry number: " + retryNumber + "\nFinal attempt: true" + // no retry on 4XX errors
-                                "\nrequestId: " + lastRequestId + "\nObject: " + this);
+                        // More than four arguments, and boxed primitives
+                        if (BranchLogger.isLoggable(BranchLogger.BranchLogLevel.ERROR)) {
+                            BranchLogger.e("Branch Networking Error: " + "\nURL: %s" + "\nResponse Code: %d" + "\nResponse Message: %s" + "\nRetry number: %d" + "\nFinal attempt: true" + // no retry on 4XX errors
+                                    "\nrequestId: %s" + "\nObject: %s", url, lastResponseCode, lastResponseMessage, retryNumber, lastRequestId, this);
+                        }
                         result = new BranchResponse(getResponseString(connection.getErrorStream()), responseCode);
                     }
                     else {
@@ -246,18 +284,20 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
                             result = new BranchResponse(getResponseString(connection.getInputStream()), responseCode);
                         }
 
-                        BranchLogger.v("Branch Networking Success" +
-                                "\nURL: " + url +
-                                "\nResponse Code: " + lastResponseCode +
-                                "\nResponse Message: " + lastResponseMessage +
-                                "\nRetry number: " + retryNumber +
-                                "\nrequestId: " + lastRequestId +
-                                "\nObject: " + this);
+                        if (BranchLogger.isLoggable(BranchLogger.BranchLogLevel.VERBOSE)) {
+                            BranchLogger.v("Branch Networking Success" +
+                                    "\nURL: %s" +
+                                    "\nResponse Code: %d" +
+                                    "\nResponse Message: %s" +
+                                    "\nRetry number: %d" +
+                                    "\nrequestId: %s" +
+                                    "\nObject: %s", url, lastResponseCode, lastResponseMessage, retryNumber, lastRequestId, this);
+                        }
                     }
                 }
                 catch (FileNotFoundException ex) {
                     // In case of Resource conflict getInputStream will throw FileNotFoundException. Handle it here in order to send the right status code
-                    BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
+                    logNetworkError(ex, url, retryNumber);
                     result = new BranchResponse(null, responseCode);
                 }
 
@@ -267,14 +307,14 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
 
         }
         catch (SocketTimeoutException ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
+            logNetworkError(ex, url, retryNumber);
             // On socket  time out retry the request for retryNumber of times
             if (retryNumber < retryLimit) {
                 try {
                     Thread.sleep(prefHelper.getRetryInterval());
                 }
                 catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
+                    logNetworkError(e, url, retryNumber);
                 }
                 retryNumber++;
                 return doRestfulPost(url, payload, retryNumber);
@@ -284,14 +324,14 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
             }
         }
         catch (InterruptedIOException ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
+            logNetworkError(ex, url, retryNumber);
             // When the thread times out before or while sending the request
             if (retryNumber < retryLimit) {
                 try {
                     Thread.sleep(prefHelper.getRetryInterval());
                 }
                 catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
+                    logNetworkError(e, url, retryNumber);
                 }
                 retryNumber++;
                 return doRestfulPost(url, payload, retryNumber);
@@ -302,13 +342,13 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
         }
         // Unable to resolve host/Unknown host exception
         catch (IOException ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
+            logNetworkError(ex, url, retryNumber);
             if (retryNumber < retryLimit) {
                 try {
                     Thread.sleep(prefHelper.getRetryInterval());
                 }
                 catch (InterruptedException e) {
-                    BranchLogger.e(getNetworkErrorMessage(e, url, retryNumber));
+                    logNetworkError(e, url, retryNumber);
                 }
                 retryNumber++;
                 return doRestfulPost(url, payload, retryNumber);
@@ -318,7 +358,7 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
             }
         }
         catch (Exception ex) {
-            BranchLogger.e(getNetworkErrorMessage(ex, url, retryNumber));
+            logNetworkError(ex, url, retryNumber);
             if (ex instanceof NetworkOnMainThreadException) {
                 BranchLogger.e("Cannot make network request on main thread.");
                 throw new BranchRemoteException((BranchError.ERR_NETWORK_ON_MAIN), ex.getMessage());
@@ -359,17 +399,22 @@ public class BranchRemoteInterfaceUrlConnection extends BranchRemoteInterface {
         return responseString;
     }
 
-    String getNetworkErrorMessage(Exception e, String url, int retry){
-        return "Branch Networking Error: " +
-                "\nURL: " + url +
-                "\nResponse Code: " + lastResponseCode +
-                "\nResponse Message: " + lastResponseMessage +
-                "\nCaught exception type: " + e.getClass().getCanonicalName() +
-                "\nRetry number: " + retry +
-                "\nrequestId: " + lastRequestId +
-                "\nFinal attempt: " + (retry >= retryLimit) +
-                "\nObject: " + this +
-                "\nException Message: " + e.getMessage() +
-                "\nStacktrace: " + BranchLogger.stackTraceToString(e);
+    // The message includes a stack trace, it is only built if errors are logged
+    private void logNetworkError(Exception e, String url, int retry) {
+        // More than four arguments, and boxed primitives
+        if (!BranchLogger.isLoggable(BranchLogger.BranchLogLevel.ERROR)) return;
+        BranchLogger.e("Branch Networking Error: " +
+                "\nURL: %s" +
+                "\nResponse Code: %d" +
+                "\nResponse Message: %s" +
+                "\nCaught exception type: %s" +
+                "\nRetry number: %d" +
+                "\nrequestId: %s" +
+                "\nFinal attempt: %b" +
+                "\nObject: %s" +
+                "\nException Message: %s" +
+                "\nStacktrace: %s",
+                url, lastResponseCode, lastResponseMessage, e.getClass().getCanonicalName(), retry,
+                lastRequestId, retry >= retryLimit, this, e.getMessage(), e);
     }
 }
@@ -0,0 +1,207 @@
+package io.branch.referral;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(JUnit4.class)
+public class BinaryPrefStorageTest {
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("branch_prefs").toFile();
+        file = new File(directory, BinaryPrefStorage.FILE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                //noinspection ResultOfMethodCallIgnored
+                child.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private static Map<String, Object> changes(Object... keysAndValues) {
+        Map<String, Object> changes = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            changes.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return changes;
+    }
+
+    @Test
+    public void testValuesPersistedAcrossInstances() throws IOException {
+        BinaryPrefStorage storage = new BinaryPrefStorage(file);
+        storage.write(false, changes("bnc_session_id", "1234", "bnc_retry_count", 3,
+                "bnc_previous_update_time", 1700000000000L, "bnc_is_full_app_conversion", true,
+                "bnc_float", 1.5f, "bnc_session_params", "{\"~channel\":\"\u00e9t\u00e9\"}"));
+        storage.write(false, changes("bnc_retry_count", null, "bnc_session_id", "5678"));
+
+        storage = new BinaryPrefStorage(file);
+        Assert.assertEquals("5678", storage.getString("bnc_session_id", null));
+        Assert.assertFalse(storage.contains("bnc_retry_count"));
+        Assert.assertEquals(7, storage.getInt("bnc_retry_count", 7));
+        Assert.assertEquals(1700000000000L, storage.getLong("bnc_previous_update_time", 0));
+        Assert.assertTrue(storage.getBoolean("bnc_is_full_app_conversion", false));
+        Assert.assertEquals(1.5f, storage.getFloat("bnc_float", 0), 0);
+        Assert.assertEquals("{\"~channel\":\"\u00e9t\u00e9\"}", storage.getString("bnc_session_params", null));
+    }
+
+    @Test
+    public void testClear() throws IOException {
+        BinaryPrefStorage storage = new BinaryPrefStorage(file);
+        storage.write(false, changes("bnc_identity", "user", "bnc_app_link", "link"));
+        storage.write(true, changes("bnc_app_link", "link"));
+
+        storage = new BinaryPrefStorage(file);
+        Assert.assertFalse(storage.contains("bnc_identity"));
+        Assert.assertEquals("link", storage.getString("bnc_app_link", null));
+    }
+
+    @Test
+    public void testTornBatchIsTruncated() throws IOException {
+        BinaryPrefStorage storage = new BinaryPrefStorage(file);
+        storage.write(false, changes("bnc_session_id", "1234"));
+        long validBytes = file.length();
+        storage.write(false, changes("bnc_session_id", "5678", "bnc_identity", "user"));
+
+        // Cut the last batch in the middle, as a crash while appending would
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(file.length() - 3);
+        randomAccessFile.close();
+
+        storage = new BinaryPrefStorage(file);
+        Assert.assertEquals("1234", storage.getString("bnc_session_id", null));
+        Assert.assertFalse(storage.contains("bnc_identity"));
+        Assert.assertEquals(validBytes, file.length());
+
+        storage.write(false, changes("bnc_identity", "user"));
+        Assert.assertEquals("user", new BinaryPrefStorage(file).getString("bnc_identity", null));
+    }
+
+    @Test
+    public void testCompaction() throws IOException {
+        BinaryPrefStorage storage = new BinaryPrefStorage(file);
+        String params = String.join("", Collections.nCopies(100, "{\"k\":\"v\"}"));
+        for (int i = 0; i < 200; i++) {
+            storage.write(false, changes("bnc_session_params", params, "bnc_session_id", Integer.toString(i)));
+        }
+        Assert.assertTrue(storage.getCompactionCount() > 0);
+        Assert.assertTrue(file.length() <= Math.max(BinaryPrefStorage.MIN_COMPACTION_BYTES, 2 * 1200));
+        Assert.assertEquals(file.length(), storage.getFileBytes());
+
+        storage = new BinaryPrefStorage(file);
+        Assert.assertEquals("199", storage.getString("bnc_session_id", null));
+        Assert.assertEquals(params, storage.getString("bnc_session_params", null));
+    }
+
+    @Test
+    public void testWritesMadeOnExecutorAndCoalesced() throws IOException {
+        final List<Runnable> tasks = new ArrayList<>();
+        BinaryPrefStorage storage = new BinaryPrefStorage(file, tasks::add);
+        long emptyBytes = file.length();
+
+        storage.write(false, changes("bnc_session_id", "1234"));
+        storage.write(false, changes("bnc_randomized_bundle_token", "5678", "bnc_session_id", "4321"));
+        storage.write(false, changes("bnc_identity", "user"));
+
+        // Readable right away, but nothing written to the file on the calling thread
+        Assert.assertEquals("4321", storage.getString("bnc_session_id", null));
+        Assert.assertEquals(emptyBytes, file.length());
+        Assert.assertEquals(1, tasks.size());
+
+        tasks.remove(0).run();
+        Assert.assertTrue(tasks.isEmpty());
+        Assert.assertEquals(1, storage.getBatchCount());
+
+        storage.write(true, changes("bnc_identity", "other"));
+        tasks.remove(0).run();
+        Assert.assertEquals(2, storage.getBatchCount());
+
+        storage = new BinaryPrefStorage(file);
+        Assert.assertFalse(storage.contains("bnc_session_id"));
+        Assert.assertEquals("other", storage.getString("bnc_identity", null));
+    }
+
+    /**
+     * Compares the bytes written to save the values changed by an open with the binary storage, and
+     * with a SharedPreferences XML file holding the same values, which is rewritten whole every time.
+     */
+    @Test
+    public void testWriteAmplification() throws IOException {
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            values.put("bnc_key_" + i, "value_" + i);
+        }
+        for (int i = 0; i < 10; i++) {
+            values.put("bnc_long_" + i, 1700000000000L + i);
+        }
+        StringBuilder blob = new StringBuilder("{");
+        for (int i = 0; i < 60; i++) {
+            blob.append("\"key_").append(i).append("\":\"value value value ").append(i).append("\",");
+        }
+        blob.append("\"end\":true}");
+        values.put("bnc_install_params", blob.toString());
+        values.put("bnc_session_params", blob.toString());
+        values.put("bnc_skip_url_list", blob.toString());
+
+        BinaryPrefStorage storage = new BinaryPrefStorage(file);
+        storage.write(false, values);
+        long startBytes = storage.getBytesWritten();
+
+        final int opens = 100;
+        long xmlBytesWritten = 0;
+        for (int i = 0; i < opens; i++) {
+            Map<String, Object> changed = changes("bnc_session_id", "session_" + i,
+                    "bnc_randomized_bundle_token", "token_" + i, "bnc_session_params", blob + " " + i);
+            storage.write(false, changed);
+            values.putAll(changed);
+            xmlBytesWritten += toXml(values).length;
+        }
+        long binaryBytesPerOpen = (storage.getBytesWritten() - startBytes) / opens;
+        long xmlBytesPerOpen = xmlBytesWritten / opens;
+
+        Assert.assertTrue(storage.getCompactionCount() > 0);
+        Assert.assertTrue(binaryBytesPerOpen + " < " + xmlBytesPerOpen, 2 * binaryBytesPerOpen < xmlBytesPerOpen);
+        Assert.assertEquals(blob + " 99", new BinaryPrefStorage(file).getString("bnc_session_params", null));
+    }
+
+    // The values as SharedPreferences writes them
+    private static byte[] toXml(Map<String, Object> values) {
+        StringBuilder xml = new StringBuilder("<?xml version='1.0' encoding='utf-8' standalone='yes' ?>\n<map>\n");
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof String) {
+                xml.append("    <string name=\"").append(entry.getKey()).append("\">")
+                        .append(((String) value).replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;"))
+                        .append("</string>\n");
+            } else {
+                xml.append("    <").append(value instanceof Long ? "long" : "int").append(" name=\"")
+                        .append(entry.getKey()).append("\" value=\"").append(value).append("\" />\n");
+            }
+        }
+        return xml.append("</map>\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
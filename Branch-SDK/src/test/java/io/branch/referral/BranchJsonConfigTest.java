@@ -0,0 +1,38 @@
+package io.branch.referral;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class BranchJsonConfigTest {
+
+    @Test
+    public void testValidConfigurations() throws JSONException {
+        Assert.assertTrue(BranchJsonConfig.validate(new JSONObject("{}")).isEmpty());
+        Assert.assertTrue(BranchJsonConfig.validate(new JSONObject("{\"branchKey\":\"key_live_123\","
+                + "\"enableLogging\":true,\"deferInitForPluginRuntime\":false,\"apiUrl\":\"https://api2.branch.io\","
+                + "\"fbAppId\":\"xyz123456789\",\"cppLevel\":\"REDUCED\"}")).isEmpty());
+        Assert.assertTrue(BranchJsonConfig.validate(new JSONObject("{\"liveKey\":\"key_live_123\","
+                + "\"testKey\":\"key_test_123\",\"useTestInstance\":true}")).isEmpty());
+    }
+
+    @Test
+    public void testInvalidConfiguration() throws JSONException {
+        List<String> errors = BranchJsonConfig.validate(new JSONObject("{\"liveKey\":\"live_123\","
+                + "\"enableLogging\":\"yes\",\"apiUrl\":\"http://api2.branch.io\",\"cppLevel\":\"Reduced\","
+                + "\"consumerProtectionAttributionLevel\":\"REDUCED\"}"));
+        Assert.assertTrue(errors.contains("unknown key consumerProtectionAttributionLevel"));
+        Assert.assertTrue(errors.contains("liveKey must be a Branch key, starting with key_"));
+        Assert.assertTrue(errors.contains("without branchKey, liveKey, testKey and useTestInstance must all be set"));
+        Assert.assertTrue(errors.contains("enableLogging must be true or false"));
+        Assert.assertTrue(errors.contains("apiUrl must be an https URL"));
+        Assert.assertTrue(errors.contains("cppLevel must be one of FULL, REDUCED, MINIMAL, NONE"));
+        Assert.assertEquals(6, errors.size());
+    }
+}
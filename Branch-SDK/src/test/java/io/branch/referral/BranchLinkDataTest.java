@@ -0,0 +1,160 @@
+package io.branch.referral;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class BranchLinkDataTest {
+
+    private BranchLinkData createLinkData(String channel, JSONObject params) throws JSONException {
+        BranchLinkData linkData = new BranchLinkData();
+        linkData.putType(Branch.LINK_TYPE_UNLIMITED_USE);
+        linkData.putTags(Arrays.asList("tag1", "tag2"));
+        linkData.putChannel(channel);
+        linkData.putFeature("share");
+        linkData.putParams(params);
+        return linkData;
+    }
+
+    @Test
+    public void testFingerprintIgnoresKeyOrder() throws JSONException {
+        JSONObject params = new JSONObject()
+                .put("$og_title", "title")
+                .put("$canonical_identifier", "content/12345")
+                .put("nested", new JSONObject().put("a", 1).put("b", true));
+        JSONObject reorderedParams = new JSONObject()
+                .put("nested", new JSONObject().put("b", true).put("a", 1))
+                .put("$canonical_identifier", "content/12345")
+                .put("$og_title", "title");
+
+        BranchLinkData linkData = createLinkData("facebook", params);
+        BranchLinkData reordered = createLinkData("facebook", reorderedParams);
+
+        Assert.assertEquals(linkData.getFingerprint(), reordered.getFingerprint());
+        Assert.assertEquals(linkData, reordered);
+        Assert.assertEquals(linkData.hashCode(), reordered.hashCode());
+    }
+
+    @Test
+    public void testFingerprintDiffersForDifferentLinks() throws JSONException {
+        JSONObject params = new JSONObject().put("id", 1);
+        BranchLinkData linkData = createLinkData("facebook", params);
+
+        Assert.assertNotEquals(linkData.getFingerprint(), createLinkData("twitter", params).getFingerprint());
+        Assert.assertNotEquals(linkData.getFingerprint(), createLinkData("facebook", new JSONObject().put("id", "1")).getFingerprint());
+        Assert.assertNotEquals(linkData.getFingerprint(), createLinkData("facebook", new JSONObject().put("id", 2)).getFingerprint());
+        Assert.assertNotEquals(linkData.getFingerprint(), createLinkData("facebook", null).getFingerprint());
+        Assert.assertNotEquals(linkData, createLinkData("twitter", params));
+    }
+
+    @Test
+    public void testFingerprintIsNotAmbiguous() throws JSONException {
+        BranchLinkData ab = new BranchLinkData();
+        ab.putChannel("ab");
+        ab.putFeature("c");
+        BranchLinkData a = new BranchLinkData();
+        a.putChannel("a");
+        a.putFeature("bc");
+        Assert.assertNotEquals(ab.getFingerprint(), a.getFingerprint());
+
+        BranchLinkData array = createLinkData("facebook", new JSONObject().put("k", new JSONArray().put("a").put("b")));
+        BranchLinkData string = createLinkData("facebook", new JSONObject().put("k", "[\"a\",\"b\"]"));
+        Assert.assertNotEquals(array.getFingerprint(), string.getFingerprint());
+    }
+
+    @Test
+    public void testFingerprintIsRecomputedWhenLinkChanges() throws JSONException {
+        BranchLinkData linkData = createLinkData("facebook", new JSONObject().put("id", 1));
+        long fingerprint = linkData.getFingerprint();
+
+        linkData.putStage("level_1");
+        Assert.assertNotEquals(fingerprint, linkData.getFingerprint());
+
+        fingerprint = linkData.getFingerprint();
+        linkData.putParams(new JSONObject().put("id", 2));
+        Assert.assertNotEquals(fingerprint, linkData.getFingerprint());
+    }
+
+    @Test
+    public void testFingerprintIgnoresLaterChangesToParams() throws JSONException {
+        JSONObject params = new JSONObject().put("id", 1);
+        ArrayList<String> tags = new ArrayList<>(Arrays.asList("tag1", "tag2"));
+        BranchLinkData linkData = createLinkData("facebook", params);
+        linkData.putTags(tags);
+        long fingerprint = linkData.getFingerprint();
+
+        params.put("id", 2);
+        tags.add("tag3");
+        Assert.assertEquals(fingerprint, linkData.getFingerprint());
+        Assert.assertEquals(1, linkData.getParams().getInt("id"));
+        Assert.assertEquals(createLinkData("facebook", new JSONObject().put("id", 1)), linkData);
+    }
+
+    @Test
+    public void testCacheJsonRoundTrip() throws JSONException {
+        BranchLinkData linkData = createLinkData("facebook", new JSONObject()
+                .put("id", 1)
+                .put("nested", new JSONObject().put("list", new JSONArray().put("a").put(2))));
+        linkData.putAlias("alias");
+        linkData.putStage("level_1");
+        linkData.putCampaign("launch");
+        linkData.putDuration(7200);
+
+        BranchLinkData restored = BranchLinkData.fromCacheJson(new JSONObject(linkData.toCacheJson().toString()));
+        Assert.assertEquals(linkData, restored);
+        Assert.assertEquals(linkData.getFingerprint(), restored.getFingerprint());
+
+        BranchLinkData empty = new BranchLinkData();
+        Assert.assertEquals(empty, BranchLinkData.fromCacheJson(empty.toCacheJson()));
+    }
+
+    @Test
+    public void testCopyForCache() throws JSONException {
+        BranchLinkData linkData = createLinkData("facebook", new JSONObject()
+                .put("id", 1)
+                .put("nested", new JSONObject().put("list", new JSONArray().put("a"))));
+        linkData.putAlias("alias");
+        linkData.putDuration(7200);
+
+        BranchLinkData copy = linkData.copyForCache();
+        Assert.assertEquals(linkData, copy);
+        Assert.assertEquals(linkData.getFingerprint(), copy.getFingerprint());
+        Assert.assertEquals(0, copy.length());
+
+        linkData.getParams().getJSONObject("nested").put("list", "b");
+        Assert.assertEquals("a", copy.getParams().getJSONObject("nested").getJSONArray("list").getString(0));
+    }
+
+    @Test
+    public void testLookupWithFreshLinkData() throws JSONException {
+        final int linkCount = 100;
+
+        HashMap<BranchLinkData, String> cache = new HashMap<>();
+        List<JSONObject> params = new ArrayList<>();
+        for (int i = 0; i < linkCount; i++) {
+            JSONObject linkParams = new JSONObject();
+            for (int j = 0; j < 20; j++) {
+                linkParams.put("key_" + j, "value_" + i + "_" + j);
+            }
+            params.add(linkParams);
+            cache.put(createLinkData("facebook", linkParams), "https://bnc.lt/l/" + i);
+        }
+        Assert.assertEquals(linkCount, cache.size());
+
+        // Link data is created again for every link request
+        for (int i = 0; i < linkCount; i++) {
+            Assert.assertEquals("https://bnc.lt/l/" + i, cache.get(createLinkData("facebook", params.get(i))));
+        }
+        Assert.assertNull(cache.get(createLinkData("twitter", params.get(0))));
+    }
+}
@@ -0,0 +1,183 @@
+package io.branch.referral;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+@RunWith(JUnit4.class)
+public class BranchLogSinkTest {
+
+    private File directory;
+    private BranchLogSink sink;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("branch_logs").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        if (sink != null) sink.close();
+        deleteRecursively(directory);
+    }
+
+    @Test
+    public void testMessagesWrittenInOrder() throws IOException {
+        sink = new BranchLogSink(directory);
+        final List<String> forwarded = Collections.synchronizedList(new ArrayList<String>());
+        sink.setOutput((level, message) -> forwarded.add(level.name() + " " + message));
+
+        sink.append(BranchLogger.BranchLogLevel.DEBUG, "first");
+        sink.append(BranchLogger.BranchLogLevel.ERROR, "second");
+        Assert.assertTrue(sink.flush(1000));
+
+        String thread = Thread.currentThread().getName();
+        List<String> lines = readLines(new File(directory, BranchLogSink.LOG_FILE));
+        Assert.assertEquals(2, lines.size());
+        Assert.assertTrue(lines.get(0), lines.get(0).endsWith(" D " + thread + ": first"));
+        Assert.assertTrue(lines.get(1), lines.get(1).endsWith(" E " + thread + ": second"));
+        Assert.assertEquals("DEBUG first", forwarded.get(0));
+        Assert.assertEquals("ERROR second", forwarded.get(1));
+    }
+
+    @Test
+    public void testFilesRotatedAndCapped() {
+        sink = new BranchLogSink(directory, 1024, 3, 64);
+        for (int i = 0; i < 200; i++) {
+            while (!sink.append(BranchLogger.BranchLogLevel.INFO, "message number " + i)) {
+                sink.flush(1000);
+            }
+        }
+        Assert.assertTrue(sink.flush(1000));
+
+        List<File> files = sink.getLogFiles();
+        Assert.assertEquals(3, files.size());
+        Assert.assertEquals(BranchLogSink.LOG_FILE + ".2", files.get(0).getName());
+        Assert.assertEquals(BranchLogSink.LOG_FILE, files.get(2).getName());
+        for (File file : files) {
+            Assert.assertTrue(file.length() <= 1024);
+        }
+    }
+
+    @Test
+    public void testExportOldestFirst() throws IOException {
+        sink = new BranchLogSink(directory, 1024, 3, 64);
+        for (int i = 0; i < 40; i++) {
+            while (!sink.append(BranchLogger.BranchLogLevel.INFO, "message number " + i)) {
+                sink.flush(1000);
+            }
+        }
+        File exported = new File(directory, "export.log");
+        Assert.assertTrue(sink.export(exported));
+
+        List<String> lines = readLines(exported);
+        Assert.assertEquals(40, lines.size());
+        for (int i = 0; i < 40; i++) {
+            Assert.assertTrue(lines.get(i), lines.get(i).endsWith(": message number " + i));
+        }
+    }
+
+    @Test
+    public void testFullBufferDropsAndReports() throws IOException {
+        sink = new BranchLogSink(directory, 64 * 1024, 2, 8);
+        final Object block = new Object();
+        // Hold the writer in the output so the buffer fills up
+        sink.setOutput((level, message) -> {
+            synchronized (block) {
+                // Released once the buffer has been filled
+            }
+        });
+        int appended = 0;
+        synchronized (block) {
+            for (int i = 0; i < 100; i++) {
+                if (sink.append(BranchLogger.BranchLogLevel.VERBOSE, "message " + i)) appended++;
+            }
+        }
+        Assert.assertTrue(appended < 100);
+        Assert.assertEquals(100 - appended, sink.getDroppedCount());
+        Assert.assertTrue(sink.flush(1000));
+
+        List<String> lines = readLines(new File(directory, BranchLogSink.LOG_FILE));
+        Assert.assertEquals(appended + 1, lines.size());
+        Assert.assertTrue(lines.get(appended).endsWith((100 - appended) + " log messages dropped"));
+    }
+
+    @Test
+    public void testAppendAfterCloseIsDropped() throws IOException, InterruptedException {
+        sink = new BranchLogSink(directory);
+        sink.append(BranchLogger.BranchLogLevel.INFO, "before");
+        final CountDownLatch closed = new CountDownLatch(1);
+        sink.close(closed::countDown);
+        Assert.assertFalse(sink.append(BranchLogger.BranchLogLevel.INFO, "after"));
+        Assert.assertTrue(closed.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, readLines(new File(directory, BranchLogSink.LOG_FILE)).size());
+    }
+
+    @Test
+    public void testQueuedMessagesForwardedBeforeClosed() throws InterruptedException {
+        sink = new BranchLogSink(directory, 64 * 1024, 2, 64);
+        final List<String> forwarded = Collections.synchronizedList(new ArrayList<String>());
+        final Object block = new Object();
+        sink.setOutput((level, message) -> {
+            synchronized (block) {
+                forwarded.add(message);
+            }
+        });
+        final List<Integer> forwardedWhenClosed = new ArrayList<>();
+        final CountDownLatch closed = new CountDownLatch(1);
+        synchronized (block) {
+            for (int i = 0; i < 10; i++) {
+                Assert.assertTrue(sink.append(BranchLogger.BranchLogLevel.INFO, "message " + i));
+            }
+            // Returns without waiting for the writer, which is held in the output
+            sink.close(() -> {
+                forwardedWhenClosed.add(forwarded.size());
+                closed.countDown();
+            });
+        }
+        Assert.assertTrue(closed.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(Collections.singletonList(10), forwardedWhenClosed);
+    }
+
+    @Test
+    public void testIdleWriterWokenByAppend() throws InterruptedException {
+        sink = new BranchLogSink(directory);
+        final Semaphore forwarded = new Semaphore(0);
+        sink.setOutput((level, message) -> forwarded.release());
+        for (int i = 0; i < 20; i++) {
+            Assert.assertTrue(sink.append(BranchLogger.BranchLogLevel.INFO, "message " + i));
+            // Not flushed, the append alone wakes the writer parked on the empty buffer
+            Assert.assertTrue(forwarded.tryAcquire(1, TimeUnit.SECONDS));
+            Thread.sleep(i % 2);
+        }
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        return Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+}
@@ -0,0 +1,144 @@
+package io.branch.referral;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class BranchLoggerTest {
+
+    private final List<String> logged = new ArrayList<>();
+
+    // Stands in for a queued request, whose toString is what the queue logs
+    private static class FakeRequest {
+        int toStringCount = 0;
+
+        @Override
+        public String toString() {
+            toStringCount++;
+            return "io.branch.referral.ServerRequestRegisterOpen@" + Integer.toHexString(hashCode());
+        }
+    }
+
+    @Before
+    public void setUp() {
+        BranchLogger.setLoggerCallback((message, tag) -> logged.add(tag + " " + message));
+        BranchLogger.setLoggingLevel(BranchLogger.BranchLogLevel.VERBOSE);
+        BranchLogger.setLoggingEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+        BranchLogger.setLoggingEnabled(false);
+        BranchLogger.setLoggingLevel(BranchLogger.BranchLogLevel.DEBUG);
+        BranchLogger.setLoggerCallback(null);
+    }
+
+    @Test
+    public void testFormatOverloads() {
+        BranchLogger.v("handleNewRequest %s", "req");
+        BranchLogger.d("postInitClear %s can clear init data %s", "prefs", true);
+        BranchLogger.e("status %d", 404);
+
+        Assert.assertEquals("VERBOSE handleNewRequest req", logged.get(0));
+        Assert.assertEquals("DEBUG postInitClear prefs can clear init data true", logged.get(1));
+        Assert.assertEquals("ERROR status 404", logged.get(2));
+    }
+
+    @Test
+    public void testInvalidFormatStillLogs() {
+        BranchLogger.w("progress 100% of %s", "queue");
+        Assert.assertEquals(1, logged.size());
+        Assert.assertTrue(logged.get(0).startsWith("WARN progress 100% of %s"));
+    }
+
+    @Test
+    public void testMoreThanTwoArguments() {
+        Exception exception = new IllegalStateException("boom");
+        BranchLogger.e("Caught Exception %s processNextQueueItem: %s stacktrace: %s", "handleNewRequest", exception.getMessage(), exception);
+
+        Assert.assertEquals(1, logged.size());
+        Assert.assertTrue(logged.get(0).startsWith("ERROR Caught Exception handleNewRequest processNextQueueItem: boom stacktrace: java.lang.IllegalStateException: boom"));
+        Assert.assertTrue(logged.get(0).contains("at io.branch.referral.BranchLoggerTest.testMoreThanTwoArguments"));
+    }
+
+    @Test
+    public void testThreeAndFourArguments() {
+        BranchLogger.d("%s %s %s", "a", "b", "c");
+        BranchLogger.i("%s %s %s %s", "a", "b", "c", "d");
+        BranchLogger.w("%s %s %s %s %s", "a", "b", "c", "d", "e");
+
+        Assert.assertEquals("DEBUG a b c", logged.get(0));
+        Assert.assertEquals("INFO a b c d", logged.get(1));
+        Assert.assertEquals("WARN a b c d e", logged.get(2));
+    }
+
+    @Test
+    public void testNothingAllocatedWhenNotLogged() {
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+        FakeRequest req = new FakeRequest();
+        Exception exception = new IllegalStateException("boom");
+
+        BranchLogger.setLoggingEnabled(false);
+        for (int i = 0; i < 1000; i++) {
+            logQueueLoop(req, exception);
+        }
+        long allocatedBytes = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 1000; i++) {
+            logQueueLoop(req, exception);
+        }
+        // Reading the counter once is not free, allow for it but not for anything per message
+        Assert.assertTrue(threadBean.getThreadAllocatedBytes(threadId) - allocatedBytes < 1000);
+    }
+
+    // The messages of one pass of the queue loop, with up to four arguments
+    private static void logQueueLoop(FakeRequest req, Exception exception) {
+        BranchLogger.v("processNextQueueItem %s", "handleNewRequest");
+        BranchLogger.d("processNextQueueItem, req %s", req);
+        BranchLogger.v("postInitClear %s can clear init data %s", req, Boolean.TRUE);
+        BranchLogger.e("Caught Exception %s processNextQueueItem: %s stacktrace: %s", "handleNewRequest", exception.getMessage(), exception);
+        BranchLogger.v("onPostExecuteInner %s %s %s %s", req, req, req, req);
+    }
+
+    @Test
+    public void testIsLoggable() {
+        BranchLogger.setLoggingLevel(BranchLogger.BranchLogLevel.WARN);
+        Assert.assertTrue(BranchLogger.isLoggable(BranchLogger.BranchLogLevel.ERROR));
+        Assert.assertFalse(BranchLogger.isLoggable(BranchLogger.BranchLogLevel.DEBUG));
+
+        BranchLogger.setLoggingEnabled(false);
+        Assert.assertFalse(BranchLogger.isLoggable(BranchLogger.BranchLogLevel.ERROR));
+    }
+
+    @Test
+    public void testArgumentsNotFormattedWhenNotLogged() {
+        FakeRequest req = new FakeRequest();
+
+        BranchLogger.setLoggingLevel(BranchLogger.BranchLogLevel.INFO);
+        BranchLogger.v("processNextQueueItem, req %s", req);
+        BranchLogger.d("postInitClear %s can clear init data %s", req, true);
+        BranchLogger.v("Branch Networking Success\nURL: %s\nRetry number: %d\nObject: %s", "url", 0, req);
+        Assert.assertEquals(0, req.toStringCount);
+
+        BranchLogger.setLoggingEnabled(false);
+        BranchLogger.e("handleNewRequest %s", req);
+        Assert.assertEquals(0, req.toStringCount);
+        Assert.assertTrue(logged.isEmpty());
+
+        BranchLogger.setLoggingEnabled(true);
+        BranchLogger.i("handleNewRequest %s", req);
+        Assert.assertEquals(1, req.toStringCount);
+        Assert.assertEquals(1, logged.size());
+    }
+}
@@ -0,0 +1,187 @@
+package io.branch.referral;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+@RunWith(JUnit4.class)
+public class BranchQRCodeCacheTest {
+
+    // Runs the disk tasks only when the test asks for it
+    private static class QueuedExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+
+    private static class DiskResult implements BranchQRCodeCache.DiskCacheListener {
+        boolean checked = false;
+        byte[] qrCodeData;
+
+        @Override
+        public void onDiskCacheChecked(byte[] qrCodeData) {
+            this.checked = true;
+            this.qrCodeData = qrCodeData;
+        }
+    }
+
+    private static File createDirectory() throws IOException {
+        return Files.createTempDirectory("branch_qr_codes").toFile();
+    }
+
+    private static void deleteDirectory(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                //noinspection ResultOfMethodCallIgnored
+                file.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private JSONObject createParameters(String channel, String codeColor, long creationTimestamp) throws JSONException {
+        JSONObject data = new JSONObject()
+                .put("$canonical_identifier", "content/12345")
+                .put("$og_title", "title");
+        if (creationTimestamp > 0) {
+            data.put(Defines.Jsonkey.CreationTimestamp.getKey(), creationTimestamp);
+        }
+        return new JSONObject()
+                .put("channel", channel)
+                .put("tags", new JSONArray().put("tag1"))
+                .put("qr_code_settings", new JSONObject().put("code_color", codeColor).put("image_format", "PNG"))
+                .put(Defines.Jsonkey.QRCodeData.getKey(), data)
+                .put("branch_key", "key_live_testing_only");
+    }
+
+    @Test
+    public void testKeyIgnoresCreationTimestamp() throws JSONException {
+        long key = BranchQRCodeCache.keyOf(createParameters("facebook", "#000000", 1000L));
+        Assert.assertEquals(key, BranchQRCodeCache.keyOf(createParameters("facebook", "#000000", 2000L)));
+        Assert.assertEquals(key, BranchQRCodeCache.keyOf(createParameters("facebook", "#000000", 0)));
+    }
+
+    @Test
+    public void testKeyDoesNotModifyParameters() throws JSONException {
+        JSONObject parameters = createParameters("facebook", "#000000", 1000L);
+        String before = parameters.toString();
+        BranchQRCodeCache.keyOf(parameters);
+        Assert.assertEquals(before, parameters.toString());
+    }
+
+    @Test
+    public void testKeyIgnoresKeyOrder() throws JSONException {
+        JSONObject parameters = createParameters("facebook", "#000000", 0);
+        JSONObject reordered = new JSONObject();
+        String[] keys = JSONObject.getNames(parameters);
+        for (int i = keys.length - 1; i >= 0; i--) {
+            reordered.put(keys[i], parameters.get(keys[i]));
+        }
+        Assert.assertEquals(BranchQRCodeCache.keyOf(parameters), BranchQRCodeCache.keyOf(reordered));
+    }
+
+    @Test
+    public void testKeyDiffersForDifferentCodes() throws JSONException {
+        long key = BranchQRCodeCache.keyOf(createParameters("facebook", "#000000", 0));
+        Assert.assertNotEquals(key, BranchQRCodeCache.keyOf(createParameters("twitter", "#000000", 0)));
+        Assert.assertNotEquals(key, BranchQRCodeCache.keyOf(createParameters("facebook", "#FFFFFF", 0)));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testDeprecatedCacheMap() throws JSONException {
+        BranchQRCodeCache qrCodeCache = new BranchQRCodeCache(null);
+        byte[] facebookCode = new byte[]{1, 2, 3};
+        qrCodeCache.addQRCodeToCache(createParameters("facebook", "#000000", 1000L), facebookCode);
+        Assert.assertEquals(1, qrCodeCache.cache.size());
+        Assert.assertSame(facebookCode, qrCodeCache.cache.values().iterator().next());
+
+        // QR codes put in the map by the app are found by the cache
+        byte[] twitterCode = new byte[]{4, 5, 6};
+        qrCodeCache.cache.put(createParameters("twitter", "#000000", 1000L), twitterCode);
+        Assert.assertSame(twitterCode, qrCodeCache.checkQRCodeCache(createParameters("twitter", "#000000", 2000L)));
+        Assert.assertSame(facebookCode, qrCodeCache.checkQRCodeCache(createParameters("facebook", "#000000", 2000L)));
+        Assert.assertNull(qrCodeCache.checkQRCodeCache(createParameters("instagram", "#000000", 2000L)));
+    }
+
+    @Test
+    public void testDiskTierUsedOnlyInBackground() throws JSONException, IOException {
+        File directory = createDirectory();
+        try {
+            QueuedExecutor executor = new QueuedExecutor();
+            BranchQRCodeCache qrCodeCache = new BranchQRCodeCache(null, directory, executor);
+            qrCodeCache.setPersistenceEnabled(true);
+            JSONObject parameters = createParameters("facebook", "#000000", 1000L);
+            byte[] qrCodeData = new byte[]{1, 2, 3};
+            qrCodeCache.addQRCodeToCache(parameters, qrCodeData);
+            Assert.assertEquals(0, directory.listFiles().length);
+
+            executor.runAll();
+            Assert.assertEquals(1, directory.listFiles().length);
+
+            // A new cache only finds it on disk, once the disk task ran
+            qrCodeCache = new BranchQRCodeCache(null, directory, executor);
+            qrCodeCache.setPersistenceEnabled(true);
+            Assert.assertNull(qrCodeCache.checkQRCodeCache(parameters));
+            DiskResult result = new DiskResult();
+            qrCodeCache.checkDiskCache(createParameters("facebook", "#000000", 2000L), result);
+            Assert.assertFalse(result.checked);
+
+            executor.runAll();
+            Assert.assertArrayEquals(qrCodeData, result.qrCodeData);
+            Assert.assertEquals(1, qrCodeCache.getDiskHitCount());
+            Assert.assertArrayEquals(qrCodeData, qrCodeCache.checkQRCodeCache(parameters));
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    public void testDiskFingerprintCollisionIsMiss() throws JSONException, IOException {
+        File directory = createDirectory();
+        try {
+            QueuedExecutor executor = new QueuedExecutor();
+            BranchQRCodeCache qrCodeCache = new BranchQRCodeCache(null, directory, executor);
+            qrCodeCache.setPersistenceEnabled(true);
+            JSONObject facebook = createParameters("facebook", "#000000", 0);
+            JSONObject twitter = createParameters("twitter", "#000000", 0);
+            qrCodeCache.addQRCodeToCache(facebook, new byte[]{1, 2, 3});
+            executor.runAll();
+
+            // The file of the twitter QR code holds the facebook parameters, as if their keys collided
+            File facebookFile = new File(directory, Long.toHexString(BranchQRCodeCache.keyOf(facebook)));
+            Assert.assertTrue(facebookFile.renameTo(new File(directory, Long.toHexString(BranchQRCodeCache.keyOf(twitter)))));
+
+            DiskResult result = new DiskResult();
+            qrCodeCache.checkDiskCache(twitter, result);
+            executor.runAll();
+            Assert.assertTrue(result.checked);
+            Assert.assertNull(result.qrCodeData);
+            Assert.assertEquals(0, qrCodeCache.getDiskHitCount());
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+}
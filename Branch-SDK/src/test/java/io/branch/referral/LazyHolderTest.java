@@ -0,0 +1,67 @@
+package io.branch.referral;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@RunWith(JUnit4.class)
+public class LazyHolderTest {
+
+    private static class CountingHolder extends LazyHolder<Object> {
+        final AtomicInteger createCount = new AtomicInteger();
+
+        @Override
+        Object create() {
+            createCount.incrementAndGet();
+            return new Object();
+        }
+    }
+
+    @Test
+    public void testCreatedOnFirstGet() {
+        CountingHolder holder = new CountingHolder();
+        Assert.assertNull(holder.getIfCreated());
+        Assert.assertEquals(0, holder.createCount.get());
+
+        Object value = holder.get();
+        Assert.assertSame(value, holder.get());
+        Assert.assertSame(value, holder.getIfCreated());
+        Assert.assertEquals(1, holder.createCount.get());
+    }
+
+    @Test
+    public void testConcurrentGetReturnsOneObject() throws InterruptedException {
+        final int threadCount = 8;
+        final CountingHolder holder = new CountingHolder();
+        final Object[] values = new Object[threadCount];
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    values[index] = holder.get();
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (Object value : values) {
+            Assert.assertSame(holder.getIfCreated(), value);
+        }
+        Assert.assertTrue(holder.createCount.get() >= 1);
+    }
+}
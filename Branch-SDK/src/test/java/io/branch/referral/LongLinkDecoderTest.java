@@ -0,0 +1,96 @@
+package io.branch.referral;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+
+@RunWith(JUnit4.class)
+public class LongLinkDecoderTest {
+    private static final String PARAMS = "{\"$deeplink_path\":\"product/42\",\"name\":\"caf\u00e9 & co\","
+            + "\"price\":12,\"nested\":{\"list\":[1,\"two\"]}}";
+    private static final String BRANCH_KEY = "key_live_abc";
+    private static final String USER_URL = "https://example.app.link/a/key_live_abc?%24randomized_bundle_token=123";
+
+    private static String longLink(String baseUrl) throws JSONException {
+        BranchLinkData linkData = new BranchLinkData();
+        linkData.putTags(Arrays.asList("one", "two words"));
+        linkData.putChannel("facebook");
+        linkData.putFeature("sharing");
+        linkData.putCampaign("launch");
+        linkData.putType(0);
+        linkData.putDuration(0);
+        linkData.putParams(new JSONObject(PARAMS));
+        return LongUrlBuilder.build(baseUrl, linkData);
+    }
+
+    private static JSONObject decode(String url) {
+        return LongLinkDecoder.decode(url, BRANCH_KEY, USER_URL);
+    }
+
+    @Test
+    public void testDecodeLongLink() throws JSONException {
+        JSONObject params = decode(longLink("https://bnc.lt/a/key_live_abc"));
+        Assert.assertNotNull(params);
+        Assert.assertEquals("product/42", params.getString("$deeplink_path"));
+        Assert.assertEquals("caf\u00e9 & co", params.getString("name"));
+        Assert.assertEquals(12, params.getInt("price"));
+        Assert.assertEquals("two", params.getJSONObject("nested").getJSONArray("list").getString(1));
+        Assert.assertEquals("facebook", params.getString("~channel"));
+        Assert.assertEquals("sharing", params.getString("~feature"));
+        Assert.assertEquals("launch", params.getString("~campaign"));
+        Assert.assertEquals("two words", params.getJSONArray("~tags").getString(1));
+        Assert.assertFalse(params.has("~stage"));
+        Assert.assertTrue(params.getBoolean("+clicked_branch_link"));
+
+        params = decode(longLink(USER_URL) + "#top");
+        Assert.assertNotNull(params);
+        Assert.assertEquals("product/42", params.getString("$deeplink_path"));
+    }
+
+    @Test
+    public void testOtherLinksNotDecoded() throws JSONException {
+        Assert.assertNull(decode(null));
+        Assert.assertNull(decode("https://example.app.link/NdJ6nFzRbK"));
+        Assert.assertNull(decode("https://example.com/a/key_live_abc"));
+        Assert.assertNull(decode(longLink("https://example.com/product")));
+        Assert.assertNull(decode("myapp://open/a/key_live_abc?data=e30%3D"));
+        Assert.assertNull(decode("https://bnc.lt/a/key_live_abc?channel=facebook"));
+        Assert.assertNull(decode("https://bnc.lt/a/key_live_abc?data=not%20base64"));
+        Assert.assertNull(decode("https://bnc.lt/a/key_live_abc?data=bm90IGpzb24%3D"));
+    }
+
+    @Test
+    public void testLinksOfOtherAppsNotDecoded() throws JSONException {
+        Assert.assertNull(decode(longLink("https://bnc.lt/a/key_live_other")));
+        Assert.assertNull(decode(longLink("https://bnc.lt/a/key_live_abcd")));
+        Assert.assertNull(decode(longLink("https://other.app.link/a/key_live_abc")));
+        Assert.assertNull(decode(longLink("https://example.app.link@evil.com/a/key_live_abc")));
+        Assert.assertNull(LongLinkDecoder.decode(longLink("https://bnc.lt/a/key_live_abc"), PrefHelper.NO_STRING_VALUE, USER_URL));
+
+        // Before the server returns the links of the app, only the default host is known
+        Assert.assertNotNull(LongLinkDecoder.decode(longLink("https://bnc.lt/a/key_live_abc"), BRANCH_KEY, PrefHelper.NO_STRING_VALUE));
+        Assert.assertNull(LongLinkDecoder.decode(longLink(USER_URL), BRANCH_KEY, PrefHelper.NO_STRING_VALUE));
+        Assert.assertNotNull(decode(longLink("https://Example.app.link:443/a/key_live_abc")));
+    }
+
+    @Test
+    public void testMatches() throws JSONException {
+        JSONObject provisional = decode(longLink("https://bnc.lt/a/key_live_abc"));
+        JSONObject authoritative = new JSONObject(provisional.toString());
+        authoritative.put("+is_first_session", false);
+        authoritative.put("price", 12L);
+        Assert.assertTrue(LongLinkDecoder.matches(provisional, authoritative));
+
+        authoritative.put("~channel", "twitter");
+        Assert.assertFalse(LongLinkDecoder.matches(provisional, authoritative));
+        authoritative.put("~channel", "facebook");
+        authoritative.getJSONObject("nested").put("extra", true);
+        Assert.assertFalse(LongLinkDecoder.matches(provisional, authoritative));
+        Assert.assertFalse(LongLinkDecoder.matches(provisional, null));
+    }
+}
@@ -0,0 +1,227 @@
+package io.branch.referral;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+@RunWith(JUnit4.class)
+public class LongUrlBuilderTest {
+
+    private static final String[] BASE_URLS = {
+            "https://bnc.lt/a/key_live_abc",
+            "https://example.app.link/abc?%24randomized_bundle_token=123",
+            "https://example.app.link/abc?",
+            "https://example.app.link/abc?a=b&",
+            "",
+    };
+
+    private static final String[] VALUES = {
+            null,
+            "",
+            "facebook",
+            "with space",
+            "a-b_c.d*e~f!g'h(i)j",
+            "?&=#%+/:;@,$[]{}|\\^`\"<>",
+            "caf\u00e9 na\u00efve \u00fcber",
+            "\u65e5\u672c\u8a9e\u306e\u30ea\u30f3\u30af",
+            "emoji \ud83d\ude00\ud83d\udc4d",
+            "lone high \ud83d end",
+            "lone low \ude00 end",
+            "\ud83d\ud83d\ude00",
+            "\ud83d",
+            "tab\tnew\nline\u0000nul",
+            "\u07ff\u0800\uffff",
+    };
+
+    /**
+     * The long url as built by ServerRequestCreateUrl before {@link LongUrlBuilder}, the reference
+     * the builder must match byte for byte.
+     */
+    private static String referenceLongUrl(String baseUrl, BranchLinkData linkPost) throws UnsupportedEncodingException {
+        String longUrl = baseUrl;
+        longUrl += longUrl.contains("?") ? "" : "?";
+        longUrl += longUrl.endsWith("?") ? "" : "&";
+
+        Collection<String> tags = linkPost.getTags();
+        if (tags != null) {
+            for (String tag : tags) {
+                if (tag != null && tag.length() > 0)
+                    longUrl = longUrl + Defines.LinkParam.Tags + "=" + URLEncoder.encode(tag, "UTF8") + "&";
+            }
+        }
+        String alias = linkPost.getAlias();
+        if (alias != null && alias.length() > 0) {
+            longUrl = longUrl + Defines.LinkParam.Alias + "=" + URLEncoder.encode(alias, "UTF8") + "&";
+        }
+        String channel = linkPost.getChannel();
+        if (channel != null && channel.length() > 0) {
+            longUrl = longUrl + Defines.LinkParam.Channel + "=" + URLEncoder.encode(channel, "UTF8") + "&";
+        }
+        String feature = linkPost.getFeature();
+        if (feature != null && feature.length() > 0) {
+            longUrl = longUrl + Defines.LinkParam.Feature + "=" + URLEncoder.encode(feature, "UTF8") + "&";
+        }
+        String stage = linkPost.getStage();
+        if (stage != null && stage.length() > 0) {
+            longUrl = longUrl + Defines.LinkParam.Stage + "=" + URLEncoder.encode(stage, "UTF8") + "&";
+        }
+        String campaign = linkPost.getCampaign();
+        if (campaign != null && campaign.length() > 0) {
+            longUrl = longUrl + Defines.LinkParam.Campaign + "=" + URLEncoder.encode(campaign, "UTF8") + "&";
+        }
+
+        long type = linkPost.getType();
+        longUrl = longUrl + Defines.LinkParam.Type + "=" + type + "&";
+        long duration = linkPost.getDuration();
+        longUrl = longUrl + Defines.LinkParam.Duration + "=" + duration;
+        longUrl = longUrl + "&source=" + Defines.Jsonkey.URLSource.getKey();
+
+        JSONObject params = linkPost.getParams();
+        if (params != null && params.length() > 0) {
+            byte[] data = params.toString().getBytes();
+            String base64Data = Base64.encodeToString(data, Base64.NO_WRAP);
+            longUrl = longUrl + "&data=" + URLEncoder.encode(base64Data, "UTF8");
+        }
+        return longUrl;
+    }
+
+    private static BranchLinkData createLinkData(Collection<String> tags, String alias, String channel, String feature,
+                                                 String stage, String campaign, int type, int duration, JSONObject params) throws JSONException {
+        BranchLinkData linkData = new BranchLinkData();
+        linkData.putTags(tags);
+        linkData.putAlias(alias);
+        linkData.putChannel(channel);
+        linkData.putFeature(feature);
+        linkData.putStage(stage);
+        linkData.putCampaign(campaign);
+        linkData.putType(type);
+        linkData.putDuration(duration);
+        linkData.putParams(params);
+        return linkData;
+    }
+
+    private static void assertSameAsReference(String baseUrl, BranchLinkData linkData) throws UnsupportedEncodingException {
+        Assert.assertEquals(referenceLongUrl(baseUrl, linkData), LongUrlBuilder.build(baseUrl, linkData));
+    }
+
+    @Test
+    public void testEveryValueInEveryField() throws Exception {
+        for (String baseUrl : BASE_URLS) {
+            for (String value : VALUES) {
+                assertSameAsReference(baseUrl, createLinkData(Collections.singletonList(value), value, value, value, value, value, 0, 0, null));
+                assertSameAsReference(baseUrl, createLinkData(null, null, value, null, null, null, 1, 3600, null));
+                JSONObject params = new JSONObject().put("$og_title", value == null ? JSONObject.NULL : value);
+                assertSameAsReference(baseUrl, createLinkData(null, null, null, null, null, null, 0, 0, params));
+            }
+        }
+    }
+
+    @Test
+    public void testTags() throws Exception {
+        List<String> tags = new ArrayList<>(Arrays.asList(VALUES));
+        assertSameAsReference(BASE_URLS[0], createLinkData(tags, null, null, null, null, null, 0, 0, null));
+        assertSameAsReference(BASE_URLS[0], createLinkData(new ArrayList<String>(), null, null, null, null, null, 0, 0, null));
+    }
+
+    @Test
+    public void testParamsOfEveryBase64PaddingLength() throws Exception {
+        // The Base64 of the params ends with no padding, "=" or "==" depending on their length
+        for (int length = 0; length < 64; length++) {
+            char[] value = new char[length];
+            Arrays.fill(value, 'x');
+            JSONObject params = new JSONObject().put("k", new String(value));
+            assertSameAsReference(BASE_URLS[0], createLinkData(null, null, null, null, null, null, 0, 0, params));
+        }
+        assertSameAsReference(BASE_URLS[0], createLinkData(null, null, null, null, null, null, 0, 0, new JSONObject()));
+    }
+
+    @Test
+    public void testRandomLinks() throws Exception {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            List<String> tags = new ArrayList<>();
+            for (int t = random.nextInt(4); t > 0; t--) {
+                tags.add(randomString(random));
+            }
+            JSONObject params = new JSONObject();
+            for (int p = random.nextInt(6); p > 0; p--) {
+                params.put("key_" + p, random.nextBoolean() ? randomString(random) : new JSONArray().put(random.nextInt()));
+            }
+            BranchLinkData linkData = createLinkData(tags, randomString(random), randomString(random), randomString(random),
+                    randomString(random), randomString(random), random.nextInt(3), random.nextInt(100000), params);
+            assertSameAsReference(BASE_URLS[random.nextInt(BASE_URLS.length)], linkData);
+        }
+    }
+
+    // Mix of ASCII, two and three byte chars and surrogates, paired or not
+    private static String randomString(Random random) {
+        if (random.nextInt(8) == 0) return null;
+        char[] chars = new char[random.nextInt(24)];
+        for (int i = 0; i < chars.length; i++) {
+            switch (random.nextInt(5)) {
+                case 0:
+                    chars[i] = (char) random.nextInt(0x80);
+                    break;
+                case 1:
+                    chars[i] = (char) (0x80 + random.nextInt(0x780));
+                    break;
+                case 2:
+                    chars[i] = (char) (0xD800 + random.nextInt(0x800));
+                    break;
+                default:
+                    chars[i] = (char) (0x20 + random.nextInt(0x5F));
+            }
+        }
+        return new String(chars);
+    }
+
+    @Test
+    public void testTypicalLinkIsBuiltInOneReusedBuffer() throws Exception {
+        JSONObject params = new JSONObject()
+                .put("$og_title", "Check out this product")
+                .put("$og_description", "A longer description of the product, with punctuation & symbols.")
+                .put("$og_image_url", "https://cdn.example.com/images/product/12345.png")
+                .put("$canonical_identifier", "product/12345")
+                .put("custom_key", "custom value");
+        BranchLinkData linkData = createLinkData(Arrays.asList("tag one", "tag two"), null, "share sheet",
+                "sharing", "level 2", "spring sale", 0, 0, params);
+
+        LongUrlBuilder.BUFFER.remove();
+        Assert.assertEquals(referenceLongUrl(BASE_URLS[0], linkData), LongUrlBuilder.build(BASE_URLS[0], linkData));
+        StringBuilder buffer = LongUrlBuilder.BUFFER.get();
+        Assert.assertNotNull(buffer);
+        // The buffer was sized up front and never grown
+        int expectedCapacity = LongUrlBuilder.estimateLength(BASE_URLS[0], linkData, params.toString().getBytes());
+        Assert.assertEquals(expectedCapacity, buffer.capacity());
+        Assert.assertTrue(buffer.length() <= expectedCapacity);
+
+        Assert.assertEquals(referenceLongUrl(BASE_URLS[1], linkData), LongUrlBuilder.build(BASE_URLS[1], linkData));
+        Assert.assertSame(buffer, LongUrlBuilder.BUFFER.get());
+    }
+
+    @Test
+    public void testLargeBufferIsNotReused() throws Exception {
+        StringBuilder largeValue = new StringBuilder();
+        while (largeValue.length() < LongUrlBuilder.MAX_REUSED_CAPACITY) {
+            largeValue.append("large value ");
+        }
+        BranchLinkData linkData = createLinkData(null, null, "facebook", null, null, null, 0, 0,
+                new JSONObject().put("key", largeValue.toString()));
+
+        Assert.assertEquals(referenceLongUrl(BASE_URLS[0], linkData), LongUrlBuilder.build(BASE_URLS[0], linkData));
+        Assert.assertNull(LongUrlBuilder.BUFFER.get());
+    }
+}
@@ -0,0 +1,80 @@
+package io.branch.referral;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ParsedJsonCacheTest {
+    private static final String PARAMS = "{\"+clicked_branch_link\":true,\"+is_first_session\":false,"
+            + "\"~channel\":\"facebook\",\"~tags\":[\"one\",\"two\"],\"$og_title\":\"Title\","
+            + "\"nested\":{\"key\":\"value\",\"list\":[{\"a\":1}]},\"+click_timestamp\":1700000000}";
+
+    @Test
+    public void testParsedOnceUntilChanged() throws JSONException {
+        ParsedJsonCache cache = new ParsedJsonCache();
+        JSONObject first = cache.get(PARAMS);
+        JSONObject second = cache.get(new String(PARAMS));
+        Assert.assertEquals(1, cache.getParseCount());
+        Assert.assertEquals("facebook", second.getString("~channel"));
+        Assert.assertNotSame(first, second);
+
+        Assert.assertEquals(0, cache.get(PrefHelper.NO_STRING_VALUE).length());
+        Assert.assertEquals(2, cache.getParseCount());
+
+        cache.invalidate();
+        cache.get(PrefHelper.NO_STRING_VALUE);
+        Assert.assertEquals(3, cache.getParseCount());
+    }
+
+    @Test
+    public void testCallerCannotCorruptCache() throws JSONException {
+        ParsedJsonCache cache = new ParsedJsonCache();
+        JSONObject params = cache.get(PARAMS);
+        params.put("~channel", "changed");
+        params.getJSONArray("~tags").put("three");
+        params.getJSONObject("nested").remove("key");
+        params.getJSONObject("nested").getJSONArray("list").getJSONObject(0).put("a", 2);
+
+        JSONObject again = cache.get(PARAMS);
+        Assert.assertEquals("facebook", again.getString("~channel"));
+        Assert.assertEquals(2, again.getJSONArray("~tags").length());
+        Assert.assertEquals("value", again.getJSONObject("nested").getString("key"));
+        Assert.assertEquals(1, again.getJSONObject("nested").getJSONArray("list").getJSONObject(0).getInt("a"));
+    }
+
+    @Test
+    public void testBase64EncodedParams() throws JSONException {
+        String encoded = new String(Base64.encode("{\"~feature\":\"share\"}".getBytes(), Base64.NO_WRAP));
+        Assert.assertEquals("share", new ParsedJsonCache().get(encoded).getString("~feature"));
+        Assert.assertEquals(0, new ParsedJsonCache().get("not json").length());
+    }
+
+    @Test
+    public void testCopyKeepsValues() throws JSONException {
+        JSONObject parsed = new JSONObject(PARAMS);
+        parsed.put("null_value", JSONObject.NULL);
+        JSONObject copy = ParsedJsonCache.deepCopy(parsed);
+        Assert.assertEquals(parsed.toString(), copy.toString());
+        Assert.assertTrue(copy.get("~tags") instanceof JSONArray);
+    }
+
+    @Test
+    public void testRepeatedReadsParseOnce() {
+        // e.g. the params read several times while routing
+        ParsedJsonCache cache = new ParsedJsonCache();
+        String parsed = ParsedJsonCache.parse(PARAMS).toString();
+        JSONObject previous = null;
+        for (int i = 0; i < 100; i++) {
+            JSONObject params = cache.get(PARAMS);
+            Assert.assertEquals(parsed, params.toString());
+            Assert.assertNotSame(previous, params);
+            previous = params;
+        }
+        Assert.assertEquals(1, cache.getParseCount());
+    }
+}
@@ -0,0 +1,258 @@
+package io.branch.referral;
+
+import android.content.SharedPreferences;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class PrefWriteBufferTest {
+
+    private FakeSharedPreferences prefs;
+    private PrefWriteBuffer buffer;
+
+    @Before
+    public void setUp() {
+        prefs = new FakeSharedPreferences();
+        buffer = new PrefWriteBuffer(new SharedPreferencesStorage(prefs));
+    }
+
+    @Test
+    public void testWritesReachPreferencesRightAway() {
+        buffer.put("bnc_session_id", "1234");
+        buffer.put("bnc_retry_count", 5);
+        buffer.put("bnc_is_full_app_conversion", true);
+
+        // Already applied to the preferences in memory, a process death now loses nothing
+        Assert.assertEquals(3, prefs.applyCount);
+        Assert.assertEquals("1234", prefs.values.get("bnc_session_id"));
+        Assert.assertEquals(5, prefs.values.get("bnc_retry_count"));
+        Assert.assertEquals(true, prefs.values.get("bnc_is_full_app_conversion"));
+        Assert.assertFalse(buffer.hasPendingWrites());
+        Assert.assertEquals("1234", buffer.getString("bnc_session_id", "bnc_no_value"));
+    }
+
+    @Test
+    public void testUnchangedWriteIsDropped() {
+        prefs.values.put("bnc_app_link", "bnc_no_value");
+        buffer.put("bnc_app_link", "bnc_no_value");
+        Assert.assertFalse(buffer.hasPendingWrites());
+        Assert.assertEquals(0, prefs.applyCount);
+
+        // Changed, then changed back in the same transaction
+        buffer.edit(() -> {
+            buffer.put("bnc_app_link", "https://example.app.link/abc");
+            buffer.put("bnc_app_link", "bnc_no_value");
+        });
+        Assert.assertEquals(0, prefs.applyCount);
+        Assert.assertEquals(0, buffer.getWriteCount());
+    }
+
+    @Test
+    public void testRemoveAndClear() {
+        prefs.values.put("bnc_identity", "user");
+        prefs.values.put("bnc_push_identifier", "push");
+
+        buffer.remove("bnc_identity");
+        Assert.assertFalse(buffer.contains("bnc_identity"));
+        Assert.assertFalse(prefs.values.containsKey("bnc_identity"));
+        Assert.assertEquals("bnc_no_value", buffer.getString("bnc_identity", "bnc_no_value"));
+
+        buffer.edit(() -> {
+            buffer.clear();
+            buffer.put("bnc_link_click_id", "click");
+            Assert.assertFalse(buffer.contains("bnc_push_identifier"));
+            Assert.assertEquals("click", buffer.getString("bnc_link_click_id", null));
+        });
+        Assert.assertEquals(2, prefs.applyCount);
+        Assert.assertEquals(1, prefs.values.size());
+        Assert.assertEquals("click", prefs.values.get("bnc_link_click_id"));
+    }
+
+    @Test
+    public void testEditWritesTogether() {
+        buffer.edit(() -> {
+            buffer.put("bnc_session_id", "1234");
+            buffer.edit(() -> buffer.put("bnc_randomized_device_token", "9012"));
+            buffer.put("bnc_randomized_bundle_token", "5678");
+            Assert.assertEquals(0, prefs.applyCount);
+            Assert.assertTrue(buffer.hasPendingWrites());
+        });
+
+        Assert.assertEquals(1, prefs.applyCount);
+        Assert.assertEquals(1, buffer.getWriteCount());
+        Assert.assertEquals("1234", prefs.values.get("bnc_session_id"));
+        Assert.assertEquals("9012", prefs.values.get("bnc_randomized_device_token"));
+        Assert.assertEquals("5678", prefs.values.get("bnc_randomized_bundle_token"));
+    }
+
+    /**
+     * Counts the writes of the preferences handed to the storage while handling an open response and
+     * clearing the init data after it. Each setter used to apply its own write, 16 in total.
+     */
+    @Test
+    public void testWritesPerInit() {
+        // The values left by the previous open
+        prefs.values.put("bnc_external_intent_uri", "bnc_no_value");
+        prefs.values.put("bnc_app_link", "bnc_no_value");
+        prefs.values.put("bnc_is_full_app_conversion", false);
+
+        // ServerRequestQueue.onPostExecute and ServerRequestRegisterOpen.onRequestSucceeded
+        buffer.put("bnc_session_id", "1234");
+        buffer.put("bnc_randomized_bundle_token", "5678");
+        buffer.put("bnc_randomized_device_token", "9012");
+        buffer.put("bnc_link_click_id", "bnc_no_value");
+        buffer.put("bnc_session_params", "{\"+clicked_branch_link\":false,\"+is_first_session\":false}");
+        buffer.put("bnc_app_version", "1.0");
+
+        // ServerRequestQueue.postInitClear, where the unchanged values are dropped
+        buffer.edit(() -> {
+            for (String key : new String[]{"bnc_link_click_identifier", "bnc_google_search_install_identifier",
+                    "bnc_app_store_source", "bnc_external_intent_uri", "bnc_external_intent_extra",
+                    "bnc_app_link", "bnc_push_identifier", "bnc_install_referrer", "bnc_initial_referrer"}) {
+                buffer.put(key, "bnc_no_value");
+            }
+            buffer.put("bnc_is_full_app_conversion", false);
+        });
+
+        Assert.assertEquals(7, prefs.applyCount);
+        Assert.assertEquals(7, buffer.getWriteCount());
+        Assert.assertEquals(16, prefs.values.size());
+    }
+
+    private static class FakeSharedPreferences implements SharedPreferences {
+        final Map<String, Object> values = new HashMap<>();
+        int applyCount = 0;
+
+        @Override
+        public Map<String, ?> getAll() {
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            return values.containsKey(key) ? (String) values.get(key) : defValue;
+        }
+
+        @Override
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            return values.containsKey(key) ? (Long) values.get(key) : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            return values.containsKey(key) ? (Float) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new FakeEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        }
+
+        private class FakeEditor implements Editor {
+            private final Map<String, Object> changes = new HashMap<>();
+            private boolean clear = false;
+
+            @Override
+            public Editor putString(String key, String value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                changes.put(key, null);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                clear = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                apply();
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                applyCount++;
+                if (clear) values.clear();
+                for (Map.Entry<String, Object> change : changes.entrySet()) {
+                    if (change.getValue() == null) {
+                        values.remove(change.getKey());
+                    } else {
+                        values.put(change.getKey(), change.getValue());
+                    }
+                }
+            }
+        }
+    }
+}
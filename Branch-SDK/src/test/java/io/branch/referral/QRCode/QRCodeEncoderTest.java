@@ -0,0 +1,390 @@
+package io.branch.referral.QRCode;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Random;
+
+import io.branch.referral.QRCode.QRCodeEncoder.ErrorCorrectionLevel;
+
+@RunWith(JUnit4.class)
+public class QRCodeEncoderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Version 2-M symbol of "https://bnc.lt/a", one row per line, '#' for dark modules. Any change
+     * to the encoder output should be deliberate.
+     */
+    private static final String[] GOLDEN_BNC_LT = {
+            "#######.##..####..#######",
+            "#.....#.#..#.###..#.....#",
+            "#.###.#.#.#.###...#.###.#",
+            "#.###.#..#..#.###.#.###.#",
+            "#.###.#.###.##.#..#.###.#",
+            "#.....#..##..##...#.....#",
+            "#######.#.#.#.#.#.#######",
+            "...........#..#..........",
+            "#..######..#######..#.###",
+            "..#.....#.#...##...#####.",
+            "#.#######..#..###....#..#",
+            "#..#.#.###..#.##.#...####",
+            "#####.#..#.#.##.#.##....#",
+            "#.##.#.##...#..#....#..#.",
+            "#####.###.....###.#.#####",
+            "#...#....#..###..#.#.##.#",
+            "#.##..##...##..######.##.",
+            "........####...##...#.##.",
+            "#######.##..###.#.#.#...#",
+            "#.....#.####.#.##...#...#",
+            "#.###.#.####.#.######...#",
+            "#.###.#.###.##..#.#....##",
+            "#.###.#..###.#..##..#####",
+            "#.....#...####.....##.###",
+            "#######.#..###..##...#..#",
+    };
+
+    // ---- Values from the specification ----
+
+    @Test
+    public void testReedSolomonMatchesSpecificationExample() {
+        // "HELLO WORLD" in a version 1-M symbol
+        byte[] data = toBytes(32, 91, 11, 120, 209, 114, 220, 77, 67, 64, 236, 17, 236, 17, 236, 17);
+        byte[] ecc = QRCodeEncoder.reedSolomonComputeRemainder(data, QRCodeEncoder.reedSolomonComputeDivisor(10));
+        Assert.assertArrayEquals(toBytes(196, 35, 39, 119, 235, 215, 231, 226, 93, 23), ecc);
+    }
+
+    @Test
+    public void testFormatAndVersionBits() {
+        Assert.assertEquals(0x77C4, QRCodeEncoder.getFormatBits(ErrorCorrectionLevel.L, 0));
+        Assert.assertEquals(0x5412, QRCodeEncoder.getFormatBits(ErrorCorrectionLevel.M, 0));
+        Assert.assertEquals(0x355F, QRCodeEncoder.getFormatBits(ErrorCorrectionLevel.Q, 0));
+        Assert.assertEquals(0x1689, QRCodeEncoder.getFormatBits(ErrorCorrectionLevel.H, 0));
+        Assert.assertEquals(0x07C94, QRCodeEncoder.getVersionBits(7));
+        Assert.assertEquals(0x28C69, QRCodeEncoder.getVersionBits(40));
+    }
+
+    @Test
+    public void testAlignmentPatternPositions() {
+        Assert.assertArrayEquals(new int[0], QRCodeEncoder.getAlignmentPatternPositions(1));
+        Assert.assertArrayEquals(new int[]{6, 18}, QRCodeEncoder.getAlignmentPatternPositions(2));
+        Assert.assertArrayEquals(new int[]{6, 22, 38}, QRCodeEncoder.getAlignmentPatternPositions(7));
+        Assert.assertArrayEquals(new int[]{6, 34, 60, 86, 112, 138}, QRCodeEncoder.getAlignmentPatternPositions(32));
+        Assert.assertArrayEquals(new int[]{6, 30, 58, 86, 114, 142, 170}, QRCodeEncoder.getAlignmentPatternPositions(40));
+    }
+
+    @Test
+    public void testDataCapacity() {
+        int[][] expected = {
+                // version, L, M, Q, H data codewords
+                {1, 19, 16, 13, 9},
+                {2, 34, 28, 22, 16},
+                {5, 108, 86, 62, 46},
+                {7, 156, 124, 88, 66},
+                {10, 274, 216, 154, 122},
+                {20, 861, 669, 485, 385},
+                {40, 2956, 2334, 1666, 1276},
+        };
+        for (int[] row : expected) {
+            Assert.assertEquals(row[1], QRCodeEncoder.getNumDataCodewords(row[0], ErrorCorrectionLevel.L));
+            Assert.assertEquals(row[2], QRCodeEncoder.getNumDataCodewords(row[0], ErrorCorrectionLevel.M));
+            Assert.assertEquals(row[3], QRCodeEncoder.getNumDataCodewords(row[0], ErrorCorrectionLevel.Q));
+            Assert.assertEquals(row[4], QRCodeEncoder.getNumDataCodewords(row[0], ErrorCorrectionLevel.H));
+        }
+        // Blocks and error correction codewords of a few versions, e.g. 5-Q is 2x(33,15) + 2x(34,16)
+        Assert.assertEquals(4, QRCodeEncoder.getNumErrorCorrectionBlocks(5, ErrorCorrectionLevel.Q));
+        Assert.assertEquals(18, QRCodeEncoder.getEccCodewordsPerBlock(5, ErrorCorrectionLevel.Q));
+        Assert.assertEquals(5, QRCodeEncoder.getNumErrorCorrectionBlocks(10, ErrorCorrectionLevel.M));
+        Assert.assertEquals(26, QRCodeEncoder.getEccCodewordsPerBlock(10, ErrorCorrectionLevel.M));
+        Assert.assertEquals(81, QRCodeEncoder.getNumErrorCorrectionBlocks(40, ErrorCorrectionLevel.H));
+    }
+
+    @Test
+    public void testTextTooLong() {
+        char[] text = new char[2954];
+        Arrays.fill(text, 'a');
+        Assert.assertNull(QRCodeEncoder.encode(new String(text), ErrorCorrectionLevel.L));
+        Assert.assertNotNull(QRCodeEncoder.encode(new String(text, 0, 2953), ErrorCorrectionLevel.L));
+    }
+
+    // ---- Round trip through a decoder ----
+
+    @Test
+    public void testDecodeShortLink() {
+        assertDecodes("https://bnc.lt/a", ErrorCorrectionLevel.M, 2);
+        assertDecodes("", ErrorCorrectionLevel.L, 1);
+    }
+
+    @Test
+    public void testDecodeLongLink() {
+        String longUrl = "https://example.app.link/a/key_live_abc?channel=share+sheet&feature=sharing&type=0&duration=0"
+                + "&source=android&data=eyIkb2dfdGl0bGUiOiJDaGVjayBvdXQgdGhpcyBwcm9kdWN0IiwiJGNhbm9uaWNhbF9pZGVudGlmaWVyIjoicHJvZHVjdFwvMTIzNDUifQ%3D%3D";
+        for (ErrorCorrectionLevel level : ErrorCorrectionLevel.values()) {
+            assertDecodes(longUrl, level, -1);
+        }
+    }
+
+    @Test
+    public void testDecodeEveryVersion() {
+        Random random = new Random(42);
+        for (ErrorCorrectionLevel level : ErrorCorrectionLevel.values()) {
+            for (int version = QRCodeEncoder.MIN_VERSION; version <= QRCodeEncoder.MAX_VERSION; version++) {
+                // Longest text that fits in this version
+                int length = QRCodeEncoder.getNumDataCodewords(version, level) - (version <= 9 ? 2 : 3);
+                char[] text = new char[length];
+                for (int i = 0; i < length; i++) {
+                    text[i] = (char) (0x20 + random.nextInt(0x5F));
+                }
+                assertDecodes(new String(text), level, version);
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeUnicode() {
+        assertDecodes("https://example.app.link/caf\u00e9?title=\u65e5\u672c\u8a9e\ud83d\ude00", ErrorCorrectionLevel.Q, -1);
+    }
+
+    @Test
+    public void testGoldenSymbol() {
+        boolean[][] modules = QRCodeEncoder.encode("https://bnc.lt/a", ErrorCorrectionLevel.M);
+        Assert.assertArrayEquals(GOLDEN_BNC_LT, toRows(modules));
+    }
+
+    private static String[] toRows(boolean[][] modules) {
+        String[] rows = new String[modules.length];
+        for (int y = 0; y < modules.length; y++) {
+            StringBuilder row = new StringBuilder();
+            for (boolean module : modules[y]) {
+                row.append(module ? '#' : '.');
+            }
+            rows[y] = row.toString();
+        }
+        return rows;
+    }
+
+    private static void assertDecodes(String text, ErrorCorrectionLevel level, int expectedVersion) {
+        boolean[][] modules = QRCodeEncoder.encode(text, level);
+        Assert.assertNotNull(modules);
+        int version = (modules.length - 17) / 4;
+        if (expectedVersion > 0) {
+            Assert.assertEquals(expectedVersion, version);
+        }
+        Assert.assertEquals(text, new SymbolDecoder(modules).decode(level));
+    }
+
+    /**
+     * Minimal decoder of an ideal symbol, written from the specification independently of the
+     * encoder's placement code. Checks the format information, unmasks the symbol, reads the
+     * codewords, verifies every block with its Reed-Solomon syndromes and parses the byte segment.
+     */
+    private static class SymbolDecoder {
+        private final boolean[][] modules;
+        private final int size;
+        private final int version;
+        private final boolean[][] reserved;
+
+        SymbolDecoder(boolean[][] modules) {
+            this.modules = modules;
+            this.size = modules.length;
+            this.version = (size - 17) / 4;
+            this.reserved = new boolean[size][size];
+            reserveFunctionModules();
+        }
+
+        private void reserveRect(int x0, int y0, int width, int height) {
+            for (int y = y0; y < y0 + height; y++) {
+                for (int x = x0; x < x0 + width; x++) {
+                    reserved[y][x] = true;
+                }
+            }
+        }
+
+        private void reserveFunctionModules() {
+            // Finders with their separators and the format information
+            reserveRect(0, 0, 9, 9);
+            reserveRect(size - 8, 0, 8, 9);
+            reserveRect(0, size - 8, 9, 8);
+            // Timing patterns
+            reserveRect(6, 0, 1, size);
+            reserveRect(0, 6, size, 1);
+            int[] positions = QRCodeEncoder.getAlignmentPatternPositions(version);
+            for (int cy : positions) {
+                for (int cx : positions) {
+                    // Except where the finders are
+                    boolean inFinder = (cx < 9 && cy < 9) || (cx > size - 9 && cy < 9) || (cx < 9 && cy > size - 9);
+                    if (!inFinder) reserveRect(cx - 2, cy - 2, 5, 5);
+                }
+            }
+            if (version >= 7) {
+                reserveRect(size - 11, 0, 3, 6);
+                reserveRect(0, size - 11, 6, 3);
+            }
+        }
+
+        private int readFormatBits() {
+            int first = 0;
+            int second = 0;
+            for (int i = 0; i < 15; i++) {
+                int x1, y1;
+                if (i < 6) {
+                    x1 = 8;
+                    y1 = i;
+                } else if (i == 6) {
+                    x1 = 8;
+                    y1 = 7;
+                } else if (i == 7) {
+                    x1 = 8;
+                    y1 = 8;
+                } else if (i == 8) {
+                    x1 = 7;
+                    y1 = 8;
+                } else {
+                    x1 = 14 - i;
+                    y1 = 8;
+                }
+                if (modules[y1][x1]) first |= 1 << i;
+
+                int x2 = i < 8 ? size - 1 - i : 8;
+                int y2 = i < 8 ? 8 : size - 15 + i;
+                if (modules[y2][x2]) second |= 1 << i;
+            }
+            Assert.assertEquals("Both copies of the format information agree", first, second);
+            Assert.assertTrue("Dark module", modules[size - 8][8]);
+            return first;
+        }
+
+        String decode(ErrorCorrectionLevel expectedLevel) {
+            int formatBits = readFormatBits();
+            int mask = -1;
+            for (int m = 0; m < 8; m++) {
+                if (QRCodeEncoder.getFormatBits(expectedLevel, m) == formatBits) mask = m;
+            }
+            Assert.assertTrue("Format information of the expected level", mask >= 0);
+
+            // Codewords in placement order, unmasked
+            int rawCodewords = QRCodeEncoder.getNumRawDataModules(version) / 8;
+            byte[] codewords = new byte[rawCodewords];
+            int bit = 0;
+            int column = 0;
+            for (int right = size - 1; right >= 1; right -= 2, column++) {
+                if (right == 6) right = 5;
+                boolean upward = column % 2 == 0;
+                for (int step = 0; step < size; step++) {
+                    int y = upward ? size - 1 - step : step;
+                    for (int x = right; x >= right - 1; x--) {
+                        if (reserved[y][x] || bit >= rawCodewords * 8) continue;
+                        boolean dark = modules[y][x] ^ QRCodeEncoder.isMasked(mask, x, y);
+                        if (dark) codewords[bit / 8] |= (byte) (0x80 >>> (bit % 8));
+                        bit++;
+                    }
+                }
+            }
+
+            // De-interleave, check each block and collect the data codewords
+            int numBlocks = QRCodeEncoder.getNumErrorCorrectionBlocks(version, expectedLevel);
+            int eccLen = QRCodeEncoder.getEccCodewordsPerBlock(version, expectedLevel);
+            int numLongBlocks = rawCodewords % numBlocks;
+            int shortDataLen = rawCodewords / numBlocks - eccLen;
+            byte[][] blocks = new byte[numBlocks][];
+            for (int b = 0; b < numBlocks; b++) {
+                blocks[b] = new byte[shortDataLen + eccLen + (b >= numBlocks - numLongBlocks ? 1 : 0)];
+            }
+            int k = 0;
+            for (int i = 0; i < shortDataLen + 1; i++) {
+                for (int b = 0; b < numBlocks; b++) {
+                    int dataLen = blocks[b].length - eccLen;
+                    if (i < dataLen) blocks[b][i] = codewords[k++];
+                }
+            }
+            for (int i = 0; i < eccLen; i++) {
+                for (int b = 0; b < numBlocks; b++) {
+                    blocks[b][blocks[b].length - eccLen + i] = codewords[k++];
+                }
+            }
+            Assert.assertEquals(rawCodewords, k);
+
+            byte[] data = new byte[QRCodeEncoder.getNumDataCodewords(version, expectedLevel)];
+            int d = 0;
+            for (byte[] block : blocks) {
+                for (int i = 0; i < eccLen; i++) {
+                    Assert.assertEquals("Syndrome " + i, 0, evaluate(block, GaloisField.exp(i)));
+                }
+                System.arraycopy(block, 0, data, d, block.length - eccLen);
+                d += block.length - eccLen;
+            }
+
+            // Byte mode segment
+            BitReader reader = new BitReader(data);
+            Assert.assertEquals(0x4, reader.read(4));
+            int length = reader.read(version <= 9 ? 8 : 16);
+            byte[] text = new byte[length];
+            for (int i = 0; i < length; i++) {
+                text[i] = (byte) reader.read(8);
+            }
+            return new String(text, UTF_8);
+        }
+
+        // Horner evaluation of the block as a polynomial, first codeword is the highest power
+        private static int evaluate(byte[] block, int x) {
+            int result = 0;
+            for (byte b : block) {
+                result = GaloisField.multiply(result, x) ^ (b & 0xFF);
+            }
+            return result;
+        }
+    }
+
+    private static class GaloisField {
+        private static final int[] EXP = new int[256];
+        private static final int[] LOG = new int[256];
+
+        static {
+            int value = 1;
+            for (int i = 0; i < 255; i++) {
+                EXP[i] = value;
+                LOG[value] = i;
+                value <<= 1;
+                if (value >= 0x100) value ^= 0x11D;
+            }
+        }
+
+        static int exp(int i) {
+            return EXP[i % 255];
+        }
+
+        static int multiply(int a, int b) {
+            if (a == 0 || b == 0) return 0;
+            return EXP[(LOG[a] + LOG[b]) % 255];
+        }
+    }
+
+    private static class BitReader {
+        private final byte[] bytes;
+        private int position = 0;
+
+        BitReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int read(int bitCount) {
+            int result = 0;
+            for (int i = 0; i < bitCount; i++, position++) {
+                result = (result << 1) | ((bytes[position >>> 3] >>> (7 - (position & 7))) & 1);
+            }
+            return result;
+        }
+    }
+
+    private static byte[] toBytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+}
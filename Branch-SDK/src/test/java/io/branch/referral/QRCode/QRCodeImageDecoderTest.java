@@ -0,0 +1,37 @@
+package io.branch.referral.QRCode;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class QRCodeImageDecoderTest {
+
+    @Test
+    public void testFullSizeWhenNoSizeRequested() {
+        Assert.assertEquals(1, QRCodeImageDecoder.calculateInSampleSize(2000, 2000, 0, 0));
+        Assert.assertEquals(1, QRCodeImageDecoder.calculateInSampleSize(2000, 2000, -1, 200));
+    }
+
+    @Test
+    public void testFullSizeWhenImageIsSmaller() {
+        Assert.assertEquals(1, QRCodeImageDecoder.calculateInSampleSize(300, 300, 300, 300));
+        Assert.assertEquals(1, QRCodeImageDecoder.calculateInSampleSize(300, 300, 1000, 1000));
+    }
+
+    @Test
+    public void testDecodedImageStaysAtLeastRequestedSize() {
+        Assert.assertEquals(2, QRCodeImageDecoder.calculateInSampleSize(2000, 2000, 1000, 1000));
+        Assert.assertEquals(1, QRCodeImageDecoder.calculateInSampleSize(2000, 2000, 1001, 1001));
+        Assert.assertEquals(8, QRCodeImageDecoder.calculateInSampleSize(2000, 2000, 200, 200));
+        Assert.assertEquals(16, QRCodeImageDecoder.calculateInSampleSize(2000, 2000, 120, 120));
+    }
+
+    @Test
+    public void testLargerDimensionLimitsSampling() {
+        // A wide view needs the full width even if the height could be sampled further
+        Assert.assertEquals(2, QRCodeImageDecoder.calculateInSampleSize(2000, 2000, 1000, 100));
+        Assert.assertEquals(2, QRCodeImageDecoder.calculateInSampleSize(2000, 2000, 100, 1000));
+    }
+}
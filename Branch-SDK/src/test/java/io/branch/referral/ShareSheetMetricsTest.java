@@ -0,0 +1,43 @@
+package io.branch.referral;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ShareSheetMetricsTest {
+
+    @Test
+    public void testEmptyMetrics() {
+        ShareSheetMetrics metrics = new ShareSheetMetrics();
+        Assert.assertEquals(0, metrics.getShareCount());
+        Assert.assertEquals(0, metrics.getAverageTapToShareMillis());
+        Assert.assertEquals(0, metrics.getMaxTapToShareMillis());
+    }
+
+    @Test
+    public void testRecordShares() {
+        ShareSheetMetrics metrics = new ShareSheetMetrics();
+        metrics.recordShare(300, false);
+        metrics.recordShare(20, true);
+        metrics.recordShare(10, true);
+
+        Assert.assertEquals(3, metrics.getShareCount());
+        Assert.assertEquals(2, metrics.getSpeculativeHitCount());
+        Assert.assertEquals(110, metrics.getAverageTapToShareMillis());
+        Assert.assertEquals(300, metrics.getMaxTapToShareMillis());
+        Assert.assertEquals(10, metrics.getLastTapToShareMillis());
+    }
+
+    @Test
+    public void testReset() {
+        ShareSheetMetrics metrics = new ShareSheetMetrics();
+        metrics.recordShare(300, true);
+        metrics.reset();
+
+        Assert.assertEquals(0, metrics.getShareCount());
+        Assert.assertEquals(0, metrics.getSpeculativeHitCount());
+        Assert.assertEquals(0, metrics.getLastTapToShareMillis());
+    }
+}
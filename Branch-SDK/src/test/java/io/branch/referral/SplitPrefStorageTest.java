@@ -0,0 +1,195 @@
+package io.branch.referral;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class SplitPrefStorageTest {
+    private static final Set<String> COLD_KEYS = new HashSet<>(Arrays.asList(
+            "bnc_install_params", "bnc_gclid_json_object"));
+
+    private File directory;
+    private File hotFile;
+    private File coldFile;
+    private int coldLoads;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("branch_prefs").toFile();
+        hotFile = new File(directory, BinaryPrefStorage.FILE_NAME);
+        coldFile = new File(directory, BinaryPrefStorage.COLD_FILE_NAME);
+        coldLoads = 0;
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                //noinspection ResultOfMethodCallIgnored
+                child.delete();
+            }
+        }
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    private SplitPrefStorage open() throws IOException {
+        return new SplitPrefStorage(new BinaryPrefStorage(hotFile), new SplitPrefStorage.Loader() {
+            @Override
+            public PrefStorage load() {
+                coldLoads++;
+                try {
+                    return new BinaryPrefStorage(coldFile);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }, COLD_KEYS);
+    }
+
+    private static Map<String, Object> changes(Object... keysAndValues) {
+        Map<String, Object> changes = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            changes.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return changes;
+    }
+
+    @Test
+    public void testColdStoreNotLoadedDuringInit() throws IOException {
+        SplitPrefStorage storage = open();
+        storage.write(false, changes("bnc_branch_key", "key_live_123", "bnc_session_params", "{}"));
+        Assert.assertEquals(0, coldLoads);
+
+        // What init does: read the branch key and session values, look for and clear the legacy Google Click ID
+        storage = open();
+        Assert.assertEquals("key_live_123", storage.getString("bnc_branch_key", null));
+        Assert.assertEquals("{}", storage.getString("bnc_session_params", null));
+        Assert.assertNull(storage.getString("bnc_gclid_json_object", null));
+        Assert.assertFalse(storage.contains("bnc_install_params"));
+        storage.write(false, changes("bnc_session_id", "1234", "bnc_gclid_json_object", null));
+        Assert.assertFalse(storage.isColdLoaded());
+        Assert.assertEquals(0, coldLoads);
+    }
+
+    @Test
+    public void testColdStoreLoadedOnFirstUse() throws IOException {
+        SplitPrefStorage storage = open();
+        storage.write(false, changes("bnc_branch_key", "key_live_123", "bnc_install_params", "{\"+clicked_branch_link\":true}"));
+        Assert.assertEquals(1, coldLoads);
+        Assert.assertFalse(new BinaryPrefStorage(hotFile).contains("bnc_install_params"));
+
+        storage = open();
+        Assert.assertEquals("key_live_123", storage.getString("bnc_branch_key", null));
+        Assert.assertFalse(storage.isColdLoaded());
+        Assert.assertTrue(storage.contains("bnc_install_params"));
+        Assert.assertFalse(storage.isColdLoaded());
+
+        Assert.assertEquals("{\"+clicked_branch_link\":true}", storage.getString("bnc_install_params", null));
+        Assert.assertEquals(2, coldLoads);
+
+        storage.write(false, changes("bnc_install_params", null));
+        storage = open();
+        Assert.assertNull(storage.getString("bnc_install_params", null));
+        Assert.assertEquals(2, coldLoads);
+    }
+
+    @Test
+    public void testColdKeysMovedOutOfHotStore() throws IOException {
+        // Values saved before the split
+        new BinaryPrefStorage(hotFile).write(false, changes("bnc_branch_key", "key_live_123",
+                "bnc_session_params", "{\"~channel\":\"email\"}", "bnc_install_params", "{\"~channel\":\"sms\"}"));
+
+        SplitPrefStorage storage = open();
+        Assert.assertEquals(1, coldLoads);
+        Assert.assertEquals("key_live_123", storage.getString("bnc_branch_key", null));
+        Assert.assertEquals("{\"~channel\":\"email\"}", storage.getString("bnc_session_params", null));
+        Assert.assertEquals("{\"~channel\":\"sms\"}", storage.getString("bnc_install_params", null));
+
+        BinaryPrefStorage hot = new BinaryPrefStorage(hotFile);
+        Assert.assertFalse(hot.contains("bnc_install_params"));
+        Assert.assertEquals("bnc_install_params", hot.getString(SplitPrefStorage.KEY_STORED_COLD_KEYS, null));
+        Assert.assertEquals("{\"~channel\":\"sms\"}", new BinaryPrefStorage(coldFile).getString("bnc_install_params", null));
+
+        // Moved once
+        storage = open();
+        Assert.assertEquals("{\"~channel\":\"sms\"}", storage.getString("bnc_install_params", null));
+        Assert.assertEquals(2, coldLoads);
+    }
+
+    @Test
+    public void testClearBothStores() throws IOException {
+        SplitPrefStorage storage = open();
+        storage.write(false, changes("bnc_identity", "user", "bnc_install_params", "{}"));
+        storage.write(true, changes("bnc_branch_key", "key_live_456"));
+
+        storage = open();
+        Assert.assertFalse(storage.contains("bnc_identity"));
+        Assert.assertFalse(storage.contains("bnc_install_params"));
+        Assert.assertEquals("key_live_456", storage.getString("bnc_branch_key", null));
+        Assert.assertFalse(new BinaryPrefStorage(coldFile).contains("bnc_install_params"));
+    }
+
+    /**
+     * Rough benchmark of a cold start: the time to open the storage and read the branch key, with the
+     * install params in the same file and split in the cold file. Prints the best time of the rounds
+     * and the file sizes. Strings of the binary file are only decoded when read, so here the split
+     * only saves reading and checking the bytes of the install params; the default storage, which
+     * parses the whole file, is measured on a device by PrefHelperTest.
+     */
+    @Test
+    public void testTimeToFirstBranchKey() throws IOException {
+        StringBuilder installParams = new StringBuilder("{");
+        for (int i = 0; i < 400; i++) {
+            installParams.append("\"key_").append(i).append("\":\"value value value ").append(i).append("\",");
+        }
+        installParams.append("\"+clicked_branch_link\":true}");
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            values.put("bnc_key_" + i, "value_" + i);
+        }
+        values.put("bnc_branch_key", "key_live_123");
+        values.put("bnc_install_params", installParams.toString());
+
+        File unsplitFile = new File(directory, "unsplit.bin");
+        new BinaryPrefStorage(unsplitFile).write(false, values);
+        open().write(false, values);
+        Assert.assertEquals(1, coldLoads);
+
+        final int loads = 200;
+        long unsplitNanos = Long.MAX_VALUE;
+        long splitNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < loads; i++) {
+                Assert.assertEquals("key_live_123", new BinaryPrefStorage(unsplitFile).getString("bnc_branch_key", null));
+            }
+            unsplitNanos = Math.min(unsplitNanos, (System.nanoTime() - start) / loads);
+
+            start = System.nanoTime();
+            for (int i = 0; i < loads; i++) {
+                Assert.assertEquals("key_live_123", open().getString("bnc_branch_key", null));
+            }
+            splitNanos = Math.min(splitNanos, (System.nanoTime() - start) / loads);
+        }
+        System.out.println("Time to first branch key, unsplit: " + unsplitNanos / 1000 + "us (" + unsplitFile.length()
+                + " bytes), split: " + splitNanos / 1000 + "us (" + hotFile.length() + " bytes hot, "
+                + coldFile.length() + " bytes cold)");
+        Assert.assertEquals(1, coldLoads);
+        Assert.assertTrue(hotFile.length() < unsplitFile.length());
+    }
+}
@@ -0,0 +1,149 @@
+package io.branch.referral;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+@RunWith(JUnit4.class)
+public class UrlPatternSetTest {
+
+    // DEFAULT_SKIP_URL_LIST of UniversalResourceAnalyser
+    private static final List<String> DEFAULT_SKIP_LIST = Arrays.asList(
+            "^fb\\d+:((?!campaign_ids).)*$",
+            "^li\\d+:",
+            "^pdk\\d+:",
+            "^twitterkit-.*:",
+            "^com\\.googleusercontent\\.apps\\.\\d+-.*:\\/oauth",
+            "^(?i)(?!(http|https):).*(:|:.*\\b)(password|o?auth|o?auth.?token|access|access.?token)\\b",
+            "^(?i)((http|https):\\/\\/).*[\\/|?|#].*\\b(password|o?auth|o?auth.?token|access|access.?token)\\b");
+
+    private static final String[] URLS = {
+            "https://example.app.link/abc123",
+            "https://example.app.link/abc123?channel=facebook&feature=sharing",
+            "https://www.example.com/products/12345?utm_source=newsletter#reviews",
+            "https://www.example.com/login?password=hunter2",
+            "HTTPS://www.example.com/callback#access_token=abc",
+            "myapp://open?link_click_id=123456789",
+            "myapp://oauth?code=abc",
+            "fb1234567890://authorize#access_token=abc",
+            "fb1234567890://bridge?campaign_ids=123",
+            "li5555:foo",
+            "pdk42:bar",
+            "twitterkit-abc:callback",
+            "com.googleusercontent.apps.123456-abcdef:/oauth2redirect",
+            "com.googleusercontent.apps.foo:/oauth",
+            "fbconnect://success",
+            "",
+    };
+
+    // The matching before patterns were compiled once, for reference
+    private static String referenceStrippedUrl(List<String> skipList, List<String> acceptList, String url) {
+        String strippedURL = null;
+        try {
+            for (String skipPattern : skipList) {
+                if (Pattern.compile(skipPattern).matcher(url).find()) {
+                    strippedURL = skipPattern;
+                    break;
+                }
+            }
+            if (strippedURL == null) {
+                if (acceptList.size() > 0) {
+                    for (String acceptPattern : acceptList) {
+                        if (url.matches(acceptPattern)) {
+                            strippedURL = url;
+                            break;
+                        }
+                    }
+                } else {
+                    strippedURL = url;
+                }
+            }
+        } catch (Exception ex) {
+            strippedURL = url;
+        }
+        return strippedURL;
+    }
+
+    private static String strippedUrl(UrlPatternSet skipPatterns, UrlPatternSet acceptPatterns, String url) {
+        int skipIndex = skipPatterns.indexOfMatch(url);
+        if (skipIndex == UrlPatternSet.INVALID_PATTERN) return url;
+        if (skipIndex >= 0) return skipPatterns.getPattern(skipIndex);
+        if (acceptPatterns.size() == 0) return url;
+        int acceptIndex = acceptPatterns.indexOfMatch(url);
+        return acceptIndex >= 0 || acceptIndex == UrlPatternSet.INVALID_PATTERN ? url : null;
+    }
+
+    @Test
+    public void testLiteralPrefix() {
+        Assert.assertEquals("fb", UrlPatternSet.literalPrefix("^fb\\d+:((?!campaign_ids).)*$", false));
+        Assert.assertEquals("twitterkit-", UrlPatternSet.literalPrefix("^twitterkit-.*:", false));
+        Assert.assertEquals("com.googleusercontent.apps.", UrlPatternSet.literalPrefix("^com\\.googleusercontent\\.apps\\.\\d+-.*:\\/oauth", false));
+        Assert.assertEquals("", UrlPatternSet.literalPrefix("^(?i)((http|https):\\/\\/).*", false));
+        Assert.assertEquals("http", UrlPatternSet.literalPrefix("^https?://", false));
+        Assert.assertEquals("ab", UrlPatternSet.literalPrefix("^ab+c", false));
+        Assert.assertEquals("a", UrlPatternSet.literalPrefix("^ab{0,2}c", false));
+        Assert.assertEquals("", UrlPatternSet.literalPrefix("^abc|def", false));
+        Assert.assertEquals("abc", UrlPatternSet.literalPrefix("^abc(d|e)", false));
+        Assert.assertEquals("", UrlPatternSet.literalPrefix("^\\Qa.b\\E", false));
+    }
+
+    @Test
+    public void testUnanchoredPatternHasPrefixOnlyForFullMatch() {
+        Assert.assertEquals("", UrlPatternSet.literalPrefix("myapp://.*", false));
+        Assert.assertEquals("myapp://", UrlPatternSet.literalPrefix("myapp://.*", true));
+    }
+
+    @Test
+    public void testMatchesReferenceOnDefaultSkipList() {
+        List<List<String>> acceptLists = Arrays.asList(
+                Collections.<String>emptyList(),
+                Arrays.asList("https://example\\.app\\.link/.*", "myapp://.*"));
+        for (List<String> acceptList : acceptLists) {
+            UrlPatternSet skipPatterns = new UrlPatternSet(DEFAULT_SKIP_LIST, false);
+            UrlPatternSet acceptPatterns = new UrlPatternSet(acceptList, true);
+            for (String url : URLS) {
+                Assert.assertEquals(url, referenceStrippedUrl(DEFAULT_SKIP_LIST, acceptList, url),
+                        strippedUrl(skipPatterns, acceptPatterns, url));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidPatternReturnsUrlAsBefore() {
+        List<String> skipList = new ArrayList<>(DEFAULT_SKIP_LIST);
+        skipList.add(0, "^li\\d+:");
+        skipList.add(1, "^(unclosed");
+        UrlPatternSet skipPatterns = new UrlPatternSet(skipList, false);
+        UrlPatternSet acceptPatterns = new UrlPatternSet(Collections.<String>emptyList(), true);
+        for (String url : URLS) {
+            Assert.assertEquals(url, referenceStrippedUrl(skipList, Collections.<String>emptyList(), url),
+                    strippedUrl(skipPatterns, acceptPatterns, url));
+        }
+    }
+
+    @Test
+    public void testPrefixFilterOnDefaultSkipList() {
+        List<String> prefixes = new ArrayList<>();
+        for (String pattern : DEFAULT_SKIP_LIST) {
+            prefixes.add(UrlPatternSet.literalPrefix(pattern, false));
+        }
+        // Only the two patterns without a literal prefix run their regex on http and https urls
+        Assert.assertEquals(Arrays.asList("fb", "li", "pdk", "twitterkit-", "com.googleusercontent.apps.", "", ""), prefixes);
+        for (String url : URLS) {
+            int filtered = 0;
+            for (String prefix : prefixes) {
+                if (!url.startsWith(prefix)) filtered++;
+            }
+            if (url.toLowerCase().startsWith("http")) {
+                Assert.assertEquals(url, 5, filtered);
+            }
+        }
+    }
+}
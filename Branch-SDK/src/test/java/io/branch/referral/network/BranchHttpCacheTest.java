@@ -0,0 +1,164 @@
+package io.branch.referral.network;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+@RunWith(JUnit4.class)
+public class BranchHttpCacheTest {
+    private static final String URL = "https://cdn.branch.io/sdk/uriskiplist_v2.json";
+    private static final String BODY = "{\"version\":2,\"uri_skip_list\":[\"^fb\\\\d+:\"]}";
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("branch_http_cache").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        new BranchHttpCache(directory).clear();
+        //noinspection ResultOfMethodCallIgnored
+        directory.delete();
+    }
+
+    @Test
+    public void testParseCacheControl() {
+        BranchHttpCache.CacheControl directives = BranchHttpCache.CacheControl.parse("public, max-age=300");
+        Assert.assertEquals(300000, directives.maxAgeMillis);
+        Assert.assertFalse(directives.noCache);
+        Assert.assertFalse(directives.noStore);
+
+        directives = BranchHttpCache.CacheControl.parse("No-Cache, MAX-AGE=\"60\"");
+        Assert.assertTrue(directives.noCache);
+        Assert.assertEquals(60000, directives.maxAgeMillis);
+
+        Assert.assertTrue(BranchHttpCache.CacheControl.parse("no-store").noStore);
+        Assert.assertEquals(0, BranchHttpCache.CacheControl.parse("max-age=soon").maxAgeMillis);
+        Assert.assertEquals(0, BranchHttpCache.CacheControl.parse(null).maxAgeMillis);
+    }
+
+    @Test
+    public void testFreshWithinMaxAge() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        BranchHttpCache.Entry entry = cache.store(URL, 200, BODY, "\"v2\"", null, "max-age=60", null, 1000);
+
+        Assert.assertNotNull(entry);
+        Assert.assertTrue(entry.isFresh(1000));
+        Assert.assertTrue(entry.isFresh(60999));
+        Assert.assertFalse(entry.isFresh(61000));
+        Assert.assertFalse(entry.isFresh(999));
+    }
+
+    @Test
+    public void testNoCacheIsNeverFresh() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        BranchHttpCache.Entry entry = cache.store(URL, 200, BODY, "\"v2\"", null, "no-cache, max-age=60", null, 1000);
+
+        Assert.assertNotNull(entry);
+        Assert.assertFalse(entry.isFresh(1000));
+    }
+
+    @Test
+    public void testNotCachedWithoutValidatorsOrMaxAge() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        Assert.assertNull(cache.store(URL, 200, BODY, null, null, null, null, 1000));
+        Assert.assertNull(cache.store(URL, 500, BODY, "\"v2\"", null, "max-age=60", null, 1000));
+        Assert.assertNull(cache.get(URL));
+    }
+
+    @Test
+    public void testNoStoreRemovesCachedResponse() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        cache.store(URL, 200, BODY, "\"v2\"", null, "max-age=60", null, 1000);
+        Assert.assertNull(cache.store(URL, 200, BODY, "\"v2\"", null, "no-store", null, 2000));
+
+        Assert.assertNull(cache.get(URL));
+        Assert.assertNull(new BranchHttpCache(directory).get(URL));
+    }
+
+    @Test
+    public void testNotFoundIsCached() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        BranchHttpCache.Entry entry = cache.store(URL, 404, null, null, null, "max-age=3600", null, 1000);
+
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(404, entry.getResponseCode());
+        Assert.assertNull(entry.getBody());
+    }
+
+    @Test
+    public void testRevalidateKeepsBodyAndRenewsFreshness() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        BranchHttpCache.Entry entry = cache.store(URL, 200, BODY, "\"v2\"", "Mon, 01 Jan 2024 00:00:00 GMT", "max-age=60", null, 1000);
+        Assert.assertFalse(entry.isFresh(120000));
+
+        BranchHttpCache.Entry revalidated = cache.revalidate(URL, entry, null, null, 120000);
+        Assert.assertEquals(BODY, revalidated.getBody());
+        Assert.assertEquals("\"v2\"", revalidated.getEtag());
+        Assert.assertTrue(revalidated.isFresh(120000));
+        Assert.assertEquals(1, cache.getNotModifiedCount());
+
+        revalidated = cache.revalidate(URL, revalidated, "max-age=0", null, 130000);
+        Assert.assertFalse(revalidated.isFresh(130000));
+    }
+
+    @Test
+    public void testPersistedAcrossInstances() {
+        new BranchHttpCache(directory).store(URL, 200, BODY, "\"v2\"", "Mon, 01 Jan 2024 00:00:00 GMT", "max-age=60", null, 1000);
+
+        BranchHttpCache.Entry entry = new BranchHttpCache(directory).get(URL);
+        Assert.assertNotNull(entry);
+        Assert.assertEquals(200, entry.getResponseCode());
+        Assert.assertEquals(BODY, entry.getBody());
+        Assert.assertEquals("\"v2\"", entry.getEtag());
+        Assert.assertEquals("Mon, 01 Jan 2024 00:00:00 GMT", entry.getLastModified());
+        Assert.assertTrue(entry.isFresh(2000));
+    }
+
+    @Test
+    public void testBoundedNumberOfEntries() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        for (int i = 0; i < BranchHttpCache.MAX_ENTRIES + 5; i++) {
+            cache.store(URL + "?v=" + i, 200, BODY, "\"" + i + "\"", null, null, null, 1000);
+        }
+        Assert.assertTrue(directory.listFiles().length <= BranchHttpCache.MAX_ENTRIES);
+        Assert.assertNotNull(cache.get(URL + "?v=" + (BranchHttpCache.MAX_ENTRIES + 4)));
+    }
+
+    @Test
+    public void testHitAndMissCountedOnLookup() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        Assert.assertNull(cache.getFresh(URL));
+        Assert.assertEquals(1, cache.getMissCount());
+
+        cache.store(URL, 200, BODY, "\"v2\"", null, "max-age=60", null, System.currentTimeMillis());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertNotNull(cache.getFresh(URL));
+        Assert.assertEquals(1, cache.getHitCount());
+
+        cache.store(URL, 200, BODY, "\"v2\"", null, "no-cache", null, System.currentTimeMillis());
+        Assert.assertNull(cache.getFresh(URL));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testRequestIdIsKept() {
+        BranchHttpCache cache = new BranchHttpCache(directory);
+        BranchHttpCache.Entry entry = cache.store(URL, 200, BODY, "\"v2\"", null, "max-age=60", "request-1", 1000);
+        Assert.assertEquals("request-1", entry.getRequestId());
+        Assert.assertEquals("request-1", new BranchHttpCache(directory).get(URL).getRequestId());
+
+        Assert.assertEquals("request-2", cache.revalidate(URL, entry, null, "request-2", 120000).getRequestId());
+        Assert.assertEquals("request-1", cache.revalidate(URL, entry, null, null, 130000).getRequestId());
+    }
+}